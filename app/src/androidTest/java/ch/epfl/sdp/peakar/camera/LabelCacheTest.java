@@ -0,0 +1,103 @@
+package ch.epfl.sdp.peakar.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import ch.epfl.sdp.peakar.points.POIPoint;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class LabelCacheTest {
+
+    private static final int MARKER_WIDTH = 40;
+    //Same name for all the POIPoints, so that their labels have the same size
+    private static final String NAME = "Peak";
+
+    /**
+     * Creates a cache of the labels, holding the bitmaps of maxLabels labels of the same size as
+     * the label of the given POIPoint
+     */
+    private static LabelCache createCache(POIPoint poiPoint, int maxLabels) {
+        Paint textPaint = new Paint();
+        textPaint.setTextSize(30);
+        Bitmap icon = Bitmap.createBitmap(20, 20, Bitmap.Config.ARGB_8888);
+        int labelBytes = new LabelCache(textPaint, new Paint(), icon, icon, 1)
+                .get(poiPoint, MARKER_WIDTH).bitmap.getAllocationByteCount();
+        return new LabelCache(textPaint, new Paint(), icon, icon, 1, maxLabels * labelBytes);
+    }
+
+    // Tests that a label is rendered again only when its content changes
+    @Test
+    public void hitTest() {
+        POIPoint poiPoint = new POIPoint(NAME, 46, 7, 4000, null);
+        LabelCache labelCache = createCache(poiPoint, 4);
+        labelCache.beginFrame();
+        LabelCache.Label label = labelCache.get(poiPoint, MARKER_WIDTH);
+        assertSame(label, labelCache.get(poiPoint, MARKER_WIDTH));
+
+        poiPoint.setAltitude(4001);
+        assertNotSame(label, labelCache.get(poiPoint, MARKER_WIDTH));
+        assertNotSame(label, labelCache.get(poiPoint, MARKER_WIDTH + 1));
+    }
+
+    // Tests that the least recently used label is evicted once the bitmaps exceed the maximum size
+    @Test
+    public void evictionTest() {
+        POIPoint first = new POIPoint(NAME, 46, 7, 4000, null);
+        POIPoint second = new POIPoint(NAME, 46.1, 7, 4000, null);
+        POIPoint third = new POIPoint(NAME, 46.2, 7, 4000, null);
+        LabelCache labelCache = createCache(first, 2);
+        labelCache.beginFrame();
+        LabelCache.Label firstLabel = labelCache.get(first, MARKER_WIDTH);
+        LabelCache.Label secondLabel = labelCache.get(second, MARKER_WIDTH);
+
+        //The first label is used again, so the second one is evicted
+        assertSame(firstLabel, labelCache.get(first, MARKER_WIDTH));
+        labelCache.get(third, MARKER_WIDTH);
+        assertSame(firstLabel, labelCache.get(first, MARKER_WIDTH));
+        assertNotSame(secondLabel, labelCache.get(second, MARKER_WIDTH));
+    }
+
+    // Tests that the bitmap of an evicted label is only reused two frames after its removal
+    @Test
+    public void deferredReuseTest() {
+        POIPoint first = new POIPoint(NAME, 46, 7, 4000, null);
+        POIPoint second = new POIPoint(NAME, 46.1, 7, 4000, null);
+        POIPoint third = new POIPoint(NAME, 46.2, 7, 4000, null);
+        POIPoint fourth = new POIPoint(NAME, 46.3, 7, 4000, null);
+        LabelCache labelCache = createCache(first, 1);
+
+        labelCache.beginFrame();
+        Bitmap firstBitmap = labelCache.get(first, MARKER_WIDTH).bitmap;
+        labelCache.get(second, MARKER_WIDTH);
+
+        //The bitmap removed in the last frame may still be drawn
+        labelCache.beginFrame();
+        assertNotSame(firstBitmap, labelCache.get(third, MARKER_WIDTH).bitmap);
+
+        labelCache.beginFrame();
+        LabelCache.Label fourthLabel = labelCache.get(fourth, MARKER_WIDTH);
+        assertSame(firstBitmap, fourthLabel.bitmap);
+        assertFalse(fourthLabel.bitmap.isRecycled());
+    }
+
+    // Tests that clear recycles the bitmaps of the labels
+    @Test
+    public void clearTest() {
+        POIPoint poiPoint = new POIPoint(NAME, 46, 7, 4000, null);
+        LabelCache labelCache = createCache(poiPoint, 4);
+        labelCache.beginFrame();
+        Bitmap bitmap = labelCache.get(poiPoint, MARKER_WIDTH).bitmap;
+        labelCache.clear();
+        assertTrue(bitmap.isRecycled());
+    }
+}
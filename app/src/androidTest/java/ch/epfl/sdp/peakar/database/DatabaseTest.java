@@ -3,15 +3,13 @@ package ch.epfl.sdp.peakar.database;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 
-import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.Tasks;
-
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import ch.epfl.sdp.peakar.user.services.AuthAccount;
@@ -113,9 +111,9 @@ public class DatabaseTest {
     @Test
     public void offlineModeTest() {
         Database.getInstance().setOfflineMode();
-        Task<Void> setTask = Database.getInstance().getReference().child(Database.CHILD_USERS).child(user2).child(Database.CHILD_SCORE).setValueAsync(200);
+        CompletableFuture<Void> setFuture = Database.getInstance().getReference().child(Database.CHILD_USERS).child(user2).child(Database.CHILD_SCORE).setValueAsync(200);
         try {
-            Tasks.await(setTask, LONG_SLEEP_TIME, TimeUnit.MILLISECONDS);
+            setFuture.get(LONG_SLEEP_TIME, TimeUnit.MILLISECONDS);
             fail();
         } catch (Exception ignored) {
         }
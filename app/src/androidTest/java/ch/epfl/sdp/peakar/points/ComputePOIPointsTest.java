@@ -7,6 +7,7 @@ import androidx.core.util.Pair;
 import androidx.preference.PreferenceManager;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.espresso.intent.Intents;
+import androidx.test.platform.app.InstrumentationRegistry;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -132,6 +133,8 @@ public class ComputePOIPointsTest {
         StorageHandler.saveOfflineContentContainer(offlineContentContainer, mContext);
 
         userPoint.update();
+        //The location is delivered to computePOIPointsInstance on the UI thread
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
 
         Map<POIPoint, Boolean> loadedPOIPoints =  computePOIPointsInstance.getPOIs();
 
@@ -141,6 +144,7 @@ public class ComputePOIPointsTest {
         userPoint.setLocation(0, 0, 0, 0);
 
         userPoint.update();
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
 
         loadedPOIPoints =  computePOIPointsInstance.getPOIs();
 
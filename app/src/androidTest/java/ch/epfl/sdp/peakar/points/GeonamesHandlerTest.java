@@ -11,7 +11,6 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
-import org.osmdroid.bonuspack.location.POI;
 
 import java.util.ArrayList;
 
@@ -20,7 +19,6 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
-import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
@@ -30,7 +28,7 @@ import static org.junit.Assert.fail;
 
 public class GeonamesHandlerTest {
 
-    private static ArrayList<POI> resultPOI;
+    private static ArrayList<POIPoint> resultPOI;
 
     private static long startTimeMs;
     private static double queryTimeS;
@@ -56,7 +54,7 @@ public class GeonamesHandlerTest {
 
         GeonamesHandler handler = (GeonamesHandler) new GeonamesHandler(userPoint,context) {
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
+            public void onResponseReceived(ArrayList<POIPoint> result) {
                 resultPOI = result;
                 queryTimeS = ((double) System.currentTimeMillis() - startTimeMs) / MILLI_SEC_TO_SEC;
             }
@@ -78,14 +76,14 @@ public class GeonamesHandlerTest {
     }
 
     /**
-     * Checks that the POI contained in the ArrayList are POI
-     * from type natural:peaks
+     * Checks that the POI contained in the ArrayList are built
+     * from OSM nodes of type natural:peaks
      */
     @Test
     public void testResultType(){
         assertNotNull("testResultType failed. Acquired POI List is empty...", resultPOI);
-        for(POI point : resultPOI){
-            assertEquals(point.mDescription,"peak");
+        for(POIPoint point : resultPOI){
+            assertThat(point.getOsmId(), greaterThan(0L));
         }
     }
 
@@ -100,8 +98,8 @@ public class GeonamesHandlerTest {
     @Test
     public void testResultNameNonNull(){
         assertNotNull("testResultNameNonNull failed. Acquired POI List is empty...", resultPOI);
-        for(POI point : resultPOI){
-            assertNotEquals(point.mType,isEmptyOrNullString());
+        for(POIPoint point : resultPOI){
+            assertNotEquals(point.getName(),isEmptyOrNullString());
         }
     }
 
@@ -114,8 +112,8 @@ public class GeonamesHandlerTest {
     public void testResultHeightNonNull(){
 
         assertNotNull("testResultHeightNonNull failed. Acquired POI List is empty...", resultPOI);
-        for(POI point : resultPOI){
-            assertNotEquals(point.mLocation.getAltitude(),0.0F);
+        for(POIPoint point : resultPOI){
+            assertNotEquals(point.getAltitude(),0.0F);
         }
     }
 
@@ -127,7 +125,7 @@ public class GeonamesHandlerTest {
    @Test
     public void testResultListNotExceedLimit(){
         assertNotNull("testResultListNotExceedLimit failed. Acquired POI List is empty...", resultPOI);
-        for(POI point : resultPOI){
+        for(POIPoint point : resultPOI){
             assertThat(resultPOI.size(),lessThanOrEqualTo(DEFAULT_QUERY_MAX_RESULT));
         }
     }
@@ -156,7 +154,7 @@ public class GeonamesHandlerTest {
 
         new GeonamesHandler(userPoint, context) {
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
+            public void onResponseReceived(ArrayList<POIPoint> result) {
             }
         }.execute();
         try {
@@ -185,7 +183,7 @@ public class GeonamesHandlerTest {
                 GIVEN_QUERY_MAX_RESULT,
                 GIVEN_QUERY_TIMEOUT) {
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
+            public void onResponseReceived(ArrayList<POIPoint> result) {
             }
         }.execute();
         try {
@@ -214,7 +212,7 @@ public class GeonamesHandlerTest {
                 GIVEN_QUERY_MAX_RESULT,
                 GIVEN_QUERY_TIMEOUT) {
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
+            public void onResponseReceived(ArrayList<POIPoint> result) {
             }
         }.execute();
         try {
@@ -246,7 +244,7 @@ public class GeonamesHandlerTest {
                 0,
                 GIVEN_QUERY_TIMEOUT) {
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
+            public void onResponseReceived(ArrayList<POIPoint> result) {
             }
         }.execute();
         try {
@@ -275,7 +273,7 @@ public class GeonamesHandlerTest {
                 GIVEN_QUERY_MAX_RESULT,
                 0) {
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
+            public void onResponseReceived(ArrayList<POIPoint> result) {
             }
         }.execute();
         try {
@@ -14,12 +14,16 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.TimeoutException;
 
 import ch.epfl.sdp.peakar.database.Database;
 import ch.epfl.sdp.peakar.user.services.AuthService;
 import ch.epfl.sdp.peakar.user.services.FirebaseAuthService;
+import ch.epfl.sdp.peakar.utils.EventTopic;
 
 import static ch.epfl.sdp.peakar.utils.TestingConstants.SHORT_SLEEP_TIME;
 import static ch.epfl.sdp.peakar.utils.UserTestHelper.registerAuthUser;
@@ -128,4 +132,32 @@ public class UserPointTest {
 
     }
 
+    @Test
+    public void customLocationIsPublishedTest() {
+        List<Point> published = Collections.synchronizedList(new ArrayList<>());
+        EventTopic<Point>.Subscription subscription = UserPoint.LOCATION_TOPIC.subscribe(Runnable::run, published::add);
+        try {
+            // a custom location is published even if it is far less precise than the move
+            userPoint.setLocation(46.5, 6.5, 400, 10_000);
+            userPoint.update();
+            Assert.assertEquals(1, published.size());
+            Assert.assertEquals(46.5, published.get(0).getLatitude(), 0);
+            Assert.assertEquals(6.5, published.get(0).getLongitude(), 0);
+            Assert.assertEquals(400, published.get(0).getAltitude(), 0);
+
+            // an unchanged custom location is not published again
+            userPoint.update();
+            Assert.assertEquals(1, published.size());
+
+            // a small move of a custom location is published as is
+            userPoint.setLocation(46.5001, 6.5, 400, 10_000);
+            userPoint.update();
+            Assert.assertEquals(2, published.size());
+            Assert.assertEquals(46.5001, published.get(1).getLatitude(), 0);
+        } finally {
+            subscription.unsubscribe();
+            userPoint.switchToRealLocation();
+        }
+    }
+
 }
@@ -0,0 +1,92 @@
+package ch.epfl.sdp.peakar.camera;
+
+import java.util.Map;
+
+import ch.epfl.sdp.peakar.points.POIPoint;
+
+/**
+ * Index of the labeled POIPoints by integer degree of horizontal bearing.
+ *
+ * The index is built once when the POIPoints change, so that drawing a frame only visits the
+ * POIPoints of the degrees in the field of view instead of filtering all the POIPoints for every
+ * degree. The POIPoints are stored sorted by degree in flat arrays, bucketStart[d] being the index
+ * of the first POIPoint of the degree d: visiting a degree does not allocate.
+ */
+final class BearingIndex {
+
+    static final int DEGREES = 360;
+
+    /**
+     * Visitor of the POIPoints of a degree
+     */
+    interface Visitor {
+        /**
+         * @param poiPoint POIPoint of the degree
+         * @param isVisible true if the POIPoint is in the line of sight
+         * @param degree visited degree, not reduced to [0, 360)
+         */
+        void visit(POIPoint poiPoint, boolean isVisible, int degree);
+    }
+
+    private final int[] bucketStart = new int[DEGREES + 1];
+    private final POIPoint[] poiPoints;
+    private final boolean[] visible;
+
+    /**
+     * Builds the index. POIPoints whose bearing is not in [0, 360) are not indexed.
+     * @param labeledPOIPoints POIPoints with the line of sight boolean, can be null
+     */
+    BearingIndex(Map<POIPoint, Boolean> labeledPOIPoints) {
+        int[] counts = new int[DEGREES];
+        if (labeledPOIPoints != null) {
+            for (POIPoint poiPoint : labeledPOIPoints.keySet()) {
+                int degree = getDegree(poiPoint);
+                if (degree >= 0) counts[degree]++;
+            }
+        }
+        for (int degree = 0; degree < DEGREES; degree++) bucketStart[degree + 1] = bucketStart[degree] + counts[degree];
+
+        poiPoints = new POIPoint[bucketStart[DEGREES]];
+        visible = new boolean[poiPoints.length];
+        if (labeledPOIPoints != null) {
+            int[] next = new int[DEGREES];
+            System.arraycopy(bucketStart, 0, next, 0, DEGREES);
+            for (Map.Entry<POIPoint, Boolean> entry : labeledPOIPoints.entrySet()) {
+                int degree = getDegree(entry.getKey());
+                if (degree < 0) continue;
+                int index = next[degree]++;
+                poiPoints[index] = entry.getKey();
+                visible[index] = Boolean.TRUE.equals(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Gets the degree bucket of a POIPoint
+     * @param poiPoint POIPoint to index
+     * @return truncated horizontal bearing, -1 if it is not in [0, 360)
+     */
+    private static int getDegree(POIPoint poiPoint) {
+        int degree = (int) poiPoint.getHorizontalBearing();
+        return degree >= 0 && degree < DEGREES ? degree : -1;
+    }
+
+    /**
+     * @return number of indexed POIPoints
+     */
+    int size() {
+        return poiPoints.length;
+    }
+
+    /**
+     * Visits the POIPoints of a degree
+     * @param degree degree to visit, any integer (e.g. -5 visits the POIPoints of 355)
+     * @param visitor visitor of the POIPoints
+     */
+    void visit(int degree, Visitor visitor) {
+        int bucket = Math.floorMod(degree, DEGREES);
+        for (int index = bucketStart[bucket]; index < bucketStart[bucket + 1]; index++) {
+            visitor.visit(poiPoints[index], visible[index], degree);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package ch.epfl.sdp.peakar.camera;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
@@ -8,9 +7,13 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Picture;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.Toast;
 
@@ -18,29 +21,26 @@ import androidx.core.content.ContextCompat;
 import androidx.core.util.Pair;
 import androidx.preference.PreferenceManager;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Formatter;
-import java.util.List;
 import java.util.Map;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import ch.epfl.sdp.peakar.R;
 import ch.epfl.sdp.peakar.points.ComputePOIPoints;
 import ch.epfl.sdp.peakar.points.POIPoint;
 import ch.epfl.sdp.peakar.utils.CameraUtilities;
+import ch.epfl.sdp.peakar.utils.EventTopic;
 
 import static ch.epfl.sdp.peakar.utils.ImageHandler.rotateBitmap;
 
 /**
  * CameraUiView draws a canvas with the compass and mountain information on the camera-preview
  */
-public class CameraUiView extends View implements Observer {
+public class CameraUiView extends View {
 
     // computePOIPointsInstance instance
     private final ComputePOIPoints computePOIPointsInstance;
+    //Subscription to the computed POIPoints while the view is attached
+    private EventTopic<ComputePOIPoints>.Subscription poisSubscription;
 
     //Paints used to draw the lines and heading of the compass on the camera-preview
     private Paint mainLinePaint;
@@ -50,6 +50,10 @@ public class CameraUiView extends View implements Observer {
     private Paint mountainInfo;
     private Paint secondaryTextPaint;
     private Paint backgroundRectPaint;
+    private Paint labelPaint;
+
+    //Pre-rendered labels of the mountains
+    private LabelCache labelCache;
 
     //Colors of the compass-view
     private int compassColor;
@@ -64,18 +68,53 @@ public class CameraUiView extends View implements Observer {
     private static final int LABEL_ROTATION = -45;
 
     //Factors for the sizes
-    private static final int RADIUS_RECT_CORNER = 60;
     private static final int MAIN_TEXT_FACTOR = 20;
     private static final int SEC_TEXT_FACTOR = 15;
-    private static final int OFFSET_RECTANGLE_X_EDGE = 7;
     private static final int MAIN_LINE_FACTOR = 5;
-    private static final int OFFSET_RECTANGLE_Y_EDGE = 4;
     private static final int SEC_LINE_FACTOR = 3;
     private static final int TER_LINE_FACTOR = 2;
 
-    //Heading of the user
-    private float horizontalDegrees;
-    private float verticalDegrees;
+    //Heading of the user drawn on the last rendered frame
+    private volatile float horizontalDegrees;
+    private volatile float verticalDegrees;
+
+    //Latest heading of the user, rendered on the next frame if it moves the view by MIN_PIXEL_DELTA
+    private volatile float latestHorizontalDegrees;
+    private volatile float latestVerticalDegrees;
+
+    //Minimum displacement in pixels of the view for a new heading to be drawn
+    private static final float MIN_PIXEL_DELTA = 1f;
+
+    //Predicts the heading at the time the rendered frame is displayed
+    private final HeadingPredictor headingPredictor = new HeadingPredictor();
+
+    //Measured time from the rendering of a frame to its display, and duration of a frame. A frame
+    //drawn by the view is displayed DISPLAY_FRAMES later, once drawn by the RenderThread and composed
+    private static final int DISPLAY_FRAMES = 2;
+    private static final long DEFAULT_FRAME_INTERVAL_NS = 16_666_667L;
+    private volatile long frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NS;
+    private volatile long displayLatencyNanos = (DISPLAY_FRAMES + 1) * DEFAULT_FRAME_INTERVAL_NS;
+    private static final int LATENCY_SMOOTHING = 8;
+
+    //Frame callback checking the latest heading at the next vsync
+    private final Choreographer.FrameCallback headingFrameCallback = this::onHeadingFrame;
+    private boolean headingFramePending;
+    private volatile boolean rendered;
+
+    //Thread recording the overlay in the back buffer, the view only draws the latest recorded frame.
+    //After a detach the thread is kept until the next attach, which waits for it to end
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private final AtomicBoolean renderPending = new AtomicBoolean();
+    private final Runnable renderTask = this::renderFrame;
+
+    //Draw lists of the overlay. Recording and replaying a few hundred operations is cheaper than
+    //erasing a full-screen bitmap and uploading it as a texture at every frame
+    private final DoubleBuffer<Picture> frames = new DoubleBuffer<>();
+
+    //Size of the view in pixels, read by the render thread
+    private volatile int viewWidth;
+    private volatile int viewHeight;
 
     //Number of pixels per degree
     private float pixDeg;
@@ -84,10 +123,10 @@ public class CameraUiView extends View implements Observer {
     //Range of the for-loop to draw the compass
     private float minDegrees;
     private float maxDegrees;
-    private float rangeDegreesVertical;
-    private float rangeDegreesHorizontal;
+    private volatile float rangeDegreesVertical;
+    private volatile float rangeDegreesHorizontal;
 
-    //Compass canvas
+    //Recording canvas of the current frame, only used by the render thread
     private Canvas canvas;
 
     //Heights of the compass
@@ -105,27 +144,28 @@ public class CameraUiView extends View implements Observer {
     private Bitmap distanceBitmap;
     private Bitmap heightBitmap;
 
-    //Map that contains the labeled POIPoints
-    private Map<POIPoint, Boolean> labeledPOIPoints;
+    //Labeled POIPoints indexed by degree of horizontal bearing
+    private volatile BearingIndex bearingIndex = new BearingIndex(null);
+    private final BearingIndex.Visitor mountainMarkerDrawer = this::drawMountainMarker;
 
     private final SharedPreferences sharedPref;
 
     private Boolean displayedToastMode;
-    private Boolean displayCompass;
+    private volatile Boolean displayCompass;
 
     private static final String DISPLAY_ALL_POIS = "0";
     private static final String DISPLAY_POIS_IN_SIGHT = "1";
     private static final String DISPLAY_POIS_OUT_OF_SIGHT = "2";
 
-    private final List<POIPoint> discoveredPOIPoints;
-    @SuppressLint("SimpleDateFormat")
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss");
+    //Tracker of the discovered POIPoints, fed with the displayed POIPoints
+    private DiscoveryTracker discoveryTracker;
 
 
     private final SharedPreferences.OnSharedPreferenceChangeListener listenerPreferences =
             (prefs, key) -> {
                 POISetter(prefs);
                 displayCompass = prefs.getBoolean(getResources().getString(R.string.displayCompass_key), false);
+                requestRender();
             };
 
     /**
@@ -141,16 +181,12 @@ public class CameraUiView extends View implements Observer {
         sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
         sharedPref.registerOnSharedPreferenceChangeListener(listenerPreferences);
 
-        discoveredPOIPoints = new ArrayList<>();
-
         displayedToastMode = false;
         
         displayCompass = sharedPref.getBoolean(getResources().getString(R.string.displayCompass_key), false);
 
         computePOIPointsInstance = ComputePOIPoints.getInstance(context);
 
-        computePOIPointsInstance.addObserver(this);
-
         POISetter(sharedPref);
     }
 
@@ -224,6 +260,11 @@ public class CameraUiView extends View implements Observer {
         terciaryLinePaint = configureLinePaint(TER_LINE_FACTOR*screenDensity);
 
         backgroundRectPaint = configureRectPaint();
+
+        //Paint used to draw the rotated labels, filtered to keep the text smooth
+        labelPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        labelCache = new LabelCache(mountainInfo, backgroundRectPaint, heightBitmap, distanceBitmap, screenDensity);
     }
 
     public static Bitmap getBitmapFromVectorDrawable(Context context, int drawableId) {
@@ -281,16 +322,60 @@ public class CameraUiView extends View implements Observer {
     }
 
     /**
-     * Set the horizontal and vertical degrees for the compass and markers. When setDegrees is called,
-     * it updates the canvas calling invalidate() and requestLayout() which redraws the view.
+     * Set the horizontal and vertical degrees for the compass and markers. The heading is only
+     * stored: it is checked once per frame, on the next vsync, and the overlay is rendered again if
+     * the heading moves it by at least MIN_PIXEL_DELTA. The size of the view does not depend on the
+     * heading, so no layout is requested. The rendered heading is extrapolated to the time the frame
+     * is displayed.
      * @param horizontalDegrees set the horizontal heading in degrees
      * @param verticalDegrees set the vertical heading in degrees
+     * @param timestamp time of the sensor event in nanoseconds, on the System.nanoTime clock
+     */
+    public void setDegrees(float horizontalDegrees, float verticalDegrees, long timestamp) {
+        this.latestHorizontalDegrees = horizontalDegrees;
+        this.latestVerticalDegrees = verticalDegrees;
+        headingPredictor.update(horizontalDegrees, verticalDegrees, timestamp);
+        if (!headingFramePending) {
+            headingFramePending = true;
+            Choreographer.getInstance().postFrameCallback(headingFrameCallback);
+        }
+    }
+
+    /**
+     * Renders the overlay again if the latest heading moves it by at least MIN_PIXEL_DELTA since the
+     * last rendered frame
+     * @param frameTimeNanos time of the frame
+     */
+    private void onHeadingFrame(long frameTimeNanos) {
+        headingFramePending = false;
+        if (!rendered) {
+            requestRender();
+            return;
+        }
+        float horizontalPixDeg = rangeDegreesHorizontal > 0 ? viewWidth / rangeDegreesHorizontal : 0;
+        float verticalPixDeg = rangeDegreesVertical > 0 ? viewHeight / rangeDegreesVertical : 0;
+        if (movesOverlay(horizontalDegrees, verticalDegrees, latestHorizontalDegrees, latestVerticalDegrees,
+                horizontalPixDeg, verticalPixDeg)) {
+            requestRender();
+        }
+    }
+
+    /**
+     * Tells if a new heading moves the overlay by at least MIN_PIXEL_DELTA from the rendered heading
+     * @param horizontalDegrees rendered horizontal heading in degrees
+     * @param verticalDegrees rendered vertical heading in degrees
+     * @param latestHorizontalDegrees new horizontal heading in degrees
+     * @param latestVerticalDegrees new vertical heading in degrees
+     * @param horizontalPixDeg horizontal pixels per degree of the view
+     * @param verticalPixDeg vertical pixels per degree of the view
+     * @return true if the overlay has to be rendered again
      */
-    public void setDegrees(float horizontalDegrees, float verticalDegrees) {
-        this.horizontalDegrees = horizontalDegrees;
-        this.verticalDegrees = verticalDegrees;
-        invalidate();
-        requestLayout();
+    static boolean movesOverlay(float horizontalDegrees, float verticalDegrees, float latestHorizontalDegrees,
+                                float latestVerticalDegrees, float horizontalPixDeg, float verticalPixDeg) {
+        //Shortest difference between the headings, 359° and 1° being 2° apart
+        float horizontalDelta = Math.abs(((latestHorizontalDegrees - horizontalDegrees) % 360 + 540) % 360 - 180);
+        float verticalDelta = Math.abs(latestVerticalDegrees - verticalDegrees);
+        return horizontalDelta * horizontalPixDeg >= MIN_PIXEL_DELTA || verticalDelta * verticalPixDeg >= MIN_PIXEL_DELTA;
     }
 
     /**
@@ -306,35 +391,143 @@ public class CameraUiView extends View implements Observer {
                 cameraFieldOfView.first : cameraFieldOfView.second;
         this.rangeDegreesVertical = orientation==Configuration.ORIENTATION_LANDSCAPE ?
                 cameraFieldOfView.second : cameraFieldOfView.first;
+        requestRender();
     }
 
     /**
-     * Set the POIs that will be drawn on the camera-preview
+     * Set the POIs that will be drawn on the camera-preview and indexes them by degree
      * @param labeledPOIPoints Map of the POIPoints with the line of sight boolean
      */
     public void setPOIs(Map<POIPoint, Boolean> labeledPOIPoints){
-        this.labeledPOIPoints = labeledPOIPoints;
-        invalidate();
-        requestLayout();
+        this.bearingIndex = new BearingIndex(labeledPOIPoints);
+        if (discoveryTracker != null) discoveryTracker.setPOIs(bearingIndex);
+        requestRender();
     }
 
+    /**
+     * Sets the tracker of the discovered POIPoints, which gets the POIPoints displayed by the view
+     * @param discoveryTracker tracker of the discovered POIPoints
+     */
+    public void setDiscoveryTracker(DiscoveryTracker discoveryTracker) {
+        this.discoveryTracker = discoveryTracker;
+        discoveryTracker.setPOIs(bearingIndex);
+    }
 
     /**
-     * onDraw method is used to draw the compass on the screen.
-     * To draw the compass, 3 different types of lines are used, mainLinePaint, secondaryLinePaint
-     * and terciaryLinePaint. The compass is drawn by going through a for-loop starting from minDegree
-     * until maxDegrees. They correspond to the actual heading minus and plus half of the field of view
-     * of the device camera.
+     * Starts the render thread when the view is added to a window, once the render thread of the
+     * previous attachment has released the frames
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (getDisplay() != null && getDisplay().getRefreshRate() > 0) {
+            frameIntervalNanos = (long) (1e9 / getDisplay().getRefreshRate());
+        }
+        if (renderThread != null) {
+            //The previous thread only has the releasing left, it shares the frames and the labels
+            try {
+                renderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        renderThread = new HandlerThread("OverlayRender");
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        //Receive the POIPoints on the UI thread, and catch up with the ones computed while detached
+        poisSubscription = ComputePOIPoints.POIS_TOPIC.subscribe(ContextCompat.getMainExecutor(getContext()),
+                computePOIPoints -> POISetter(sharedPref));
+        POISetter(sharedPref);
+        requestRender();
+    }
+
+    /**
+     * Keeps the size of the view for the render thread
+     */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        viewWidth = w;
+        viewHeight = h;
+        requestRender();
+    }
+
+    /**
+     * Schedules a rendering of the overlay on the render thread. The requests made before the
+     * rendering starts are merged into a single rendering of the latest state.
+     */
+    private void requestRender() {
+        Handler handler = renderHandler;
+        if (handler != null && renderPending.compareAndSet(false, true)) {
+            handler.post(renderTask);
+        }
+    }
+
+    /**
+     * Records the overlay in the back buffer on the render thread, then publishes it as the latest
+     * frame and invalidates the view on the next animation frame. If the view has not drawn the
+     * previous frame yet, there is no back buffer: the rendering is done after the next draw.
+     */
+    private void renderFrame() {
+        renderPending.set(false);
+        int width = viewWidth;
+        int height = viewHeight;
+        if (width <= 0 || height <= 0 || rangeDegreesHorizontal <= 0) return;
+
+        int backBuffer = frames.acquireBack();
+        if (backBuffer < 0) return;
+
+        Picture picture = frames.get(backBuffer);
+        if (picture == null) picture = new Picture();
+
+        long renderTime = System.nanoTime();
+        labelCache.beginFrame();
+        canvas = picture.beginRecording(width, height);
+        render(width, height, renderTime + displayLatencyNanos);
+        picture.endRecording();
+        canvas = null;
+
+        frames.publish(backBuffer, picture, renderTime);
+        rendered = true;
+        postInvalidateOnAnimation();
+    }
+
+    /**
+     * onDraw method is used to draw the compass on the screen. The compass and the mountains are
+     * recorded on the render thread, the view only replays the latest recorded frame.
      * @param canvas Canvas on which the compass is drawn
      */
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        this.canvas = canvas;
-        //Get width and height of the view in Pixels
-        int width = getMeasuredWidth();
-        height = getMeasuredHeight();
+        Picture picture = frames.acquireFront();
+        if (picture != null) canvas.drawPicture(picture);
+        //Measure the latency of the new frame from its rendering to its display
+        long renderTime = frames.getFrontRenderTime();
+        if (renderTime >= 0) {
+            long latency = System.nanoTime() - renderTime + DISPLAY_FRAMES * frameIntervalNanos;
+            displayLatencyNanos += (latency - displayLatencyNanos) / LATENCY_SMOOTHING;
+        }
+        //The previous frame is free again
+        if (frames.isRenderDue()) requestRender();
+    }
+
+    /**
+     * Renders the compass on the canvas of the render thread.
+     * To draw the compass, 3 different types of lines are used, mainLinePaint, secondaryLinePaint
+     * and terciaryLinePaint. The compass is drawn by going through a for-loop starting from minDegree
+     * until maxDegrees. They correspond to the actual heading minus and plus half of the field of view
+     * of the device camera.
+     * @param width width of the view in pixels
+     * @param height height of the view in pixels
+     * @param displayTime expected time of the display of the frame, on the System.nanoTime clock
+     */
+    private void render(int width, int height, long displayTime) {
+        //Render the heading predicted at the display of the frame
+        horizontalDegrees = headingPredictor.predictHorizontal(displayTime);
+        verticalDegrees = headingPredictor.predictVertical(displayTime);
+        this.height = height;
         //Make the canvas take 1/5 of the screen height
         //The text is at the highest point
         textHeight = height - height/5;
@@ -368,10 +561,8 @@ public class CameraUiView extends View implements Observer {
                 drawCompass(i);
             }
 
-            //Draw the mountains on the canvas
-            if(labeledPOIPoints != null && !labeledPOIPoints.isEmpty()) {
-                drawLabeledPOIs(i);
-            }
+            //Draw the mountains of the degree on the canvas
+            bearingIndex.visit(i, mountainMarkerDrawer);
         }
     }
 
@@ -401,31 +592,12 @@ public class CameraUiView extends View implements Observer {
     }
 
     /**
-     * Draws the POIs depending on their visibility on the display using the horizontal and
-     * vertical bearing of the mountain to the user
-     * @param actualDegree degree on which the POIPoint is drawn
-     */
-    private void drawLabeledPOIs(int actualDegree){
-        //Go through all POIPoints
-        labeledPOIPoints.entrySet().stream()
-                .filter(p -> (int)p.getKey().getHorizontalBearing() == (actualDegree + 360) % 360)
-                        .forEach(p -> drawMountainMarker(p.getKey(), p.getValue(), actualDegree));
-    }
-
-    /**
-     * Draws the mountain marker on the canvas depending on the visibility of the POIPoint and adds
-     * them to the discovered POIPoints if the user looks at them and they are in the line of sight
+     * Draws the mountain marker on the canvas depending on the visibility of the POIPoint
      * @param poiPoint POIPoint that gets drawn
-     * @param isVisible Boolean that indicates if the POIPoint is visible or not
+     * @param isVisible boolean that indicates if the POIPoint is visible or not
      * @param actualDegree degree on which the POIPoint is drawn
      */
-    private void drawMountainMarker(POIPoint poiPoint, Boolean isVisible, int actualDegree){
-        if(isVisible && (int)poiPoint.getHorizontalBearing()== (int)horizontalDegrees && !discoveredPOIPoints.contains(poiPoint)){
-            Date discoveredDate = new Date();
-            poiPoint.setDiscoveredDate(DATE_FORMAT.format(discoveredDate));
-            discoveredPOIPoints.add(poiPoint);
-        }
-
+    private void drawMountainMarker(POIPoint poiPoint, boolean isVisible, int actualDegree){
         //Use both results and substract the actual vertical heading
         float deltaVerticalAngle = (float) (poiPoint.getVerticalBearing() - verticalDegrees);
 
@@ -439,45 +611,14 @@ public class CameraUiView extends View implements Observer {
         //Draw the marker on the preview depending on the line of sight
         Bitmap mountainMarker = isVisible ? mountainMarkerVisible : mountainMarkerNotVisible;
 
+        //Get the label, rendered again only if its content changed
+        LabelCache.Label label = labelCache.get(poiPoint, mountainMarker.getWidth());
+
         //Save status before Screen Rotation
         canvas.save();
         canvas.rotate(LABEL_ROTATION, left, mountainMarkerPosition);
 
-        String textName = poiPoint.getName();
-        float xName = left + mountainInfo.getTextSize();
-        float yName = mountainMarkerPosition + mountainInfo.getTextSize() + OFFSET_RECTANGLE_Y_EDGE*screenDensity;
-
-        float xBitmapHeight = xName - OFFSET_RECTANGLE_Y_EDGE*screenDensity;
-        float yBitmap = yName + 2*screenDensity;
-
-        String textHeight = " " + (int)poiPoint.getAltitude() + "m, ";
-        float xTextHeight = xBitmapHeight + heightBitmap.getWidth()/2f;
-        float yTextInfo = yName + mountainInfo.getTextSize();
-
-        float xBitmapDistance = xTextHeight + mountainInfo.measureText(textHeight);
-
-        Formatter mToKm = new Formatter();
-        mToKm.format("%.2f", poiPoint.getDistanceToUser()/1000);
-        String textDistance = " " + mToKm.toString() + "km";
-        float xTextDistance = xBitmapDistance + distanceBitmap.getWidth();
-        
-        float leftRect = left - mountainMarker.getWidth()/2f;
-        float topRect = yName - mountainInfo.getTextSize() + 2*screenDensity;
-        float bottomRect = yTextInfo + OFFSET_RECTANGLE_Y_EDGE*screenDensity;
-        float rightRect = Math.max(xTextDistance + mountainInfo.measureText(textDistance), xName + mountainInfo.measureText(textName)) + OFFSET_RECTANGLE_X_EDGE*screenDensity;
-
-        float xNameCentered = xName + (rightRect - xName - mountainInfo.measureText(textName) - OFFSET_RECTANGLE_X_EDGE*screenDensity)/2;
-
-        //Draw first rectangle to overdraw the background
-        canvas.drawRoundRect(leftRect, topRect, rightRect, bottomRect, RADIUS_RECT_CORNER, RADIUS_RECT_CORNER, backgroundRectPaint);
-
-        canvas.drawText(textName, Math.max(xNameCentered, xName), yName, mountainInfo);
-
-        canvas.drawBitmap(heightBitmap, xBitmapHeight, yBitmap, null);
-        canvas.drawText(textHeight, xTextHeight, yTextInfo, mountainInfo);
-        canvas.drawBitmap(distanceBitmap, xBitmapDistance, yBitmap, null);
-        canvas.drawText(textDistance, xTextDistance, yTextInfo, mountainInfo);
-
+        canvas.drawBitmap(label.bitmap, left + label.offsetX, mountainMarkerPosition + label.offsetY, labelPaint);
 
         //Restore the saved state
         canvas.restore();
@@ -486,14 +627,6 @@ public class CameraUiView extends View implements Observer {
         canvas.drawBitmap(mountainMarker, left, mountainMarkerPosition, null);
     }
 
-    /**
-     * Gets the new discovered peaks
-     * @return List of the new discovered peaks
-     */
-    public List<POIPoint> getDiscoveredPOIPoints(){
-        return discoveredPOIPoints;
-    }
-
     /**
      * Checks if the line of sight has been computed. If not display only one toast informing the user
      */
@@ -517,8 +650,32 @@ public class CameraUiView extends View implements Observer {
         return bitmap;
     }
 
+    /**
+     * Stops the heading frames and the render thread, then releases the bitmaps of the labels and
+     * the frames when the view is removed
+     */
     @Override
-    public void update(Observable o, Object arg) {
-        POISetter(sharedPref);
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        poisSubscription.unsubscribe();
+        poisSubscription = null;
+        Choreographer.getInstance().removeFrameCallback(headingFrameCallback);
+        headingFramePending = false;
+        Handler handler = renderHandler;
+        renderHandler = null;
+        renderPending.set(false);
+        //Release the bitmaps on the render thread, instead of a pending rendering
+        handler.removeCallbacks(renderTask);
+        handler.post(this::releaseFrames);
+        renderThread.quitSafely();
+    }
+
+    /**
+     * Releases the bitmaps of the labels and the frames, on the render thread
+     */
+    private void releaseFrames() {
+        labelCache.clear();
+        frames.clear();
+        rendered = false;
     }
 }
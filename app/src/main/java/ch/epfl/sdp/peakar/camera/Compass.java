@@ -6,13 +6,20 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.hardware.display.DisplayManager;
+import android.os.SystemClock;
 import android.view.Surface;
 
-import ch.epfl.sdp.peakar.utils.AngleLowpassFilter;
+import ch.epfl.sdp.peakar.utils.AngleFilter;
 import ch.epfl.sdp.peakar.utils.CameraUtilities;
+import ch.epfl.sdp.peakar.utils.SettingsUtilities;
 
 /**
- * Compass calculates the horizontal and vertical degree of the device
+ * Compass calculates the horizontal and vertical degree of the device.
+ *
+ * The sensor events are handled without allocating: the matrices are preallocated and the axes
+ * depending on the screen rotation are only updated when the display changes. The sampling rate
+ * of the sensor is lowered while the device is stationary or the camera-preview is hidden.
  */
 public class Compass implements SensorEventListener {
     //Compass listener to update the compass heading
@@ -20,19 +27,43 @@ public class Compass implements SensorEventListener {
 
     //SensorManager to access the sensors
     private final SensorManager sensorManager;
+    private final Sensor rotation;
 
+    //Chooses the sampling rate from the angular speed of the device
+    private final SensorRateGovernor rateGovernor = new SensorRateGovernor();
+    private float lastHeadingHorizontal;
+    private float lastHeadingVertical;
+    private long lastTimestamp = -1;
+
+    //Matrix to cache the rotation vector
+    private final float[] rotMatFromVector = new float[16];
     //rotation Matrix
     private final float[] rotMat = new float[16];
     //orientation Matrix
     private final float[] orientationMat = new float[3];
-    //Horizontal and vertical lowpass filters
-    private final AngleLowpassFilter horizontalFilter = new AngleLowpassFilter();
-    private final AngleLowpassFilter verticalFilter = new AngleLowpassFilter();
+    //Horizontal and vertical filters, selected in the settings
+    private final AngleFilter horizontalFilter;
+    private final AngleFilter verticalFilter;
 
     private final Activity activity;
     private int axisX;
     private int axisZ;
 
+    //Updates the axes when the screen rotation changes
+    private final DisplayManager displayManager;
+    private final DisplayManager.DisplayListener displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {}
+
+        @Override
+        public void onDisplayRemoved(int displayId) {}
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            setAxisSensorManager();
+        }
+    };
+
     /**
      * Compass constructor, initializes the device sensors and registers the listener
      * @param context Context of the activity
@@ -42,19 +73,44 @@ public class Compass implements SensorEventListener {
         sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
 
         //Initialize rotation vector
-        Sensor rotation = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        rotation = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
 
-        //Register the listener for the rotation type vector
-        sensorManager.registerListener(this, rotation, SensorManager.SENSOR_DELAY_GAME);
+        //Register the listener for the rotation type vector, at the sampling period of the rate governor
+        sensorManager.registerListener(this, rotation, rateGovernor.getSamplingPeriodUs());
 
         activity = (Activity) context;
+
+        horizontalFilter = SettingsUtilities.createOrientationFilter(context);
+        verticalFilter = SettingsUtilities.createOrientationFilter(context);
+
+        //Cache the axes for the current screen rotation
+        setAxisSensorManager();
+        displayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        displayManager.registerDisplayListener(displayListener, null);
     }
 
     /**
-     * Unregisters the sensor listener
+     * Unregisters the sensor and display listeners
      */
     public void stop() {
         sensorManager.unregisterListener(this);
+        displayManager.unregisterDisplayListener(displayListener);
+    }
+
+    /**
+     * Lowers the sampling rate while the camera-preview is hidden, and restores it when it is visible
+     * @param occluded true if the camera-preview is not visible
+     */
+    public void setOccluded(boolean occluded) {
+        if (rateGovernor.setOccluded(occluded)) registerSensor();
+    }
+
+    /**
+     * Registers the listener again at the sampling period of the governor
+     */
+    private void registerSensor() {
+        sensorManager.unregisterListener(this);
+        sensorManager.registerListener(this, rotation, rateGovernor.getSamplingPeriodUs());
     }
 
     /**
@@ -75,14 +131,9 @@ public class Compass implements SensorEventListener {
     public void onSensorChanged(SensorEvent event) {
         //Get the rotation vector data
         if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
-            //Matrix to cache the rotation vector
-            float[] rotMatFromVector = new float[16];
-
             // Convert the rotation-vector to a 4x4 matrix.
             SensorManager.getRotationMatrixFromVector(rotMatFromVector, event.values);
 
-            setAxisSensorManager();
-
             //Rotates the rotation matrix to be expressed in a different coordinate system
             SensorManager.remapCoordinateSystem(rotMatFromVector, axisX,
                     axisZ, rotMat);
@@ -90,8 +141,8 @@ public class Compass implements SensorEventListener {
             //Compute the device orientation with the rotation matrix
             SensorManager.getOrientation(rotMat, orientationMat);
 
-            //Apply low-pass filter to the event.values
-            applyLowPassFilter(orientationMat);
+            //Apply the filters to the event.values
+            applyFilters(orientationMat, event.timestamp);
 
             //Convert values to degrees
             CameraUtilities.convertArrToDegrees(orientationMat);
@@ -103,15 +154,42 @@ public class Compass implements SensorEventListener {
             //Add 90° to get values from 0° to 180°
             float headingVertical = orientationMat[1]*(-1) + 90;
 
+            //The sensor timestamps are on the elapsed realtime clock, convert to the System.nanoTime
+            //clock of the frames
+            long age = Math.max(0, SystemClock.elapsedRealtimeNanos() - event.timestamp);
+            long timestamp = System.nanoTime() - age;
+
             //Update the horizontal and vertical heading
             if (compassListener != null) {
-                compassListener.onNewHeading(headingHorizontal, headingVertical);
+                compassListener.onNewHeading(headingHorizontal, headingVertical, timestamp);
             }
+
+            updateSamplingRate(headingHorizontal, headingVertical, event.timestamp);
         }
     }
 
     /**
-     * Sets the correct X and Z axis to remap the coordinates system
+     * Gives the angular speed of the device to the governor and changes the sampling rate if needed
+     * @param headingHorizontal horizontal heading in degrees
+     * @param headingVertical vertical heading in degrees
+     * @param timestamp timestamp of the sensor event in nanoseconds
+     */
+    private void updateSamplingRate(float headingHorizontal, float headingVertical, long timestamp) {
+        long dt = timestamp - lastTimestamp;
+        if (lastTimestamp >= 0 && dt > 0) {
+            //Shortest difference between the headings, 359° and 1° being 2° apart
+            float horizontalDelta = Math.abs(((headingHorizontal - lastHeadingHorizontal) % 360 + 540) % 360 - 180);
+            float verticalDelta = Math.abs(headingVertical - lastHeadingVertical);
+            float angularSpeed = Math.max(horizontalDelta, verticalDelta) * 1e9f / dt;
+            if (rateGovernor.onAngularSpeed(angularSpeed, timestamp)) registerSensor();
+        }
+        lastHeadingHorizontal = headingHorizontal;
+        lastHeadingVertical = headingVertical;
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Sets the correct X and Z axis to remap the coordinates system, called when the display changes
      */
     private void setAxisSensorManager(){
         int screenRotation = activity.getWindowManager().getDefaultDisplay().getRotation();
@@ -139,16 +217,13 @@ public class Compass implements SensorEventListener {
     }
 
     /**
-     * Adds the horizontal and vertical angle to their respective lowpass filter and updates
-     * the given matrix
-     * @param mat Matrix for which the lowpass filter gets applied
+     * Adds the horizontal and vertical angle to their respective filter and updates the given matrix
+     * @param mat Matrix for which the filters get applied
+     * @param timestamp timestamp of the sensor event in nanoseconds
      */
-    private void applyLowPassFilter(float[] mat){
-        horizontalFilter.add(mat[0]);
-        verticalFilter.add(mat[1]);
-
-        mat[0] = horizontalFilter.average();
-        mat[1] = verticalFilter.average();
+    private void applyFilters(float[] mat, long timestamp){
+        mat[0] = horizontalFilter.filter(mat[0], timestamp);
+        mat[1] = verticalFilter.filter(mat[1], timestamp);
     }
 
     /**
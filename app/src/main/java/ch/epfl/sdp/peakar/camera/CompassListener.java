@@ -8,6 +8,7 @@ public interface CompassListener {
      * Gets the headings in degree
      * @param heading horizontal heading
      * @param headingV vertical heading
+     * @param timestamp time of the sensor event in nanoseconds, on the System.nanoTime clock
      */
-    void onNewHeading(float heading, float headingV);
+    void onNewHeading(float heading, float headingV, long timestamp);
 }
@@ -0,0 +1,180 @@
+package ch.epfl.sdp.peakar.camera;
+
+import android.annotation.SuppressLint;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ch.epfl.sdp.peakar.points.POIPoint;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
+
+/**
+ * Detects the peaks discovered by the user, out of the drawing of the camera-preview.
+ *
+ * The tracker consumes snapshots of the labeled POIPoints and the heading of the user on a serial
+ * executor of the TaskScheduler. A POIPoint in the line of sight is discovered once the heading
+ * has stayed within DWELL_TOLERANCE_DEGREES of it for DWELL_TIME_MS, so that sweeping the camera
+ * across the horizon does not discover every peak while the jitter of the compass does not restart
+ * the dwell time.
+ * Each POIPoint is discovered once, the discovered ones being kept in a hash set by stable id, and
+ * the POIPoints discovered by the same heading update are emitted as a batch to the listener.
+ */
+public final class DiscoveryTracker {
+
+    //Time the heading has to stay on the degree of a POIPoint to discover it
+    static final long DWELL_TIME_MS = 500;
+    //Maximum angle in degrees between the heading and a POIPoint, and the heading and its start
+    //during the dwell time
+    static final float DWELL_TOLERANCE_DEGREES = 3;
+
+    /**
+     * Listener of the discovered POIPoints
+     */
+    public interface Listener {
+        /**
+         * Called on the executor of the tracker
+         * @param discoveredPOIPoints POIPoints discovered by the last heading update, with their
+         *                            discovered date
+         */
+        void onDiscovered(List<POIPoint> discoveredPOIPoints);
+    }
+
+    private final Executor executor = TaskScheduler.getInstance().serialExecutor(TaskScheduler.Workload.COMPUTE, TaskScheduler.Priority.HIGH);
+    private volatile boolean shutdown;
+
+    //Latest heading of the user, the updates are merged until the tracker handles them
+    private volatile float latestHeading;
+    private final AtomicBoolean headingPending = new AtomicBoolean();
+    private final Runnable headingTask = () -> {
+        headingPending.set(false);
+        if (!shutdown) onHeading(latestHeading, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    };
+
+    private volatile Listener listener;
+
+    //State of the tracker, confined to its executor
+    private BearingIndex bearingIndex = new BearingIndex(null);
+    private float dwellHeading = Float.NaN;
+    private long dwellStart;
+    private float currentHeading;
+    private final Set<String> discoveredIds = new HashSet<>();
+    private final List<POIPoint> batch = new ArrayList<>();
+    private final BearingIndex.Visitor discoverer = this::discover;
+    @SuppressLint("SimpleDateFormat")
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy - HH:mm:ss");
+    private String discoveredDate;
+
+    /**
+     * Sets the listener of the discovered POIPoints
+     * @param listener listener called on the executor of the tracker
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the snapshot of the labeled POIPoints displayed to the user
+     * @param bearingIndex labeled POIPoints indexed by degree
+     */
+    void setPOIs(BearingIndex bearingIndex) {
+        if (!shutdown) executor.execute(() -> {
+            if (!shutdown) onPOIs(bearingIndex);
+        });
+    }
+
+    /**
+     * Sets the heading of the user
+     * @param horizontalDegrees horizontal heading in degrees
+     */
+    public void setHeading(float horizontalDegrees) {
+        latestHeading = horizontalDegrees;
+        if (!shutdown && headingPending.compareAndSet(false, true)) {
+            executor.execute(headingTask);
+        }
+    }
+
+    /**
+     * Stops the tracker, the pending updates are dropped
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Handles a new snapshot of the POIPoints, on the executor of the tracker
+     * @param bearingIndex labeled POIPoints indexed by degree
+     */
+    void onPOIs(BearingIndex bearingIndex) {
+        this.bearingIndex = bearingIndex;
+    }
+
+    /**
+     * Handles a new heading, on the executor of the tracker. The dwell time restarts when the
+     * heading moves further than DWELL_TOLERANCE_DEGREES from the heading at its start.
+     * @param horizontalDegrees horizontal heading in degrees
+     * @param nowMillis time of the update in milliseconds
+     */
+    void onHeading(float horizontalDegrees, long nowMillis) {
+        if (Float.isNaN(dwellHeading) || angleBetween(horizontalDegrees, dwellHeading) > DWELL_TOLERANCE_DEGREES) {
+            dwellHeading = horizontalDegrees;
+            dwellStart = nowMillis;
+            return;
+        }
+        if (nowMillis - dwellStart < DWELL_TIME_MS) return;
+
+        discoveredDate = null;
+        currentHeading = horizontalDegrees;
+        int lastDegree = (int) Math.floor(horizontalDegrees + DWELL_TOLERANCE_DEGREES);
+        for (int degree = (int) Math.floor(horizontalDegrees - DWELL_TOLERANCE_DEGREES); degree <= lastDegree; degree++) {
+            bearingIndex.visit(degree, discoverer);
+        }
+        if (batch.isEmpty()) return;
+
+        Listener currentListener = listener;
+        if (currentListener != null) currentListener.onDiscovered(new ArrayList<>(batch));
+        batch.clear();
+    }
+
+    /**
+     * Discovers a POIPoint around the heading if it is in the line of sight and within
+     * DWELL_TOLERANCE_DEGREES of the heading
+     * @param poiPoint POIPoint of the degree
+     * @param isVisible true if the POIPoint is in the line of sight
+     * @param degree visited degree
+     */
+    private void discover(POIPoint poiPoint, boolean isVisible, int degree) {
+        if (!isVisible || angleBetween((float) poiPoint.getHorizontalBearing(), currentHeading) > DWELL_TOLERANCE_DEGREES) return;
+        if (!discoveredIds.add(getDiscoveryId(poiPoint))) return;
+        if (discoveredDate == null) discoveredDate = dateFormat.format(new Date());
+        poiPoint.setDiscoveredDate(discoveredDate);
+        batch.add(poiPoint);
+    }
+
+    /**
+     * Computes the angle between two headings
+     * @param first first heading in degrees
+     * @param second second heading in degrees
+     * @return angle in degrees, between 0 and 180
+     */
+    static float angleBetween(float first, float second) {
+        float difference = Math.abs(first - second) % 360;
+        return difference > 180 ? 360 - difference : difference;
+    }
+
+    /**
+     * Gets the stable id of a POIPoint: its OpenStreetMap id, or its name if it does not come from
+     * OpenStreetMap
+     * @param poiPoint POIPoint
+     * @return id of the POIPoint
+     */
+    static String getDiscoveryId(POIPoint poiPoint) {
+        return poiPoint.getOsmId() != 0 ? "osm:" + poiPoint.getOsmId() : "name:" + poiPoint.getName();
+    }
+}
@@ -0,0 +1,106 @@
+package ch.epfl.sdp.peakar.camera;
+
+/**
+ * Double buffer of the frames rendered on a render thread and drawn by the view on the UI thread.
+ *
+ * The render thread only writes the back buffer, which is neither the latest rendered frame nor
+ * the frame last drawn by the view. When the latest frame has not been drawn yet there is no back
+ * buffer: the rendering is due after the next draw, so the display stays at most one frame behind.
+ *
+ * @param <T> type of the frames
+ */
+final class DoubleBuffer<T> {
+
+    private final Object lock = new Object();
+    private final Object[] frames = new Object[2];
+    private final long[] renderTimes = new long[2];
+    private int latest = -1;
+    private int drawn = -1;
+    private boolean renderAfterDraw;
+
+    //Result of the last acquireFront, only used by the UI thread
+    private long frontRenderTime = -1;
+    private boolean renderDue;
+
+    /**
+     * Gets the back buffer on the render thread. If there is none, a rendering is due after the
+     * next draw.
+     * @return index of the back buffer, -1 if the latest frame has not been drawn yet
+     */
+    int acquireBack() {
+        synchronized (lock) {
+            int back = latest != drawn ? -1 : (latest == 0 ? 1 : 0);
+            renderAfterDraw = back < 0;
+            return back;
+        }
+    }
+
+    /**
+     * Gets a frame, to reuse the back buffer on the render thread
+     * @param index index of the buffer
+     * @return frame of the buffer, null if none was published in it
+     */
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        synchronized (lock) {
+            return (T) frames[index];
+        }
+    }
+
+    /**
+     * Publishes a rendered frame in the back buffer as the latest frame
+     * @param index index of the back buffer
+     * @param frame rendered frame
+     * @param renderTime time of the rendering, on the System.nanoTime clock
+     */
+    void publish(int index, T frame, long renderTime) {
+        synchronized (lock) {
+            frames[index] = frame;
+            renderTimes[index] = renderTime;
+            latest = index;
+        }
+    }
+
+    /**
+     * Gets the latest frame on the UI thread and marks it as drawn. getFrontRenderTime and
+     * isRenderDue then tell if the frame is new and if the back buffer got free.
+     * @return latest frame, null if none was published
+     */
+    @SuppressWarnings("unchecked")
+    T acquireFront() {
+        synchronized (lock) {
+            frontRenderTime = latest >= 0 && latest != drawn ? renderTimes[latest] : -1;
+            drawn = latest;
+            renderDue = renderAfterDraw;
+            renderAfterDraw = false;
+            return drawn >= 0 ? (T) frames[drawn] : null;
+        }
+    }
+
+    /**
+     * @return render time of the frame got by the last acquireFront, -1 if it was already drawn before
+     */
+    long getFrontRenderTime() {
+        return frontRenderTime;
+    }
+
+    /**
+     * @return true if a rendering was deferred until the last acquireFront
+     */
+    boolean isRenderDue() {
+        return renderDue;
+    }
+
+    /**
+     * Drops the frames
+     */
+    void clear() {
+        synchronized (lock) {
+            frames[0] = null;
+            frames[1] = null;
+            latest = -1;
+            drawn = -1;
+            renderAfterDraw = false;
+        }
+    }
+}
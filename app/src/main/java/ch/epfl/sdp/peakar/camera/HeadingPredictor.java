@@ -0,0 +1,93 @@
+package ch.epfl.sdp.peakar.camera;
+
+/**
+ * Extrapolates the heading of the user to the time at which a frame is displayed.
+ *
+ * The angular speeds are estimated from the successive headings and their sensor timestamps, then
+ * smoothed. The heading is extrapolated linearly from the last sensor event to the display time,
+ * so that the labels do not lag behind the mountains while panning. Speeds below MIN_SPEED are
+ * treated as sensor jitter and are not extrapolated, the extrapolation is limited to
+ * MAX_PREDICTION_NS and the speeds are reset after a gap in the events.
+ *
+ * The headings are updated and predicted from different threads.
+ */
+final class HeadingPredictor {
+
+    //Longest extrapolation, covering the latency of the sensors and the display
+    static final long MAX_PREDICTION_NS = 100_000_000L;
+    //Time constant of the smoothing of the angular speeds
+    private static final float SPEED_SMOOTHING_NS = 40_000_000f;
+    //Speed in degrees per second below which the heading is not extrapolated
+    static final float MIN_SPEED = 5f;
+    //Gap between two events after which the speeds are estimated again
+    private static final long MAX_EVENT_GAP_NS = 250_000_000L;
+
+    private boolean initialized;
+    private long lastTimestamp;
+    private float horizontalDegrees;
+    private float verticalDegrees;
+
+    //Angular speeds in degrees per second
+    private float horizontalSpeed;
+    private float verticalSpeed;
+
+    /**
+     * Adds a heading
+     * @param horizontalDegrees horizontal heading in degrees, in [0, 360]
+     * @param verticalDegrees vertical heading in degrees
+     * @param timestampNanos timestamp of the sensor event, on the System.nanoTime clock
+     */
+    synchronized void update(float horizontalDegrees, float verticalDegrees, long timestampNanos) {
+        long dt = timestampNanos - lastTimestamp;
+        //Ignore the events older than the last one
+        if (initialized && dt < 0) return;
+
+        if (!initialized || dt > MAX_EVENT_GAP_NS) {
+            horizontalSpeed = 0;
+            verticalSpeed = 0;
+        } else if (dt > 0) {
+            //Shortest difference between the headings, 359° and 1° being 2° apart
+            float horizontalDelta = ((horizontalDegrees - this.horizontalDegrees) % 360 + 540) % 360 - 180;
+            float verticalDelta = verticalDegrees - this.verticalDegrees;
+            float smoothing = dt / (SPEED_SMOOTHING_NS + dt);
+            horizontalSpeed += smoothing * (horizontalDelta * 1e9f / dt - horizontalSpeed);
+            verticalSpeed += smoothing * (verticalDelta * 1e9f / dt - verticalSpeed);
+        }
+        initialized = true;
+        lastTimestamp = timestampNanos;
+        this.horizontalDegrees = horizontalDegrees;
+        this.verticalDegrees = verticalDegrees;
+    }
+
+    /**
+     * Predicts the horizontal heading at a given time
+     * @param targetNanos time of the prediction, on the System.nanoTime clock
+     * @return predicted horizontal heading in degrees, in [0, 360)
+     */
+    synchronized float predictHorizontal(long targetNanos) {
+        float predicted = horizontalDegrees + extrapolate(horizontalSpeed, targetNanos);
+        return (predicted % 360 + 360) % 360;
+    }
+
+    /**
+     * Predicts the vertical heading at a given time
+     * @param targetNanos time of the prediction, on the System.nanoTime clock
+     * @return predicted vertical heading in degrees
+     */
+    synchronized float predictVertical(long targetNanos) {
+        return verticalDegrees + extrapolate(verticalSpeed, targetNanos);
+    }
+
+    /**
+     * Computes the rotation from the last heading to the target time
+     * @param speed angular speed in degrees per second
+     * @param targetNanos time of the prediction
+     * @return rotation in degrees
+     */
+    private float extrapolate(float speed, long targetNanos) {
+        //Remove the jitter continuously, a speed of MIN_SPEED not being extrapolated
+        float extrapolatedSpeed = Math.signum(speed) * Math.max(0, Math.abs(speed) - MIN_SPEED);
+        long horizon = Math.max(0, Math.min(MAX_PREDICTION_NS, targetNanos - lastTimestamp));
+        return extrapolatedSpeed * horizon / 1e9f;
+    }
+}
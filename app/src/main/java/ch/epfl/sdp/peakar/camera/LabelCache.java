@@ -0,0 +1,255 @@
+package ch.epfl.sdp.peakar.camera;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.LruCache;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+
+import ch.epfl.sdp.peakar.points.POIPoint;
+
+/**
+ * Cache of the pre-rendered labels of the POIPoints drawn on the camera-preview.
+ *
+ * A label (background, name, altitude and distance) is rendered once in a bitmap and drawn with a
+ * single drawBitmap on the following frames, as long as its content is the same. The distance is
+ * displayed in tens of meters, so the label is only rendered again when the user moves by at
+ * least 10 meters. The least recently drawn labels are evicted when the bitmaps exceed the maximum
+ * size, and their bitmaps are reused for the next labels. Drawing an already rendered label does
+ * not allocate.
+ *
+ * The frames are draw lists referencing the label bitmaps, drawn after their recording. A bitmap
+ * removed while recording a frame is only reused two frames later, once neither the latest nor the
+ * drawn frame of the double buffer can refer to it.
+ */
+final class LabelCache {
+
+    private static final long MAX_CACHE_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_POOLED_BITMAPS = 8;
+
+    //Sizes of the label
+    private static final int RADIUS_RECT_CORNER = 60;
+    private static final int OFFSET_RECTANGLE_X_EDGE = 7;
+    private static final int OFFSET_RECTANGLE_Y_EDGE = 4;
+
+    /**
+     * Rendered label of a POIPoint
+     */
+    static final class Label {
+        private final String name;
+        private final int altitude;
+        private final int distanceInTensOfMeters;
+        private final int markerWidth;
+
+        //Label bitmap and position of its top left corner relative to the mountain marker
+        final Bitmap bitmap;
+        final float offsetX;
+        final float offsetY;
+
+        private Label(String name, int altitude, int distanceInTensOfMeters, int markerWidth,
+                      Bitmap bitmap, float offsetX, float offsetY) {
+            this.name = name;
+            this.altitude = altitude;
+            this.distanceInTensOfMeters = distanceInTensOfMeters;
+            this.markerWidth = markerWidth;
+            this.bitmap = bitmap;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        private boolean hasContent(String name, int altitude, int distanceInTensOfMeters, int markerWidth) {
+            return this.altitude == altitude && this.distanceInTensOfMeters == distanceInTensOfMeters
+                    && this.markerWidth == markerWidth && this.name.equals(name);
+        }
+    }
+
+    private final Paint textPaint;
+    private final Paint backgroundPaint;
+    private final Bitmap heightBitmap;
+    private final Bitmap distanceBitmap;
+    private final float screenDensity;
+
+    private final Canvas renderCanvas = new Canvas();
+    private final Paint.FontMetrics fontMetrics = new Paint.FontMetrics();
+    private final ArrayDeque<Bitmap> pool = new ArrayDeque<>();
+    //Bitmaps removed while recording the current and the previous frame
+    private ArrayDeque<Bitmap> removedThisFrame = new ArrayDeque<>();
+    private ArrayDeque<Bitmap> removedLastFrame = new ArrayDeque<>();
+    private final LruCache<POIPoint, Label> labels;
+
+    /**
+     * Constructor
+     * @param textPaint paint of the texts
+     * @param backgroundPaint paint of the rounded rectangle behind the texts
+     * @param heightBitmap icon drawn before the altitude
+     * @param distanceBitmap icon drawn before the distance
+     * @param screenDensity scaled density of the screen
+     */
+    LabelCache(Paint textPaint, Paint backgroundPaint, Bitmap heightBitmap, Bitmap distanceBitmap, float screenDensity) {
+        this(textPaint, backgroundPaint, heightBitmap, distanceBitmap, screenDensity,
+                (int) Math.min(MAX_CACHE_BYTES, Runtime.getRuntime().maxMemory() / 16));
+    }
+
+    /**
+     * Constructor with the maximum size of the label bitmaps
+     * @param textPaint paint of the texts
+     * @param backgroundPaint paint of the rounded rectangle behind the texts
+     * @param heightBitmap icon drawn before the altitude
+     * @param distanceBitmap icon drawn before the distance
+     * @param screenDensity scaled density of the screen
+     * @param maxBytes maximum size in bytes of the bitmaps of the cached labels
+     */
+    LabelCache(Paint textPaint, Paint backgroundPaint, Bitmap heightBitmap, Bitmap distanceBitmap, float screenDensity, int maxBytes) {
+        this.textPaint = textPaint;
+        this.backgroundPaint = backgroundPaint;
+        this.heightBitmap = heightBitmap;
+        this.distanceBitmap = distanceBitmap;
+        this.screenDensity = screenDensity;
+        this.labels = new LruCache<POIPoint, Label>(maxBytes) {
+            @Override
+            protected int sizeOf(POIPoint key, Label value) {
+                return value.bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, POIPoint key, Label oldValue, Label newValue) {
+                if (newValue == null || newValue.bitmap != oldValue.bitmap) removedThisFrame.offer(oldValue.bitmap);
+            }
+        };
+    }
+
+    /**
+     * Starts the recording of a frame: the bitmaps removed two frames ago can be reused
+     */
+    void beginFrame() {
+        for (Bitmap bitmap : removedLastFrame) release(bitmap);
+        removedLastFrame.clear();
+        ArrayDeque<Bitmap> removed = removedLastFrame;
+        removedLastFrame = removedThisFrame;
+        removedThisFrame = removed;
+    }
+
+    /**
+     * Gets the label of a POIPoint, rendering it if its content changed
+     * @param poiPoint POIPoint of the label
+     * @param markerWidth width of the mountain marker drawn with the label
+     * @return rendered label
+     */
+    Label get(POIPoint poiPoint, int markerWidth) {
+        String name = poiPoint.getName();
+        int altitude = (int) poiPoint.getAltitude();
+        int distanceInTensOfMeters = (int) Math.round(poiPoint.getDistanceToUser() / 10);
+
+        Label label = labels.get(poiPoint);
+        if (label != null && label.hasContent(name, altitude, distanceInTensOfMeters, markerWidth)) return label;
+
+        label = render(name, altitude, distanceInTensOfMeters, markerWidth);
+        labels.put(poiPoint, label);
+        return label;
+    }
+
+    /**
+     * Releases all the labels, once no frame referencing them is drawn anymore
+     */
+    void clear() {
+        labels.evictAll();
+        for (ArrayDeque<Bitmap> bitmaps : Arrays.asList(pool, removedThisFrame, removedLastFrame)) {
+            for (Bitmap bitmap : bitmaps) bitmap.recycle();
+            bitmaps.clear();
+        }
+    }
+
+    /**
+     * Renders a label. The positions are relative to the top left corner of the mountain marker,
+     * before the rotation of the label.
+     * @return rendered label
+     */
+    private Label render(String name, int altitude, int distanceInTensOfMeters, int markerWidth) {
+        float textSize = textPaint.getTextSize();
+        String textHeight = " " + altitude + "m, ";
+        String textDistance = " " + String.format(Locale.getDefault(), "%.2f", distanceInTensOfMeters / 100.0) + "km";
+
+        float xName = textSize;
+        float yName = textSize + OFFSET_RECTANGLE_Y_EDGE*screenDensity;
+
+        float xBitmapHeight = xName - OFFSET_RECTANGLE_Y_EDGE*screenDensity;
+        float yBitmap = yName + 2*screenDensity;
+
+        float xTextHeight = xBitmapHeight + heightBitmap.getWidth()/2f;
+        float yTextInfo = yName + textSize;
+
+        float xBitmapDistance = xTextHeight + textPaint.measureText(textHeight);
+        float xTextDistance = xBitmapDistance + distanceBitmap.getWidth();
+
+        float nameWidth = textPaint.measureText(name);
+        float leftRect = -markerWidth/2f;
+        float topRect = yName - textSize + 2*screenDensity;
+        float bottomRect = yTextInfo + OFFSET_RECTANGLE_Y_EDGE*screenDensity;
+        float rightRect = Math.max(xTextDistance + textPaint.measureText(textDistance), xName + nameWidth) + OFFSET_RECTANGLE_X_EDGE*screenDensity;
+
+        float xNameCentered = xName + (rightRect - xName - nameWidth - OFFSET_RECTANGLE_X_EDGE*screenDensity)/2;
+
+        //Bounds of everything drawn, the texts and icons may exceed the rectangle
+        textPaint.getFontMetrics(fontMetrics);
+        float top = Math.min(topRect, yName + fontMetrics.top);
+        float bottom = Math.max(Math.max(bottomRect, yTextInfo + fontMetrics.bottom),
+                yBitmap + Math.max(heightBitmap.getHeight(), distanceBitmap.getHeight()));
+        int width = (int) Math.ceil(rightRect - leftRect);
+        int height = (int) Math.ceil(bottom - top);
+
+        Bitmap bitmap = obtainBitmap(Math.max(1, width), Math.max(1, height));
+        renderCanvas.setBitmap(bitmap);
+        renderCanvas.save();
+        renderCanvas.translate(-leftRect, -top);
+
+        //Draw first rectangle to overdraw the background
+        renderCanvas.drawRoundRect(leftRect, topRect, rightRect, bottomRect, RADIUS_RECT_CORNER, RADIUS_RECT_CORNER, backgroundPaint);
+
+        renderCanvas.drawText(name, Math.max(xNameCentered, xName), yName, textPaint);
+
+        renderCanvas.drawBitmap(heightBitmap, xBitmapHeight, yBitmap, null);
+        renderCanvas.drawText(textHeight, xTextHeight, yTextInfo, textPaint);
+        renderCanvas.drawBitmap(distanceBitmap, xBitmapDistance, yBitmap, null);
+        renderCanvas.drawText(textDistance, xTextDistance, yTextInfo, textPaint);
+
+        renderCanvas.restore();
+        renderCanvas.setBitmap(null);
+
+        return new Label(name, altitude, distanceInTensOfMeters, markerWidth, bitmap, leftRect, top);
+    }
+
+    /**
+     * Gets a transparent bitmap, reusing a pooled bitmap if one is large enough
+     * @param width width of the bitmap
+     * @param height height of the bitmap
+     * @return bitmap of the given size
+     */
+    private Bitmap obtainBitmap(int width, int height) {
+        int byteCount = width * height * 4;
+        Iterator<Bitmap> iterator = pool.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getAllocationByteCount() >= byteCount) {
+                iterator.remove();
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Keeps the bitmap of a removed label for the next labels, once no frame can draw it
+     * @param bitmap bitmap of the removed label
+     */
+    private void release(Bitmap bitmap) {
+        if (pool.size() < MAX_POOLED_BITMAPS) pool.offer(bitmap);
+        else bitmap.recycle();
+    }
+}
@@ -0,0 +1,67 @@
+package ch.epfl.sdp.peakar.camera;
+
+/**
+ * Chooses the sampling period of the orientation sensor depending on the motion of the device.
+ *
+ * The sensor is sampled at the rate of SENSOR_DELAY_GAME while the device rotates. Once the device
+ * has been still for STATIONARY_TIME_NS, the rate is lowered to the one of SENSOR_DELAY_UI, which
+ * is enough to detect the next rotation: the first sample rotating faster than STATIONARY_SPEED
+ * restores the full rate. While the camera-preview is not visible the rate of SENSOR_DELAY_NORMAL
+ * is used.
+ */
+final class SensorRateGovernor {
+
+    //Sampling periods in microseconds of SENSOR_DELAY_GAME, SENSOR_DELAY_UI and SENSOR_DELAY_NORMAL
+    static final int MOTION_PERIOD_US = 20_000;
+    static final int STATIONARY_PERIOD_US = 66_667;
+    static final int OCCLUDED_PERIOD_US = 200_000;
+
+    //Angular speed in degrees per second under which the device is still
+    static final float STATIONARY_SPEED = 3f;
+    //Time after which a still device is stationary
+    static final long STATIONARY_TIME_NS = 2_000_000_000L;
+
+    private boolean occluded;
+    private boolean stationary;
+    private boolean still;
+    private long stillSince;
+
+    /**
+     * Updates the motion of the device with the angular speed of a sensor event
+     * @param angularSpeed angular speed in degrees per second
+     * @param timestampNanos timestamp of the sensor event in nanoseconds
+     * @return true if the sampling period changed
+     */
+    boolean onAngularSpeed(float angularSpeed, long timestampNanos) {
+        int period = getSamplingPeriodUs();
+        if (angularSpeed >= STATIONARY_SPEED) {
+            still = false;
+            stationary = false;
+        } else if (!still) {
+            still = true;
+            stillSince = timestampNanos;
+        } else if (timestampNanos - stillSince >= STATIONARY_TIME_NS) {
+            stationary = true;
+        }
+        return period != getSamplingPeriodUs();
+    }
+
+    /**
+     * Sets if the camera-preview is hidden
+     * @param occluded true if the camera-preview is not visible
+     * @return true if the sampling period changed
+     */
+    boolean setOccluded(boolean occluded) {
+        int period = getSamplingPeriodUs();
+        this.occluded = occluded;
+        return period != getSamplingPeriodUs();
+    }
+
+    /**
+     * @return sampling period of the sensor in microseconds
+     */
+    int getSamplingPeriodUs() {
+        if (occluded) return OCCLUDED_PERIOD_US;
+        return stationary ? STATIONARY_PERIOD_US : MOTION_PERIOD_US;
+    }
+}
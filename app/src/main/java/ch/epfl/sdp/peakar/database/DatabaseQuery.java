@@ -1,5 +1,7 @@
 package ch.epfl.sdp.peakar.database;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This interface represents a Database query.
  */
@@ -15,4 +17,9 @@ public interface DatabaseQuery {
      * You may want to run this method on a new thread and, after that, do something else on the UI thread.
      */
     DatabaseSnapshot get();
+
+    /**
+     * Get asynchronously the database snapshot given by the current query.
+     */
+    CompletableFuture<DatabaseSnapshot> getAsync();
 }
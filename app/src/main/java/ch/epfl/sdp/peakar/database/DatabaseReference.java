@@ -1,11 +1,19 @@
 package ch.epfl.sdp.peakar.database;
 
-import com.google.android.gms.tasks.Task;
 import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This interface represents a Database Reference, i.e. a reference to a database child.
+ *
+ * Each blocking method has an asynchronous variant returning a CompletableFuture, so that independent
+ * requests are sent together and cost a single round-trip instead of one each.
+ * Note that the futures may be completed on the thread of the database provider: heavy continuations
+ * should be run on an executor with the async methods of CompletableFuture.
  */
 public interface DatabaseReference {
     /**
@@ -20,6 +28,41 @@ public interface DatabaseReference {
      */
     DatabaseSnapshot get();
 
+    /**
+     * Get asynchronously the database snapshot of the current reference.
+     */
+    CompletableFuture<DatabaseSnapshot> getAsync();
+
+    /**
+     * Get asynchronously the database snapshots of several children of the current reference.
+     * The requests are all sent at once, so they take about one round-trip.
+     * @param paths paths of the children from the current reference.
+     * @return future of the snapshots, in the order of the paths.
+     */
+    default CompletableFuture<List<DatabaseSnapshot>> getAll(String... paths) {
+        List<CompletableFuture<DatabaseSnapshot>> snapshots = new ArrayList<>(paths.length);
+        for (String path : paths) {
+            snapshots.add(child(path).getAsync());
+        }
+        return all(snapshots);
+    }
+
+    /**
+     * Combine futures into a future of their results, completed when all of them are.
+     * @param futures futures to combine.
+     * @param <T> type of the results.
+     * @return future of the results, in the order of the futures. It fails if any of them fails.
+     */
+    static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
     /**
      * Get the key of the current child.
      */
@@ -28,7 +71,7 @@ public interface DatabaseReference {
     /**
      * Set asynchronously a value to the current reference.
      */
-    Task<Void> setValueAsync(Object value);
+    CompletableFuture<Void> setValueAsync(Object value);
 
     /**
      * Set a value to the current reference.
@@ -45,7 +88,7 @@ public interface DatabaseReference {
     /**
      * Removes asynchronously the current child from the database.
      */
-    Task<Void> removeValueAsync();
+    CompletableFuture<Void> removeValueAsync();
 
     /**
      * Removes the current child from the database.
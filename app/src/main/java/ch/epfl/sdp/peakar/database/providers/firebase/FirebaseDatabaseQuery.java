@@ -5,6 +5,8 @@ import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.Query;
 
+import java.util.concurrent.CompletableFuture;
+
 import ch.epfl.sdp.peakar.database.DatabaseQuery;
 import ch.epfl.sdp.peakar.database.DatabaseSnapshot;
 
@@ -39,4 +41,9 @@ public class FirebaseDatabaseQuery implements DatabaseQuery {
             throw new RuntimeException("DBReference: error getting data snapshot");
         }
     }
+
+    @Override
+    public CompletableFuture<DatabaseSnapshot> getAsync() {
+        return FirebaseFutures.toFuture(firebaseQuery.get()).thenApply(FirebaseDatabaseSnapshot::new);
+    }
 }
@@ -9,6 +9,8 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.concurrent.CompletableFuture;
+
 import ch.epfl.sdp.peakar.database.DatabaseQuery;
 import ch.epfl.sdp.peakar.database.DatabaseReference;
 import ch.epfl.sdp.peakar.database.DatabaseSnapshot;
@@ -59,14 +61,19 @@ public class FirebaseDatabaseReference implements DatabaseReference {
         }
     }
 
+    @Override
+    public CompletableFuture<DatabaseSnapshot> getAsync() {
+        return FirebaseFutures.toFuture(firebaseReference.get()).thenApply(FirebaseDatabaseSnapshot::new);
+    }
+
     @Override
     public String getKey() {
         return firebaseReference.getKey();
     }
 
     @Override
-    public Task<Void> setValueAsync(Object value) {
-        return firebaseReference.setValue(value);
+    public CompletableFuture<Void> setValueAsync(Object value) {
+        return FirebaseFutures.toFuture(firebaseReference.setValue(value));
     }
 
     @Override
@@ -86,8 +93,8 @@ public class FirebaseDatabaseReference implements DatabaseReference {
     }
 
     @Override
-    public Task<Void> removeValueAsync() {
-        return firebaseReference.removeValue();
+    public CompletableFuture<Void> removeValueAsync() {
+        return FirebaseFutures.toFuture(firebaseReference.removeValue());
     }
 
     @Override
@@ -0,0 +1,35 @@
+package ch.epfl.sdp.peakar.database.providers.firebase;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class adapts the Tasks of the Firebase API to CompletableFutures.
+ */
+final class FirebaseFutures {
+
+    private FirebaseFutures() {}
+
+    /**
+     * Get a future completed with the result of a task.
+     * The future is completed on the thread completing the task, like <code>Tasks.await</code> does,
+     * so that a thread waiting for the future does not prevent its completion.
+     * @param task task to adapt.
+     * @param <T> type of the result.
+     */
+    static <T> CompletableFuture<T> toFuture(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        task.addOnCompleteListener(Runnable::run, completedTask -> {
+            if (completedTask.isSuccessful()) {
+                future.complete(completedTask.getResult());
+            } else if (completedTask.isCanceled()) {
+                future.completeExceptionally(new CancellationException("Firebase task cancelled"));
+            } else {
+                future.completeExceptionally(completedTask.getException());
+            }
+        });
+        return future;
+    }
+}
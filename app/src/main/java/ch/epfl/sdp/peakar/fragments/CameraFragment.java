@@ -11,6 +11,7 @@ import android.hardware.camera2.CameraAccessException;
 import android.hardware.display.DisplayManager;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
@@ -51,6 +52,7 @@ import ch.epfl.sdp.peakar.R;
 import ch.epfl.sdp.peakar.camera.CameraUiView;
 import ch.epfl.sdp.peakar.camera.Compass;
 import ch.epfl.sdp.peakar.camera.CompassListener;
+import ch.epfl.sdp.peakar.camera.DiscoveryTracker;
 import ch.epfl.sdp.peakar.database.Database;
 import ch.epfl.sdp.peakar.points.POIPoint;
 import ch.epfl.sdp.peakar.points.UserPoint;
@@ -114,8 +116,20 @@ public class CameraFragment extends Fragment{
     private ImageView compassMiniature;
     private TextView headingCompass;
 
+    //Heading displayed by headingCompass and time of the last update of the developer textviews
+    private int displayedHeading = -1;
+    private long lastDevOptionsUpdate;
+
+    //Minimum rotation of the compass miniature in degrees and update interval of the developer textviews
+    private static final float MIN_MINIATURE_ROTATION_DELTA = 0.5f;
+    private static final long DEV_OPTIONS_UPDATE_INTERVAL_MS = 250;
+
     private ConstraintLayout container;
 
+    //Tracker of the discovered peaks and peaks discovered since they were last added to the database
+    private DiscoveryTracker discoveryTracker;
+    private final List<POIPoint> discoveredPOIPoints = new ArrayList<>();
+
     private MultiplePermissionsListener allPermissionsListener;
 
     /**
@@ -138,6 +152,13 @@ public class CameraFragment extends Fragment{
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         returnToFragment = false;
+
+        discoveryTracker = new DiscoveryTracker();
+        discoveryTracker.setListener(poiPoints -> {
+            synchronized (discoveredPOIPoints) {
+                discoveredPOIPoints.addAll(poiPoints);
+            }
+        });
     }
 
     @Override
@@ -206,6 +227,7 @@ public class CameraFragment extends Fragment{
         displayDeveloperOptions(showDevOptions);
 
         cameraUiView = container.findViewById(R.id.compass);
+        cameraUiView.setDiscoveryTracker(discoveryTracker);
         flash = container.findViewById(R.id.take_picture_flash);
 
         //Setup the compass
@@ -234,11 +256,13 @@ public class CameraFragment extends Fragment{
 
         cameraUiView.setRange(cameraFieldOfView);
 
-        //Create new compass
+        //Create new compass, stopping the previous one
+        if(compass!=null) compass.stop();
         compass = new Compass(requireContext());
 
         compassMiniature = container.findViewById(R.id.compassMiniature);
         headingCompass = container.findViewById(R.id.headingCompass);
+        displayedHeading = -1;
 
         //Bind the compassListener with the compass
         compass.setListener(getCompassListener());
@@ -246,36 +270,53 @@ public class CameraFragment extends Fragment{
 
     /**
      * getCompassListener returns a CompassListener which updates the compass view and the textviews
-     * with the actual heading
+     * with the actual heading. The compass view draws the heading at the next frame, the miniature
+     * and the heading text only change with the displayed degree, and the developer textviews are
+     * updated every DEV_OPTIONS_UPDATE_INTERVAL_MS.
      *
      * @return CompassListener for the compass
      */
     private CompassListener getCompassListener() {
-        return (heading, headingV) -> {
+        return (heading, headingV, timestamp) -> {
             //Update the compass when the heading changes
-            cameraUiView.setDegrees(heading, headingV);
-            compassMiniature.setRotation(-1*heading);
+            cameraUiView.setDegrees(heading, headingV, timestamp);
+            discoveryTracker.setHeading(heading);
+            if (Math.abs(compassMiniature.getRotation() + heading) >= MIN_MINIATURE_ROTATION_DELTA) {
+                compassMiniature.setRotation(-1*heading);
+            }
             //Update the textviews with the new headings
             int headingInt = (int)heading == 360 ? 0 : (int)heading;
-            headingCompass.setText(String.format(Locale.ENGLISH, "%d°", headingInt));
-            headingHorizontal.setText(String.format(Locale.ENGLISH, "%.1f °", heading));
-            headingVertical.setText(String.format(Locale.ENGLISH, "%.1f °", headingV));
+            if (headingInt != displayedHeading) {
+                displayedHeading = headingInt;
+                headingCompass.setText(String.format(Locale.ENGLISH, "%d°", headingInt));
+            }
+            long now = SystemClock.uptimeMillis();
+            if (showDevOptions && now - lastDevOptionsUpdate >= DEV_OPTIONS_UPDATE_INTERVAL_MS) {
+                lastDevOptionsUpdate = now;
+                headingHorizontal.setText(String.format(Locale.ENGLISH, "%.1f °", heading));
+                headingVertical.setText(String.format(Locale.ENGLISH, "%.1f °", headingV));
+            }
         };
     }
 
     /**
-     * Gets the currently logged in user account and adds the mountains to the discovered Peaks
+     * Gets the currently logged in user account and adds the mountains discovered since the last
+     * call to the discovered Peaks
      */
     private void addDiscoveredPOIsToDatabase(){
-        if(cameraUiView==null) return;
-
-        List<POIPoint> discoveredPOIPoints = cameraUiView.getDiscoveredPOIPoints();
+        ArrayList<POIPoint> batch;
+        synchronized (discoveredPOIPoints) {
+            batch = new ArrayList<>(discoveredPOIPoints);
+        }
         AuthService service = AuthService.getInstance();
         AuthAccount acc = service.getAuthAccount();
-        if(acc != null && !discoveredPOIPoints.isEmpty() && Database.getInstance().isOnline()){
+        if(acc != null && !batch.isEmpty() && Database.getInstance().isOnline()){
             if(!acc.getUsername().equals(Account.USERNAME_BEFORE_REGISTRATION)){
                 UserScore userScore = new UserScore(getContext());
-                userScore.updateUserScoreAndDiscoveredPeaks((ArrayList<POIPoint>) discoveredPOIPoints);
+                userScore.updateUserScoreAndDiscoveredPeaks(batch);
+                synchronized (discoveredPOIPoints) {
+                    discoveredPOIPoints.removeAll(batch);
+                }
             }
             else{
                 Toast.makeText(getContext(), getResources().getString(R.string.setUsername), Toast.LENGTH_SHORT).show();
@@ -386,6 +427,8 @@ public class CameraFragment extends Fragment{
     @Override
     public void onPause() {
         super.onPause();
+        //The camera-preview is hidden, lower the rate of the compass
+        if(compass!=null) compass.setOccluded(true);
         addDiscoveredPOIsToDatabase();
     }
 
@@ -431,6 +474,7 @@ public class CameraFragment extends Fragment{
         // Shut down our background executor
         if(cameraExecutor!=null) cameraExecutor.shutdown();
         if(compass!=null) compass.stop();
+        if(discoveryTracker!=null) discoveryTracker.shutdown();
         if(displayManager!=null) displayManager.unregisterDisplayListener(displayListener);
     }
 
@@ -137,7 +137,7 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
     private void rangeChanged(){
         POICache.getInstance().deleteCacheFile(requireContext().getCacheDir());
         //recompute the POIs using the new range
-        ComputePOIPoints.getInstance(requireContext()).update(null, null);
+        ComputePOIPoints.getInstance(requireContext()).recompute();
     }
 
     /**
@@ -157,7 +157,7 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
         } else {
             // Connect to the DB again
             Database.getInstance().setOnlineMode();
-            ComputePOIPoints.getInstance(requireContext()).update(null, null);
+            ComputePOIPoints.getInstance(requireContext()).recompute();
             Toast.makeText(requireContext(), this.getResources().getString(R.string.offline_mode_off_toast), Toast.LENGTH_SHORT).show();
         }
     }
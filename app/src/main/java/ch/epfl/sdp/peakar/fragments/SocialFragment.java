@@ -38,6 +38,7 @@ import ch.epfl.sdp.peakar.user.outcome.ProfileOutcome;
 import ch.epfl.sdp.peakar.user.profile.ProfileActivity;
 import ch.epfl.sdp.peakar.user.services.AuthService;
 import ch.epfl.sdp.peakar.user.services.OtherAccount;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
 
 import static ch.epfl.sdp.peakar.general.MainActivity.lastFragmentIndex;
 import static ch.epfl.sdp.peakar.utils.MenuBarHandlerFragments.updateSelectedIcon;
@@ -272,7 +273,7 @@ public class SocialFragment extends Fragment {
         loadingDialog.setCanceledOnTouchOutside(false);
         loadingDialog.setCancelable(false);
 
-        new Thread(() -> {
+        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
             // Load the account
             OtherAccount.getInstance(item.getUid());
 
@@ -283,7 +284,7 @@ public class SocialFragment extends Fragment {
                 fillIntent(intent, item);
                 startActivity(intent);
             });
-        }).start();
+        });
     }
 
     /**
@@ -29,6 +29,7 @@ import ch.epfl.sdp.peakar.database.Database;
 import ch.epfl.sdp.peakar.points.ComputePOIPoints;
 import ch.epfl.sdp.peakar.user.services.AuthService;
 import ch.epfl.sdp.peakar.utils.SettingsUtilities;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
 
 import static ch.epfl.sdp.peakar.utils.PermissionUtilities.hasLocationPermission;
 
@@ -110,7 +111,7 @@ public class InitActivity extends AppCompatActivity {
                 if(hasLocationPermission(getApplicationContext())){
                     ComputePOIPoints.getInstance(getApplicationContext());
                 }
-                new Thread(() -> {
+                TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
                     Log.d("InitActivity", "onPermissionsChecked: online ? " + Database.getInstance().isOnline());
                     // If user is online, retrieve data
                     if(Database.getInstance().isOnline()) {
@@ -119,7 +120,7 @@ public class InitActivity extends AppCompatActivity {
                     }
                     else {  // Otherwise, try to download data but in another non blocking thread
                         Log.d("InitActivity", ": user offline");
-                        new Thread(() -> {
+                        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.LOW, () -> {
                             try {
                                 loadAccount();
                                 Log.d("InitActivity", ": successful download of data");
@@ -127,10 +128,10 @@ public class InitActivity extends AppCompatActivity {
                                 Log.d("InitActivity", ": failed download of data");
                             }
 
-                        }).start();
+                        });
                     }
                     runOnUiThread(() -> launchApp());
-                }).start();
+                });
             }
 
             @Override
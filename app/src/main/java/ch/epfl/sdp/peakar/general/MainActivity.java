@@ -10,11 +10,13 @@ import androidx.viewpager2.widget.ViewPager2;
 
 import org.osmdroid.config.Configuration;
 
+import java.io.File;
 import java.util.Objects;
 import java.util.Stack;
 
 import ch.epfl.sdp.peakar.R;
 import ch.epfl.sdp.peakar.points.UserPoint;
+import ch.epfl.sdp.peakar.utils.CachedHttpClient;
 import ch.epfl.sdp.peakar.utils.MenuBarHandlerFragments;
 import ch.epfl.sdp.peakar.utils.MainPagerAdapter;
 
@@ -26,6 +28,8 @@ import static ch.epfl.sdp.peakar.utils.PermissionUtilities.hasLocationPermission
  */
 public class MainActivity extends AppCompatActivity {
 
+    private static final String HTTP_CACHE_DIRECTORY = "http_cache";
+
     private ViewPager2 viewPager;
     public static Stack<Integer> lastFragmentIndex;
     private boolean locationPermission;
@@ -36,6 +40,7 @@ public class MainActivity extends AppCompatActivity {
         StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
         StrictMode.setThreadPolicy(policy);
         Configuration.getInstance().load(this, PreferenceManager.getDefaultSharedPreferences(this));
+        CachedHttpClient.getInstance().setCacheDirectory(new File(getCacheDir(), HTTP_CACHE_DIRECTORY));
         setContentView(R.layout.activity_main);
         lastFragmentIndex = new Stack<>();
 
@@ -1,33 +1,27 @@
 package ch.epfl.sdp.peakar.general;
 
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.text.format.Formatter;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.ImageButton;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.util.Pair;
 import androidx.preference.PreferenceManager;
 
-import org.osmdroid.bonuspack.location.POI;
 import org.osmdroid.views.MapView;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import ch.epfl.sdp.peakar.R;
 import ch.epfl.sdp.peakar.database.Database;
 import ch.epfl.sdp.peakar.map.OSMMap;
 import ch.epfl.sdp.peakar.points.ComputePOIPoints;
-import ch.epfl.sdp.peakar.points.DownloadTopographyTask;
-import ch.epfl.sdp.peakar.points.GeonamesHandler;
-import ch.epfl.sdp.peakar.points.POIPoint;
+import ch.epfl.sdp.peakar.points.OfflineRegionDownload;
 import ch.epfl.sdp.peakar.points.Point;
 import ch.epfl.sdp.peakar.utils.OfflineContentContainer;
 import ch.epfl.sdp.peakar.utils.SettingsUtilities;
@@ -43,6 +37,7 @@ public class SettingsMapActivity extends AppCompatActivity {
     
     private Button downloadButton;
     private View loadingView;
+    private TextView downloadProgress;
     private OSMMap osmMap;
 
     Activity thisActivity;
@@ -51,6 +46,7 @@ public class SettingsMapActivity extends AppCompatActivity {
     private Point selectedPoint;
 
     private boolean downloadRunning;
+    private OfflineRegionDownload regionDownload;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -66,6 +62,7 @@ public class SettingsMapActivity extends AppCompatActivity {
         downloadButton.setOnClickListener(v -> saveToJson());
 
         loadingView = findViewById(R.id.loadingView);
+        downloadProgress = findViewById(R.id.downloadProgress);
 
         thisActivity = this;
         thisContext = this;
@@ -104,6 +101,7 @@ public class SettingsMapActivity extends AppCompatActivity {
         loadingView.bringToFront();
 
         loadingView.setVisibility(View.VISIBLE);
+        downloadProgress.setText("");
 
         OfflineContentContainer saveObject = new OfflineContentContainer();
 
@@ -124,63 +122,54 @@ public class SettingsMapActivity extends AppCompatActivity {
     }
 
     /**
-     * Handles downloading of the elevation map and the POI list and then adds.
-     * them to the input json. The part regarding the POIs is nested inside this method.
-     *  @param saveObject    map that will contain the POIpoints and the elevationmap.
+     * Handles downloading of the elevation map and the POI list and then adds
+     * them to the container. The progress is displayed while the tiles of the region are
+     * downloaded. If the download fails, the user can press the download button again to
+     * resume it.
+     *  @param saveObject    container that will contain the POIpoints and the elevationmap.
      * @param selectedPoint selected point around which the offline content will be downloaded.
      */
-    @SuppressLint("StaticFieldLeak")
     private void addMapAndPOIsToContainer(OfflineContentContainer saveObject, Point selectedPoint) {
-        new DownloadTopographyTask(this){
-            @SuppressLint("StaticFieldLeak")
+        regionDownload = new OfflineRegionDownload(this, selectedPoint);
+        regionDownload.start(new OfflineRegionDownload.Listener() {
             @Override
-            public void onResponseReceived(Pair<int[][], Double> topography) {
-                super.onResponseReceived(topography);
-                if (topography == null) {
-                    downloadRunning = false;
-                    Toast.makeText(thisActivity, thisActivity.getResources().getString(R.string.download_error_toast), Toast.LENGTH_SHORT).show();
-                    onBackPressed();
-                } else {
-                    saveObject.topography = topography;
-                    addPOIsToContainer(saveObject, selectedPoint);
-                }
+            public void onProgress(int completedTiles, int totalTiles, long downloadedBytes) {
+                downloadProgress.setText(getResources().getString(R.string.download_progress,
+                        completedTiles, totalTiles, Formatter.formatShortFileSize(thisContext, downloadedBytes)));
             }
-        }.execute(selectedPoint);
-    }
 
-    /**
-     * Handles downloading of the the POI list and then adds
-     * them to the input json. After this process is finished the activity
-     * is terminated.
-     *  @param saveObject    json that will contain the bounding box.
-     * @param selectedPoint selected point around which the offline content will be downloaded.
-     */
-    @SuppressLint("StaticFieldLeak")
-    private void addPOIsToContainer(OfflineContentContainer saveObject, Point selectedPoint) {
-        new GeonamesHandler(selectedPoint, thisContext){
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
-                List<POIPoint> POIPoints = new ArrayList<>();
-                if(result!=null){
-                    for(POI poi : result){
-                        POIPoint poiPoint = new POIPoint(poi);
-                        poiPoint.setHorizontalBearing(selectedPoint);
-                        poiPoint.setVerticalBearing(selectedPoint);
-                        POIPoints.add(poiPoint);
-                    }
-                }
-
-                saveObject.POIPoints = POIPoints;
+            public void onCompleted(OfflineContentContainer content) {
+                downloadRunning = false;
+                saveObject.topography = content.topography;
+                saveObject.POIPoints = content.POIPoints;
                 StorageHandler.saveOfflineContentContainer(saveObject, thisContext);
                 Toast.makeText(thisContext,thisContext.getResources().getString(R.string.offline_mode_on_toast), Toast.LENGTH_SHORT).show();
 
                 ComputePOIPoints computePOIPoints = ComputePOIPoints.getInstance(thisContext);
-                computePOIPoints.update(null, null);
+                computePOIPoints.recompute();
 
                 thisActivity.finish();
+            }
 
+            @Override
+            public void onFailed() {
+                downloadRunning = false;
+                Toast.makeText(thisActivity, thisActivity.getResources().getString(R.string.download_error_toast), Toast.LENGTH_SHORT).show();
+
+                // Enable touch again so that the download can be resumed
+                getWindow().clearFlags(WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE);
+                loadingView.setVisibility(View.GONE);
+                downloadButton.setVisibility(View.VISIBLE);
             }
-        }.execute();
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The completed tiles are kept, the download can be resumed later
+        if (regionDownload != null) regionDownload.cancel();
     }
 
     @Override
@@ -0,0 +1,126 @@
+package ch.epfl.sdp.peakar.points;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Decoder of the Arc/Info ASCII Grid format (AAIGrid)
+ */
+final class AAIGridDecoder implements DemDecoder {
+
+    static final String OUTPUT_FORMAT = "AAIGrid";
+
+    @Override
+    public String getOutputFormat() {
+        return OUTPUT_FORMAT;
+    }
+
+    @Override
+    public DemGrid decode(InputStream inputStream) throws IOException {
+        return parse(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Parses an AAIGrid. The header keys are read until the first value, the values are
+     * parsed directly from the characters without splitting the lines.
+     * @param reader reader of the AAIGrid, should be buffered
+     * @return parsed grid
+     * @throws DemFormatException if the grid is incomplete or its header is missing
+     * @throws IOException if the reader fails
+     */
+    static DemGrid parse(Reader reader) throws IOException {
+        DemGrid grid = new DemGrid();
+        int next = skipWhitespace(reader, reader.read());
+        while (next != -1 && Character.isLetter(next)) {
+            StringBuilder key = new StringBuilder();
+            while (next != -1 && !Character.isWhitespace(next)) {
+                key.append((char) next);
+                next = reader.read();
+            }
+            StringBuilder value = new StringBuilder();
+            next = skipWhitespace(reader, next);
+            while (next != -1 && !Character.isWhitespace(next)) {
+                value.append((char) next);
+                next = reader.read();
+            }
+            setHeader(grid, key.toString().toLowerCase(Locale.ENGLISH), value.toString());
+            next = skipWhitespace(reader, next);
+        }
+        if (grid.nRow <= 0 || grid.nCol <= 0 || grid.cellSize <= 0)
+            throw new DemFormatException("Invalid AAIGrid header");
+
+        grid.values = new int[grid.nRow][grid.nCol];
+        for (int row = 0; row < grid.nRow; row++) {
+            for (int col = 0; col < grid.nCol; col++) {
+                next = skipWhitespace(reader, next);
+                if (next == -1) throw new DemFormatException("AAIGrid truncated at row " + row);
+                boolean negative = next == '-';
+                if (negative) next = reader.read();
+                if (next < '0' || next > '9')
+                    throw new DemFormatException("Invalid AAIGrid value at row " + row);
+                int value = 0;
+                while (next >= '0' && next <= '9') {
+                    value = value * 10 + (next - '0');
+                    next = reader.read();
+                }
+                //Skip the decimals of floating point grids
+                if (next == '.') {
+                    do next = reader.read(); while (next >= '0' && next <= '9');
+                }
+                grid.values[row][col] = negative ? -value : value;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Sets a header value of the grid
+     * @param grid grid being parsed
+     * @param key lower case header key
+     * @param value header value
+     * @throws DemFormatException if the value is not a number
+     */
+    private static void setHeader(DemGrid grid, String key, String value) throws IOException {
+        try {
+            switch (key) {
+                case "ncols":
+                    grid.nCol = Integer.parseInt(value);
+                    break;
+                case "nrows":
+                    grid.nRow = Integer.parseInt(value);
+                    break;
+                case "xllcorner":
+                    grid.xllCorner = Double.parseDouble(value);
+                    break;
+                case "yllcorner":
+                    grid.yllCorner = Double.parseDouble(value);
+                    break;
+                case "cellsize":
+                    grid.cellSize = Double.parseDouble(value);
+                    break;
+                default:
+                    //NODATA_value and unsupported keys are ignored
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new DemFormatException("Invalid AAIGrid header " + key + ": " + value);
+        }
+    }
+
+    /**
+     * Skips whitespace characters
+     * @param reader reader of the grid
+     * @param current last character read
+     * @return first character that is not a whitespace, -1 at the end of the stream
+     * @throws IOException if the reader fails
+     */
+    private static int skipWhitespace(Reader reader, int current) throws IOException {
+        while (current != -1 && Character.isWhitespace(current)) current = reader.read();
+        return current;
+    }
+}
@@ -0,0 +1,40 @@
+package ch.epfl.sdp.peakar.points;
+
+/**
+ * ElevationGrid backed by the int[][] topography map, without any compression
+ */
+class ArrayElevationGrid implements ElevationGrid {
+
+    private final int[][] topographyMap;
+
+    /**
+     * Constructor
+     * @param topographyMap rectangular topography map, not copied
+     */
+    ArrayElevationGrid(int[][] topographyMap) {
+        this.topographyMap = topographyMap;
+    }
+
+    @Override
+    public int getRowCount() {
+        return topographyMap.length;
+    }
+
+    @Override
+    public int getColCount() {
+        return topographyMap.length > 0 ? topographyMap[0].length : 0;
+    }
+
+    @Override
+    public int get(int row, int col) {
+        return topographyMap[row][col];
+    }
+
+    /**
+     * @return the backing topography map
+     */
+    @Override
+    public int[][] toArray() {
+        return topographyMap;
+    }
+}
@@ -0,0 +1,335 @@
+package ch.epfl.sdp.peakar.points;
+
+import java.util.Arrays;
+
+/**
+ * Compressed in-memory ElevationGrid for large topography maps.
+ *
+ * The grid is split in blocks of BLOCK_SIZE x BLOCK_SIZE cells. A block stores its first elevation
+ * and, for every cell, the zig-zag encoded difference with its west neighbour (its north neighbour
+ * for the first column), bit-packed with the number of bits needed by the largest difference of
+ * the block. Neighbouring SRTMGL3 cells are 90 m apart, so a difference rarely needs more than
+ * 8 bits, against 32 bits for an int.
+ *
+ * Reading a cell decodes its whole block. Each thread keeps the last decoded blocks in its own
+ * CACHE_WAYS-way set-associative cache, so the sequential accesses of the line of sight mostly read
+ * an already decoded block. A miss decodes the block in the array of the least recently used way
+ * of its set, without allocating, and the readers never share nor lock an array. A cache takes
+ * CACHE_SETS * CACHE_WAYS blocks of 16 KB, released with the thread or the grid.
+ */
+public final class CompressedElevationGrid implements ElevationGrid {
+
+    static final int BLOCK_SIZE = 64;
+    static final int CACHE_SETS = 4;
+    static final int CACHE_WAYS = 4;
+
+    private final int nRow;
+    private final int nCol;
+    private final int blockColCount;
+
+    /*Per block: first elevation, bits per difference and bit offset of the differences in data*/
+    private final int[] blockBase;
+    private final byte[] blockBits;
+    private final long[] blockOffset;
+    private final long[] data;
+
+    //The ThreadLocal is not created with withInitial, which needs API 26
+    private final ThreadLocal<BlockCache> cache = new ThreadLocal<BlockCache>() {
+        @Override
+        protected BlockCache initialValue() {
+            return new BlockCache();
+        }
+    };
+
+    /**
+     * Private constructor: use compress(int[][])
+     */
+    private CompressedElevationGrid(int nRow, int nCol, int[] blockBase, byte[] blockBits, long[] blockOffset, long[] data) {
+        this.nRow = nRow;
+        this.nCol = nCol;
+        this.blockColCount = (nCol + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blockBase = blockBase;
+        this.blockBits = blockBits;
+        this.blockOffset = blockOffset;
+        this.data = data;
+    }
+
+    /**
+     * Compresses a topography map. The map is only read, the caller releases it once the grid is
+     * built.
+     * @param topographyMap rectangular topography map
+     * @return compressed grid
+     * @throws IllegalArgumentException if the map is not rectangular
+     */
+    public static CompressedElevationGrid compress(int[][] topographyMap) {
+        Builder builder = new Builder(topographyMap.length > 0 ? topographyMap[0].length : 0);
+        for (int[] row : topographyMap) builder.addRow(row);
+        return builder.build();
+    }
+
+    @Override
+    public int getRowCount() {
+        return nRow;
+    }
+
+    @Override
+    public int getColCount() {
+        return nCol;
+    }
+
+    @Override
+    public int get(int row, int col) {
+        int blockRow = row / BLOCK_SIZE;
+        int blockCol = col / BLOCK_SIZE;
+        int block = blockRow * blockColCount + blockCol;
+        int[] values = cache.get().get(block);
+        return values[(row - blockRow * BLOCK_SIZE) * blockWidth(blockCol) + col - blockCol * BLOCK_SIZE];
+    }
+
+    @Override
+    public int[][] toArray() {
+        int[][] topographyMap = new int[nRow][nCol];
+        int[] values = new int[BLOCK_SIZE * BLOCK_SIZE];
+        for (int block = 0; block < blockBase.length; block++) {
+            int firstRow = block / blockColCount * BLOCK_SIZE;
+            int blockCol = block % blockColCount;
+            int width = blockWidth(blockCol);
+            int height = decodeBlock(block, values);
+            for (int i = 0; i < height; i++) {
+                System.arraycopy(values, i * width, topographyMap[firstRow + i], blockCol * BLOCK_SIZE, width);
+            }
+        }
+        return topographyMap;
+    }
+
+    /**
+     * @return approximate memory used by the compressed grid (in bytes)
+     */
+    public long getCompressedSize() {
+        return data.length * 8L + blockBase.length * (4L + 1L + 8L);
+    }
+
+    /**
+     * @return memory used by the same grid as an int[][] (in bytes), without the array headers
+     */
+    public long getUncompressedSize() {
+        return (long) nRow * nCol * 4L;
+    }
+
+    /**
+     * Gets the number of columns of the blocks of a block column (the last one can be narrower)
+     * @param blockCol index of the block column
+     * @return number of columns of the blocks
+     */
+    private int blockWidth(int blockCol) {
+        return Math.min(BLOCK_SIZE, nCol - blockCol * BLOCK_SIZE);
+    }
+
+    /**
+     * Decodes the elevations of a block
+     * @param block index of the block, row by row
+     * @param values array of at least BLOCK_SIZE * BLOCK_SIZE cells receiving the elevations of the
+     *               block, row by row
+     * @return number of rows of the block
+     */
+    private int decodeBlock(int block, int[] values) {
+        int width = blockWidth(block % blockColCount);
+        int height = Math.min(BLOCK_SIZE, nRow - block / blockColCount * BLOCK_SIZE);
+        int bits = blockBits[block];
+        long mask = bits == 64 ? -1L : (1L << bits) - 1;
+        long bitPosition = blockOffset[block];
+
+        int previous = blockBase[block];
+        for (int i = 0; i < width * height; i++) {
+            long zigZag = 0;
+            if (bits > 0) {
+                int index = (int) (bitPosition >>> 6);
+                int shift = (int) (bitPosition & 63);
+                zigZag = data[index] >>> shift;
+                if (shift + bits > 64) zigZag |= data[index + 1] << (64 - shift);
+                zigZag &= mask;
+                bitPosition += bits;
+            }
+            //The first column is predicted from the cell above, the other ones from the cell on the left
+            int predicted = i % width == 0 && i > 0 ? values[i - width] : previous;
+            previous = (int) (predicted + ((zigZag >>> 1) ^ -(zigZag & 1)));
+            values[i] = previous;
+        }
+        return height;
+    }
+
+    /**
+     * Decoded blocks of a thread, in a set-associative cache with a least recently used eviction
+     */
+    private final class BlockCache {
+        //Block decoded in each way of each set, -1 if none, its elevations and its last use
+        private final int[] blocks = new int[CACHE_SETS * CACHE_WAYS];
+        private final int[][] values = new int[CACHE_SETS * CACHE_WAYS][];
+        private final long[] lastUses = new long[CACHE_SETS * CACHE_WAYS];
+        private long uses;
+
+        //Last block read, checked first since the successive cells are mostly in the same block
+        private int lastBlock = -1;
+        private int[] lastValues;
+
+        private BlockCache() {
+            Arrays.fill(blocks, -1);
+        }
+
+        /**
+         * Gets the elevations of a block, decoding it on a miss
+         * @param block index of the block
+         * @return elevations of the block, row by row
+         */
+        private int[] get(int block) {
+            if (block == lastBlock) return lastValues;
+            int first = block % CACHE_SETS * CACHE_WAYS;
+            int way = -1;
+            int leastRecent = first;
+            for (int i = first; i < first + CACHE_WAYS && way < 0; i++) {
+                if (blocks[i] == block) way = i;
+                else if (lastUses[i] < lastUses[leastRecent]) leastRecent = i;
+            }
+            if (way < 0) {
+                //Decode the block in the array of the least recently used way
+                way = leastRecent;
+                if (values[way] == null) values[way] = new int[BLOCK_SIZE * BLOCK_SIZE];
+                decodeBlock(block, values[way]);
+                blocks[way] = block;
+            }
+            lastUses[way] = ++uses;
+            lastBlock = block;
+            lastValues = values[way];
+            return lastValues;
+        }
+    }
+
+    /**
+     * Builder compressing a grid row by row, one row of blocks at a time
+     */
+    private static final class Builder {
+        private final int nCol;
+        private final int blockColCount;
+        private final int[][] pendingRows;
+        private int pendingRowCount;
+        private int nRow;
+
+        private int blockCount;
+        private int[] blockBase = new int[16];
+        private byte[] blockBits = new byte[16];
+        private long[] blockOffset = new long[16];
+        private long[] data = new long[256];
+        private long bitPosition;
+
+        /**
+         * Constructor
+         * @param nCol number of columns of the grid
+         */
+        private Builder(int nCol) {
+            this.nCol = nCol;
+            this.blockColCount = (nCol + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            this.pendingRows = new int[BLOCK_SIZE][];
+        }
+
+        /**
+         * Adds the next row of the grid, from north to south
+         * @param row elevations of the row, not modified
+         */
+        private void addRow(int[] row) {
+            if (row.length != nCol)
+                throw new IllegalArgumentException("Topography map is not rectangular");
+            pendingRows[pendingRowCount++] = row;
+            nRow++;
+            if (pendingRowCount == BLOCK_SIZE) flushBlockRow();
+        }
+
+        /**
+         * Compresses the remaining rows and builds the grid
+         * @return compressed grid
+         */
+        private CompressedElevationGrid build() {
+            flushBlockRow();
+            return new CompressedElevationGrid(nRow, nCol,
+                    Arrays.copyOf(blockBase, blockCount),
+                    Arrays.copyOf(blockBits, blockCount),
+                    Arrays.copyOf(blockOffset, blockCount),
+                    Arrays.copyOf(data, (int) ((bitPosition + 63) >>> 6) + 1));
+        }
+
+        /**
+         * Compresses the buffered rows as one row of blocks
+         */
+        private void flushBlockRow() {
+            if (pendingRowCount == 0) return;
+            for (int blockCol = 0; blockCol < blockColCount; blockCol++) {
+                int firstCol = blockCol * BLOCK_SIZE;
+                int lastCol = Math.min(nCol, firstCol + BLOCK_SIZE);
+
+                //Find the number of bits needed by the largest difference of the block
+                long maxZigZag = 0;
+                for (int row = 0; row < pendingRowCount; row++) {
+                    for (int col = firstCol; col < lastCol; col++) {
+                        maxZigZag |= zigZag(row, col, firstCol);
+                    }
+                }
+                int bits = 64 - Long.numberOfLeadingZeros(maxZigZag);
+
+                ensureBlockCapacity();
+                blockBase[blockCount] = pendingRows[0][firstCol];
+                blockBits[blockCount] = (byte) bits;
+                blockOffset[blockCount] = bitPosition;
+                blockCount++;
+
+                if (bits == 0) continue;
+                for (int row = 0; row < pendingRowCount; row++) {
+                    for (int col = firstCol; col < lastCol; col++) {
+                        write(zigZag(row, col, firstCol), bits);
+                    }
+                }
+            }
+            Arrays.fill(pendingRows, null);
+            pendingRowCount = 0;
+        }
+
+        /**
+         * Computes the zig-zag encoded difference between a cell and its predicted value
+         * @param row row of the cell in the buffered rows
+         * @param col column of the cell
+         * @param firstCol first column of the block
+         * @return zig-zag encoded difference
+         */
+        private long zigZag(int row, int col, int firstCol) {
+            long predicted;
+            if (col > firstCol) predicted = pendingRows[row][col - 1];
+            else if (row > 0) predicted = pendingRows[row - 1][col];
+            else predicted = pendingRows[row][col];
+            long difference = pendingRows[row][col] - predicted;
+            return (difference << 1) ^ (difference >> 63);
+        }
+
+        /**
+         * Appends a value to the bit stream
+         * @param value value to append
+         * @param bits number of bits of the value
+         */
+        private void write(long value, int bits) {
+            int index = (int) (bitPosition >>> 6);
+            int shift = (int) (bitPosition & 63);
+            if (index + 1 >= data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[index] |= value << shift;
+            if (shift + bits > 64) data[index + 1] |= value >>> (64 - shift);
+            bitPosition += bits;
+        }
+
+        /**
+         * Grows the block arrays if they are full
+         */
+        private void ensureBlockCapacity() {
+            if (blockCount < blockBase.length) return;
+            int capacity = blockBase.length * 2;
+            blockBase = Arrays.copyOf(blockBase, capacity);
+            blockBits = Arrays.copyOf(blockBits, capacity);
+            blockOffset = Arrays.copyOf(blockOffset, capacity);
+        }
+    }
+}
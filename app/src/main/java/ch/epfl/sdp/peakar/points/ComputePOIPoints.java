@@ -11,20 +11,21 @@ import android.widget.Toast;
 import androidx.core.util.Pair;
 import androidx.preference.PreferenceManager;
 
-import org.osmdroid.bonuspack.location.POI;
-import org.osmdroid.util.BoundingBox;
-
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ch.epfl.sdp.peakar.R;
+import ch.epfl.sdp.peakar.utils.EventTopic;
 import ch.epfl.sdp.peakar.utils.OfflineContentContainer;
+import ch.epfl.sdp.peakar.utils.OfflinePack;
+import ch.epfl.sdp.peakar.utils.OfflinePackStore;
 import ch.epfl.sdp.peakar.utils.SettingsUtilities;
-import ch.epfl.sdp.peakar.utils.StorageHandler;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
 
 import static ch.epfl.sdp.peakar.utils.POIPointsUtilities.filterHighestPOIs;
 
@@ -38,12 +39,20 @@ import static ch.epfl.sdp.peakar.utils.POIPointsUtilities.filterHighestPOIs;
  *
  * This class is a singleton class.
  *
- * This class can be observed, it will notify observers when new POIPoints are computed
+ * The POIPoints are computed again when the location is published on UserPoint.LOCATION_TOPIC.
+ * The files are read on a serial executor of the DISK workload and the line of sight is computed
+ * on the COMPUTE workload. The POIPoints are only set on the UI thread, where they are read, and
+ * published on POIS_TOPIC once computed. The results of a location that was replaced in the
+ * meantime are dropped.
+ *
+ * A computation works on the copy of the user location published on LOCATION_TOPIC, or taken by
+ * recompute, passed down to every step, since the GPS updates the UserPoint on the UI thread while
+ * the steps run on the workers.
  *
  */
-public class ComputePOIPoints extends Observable implements Observer{
+public class ComputePOIPoints {
 
-    private static final int MAX_LOADING_DISTANCE = 20000; // in m
+    public static final EventTopic<ComputePOIPoints> POIS_TOPIC = EventTopic.state("POIs"); // computed POIPoints
 
     @SuppressLint("StaticFieldLeak")
     private static ComputePOIPoints single_instance = null; // singleton instance
@@ -63,6 +72,13 @@ public class ComputePOIPoints extends Observable implements Observer{
 
     private static boolean isLineOfSightAvailable;
 
+    //Executor of the computations, one at a time off the UI thread
+    private final Executor worker = TaskScheduler.getInstance()
+            .serialExecutor(TaskScheduler.Workload.DISK, TaskScheduler.Priority.HIGH);
+
+    //Incremented at each computation, so that the results of an older location are dropped
+    private final AtomicInteger generation = new AtomicInteger();
+
     /**
      * Constructor of computePOIPointsInstance, updates userPoint and gets the POIs for the userPoint
      * @param context Context of activity
@@ -73,8 +89,8 @@ public class ComputePOIPoints extends Observable implements Observer{
         this.context = context;
         userPoint = UserPoint.getInstance(context);
         userPoint.update();
-        userPoint.addObserver(this);
-        getPOIs(userPoint);
+        UserPoint.LOCATION_TOPIC.subscribe(worker, this::getPOIs);
+        recompute();
     }
 
     /**
@@ -93,20 +109,23 @@ public class ComputePOIPoints extends Observable implements Observer{
      * Retrieves list of surrounding POIs either from cache
      * or from provider. If the cached data corresponds to
      * the user location, no download is made and the POIs
-     * are retrieved from cached file
-     * @param userPoint user location
+     * are retrieved from cached file. Runs on the worker.
+     * @param userPoint user location, not modified during the computation
      */
-    private void getPOIs(UserPoint userPoint){
-        // clear the old points
-        POIs.clear();
+    private void getPOIs(Point userPoint){
+        int computation = generation.incrementAndGet();
 
-        isLineOfSightAvailable = false;
+        // clear the old points
+        runOnUiThread(computation, () -> {
+            POIs.clear();
+            isLineOfSightAvailable = false;
+        });
 
         // first check that if offline mode is active
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
         boolean offlineModeValue = prefs.getBoolean(context.getResources().getString(R.string.offline_mode_key), false);
         if (offlineModeValue) {
-           getPOIsOffline(userPoint);
+           getPOIsOffline(userPoint, computation);
            return;
         }
         //Retrieve cache instance
@@ -115,44 +134,44 @@ public class ComputePOIPoints extends Observable implements Observer{
         if( isCachingAllowed()
             && poiCache.isCacheFilePresent(context.getApplicationContext().getCacheDir())
             && poiCache.isUserInBoundingBox(userPoint, context.getCacheDir())){
-            getPOIsFromCache(userPoint);
+            getPOIsFromCache(userPoint, computation);
         }
         else{
-            getPOIsFromProvider(userPoint);
+            getPOIsFromProvider(userPoint, computation);
         }
     }
 
     /**
      * Handles the creation and filtration of the list of the POIPoints when offline mode
-     * is enabled. Gets the labeled POIs from a JSONObject and filters them. The points are not
-     * added if the userPoint is more than MAX_LOADING_DISTANCE from the center of the downloaded
-     * bounding box.
+     * is enabled. Looks up the offline pack covering the userPoint, reads its labeled POIs and
+     * filters them. The points are not added if no downloaded pack covers the userPoint.
      * @param userPoint around which the list is computed.
+     * @param computation number of the computation
      */
-    private void getPOIsOffline(UserPoint userPoint) {
+    private void getPOIsOffline(Point userPoint, int computation) {
         try {
-            OfflineContentContainer offlineContent = StorageHandler.readOfflineContentContainer(context);
-            BoundingBox boundingBox = offlineContent.boundingBox;
+            OfflinePackStore offlinePackStore = OfflinePackStore.getInstance(context);
+            OfflinePack offlinePack = offlinePackStore.findPack(userPoint.getLatitude(), userPoint.getLongitude());
 
-            double distance = userPoint.computeFlatDistance(new POIPoint(boundingBox.getCenterWithDateLine()));
-
-            Log.d("computePOIPointsInstance", "Distance = " + distance);
-
-            if (distance < MAX_LOADING_DISTANCE) {
+            if (offlinePack != null) {
+                Log.d("computePOIPointsInstance", "Using offline pack " + offlinePack.getName());
+                OfflineContentContainer offlineContent = offlinePackStore.readPack(offlinePack);
                 Pair<int[][], Double> topography = offlineContent.topography;
-                for(POIPoint poiPoint : offlineContent.POIPoints){
-                    poiPoint.setHorizontalBearing(userPoint);
-                    poiPoint.setVerticalBearing(userPoint);
-                    poiPoint.setDistanceToUser(userPoint);
-                    POIs.put(poiPoint, false);
-                }
-                applyFilteringLabeledPOIs(topography);
+                setBearings(offlineContent.POIPoints, userPoint);
+                runOnUiThread(computation, () -> {
+                    for(POIPoint poiPoint : offlineContent.POIPoints){
+                        POIs.put(poiPoint, false);
+                    }
+                    applyFilteringLabeledPOIs(topography, userPoint);
+                });
             } else {
-                if(context instanceof Activity){
-                    Toast.makeText(context, context.getResources().getString(R.string.outsideOfDownloadedBox), Toast.LENGTH_LONG).show();
-                }
-                resetPOIs();
-                Log.d("computePOIPointsInstance", "Distance is > " + MAX_LOADING_DISTANCE);
+                runOnUiThread(computation, () -> {
+                    if(context instanceof Activity){
+                        Toast.makeText(context, context.getResources().getString(R.string.outsideOfDownloadedBox), Toast.LENGTH_LONG).show();
+                    }
+                    resetPOIs();
+                });
+                Log.d("computePOIPointsInstance", "No offline pack covers the user location");
             }
         } catch (IOException e) {
             Log.d("computePOIPointsInstance", "There was an error reading the file");
@@ -162,74 +181,104 @@ public class ComputePOIPoints extends Observable implements Observer{
     /**
      * Get surrounding POIs and topography map from cache
      * @param userPoint location of the user
+     * @param computation number of the computation
      */
-    private void getPOIsFromCache(UserPoint userPoint){
+    private void getPOIsFromCache(Point userPoint, int computation){
         ArrayList<POIPoint> cachedPOIs = POICache.getInstance().getCachedPOIPoints(context.getCacheDir());
-        cachedPOIs.forEach(poiPoint -> {
-            poiPoint.setHorizontalBearing(userPoint);
-            poiPoint.setVerticalBearing(userPoint);
-            poiPoint.setDistanceToUser(userPoint);
-            POIs.put(poiPoint, false);
-        });
+        //The cache file was corrupted and has been discarded
+        if(cachedPOIs == null){
+            getPOIsFromProvider(userPoint, computation);
+            return;
+        }
+        setBearings(cachedPOIs, userPoint);
         //Retrieve topography map from cache
         Pair<int[][], Double> cachedTopography = POICache.getInstance().getCachedTopography(context.getCacheDir());
-        if(cachedTopography != null){
-            applyFilteringLabeledPOIs(cachedTopography);
-        }
-        else{
-            getLabeledPOIs(userPoint);
-        }
+        runOnUiThread(computation, () -> {
+            cachedPOIs.forEach(poiPoint -> POIs.put(poiPoint, false));
+            if(cachedTopography != null){
+                applyFilteringLabeledPOIs(cachedTopography, userPoint);
+            }
+            else{
+                getLabeledPOIs(userPoint, computation);
+            }
+        });
     }
 
     /**
      * Gets the POIs for the userPoint from Provider
      * @param userPoint location of the user
+     * @param computation number of the computation
      */
     @SuppressLint("StaticFieldLeak")
-    private void getPOIsFromProvider(UserPoint userPoint){
+    private void getPOIsFromProvider(Point userPoint, int computation){
         new GeonamesHandler(userPoint,context){
             @Override
-            public void onResponseReceived(ArrayList<POI> result) {
-                if(result!=null){
-                    for(POI poi : result){
-                        POIPoint poiPoint = new POIPoint(poi);
+            public void onResponseReceived(ArrayList<POIPoint> result) {
+                if(result!=null && computation == generation.get()){
+                    for(POIPoint poiPoint : result){
                         poiPoint.setHorizontalBearing(userPoint);
                         poiPoint.setVerticalBearing(userPoint);
                         poiPoint.setDistanceToUser(userPoint);
                         POIs.put(poiPoint, false);
                     }
                     filteredPOIPoints = filterHighestPOIs(POIs);
-                    setChanged();
-                    notifyObservers();
-                    getLabeledPOIs(userPoint);
+                    POIS_TOPIC.publish(ComputePOIPoints.this);
+                    getLabeledPOIs(userPoint, computation);
                 }
             }
         }.execute();
     }
 
     /**
-     * Gets the labeled POIs and filters them.
+     * Gets the labeled POIs and filters them. Called on the UI thread.
      *
      * @param userPoint userPoint for which the labeled POIs are computed.
+     * @param computation number of the computation
      */
     @SuppressLint("StaticFieldLeak")
-    private void getLabeledPOIs(UserPoint userPoint){
+    private void getLabeledPOIs(Point userPoint, int computation){
         new DownloadTopographyTask(context){
             @Override
             public void onResponseReceived(Pair<int[][], Double> topography) {
                 super.onResponseReceived(topography);
+                if (computation != generation.get()) return;
 
-                applyFilteringLabeledPOIs(topography);
+                applyFilteringLabeledPOIs(topography, userPoint);
 
                 //Save POIs, BB and topography to the cache
-                POICache.getInstance().savePOIDataToCache(new ArrayList<>(POIs.keySet()),
+                ArrayList<POIPoint> poiPoints = new ArrayList<>(POIs.keySet());
+                worker.execute(() -> POICache.getInstance().savePOIDataToCache(poiPoints,
                         userPoint.computeBoundingBox(SettingsUtilities.getSelectedRange(context)),
                         topography,
-                        context.getCacheDir());
+                        context.getCacheDir()));
             }
         }.execute(userPoint);
     }
 
+    /**
+     * Sets the bearings and the distance of the POIPoints from the user, before they are published
+     * @param poiPoints POIPoints
+     * @param userPoint location of the user
+     */
+    private static void setBearings(List<POIPoint> poiPoints, Point userPoint) {
+        for (POIPoint poiPoint : poiPoints) {
+            poiPoint.setHorizontalBearing(userPoint);
+            poiPoint.setVerticalBearing(userPoint);
+            poiPoint.setDistanceToUser(userPoint);
+        }
+    }
+
+    /**
+     * Runs a step of a computation on the UI thread, unless the POIPoints are computed again
+     * @param computation number of the computation
+     * @param step step of the computation
+     */
+    private void runOnUiThread(int computation, Runnable step) {
+        TaskScheduler.getMainExecutor().execute(() -> {
+            if (computation == generation.get()) step.run();
+        });
+    }
+
     /**
      * Check if the user has allowed the caching in the
      * @return true if the caching is allowed in the settings
@@ -241,12 +290,29 @@ public class ComputePOIPoints extends Observable implements Observer{
     }
 
     /**
-     * Apply filtering using topography map on POI list and updates the observers.
+     * Apply filtering using topography map on POI list and publishes the POIPoints. The line of
+     * sight is computed on the COMPUTE workload and the POIPoints are published on the UI thread,
+     * unless they were computed again in the meantime.
      * @param topography topography map
+     * @param userPoint location of the computation
+     */
+    private void applyFilteringLabeledPOIs(Pair<int[][], Double> topography, Point userPoint){
+        int computation = generation.get();
+        ArrayList<POIPoint> poiPoints = new ArrayList<>(POIs.keySet());
+        TaskScheduler.getInstance()
+                .submit(TaskScheduler.Workload.COMPUTE, TaskScheduler.Priority.HIGH,
+                        () -> new LineOfSight(topography, userPoint, context).getVisiblePointsLabeled(poiPoints))
+                .thenAcceptAsync(labeled -> {
+                    if (computation == generation.get()) setLabeledPOIs(labeled);
+                }, TaskScheduler.getMainExecutor());
+    }
+
+    /**
+     * Sorts the labeled POIPoints by line of sight, filters them and publishes them
+     * @param labeled POIPoints labeled with their line of sight
      */
-    private void applyFilteringLabeledPOIs(Pair<int[][], Double> topography){
-        LineOfSight lineOfSight = new LineOfSight(topography, userPoint, context);
-        labeledPOIs = lineOfSight.getVisiblePointsLabeled(new ArrayList<>(POIs.keySet()));
+    private void setLabeledPOIs(Map<POIPoint, Boolean> labeled){
+        labeledPOIs = labeled;
         filteredLabeledPOIPoints = filterHighestPOIs(labeledPOIs);
 
         labeledPOIsInSight = new HashMap<>();
@@ -265,8 +331,7 @@ public class ComputePOIPoints extends Observable implements Observer{
 
         isLineOfSightAvailable = true;
 
-        setChanged();
-        notifyObservers();
+        POIS_TOPIC.publish(this);
     }
 
     /**
@@ -339,9 +404,20 @@ public class ComputePOIPoints extends Observable implements Observer{
         return isLineOfSightAvailable ? filteredLabeledPOIsOutOfSight : filteredPOIPoints;
     }
 
-    @Override
-    public void update(Observable o, Object arg) {
-        getPOIs(userPoint);
+    /**
+     * Computes the POIPoints around the current user location again, in the background
+     */
+    public void recompute() {
+        Point location = snapshotLocation();
+        worker.execute(() -> getPOIs(location));
+    }
+
+    /**
+     * Copies the current user location, so that a computation is not affected by the GPS updates
+     * @return copy of the user location
+     */
+    private static Point snapshotLocation() {
+        return new Point(userPoint.getLatitude(), userPoint.getLongitude(), userPoint.getAltitude());
     }
 
 }
@@ -0,0 +1,24 @@
+package ch.epfl.sdp.peakar.points;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decoder of a digital elevation model format returned by OpenTopography
+ */
+interface DemDecoder {
+
+    /**
+     * @return value of the outputFormat parameter of the OpenTopography request
+     */
+    String getOutputFormat();
+
+    /**
+     * Decodes a digital elevation model
+     * @param inputStream content of the model, closed by the caller
+     * @return decoded grid
+     * @throws DemFormatException if the content is not valid or uses an unsupported variant of the format
+     * @throws IOException if the content can't be read
+     */
+    DemGrid decode(InputStream inputStream) throws IOException;
+}
@@ -0,0 +1,27 @@
+package ch.epfl.sdp.peakar.points;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a DemDecoder when the content is not valid or uses an unsupported variant of its
+ * format, as opposed to a failure of the stream the content is read from
+ */
+class DemFormatException extends IOException {
+
+    /**
+     * Constructor of the exception
+     * @param message description of the problem
+     */
+    DemFormatException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor of the exception
+     * @param message description of the problem
+     * @param cause exception raised while decoding
+     */
+    DemFormatException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
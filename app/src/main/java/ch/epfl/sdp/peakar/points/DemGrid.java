@@ -0,0 +1,14 @@
+package ch.epfl.sdp.peakar.points;
+
+/**
+ * Decoded digital elevation model: georeferencing and elevation values, the first row being the
+ * northernmost one
+ */
+final class DemGrid {
+    int nCol;
+    int nRow;
+    double xllCorner;
+    double yllCorner;
+    double cellSize;
+    int[][] values;
+}
@@ -1,17 +1,25 @@
 package ch.epfl.sdp.peakar.points;
 
 import android.content.Context;
-import android.os.AsyncTask;
 
 import androidx.core.util.Pair;
 
+import org.osmdroid.util.BoundingBox;
+
+import java.util.concurrent.CompletableFuture;
+
+import ch.epfl.sdp.peakar.utils.SettingsUtilities;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
+
 /**
- * DownloadTopographyTask is a async task that downloads the elevation map around a point.
+ * DownloadTopographyTask is a async task that downloads the elevation map around a point. The map
+ * is read from the SRTM files of the device if they cover it, downloaded otherwise.
+ *
+ * The map is downloaded on the NETWORK workload of the TaskScheduler and delivered to
+ * onResponseReceived on the UI thread.
  *
  */
-@SuppressWarnings("deprecation")
-public class DownloadTopographyTask extends AsyncTask<Point, Void, Pair<int[][], Double>>
-        implements DownloadTopography {
+public class DownloadTopographyTask implements DownloadTopography {
 
     Context context;
 
@@ -24,16 +32,34 @@ public class DownloadTopographyTask extends AsyncTask<Point, Void, Pair<int[][],
         this.context = context;
     }
 
-    @Override
-    protected Pair<int[][], Double> doInBackground(Point... points) {
-        HttpClientTopographyMap httpClient = new HttpClientTopographyMap(points[0], context);
-        return httpClient.getTopographyMap();
+    /**
+     * Starts the download of the elevation map around a point
+     *
+     * @param point center of the map.
+     * @return future of the map, completed before onResponseReceived is called.
+     */
+    public CompletableFuture<Pair<int[][], Double>> execute(Point point) {
+        CompletableFuture<Pair<int[][], Double>> topography = TaskScheduler.getInstance()
+                .submit(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> doInBackground(point));
+        topography.thenAcceptAsync(this::onResponseReceived, TaskScheduler.getMainExecutor());
+        return topography;
     }
 
-    @Override
-    protected void onPostExecute(Pair<int[][], Double> topography) {
-        super.onPostExecute(topography);
-        onResponseReceived(topography);
+    /**
+     * Reads or downloads the elevation map, in the background
+     *
+     * @param point center of the map.
+     * @return pair with the map and its cell size.
+     */
+    protected Pair<int[][], Double> doInBackground(Point point) {
+        BoundingBox boundingBox = point.computeBoundingBox(SettingsUtilities.getSelectedRange(context));
+        HgtTerrainSource hgtTerrainSource = HgtTerrainSource.getInstance(context);
+        if (hgtTerrainSource.covers(boundingBox)) {
+            Pair<int[][], Double> topography = hgtTerrainSource.getTopographyMap(boundingBox);
+            if (topography != null) return topography;
+        }
+        HttpClientTopographyMap httpClient = new HttpClientTopographyMap(point, context);
+        return httpClient.getTopographyMap();
     }
 
     @Override
@@ -0,0 +1,45 @@
+package ch.epfl.sdp.peakar.points;
+
+/**
+ * Read access to a grid of elevations (in meters), the first row being the northernmost one.
+ *
+ * Implementations must support concurrent reads, the line of sight being computed on a parallel
+ * stream.
+ */
+public interface ElevationGrid {
+
+    /**
+     * @return number of rows of the grid
+     */
+    int getRowCount();
+
+    /**
+     * @return number of columns of the grid
+     */
+    int getColCount();
+
+    /**
+     * Gets the elevation of a cell
+     * @param row row of the cell, between 0 and getRowCount() - 1
+     * @param col column of the cell, between 0 and getColCount() - 1
+     * @return elevation of the cell (in meters)
+     */
+    int get(int row, int col);
+
+    /**
+     * Gets the size of the cell read at a position, for grids storing distant cells at a lower
+     * resolution
+     * @param row row of the cell, between 0 and getRowCount() - 1
+     * @param col column of the cell, between 0 and getColCount() - 1
+     * @return number of rows (and columns) sharing the elevation of the cell, 1 at full resolution
+     */
+    default int getStride(int row, int col) {
+        return 1;
+    }
+
+    /**
+     * Expands the grid in an array
+     * @return array of the elevations, indexed by row then column
+     */
+    int[][] toArray();
+}
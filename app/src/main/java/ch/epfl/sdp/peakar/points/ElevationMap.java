@@ -13,23 +13,34 @@ import ch.epfl.sdp.peakar.utils.SettingsUtilities;
  * ElevationMap is a class that represents the elevation map of the bounding box sorrounding the user.
  * The Elevation map is retrieved using the OpenTopography API as an AAIGrid and then converted into
  * an array of integers representing the height. Using the SRTMGL3 data a precision of 3 arc second
- * (~90 meter) is obtained.
+ * (~90 meter) is obtained. If the SRTM .hgt files covering the bounding box are stored on the
+ * device, the map is read from them instead (see HgtTerrainSource).
  *
  * A method to obtain an updated elevation map is provided.
  * A method to obtain the altitude at a certain location (using coordinates or indexes is provided).
  * A method to compute the indexes of coordinates for accessing the topography map is provided.
  * A method to obtain the map cell size in arcs/s is provided.
+ *
+ * Maps larger than COMPRESSION_THRESHOLD cells (large ranges) are kept as a
+ * CompressedElevationGrid, several times smaller than the int[][] map. Maps larger than
+ * LOD_THRESHOLD cells (ranges of 100 km) are kept as a LodElevationGrid, whose resolution decreases
+ * with the distance from the user. Only the grid kept by the map is smaller: the maps are still
+ * decoded, cached and passed to the line of sight as an int[][], so the peak memory of a download
+ * is not reduced.
  */
 public class ElevationMap {
 
     static final int MINIMUM_DISTANCE_FOR_UPDATE = 2000;    // minimum distance in m between user and old
     // bounding center to update bounding center
 
-    private final UserPoint userPoint;
+    static final int COMPRESSION_THRESHOLD = 1000000;   // number of cells above which the map is compressed
+    static final int LOD_THRESHOLD = 2000000;   // number of cells above which the resolution decreases with the distance
+
+    private final Point userPoint;
     private BoundingBox boundingBox;
     private POIPoint boundingBoxCenter;
 
-    private static int[][] topographyMap;
+    private static ElevationGrid topographyMap;
     private static double mapCellSize;
 
     private static Context context;
@@ -38,16 +49,16 @@ public class ElevationMap {
      * Constructor for the ElevationMap.
      *
      * @param topography    pair with topography map and cell size.
-     * @param userPoint     the user point around which the bounding box is computed.
+     * @param userPoint     the user location around which the bounding box is computed.
      * @param context       context of the application.
      */
     @SuppressWarnings("ConstantConditions")
-    public ElevationMap(Pair<int[][], Double> topography, UserPoint userPoint, Context context) {
+    public ElevationMap(Pair<int[][], Double> topography, Point userPoint, Context context) {
         this.userPoint = userPoint;
         Log.d("Debug", String.valueOf(SettingsUtilities.getSelectedRange(context)));
         this.boundingBox = userPoint.computeBoundingBox(SettingsUtilities.getSelectedRange(context));
         this.boundingBoxCenter = new POIPoint(this.boundingBox.getCenterWithDateLine());
-        topographyMap = topography.first;
+        topographyMap = createElevationGrid(topography.first);
         mapCellSize = topography.second;
         ElevationMap.context = context;
     }
@@ -56,26 +67,54 @@ public class ElevationMap {
      * This method handles the download of the AAIGrid and building of the matrix representing
      * the elevation map.
      */
-    private static void downloadTopographyMap(UserPoint userPoint) {
+    private static void downloadTopographyMap(Point userPoint) {
         new DownloadTopographyTask(context){
             @SuppressWarnings("ConstantConditions")
             @Override
             public void onResponseReceived(androidx.core.util.Pair<int[][], Double> topography) {
                 super.onResponseReceived(topography);
-                topographyMap = topography.first;
+                topographyMap = createElevationGrid(topography.first);
                 mapCellSize = topography.second;
             }
         }.execute(userPoint);
     }
 
     /**
-     * Public method to retrieve the elevation map.
+     * Creates the grid holding the topography map, compressing it if it has more than
+     * COMPRESSION_THRESHOLD cells and reducing the resolution of the distant cells if it has more
+     * than LOD_THRESHOLD cells.
+     *
+     * @param topographyMap downloaded topography map, can be null.
+     * @return              grid of the topography map or null.
+     */
+    static ElevationGrid createElevationGrid(int[][] topographyMap) {
+        if (topographyMap == null) return null;
+        ElevationGrid grid = new ArrayElevationGrid(topographyMap);
+        if ((long) grid.getRowCount() * grid.getColCount() > LOD_THRESHOLD) {
+            LodElevationGrid lodGrid = LodElevationGrid.build(topographyMap);
+            Log.d("3D MAP", "Reduced map from " + 4L * grid.getRowCount() * grid.getColCount() + " to "
+                    + lodGrid.getSize() + " bytes in " + lodGrid.getLevelCount() + " levels");
+            return lodGrid;
+        }
+        if ((long) grid.getRowCount() * grid.getColCount() > COMPRESSION_THRESHOLD) {
+            CompressedElevationGrid compressedGrid = CompressedElevationGrid.compress(topographyMap);
+            Log.d("3D MAP", "Compressed map from " + compressedGrid.getUncompressedSize() + " to "
+                    + compressedGrid.getCompressedSize() + " bytes");
+            return compressedGrid;
+        }
+        return grid;
+    }
+
+    /**
+     * Public method to retrieve the elevation map. A compressed map is expanded, use
+     * getAltitudeAtLocation to read single cells.
      *
      * @return  an int[][] array representing the elevation map.
      */
     public int[][] getTopographyMap() {
         updateElevationMatrix();
-        return topographyMap;
+        ElevationGrid grid = topographyMap;
+        return grid != null ? grid.toArray() : null;
     }
 
     /**
@@ -117,8 +156,8 @@ public class ElevationMap {
             int row = indexes.first;
             int col = indexes.second;
             //Log.d("3D MAP", "Accessing map at indexes (" + row + ", " + col + ")");
-            //Log.d("3D MAP", "Height = " + topographyMap[row][col]);
-            return topographyMap[row][col];
+            //Log.d("3D MAP", "Height = " + topographyMap.get(row, col));
+            return topographyMap.get(row, col);
         } else {
             return 0;
         }
@@ -134,12 +173,30 @@ public class ElevationMap {
      */
     public int getAltitudeAtLocation(int row, int col) {
 
-        int clampedRow = Math.max(0, Math.min(topographyMap.length-1, row));
-        int clampedCol = Math.max(0, Math.min(topographyMap[0].length-1, col));
+        ElevationGrid grid = topographyMap;
+        int clampedRow = Math.max(0, Math.min(grid.getRowCount()-1, row));
+        int clampedCol = Math.max(0, Math.min(grid.getColCount()-1, col));
 
         //Log.d("3D MAP", "Accessing map at indexes (" + clampedRow + ", " + clampedCol + ")");
-        //Log.d("3D MAP", "Height = " + topographyMap[clampedRow][clampedCol]);
-        return topographyMap[clampedRow][clampedCol];
+        //Log.d("3D MAP", "Height = " + grid.get(clampedRow, clampedCol));
+        return grid.get(clampedRow, clampedCol);
+
+    }
+
+    /**
+     * This method returns the size of the cell read at a given index, which grows with the
+     * distance from the user on long ranges.
+     *
+     * @param row   row to access
+     * @param col   col to access
+     * @return      number of rows (and columns) sharing the elevation of the cell.
+     */
+    public int getStride(int row, int col) {
+
+        ElevationGrid grid = topographyMap;
+        int clampedRow = Math.max(0, Math.min(grid.getRowCount()-1, row));
+        int clampedCol = Math.max(0, Math.min(grid.getColCount()-1, col));
+        return grid.getStride(clampedRow, clampedCol);
 
     }
 
@@ -152,14 +209,15 @@ public class ElevationMap {
      */
     public Pair<Integer, Integer> getIndexesFromCoordinates(double latitude, double longitude) {
 
-        if (topographyMap != null) {
+        ElevationGrid grid = topographyMap;
+        if (grid != null) {
             double distanceFromCenterRow = latitude - boundingBox.getCenterLatitude();
             double distanceFromCenterCol = longitude - boundingBox.getCenterLongitude();
-            int row = (int) (topographyMap.length / 2 - distanceFromCenterRow / mapCellSize);
-            int col = (int) (topographyMap[0].length / 2 + distanceFromCenterCol / mapCellSize);
+            int row = (int) (grid.getRowCount() / 2 - distanceFromCenterRow / mapCellSize);
+            int col = (int) (grid.getColCount() / 2 + distanceFromCenterCol / mapCellSize);
             return new Pair<>(
-                    Math.max(0, Math.min(topographyMap.length-1, row)),
-                    Math.max(0, Math.min(topographyMap[0].length-1, col)));
+                    Math.max(0, Math.min(grid.getRowCount()-1, row)),
+                    Math.max(0, Math.min(grid.getColCount()-1, col)));
         } else {
             return null;
         }
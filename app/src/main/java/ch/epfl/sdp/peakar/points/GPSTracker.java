@@ -21,10 +21,8 @@ import androidx.core.app.ActivityCompat;
  * It extends Service and implements LocationListener, that allow for the UserPoint to get
  * notified and update when a  change in location is detected
  *
- * <ul>
- * <li> MIN_DISTANCE_CHANGE_FOR_UPDATES is the minimum delta in meters that can be detected
- * <li> MIN_TIME_BW_UPDATES is the minimum time in milliseconds to pass to request a new location
- * </ul>
+ * The minimum time and distance between the updates are chosen by a GpsRateGovernor: the updates
+ * are less frequent while the user is not moving or the location is already accurate.
  * <p>
  */
 public class GPSTracker extends Service implements LocationListener {
@@ -49,11 +47,8 @@ public class GPSTracker extends Service implements LocationListener {
 
     protected  Location location; // location
 
-    // The minimum distance to change Updates in meters
-    private static final long MIN_DISTANCE_CHANGE_FOR_UPDATES = 0; // 1 meter
-
-    // The minimum time between updates in milliseconds
-    private static final long MIN_TIME_BW_UPDATES = 1000; // 1 second
+    // Chooses the minimum time and distance between updates
+    private final GpsRateGovernor rateGovernor = new GpsRateGovernor();
 
     // Declaring a Location Manager
     protected LocationManager locationManager;
@@ -144,8 +139,8 @@ public class GPSTracker extends Service implements LocationListener {
         if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED || ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
             locationManager.requestLocationUpdates(
                     selectedProvider,
-                    MIN_TIME_BW_UPDATES,
-                    MIN_DISTANCE_CHANGE_FOR_UPDATES, this);
+                    rateGovernor.getIntervalMs(),
+                    rateGovernor.getMinDistance(), this);
             if (locationManager != null) {
                 location = locationManager.getLastKnownLocation(selectedProvider);
             }
@@ -195,6 +190,14 @@ public class GPSTracker extends Service implements LocationListener {
         return location != null ? location.getAccuracy() : DEFAULT_ACC;
     }
 
+    /**
+     *
+     * @return time of the location since boot (in milliseconds), 0 for the default location
+     */
+    public long getTime() {
+        return location != null ? location.getElapsedRealtimeNanos() / 1_000_000 : 0;
+    }
+
 
     /**
      *
@@ -208,12 +211,15 @@ public class GPSTracker extends Service implements LocationListener {
     /**
      * Method from interface LocationListener.
      * Called when the location has changed and locations are being delivered in batches.
-     * Once called it will update the UserPoint that is observing this object.
+     * Once called it will adapt the update rate to the movement of the user and update the
+     * UserPoint that is observing this object.
      *
      * @param location current location
      */
     @Override
     public void onLocationChanged(Location location) {
+        rateGovernor.onLocation(location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                location.getElapsedRealtimeNanos() / 1_000_000);
         getLocation();
         userPoint.update();
     }
@@ -0,0 +1,617 @@
+package ch.epfl.sdp.peakar.points;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decoder of single band GeoTIFF elevation models.
+ *
+ * Supported variants, which cover the files written by GDAL for OpenTopography:
+ * <ul>
+ * <li>little and big endian files, stored in strips or in tiles
+ * <li>8, 16 or 32 bit integer samples, signed or unsigned, and 32 bit floating point samples
+ * <li>no compression, LZW, Deflate or PackBits compression, with or without horizontal predictor
+ * <li>georeferencing by a ModelPixelScale and a ModelTiepoint
+ * </ul>
+ *
+ * The binary samples are decoded straight into the rows of the grid, which is several times
+ * faster than parsing the same elevations from an AAIGrid, and the file is several times smaller.
+ *
+ * The file is read sequentially: only the header and the image file directory are kept, and the
+ * strips or tiles are decoded as they are read from the stream. The whole file is buffered only
+ * when the directory follows the samples or when the chunks overlap, as they can't be read in order.
+ */
+final class GeoTiffDecoder implements DemDecoder {
+
+    static final String OUTPUT_FORMAT = "GTiff";
+
+    //TIFF tags
+    private static final int IMAGE_WIDTH = 256;
+    private static final int IMAGE_LENGTH = 257;
+    private static final int BITS_PER_SAMPLE = 258;
+    private static final int COMPRESSION = 259;
+    private static final int STRIP_OFFSETS = 273;
+    private static final int SAMPLES_PER_PIXEL = 277;
+    private static final int ROWS_PER_STRIP = 278;
+    private static final int STRIP_BYTE_COUNTS = 279;
+    private static final int PREDICTOR = 317;
+    private static final int TILE_WIDTH = 322;
+    private static final int TILE_LENGTH = 323;
+    private static final int TILE_OFFSETS = 324;
+    private static final int TILE_BYTE_COUNTS = 325;
+    private static final int SAMPLE_FORMAT = 339;
+    private static final int MODEL_PIXEL_SCALE = 33550;
+    private static final int MODEL_TIEPOINT = 33922;
+
+    //Compression schemes
+    private static final int COMPRESSION_NONE = 1;
+    private static final int COMPRESSION_LZW = 5;
+    private static final int COMPRESSION_DEFLATE = 8;
+    private static final int COMPRESSION_DEFLATE_OLD = 32946;
+    private static final int COMPRESSION_PACKBITS = 32773;
+
+    private static final int PREDICTOR_NONE = 1;
+    private static final int PREDICTOR_HORIZONTAL = 2;
+
+    private static final int SAMPLE_FORMAT_UINT = 1;
+    private static final int SAMPLE_FORMAT_INT = 2;
+    private static final int SAMPLE_FORMAT_FLOAT = 3;
+
+    //Size in bytes of the TIFF field types, indexed by type
+    private static final int[] TYPE_SIZES = {0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8};
+
+    @Override
+    public String getOutputFormat() {
+        return OUTPUT_FORMAT;
+    }
+
+    @Override
+    public DemGrid decode(InputStream inputStream) throws IOException {
+        try {
+            return decode(new SequentialInput(inputStream));
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new DemFormatException("Truncated GeoTIFF", e);
+        }
+    }
+
+    /**
+     * Decodes the first image of a TIFF file
+     * @param input content of the file
+     * @return decoded grid
+     * @throws DemFormatException if the file is not valid or not supported
+     * @throws IOException if the file can't be read
+     */
+    private static DemGrid decode(SequentialInput input) throws IOException {
+        input.readUpTo(8);
+        byte[] header = input.data;
+        if (header[0] == 'I' && header[1] == 'I') input.order = ByteOrder.LITTLE_ENDIAN;
+        else if (header[0] == 'M' && header[1] == 'M') input.order = ByteOrder.BIG_ENDIAN;
+        else throw new DemFormatException("Not a TIFF file");
+        ByteBuffer buffer = input.buffer();
+        if (buffer.getShort(2) != 42) throw new DemFormatException("Unsupported TIFF version " + buffer.getShort(2));
+
+        Map<Integer, double[]> fields = readDirectory(input, buffer.getInt(4) & 0xFFFFFFFFL);
+
+        DemGrid grid = new DemGrid();
+        grid.nCol = (int) required(fields, IMAGE_WIDTH)[0];
+        grid.nRow = (int) required(fields, IMAGE_LENGTH)[0];
+        int bitsPerSample = (int) optional(fields, BITS_PER_SAMPLE, 1);
+        int sampleFormat = (int) optional(fields, SAMPLE_FORMAT, SAMPLE_FORMAT_UINT);
+        int compression = (int) optional(fields, COMPRESSION, COMPRESSION_NONE);
+        int predictor = (int) optional(fields, PREDICTOR, PREDICTOR_NONE);
+        if (optional(fields, SAMPLES_PER_PIXEL, 1) != 1)
+            throw new DemFormatException("Only single band GeoTIFF are supported");
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 32)
+            throw new DemFormatException("Unsupported sample size " + bitsPerSample);
+        if (sampleFormat == SAMPLE_FORMAT_FLOAT ? bitsPerSample != 32 || predictor != PREDICTOR_NONE
+                : sampleFormat != SAMPLE_FORMAT_UINT && sampleFormat != SAMPLE_FORMAT_INT)
+            throw new DemFormatException("Unsupported sample format " + sampleFormat);
+        if (predictor != PREDICTOR_NONE && predictor != PREDICTOR_HORIZONTAL)
+            throw new DemFormatException("Unsupported predictor " + predictor);
+        if (grid.nRow <= 0 || grid.nCol <= 0) throw new DemFormatException("Empty GeoTIFF");
+
+        double[] scale = required(fields, MODEL_PIXEL_SCALE);
+        double[] tiePoint = required(fields, MODEL_TIEPOINT);
+        if (scale.length < 2 || tiePoint.length < 6 || scale[0] <= 0)
+            throw new DemFormatException("Invalid GeoTIFF georeferencing");
+        grid.cellSize = scale[0];
+        grid.xllCorner = tiePoint[3] - tiePoint[0] * scale[0];
+        grid.yllCorner = tiePoint[4] + tiePoint[1] * scale[1] - grid.nRow * scale[1];
+
+        //Strips are tiles as wide as the image
+        boolean tiled = fields.containsKey(TILE_WIDTH);
+        int chunkWidth = tiled ? (int) required(fields, TILE_WIDTH)[0] : grid.nCol;
+        int chunkHeight = tiled ? (int) required(fields, TILE_LENGTH)[0]
+                : (int) Math.min(optional(fields, ROWS_PER_STRIP, grid.nRow), grid.nRow);
+        double[] offsets = required(fields, tiled ? TILE_OFFSETS : STRIP_OFFSETS);
+        double[] byteCounts = required(fields, tiled ? TILE_BYTE_COUNTS : STRIP_BYTE_COUNTS);
+        if (chunkWidth <= 0 || chunkHeight <= 0) throw new DemFormatException("Invalid GeoTIFF layout");
+        int chunksAcross = (grid.nCol + chunkWidth - 1) / chunkWidth;
+        int chunksDown = (grid.nRow + chunkHeight - 1) / chunkHeight;
+        if (offsets.length < chunksAcross * chunksDown || byteCounts.length < offsets.length)
+            throw new DemFormatException("Missing GeoTIFF chunks");
+
+        int bytesPerSample = bitsPerSample / 8;
+        byte[] chunk = new byte[chunkWidth * chunkHeight * bytesPerSample];
+        ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk).order(input.order);
+        grid.values = new int[grid.nRow][grid.nCol];
+        for (int chunkIndex : readOrder(input, offsets, byteCounts, chunksAcross * chunksDown)) {
+            int firstRow = chunkIndex / chunksAcross * chunkHeight;
+            int firstCol = chunkIndex % chunksAcross * chunkWidth;
+            //The last strip only contains the remaining rows, tiles are always complete
+            int rows = tiled ? chunkHeight : Math.min(chunkHeight, grid.nRow - firstRow);
+            int length = rows * chunkWidth * bytesPerSample;
+            long offset = (long) offsets[chunkIndex];
+            int byteCount = (int) byteCounts[chunkIndex];
+            if (offset + byteCount <= input.length) {
+                decompress(input.data, (int) offset, byteCount, compression, chunk, length);
+            } else {
+                decompress(input.readChunk(offset, byteCount), 0, byteCount, compression, chunk, length);
+            }
+
+            for (int row = 0; row < rows && firstRow + row < grid.nRow; row++) {
+                int[] gridRow = grid.values[firstRow + row];
+                int position = row * chunkWidth * bytesPerSample;
+                long previous = 0;
+                for (int col = 0; col < chunkWidth; col++, position += bytesPerSample) {
+                    long sample = readSample(chunkBuffer, position, bytesPerSample);
+                    if (predictor == PREDICTOR_HORIZONTAL) {
+                        sample = (sample + previous) & ((1L << bitsPerSample) - 1);
+                        previous = sample;
+                    }
+                    if (firstCol + col < grid.nCol)
+                        gridRow[firstCol + col] = toElevation(sample, bitsPerSample, sampleFormat);
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Orders the strips or tiles by offset, so that they are read sequentially from the stream.
+     * If they can't be read in order, the rest of the file is buffered.
+     * @param input content of the file, read up to the end of the image file directory
+     * @param offsets offsets of the chunks
+     * @param byteCounts sizes of the chunks
+     * @param chunkCount number of chunks of the image
+     * @return indices of the chunks in reading order
+     * @throws DemFormatException if a chunk is out of the file
+     * @throws IOException if the file can't be read
+     */
+    private static Integer[] readOrder(SequentialInput input, double[] offsets, double[] byteCounts, int chunkCount) throws IOException {
+        Integer[] order = new Integer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            if (offsets[i] < 0 || byteCounts[i] < 0 || offsets[i] + byteCounts[i] > Integer.MAX_VALUE)
+                throw new DemFormatException("GeoTIFF chunk out of the file");
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(offsets[a], offsets[b]));
+
+        //The chunks already read with the directory are decoded from memory, the others must follow each other
+        long end = input.length;
+        for (int i : order) {
+            if (offsets[i] + byteCounts[i] <= input.length) continue;
+            if (offsets[i] < end) {
+                input.readAll();
+                break;
+            }
+            end = (long) (offsets[i] + byteCounts[i]);
+        }
+        return order;
+    }
+
+    /**
+     * Reads the fields of an image file directory. Numeric fields are converted to doubles, which
+     * represent exactly every 32 bit integer, the other fields are ignored.
+     * @param input content of the file, kept in memory up to the end of the directory and of its values
+     * @param offset offset of the directory
+     * @return values of the fields by tag
+     * @throws IOException if the file can't be read
+     */
+    private static Map<Integer, double[]> readDirectory(SequentialInput input, long offset) throws IOException {
+        input.readUpTo(offset + 2);
+        int entryCount = input.buffer().getShort((int) offset) & 0xFFFF;
+        input.readUpTo(offset + 2 + entryCount * 12L);
+        //The values that don't fit in the entries usually follow the directory
+        ByteBuffer buffer = input.buffer();
+        long valuesEnd = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int entry = (int) offset + 2 + i * 12;
+            int type = buffer.getShort(entry + 2) & 0xFFFF;
+            long count = buffer.getInt(entry + 4) & 0xFFFFFFFFL;
+            if (isNumeric(type, count) && count * TYPE_SIZES[type] > 4)
+                valuesEnd = Math.max(valuesEnd, (buffer.getInt(entry + 8) & 0xFFFFFFFFL) + count * TYPE_SIZES[type]);
+        }
+        input.readUpTo(valuesEnd);
+        buffer = input.buffer();
+
+        Map<Integer, double[]> fields = new HashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            int entry = (int) offset + 2 + i * 12;
+            int tag = buffer.getShort(entry) & 0xFFFF;
+            int type = buffer.getShort(entry + 2) & 0xFFFF;
+            long count = buffer.getInt(entry + 4) & 0xFFFFFFFFL;
+            if (!isNumeric(type, count)) continue;
+            //Values fitting in 4 bytes are stored in the entry itself
+            int valueOffset = count * TYPE_SIZES[type] <= 4 ? entry + 8 : buffer.getInt(entry + 8);
+            double[] values = new double[(int) count];
+            for (int j = 0; j < count; j++) {
+                values[j] = readValue(buffer, type, valueOffset + j * TYPE_SIZES[type]);
+            }
+            fields.put(tag, values);
+        }
+        return fields;
+    }
+
+    /**
+     * @param type TIFF type of a field
+     * @param count number of values of the field
+     * @return true if the field is read as numbers
+     */
+    private static boolean isNumeric(int type, long count) {
+        return type != 0 && type != 2 && type != 7 && type < TYPE_SIZES.length && count <= Integer.MAX_VALUE / 8;
+    }
+
+    /**
+     * Reads a numeric field value
+     * @param buffer content of the file
+     * @param type TIFF type of the value
+     * @param position position of the value
+     * @return value
+     */
+    private static double readValue(ByteBuffer buffer, int type, int position) {
+        switch (type) {
+            case 1:
+                return buffer.get(position) & 0xFF;
+            case 3:
+                return buffer.getShort(position) & 0xFFFF;
+            case 4:
+                return buffer.getInt(position) & 0xFFFFFFFFL;
+            case 5:
+                return (buffer.getInt(position) & 0xFFFFFFFFL) / (double) (buffer.getInt(position + 4) & 0xFFFFFFFFL);
+            case 6:
+                return buffer.get(position);
+            case 8:
+                return buffer.getShort(position);
+            case 9:
+                return buffer.getInt(position);
+            case 10:
+                return buffer.getInt(position) / (double) buffer.getInt(position + 4);
+            case 11:
+                return buffer.getFloat(position);
+            default:
+                return buffer.getDouble(position);
+        }
+    }
+
+    /**
+     * Decompresses a strip or a tile
+     * @param data content of the file, or of the chunk
+     * @param offset offset of the compressed chunk
+     * @param byteCount size of the compressed chunk
+     * @param compression compression scheme
+     * @param chunk decompressed chunk
+     * @param length expected size of the decompressed chunk
+     * @throws DemFormatException if the chunk is not valid or the compression is not supported
+     */
+    private static void decompress(byte[] data, int offset, int byteCount, int compression, byte[] chunk, int length) throws IOException {
+        if (offset < 0 || byteCount < 0 || offset + byteCount > data.length)
+            throw new DemFormatException("GeoTIFF chunk out of the file");
+        int decompressed;
+        switch (compression) {
+            case COMPRESSION_NONE:
+                decompressed = Math.min(byteCount, length);
+                System.arraycopy(data, offset, chunk, 0, decompressed);
+                break;
+            case COMPRESSION_DEFLATE:
+            case COMPRESSION_DEFLATE_OLD:
+                decompressed = inflate(data, offset, byteCount, chunk, length);
+                break;
+            case COMPRESSION_LZW:
+                decompressed = Lzw.decode(data, offset, byteCount, chunk, length);
+                break;
+            case COMPRESSION_PACKBITS:
+                decompressed = unpackBits(data, offset, byteCount, chunk, length);
+                break;
+            default:
+                throw new DemFormatException("Unsupported GeoTIFF compression " + compression);
+        }
+        if (decompressed < length) throw new DemFormatException("Truncated GeoTIFF chunk");
+    }
+
+    /**
+     * Decompresses a Deflate chunk
+     * @return number of bytes decompressed
+     */
+    private static int inflate(byte[] data, int offset, int byteCount, byte[] chunk, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, byteCount);
+            int decompressed = 0;
+            while (decompressed < length && !inflater.finished()) {
+                int inflated = inflater.inflate(chunk, decompressed, length - decompressed);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                decompressed += inflated;
+            }
+            return decompressed;
+        } catch (DataFormatException e) {
+            throw new DemFormatException("Invalid Deflate chunk", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decompresses a PackBits chunk
+     * @return number of bytes decompressed
+     */
+    private static int unpackBits(byte[] data, int offset, int byteCount, byte[] chunk, int length) {
+        int position = offset;
+        int end = offset + byteCount;
+        int decompressed = 0;
+        while (position < end && decompressed < length) {
+            int header = data[position++];
+            if (header >= 0) {
+                int count = Math.min(Math.min(header + 1, end - position), length - decompressed);
+                System.arraycopy(data, position, chunk, decompressed, count);
+                position += header + 1;
+                decompressed += count;
+            } else if (header != -128 && position < end) {
+                int count = Math.min(1 - header, length - decompressed);
+                for (int i = 0; i < count; i++) chunk[decompressed++] = data[position];
+                position++;
+            }
+        }
+        return decompressed;
+    }
+
+    /**
+     * Reads the raw bits of a sample
+     * @return the sample as an unsigned integer
+     */
+    private static long readSample(ByteBuffer chunk, int position, int bytesPerSample) {
+        switch (bytesPerSample) {
+            case 1:
+                return chunk.get(position) & 0xFFL;
+            case 2:
+                return chunk.getShort(position) & 0xFFFFL;
+            default:
+                return chunk.getInt(position) & 0xFFFFFFFFL;
+        }
+    }
+
+    /**
+     * Converts the raw bits of a sample to an elevation
+     * @param sample raw bits of the sample
+     * @param bitsPerSample size of the sample
+     * @param sampleFormat format of the sample
+     * @return elevation (in meters)
+     */
+    private static int toElevation(long sample, int bitsPerSample, int sampleFormat) {
+        if (sampleFormat == SAMPLE_FORMAT_FLOAT) return Math.round(Float.intBitsToFloat((int) sample));
+        if (sampleFormat == SAMPLE_FORMAT_UINT) return (int) Math.min(sample, Integer.MAX_VALUE);
+        switch (bitsPerSample) {
+            case 8:
+                return (byte) sample;
+            case 16:
+                return (short) sample;
+            default:
+                return (int) sample;
+        }
+    }
+
+    private static double[] required(Map<Integer, double[]> fields, int tag) throws IOException {
+        double[] values = fields.get(tag);
+        if (values == null || values.length == 0) throw new DemFormatException("Missing GeoTIFF tag " + tag);
+        return values;
+    }
+
+    private static double optional(Map<Integer, double[]> fields, int tag, double defaultValue) {
+        double[] values = fields.get(tag);
+        return values == null || values.length == 0 ? defaultValue : values[0];
+    }
+
+    /**
+     * Forward only view of the file: the beginning of the file is kept in memory up to the end of
+     * the image file directory, the strips or tiles after it are read one at a time
+     */
+    private static final class SequentialInput {
+        private static final int INITIAL_SIZE = 1 << 12;
+        private static final int SKIP_SIZE = 1 << 13;
+
+        private final InputStream inputStream;
+        //Beginning of the file
+        private byte[] data = new byte[INITIAL_SIZE];
+        private int length;
+        //Position of the stream, after the beginning of the file
+        private long position;
+        private byte[] chunk = new byte[0];
+        private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+        private SequentialInput(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * @return beginning of the file, in the byte order of the file
+         */
+        private ByteBuffer buffer() {
+            return ByteBuffer.wrap(data, 0, length).order(order);
+        }
+
+        /**
+         * Keeps the beginning of the file in memory up to an offset
+         * @param end offset up to which the file is kept
+         * @throws DemFormatException if the file is shorter
+         * @throws IOException if the file can't be read
+         */
+        private void readUpTo(long end) throws IOException {
+            if (end <= length) return;
+            if (end > Integer.MAX_VALUE - 8) throw new DemFormatException("GeoTIFF directory out of the file");
+            if (end > data.length) data = Arrays.copyOf(data, (int) Math.max(end, Math.min(2L * data.length, Integer.MAX_VALUE - 8)));
+            while (length < end) {
+                int read = inputStream.read(data, length, data.length - length);
+                if (read == -1) throw new DemFormatException("Truncated GeoTIFF");
+                length += read;
+            }
+            position = length;
+        }
+
+        /**
+         * Keeps the rest of the file in memory
+         * @throws IOException if the file can't be read
+         */
+        private void readAll() throws IOException {
+            int read;
+            do {
+                if (length == data.length) {
+                    if (length >= Integer.MAX_VALUE - 8) throw new DemFormatException("GeoTIFF too large");
+                    data = Arrays.copyOf(data, (int) Math.min(2L * data.length, Integer.MAX_VALUE - 8));
+                }
+                read = inputStream.read(data, length, data.length - length);
+                if (read > 0) length += read;
+            } while (read != -1);
+            position = length;
+        }
+
+        /**
+         * Reads a strip or a tile following the ones already read
+         * @param offset offset of the chunk
+         * @param byteCount size of the chunk
+         * @return content of the chunk, starting at 0, valid until the next chunk is read
+         * @throws DemFormatException if the file is shorter
+         * @throws IOException if the file can't be read
+         */
+        private byte[] readChunk(long offset, int byteCount) throws IOException {
+            //A chunk before the stream position is partly out of a buffered file
+            if (offset < position) throw new DemFormatException("GeoTIFF chunk out of the file");
+            byte[] skipped = new byte[(int) Math.min(SKIP_SIZE, offset - position)];
+            while (position < offset) {
+                int read = inputStream.read(skipped, 0, (int) Math.min(skipped.length, offset - position));
+                if (read == -1) throw new DemFormatException("GeoTIFF chunk out of the file");
+                position += read;
+            }
+            //The chunk grows as it is read, so that an invalid size does not allocate more than the file
+            int read = 0;
+            while (read < byteCount) {
+                if (read == chunk.length)
+                    chunk = Arrays.copyOf(chunk, (int) Math.min(byteCount, Math.max(INITIAL_SIZE, 2L * chunk.length)));
+                int count = inputStream.read(chunk, read, Math.min(chunk.length, byteCount) - read);
+                if (count == -1) throw new DemFormatException("GeoTIFF chunk out of the file");
+                read += count;
+            }
+            position += byteCount;
+            return chunk;
+        }
+    }
+
+    /**
+     * TIFF variant of the LZW decompression: codes of 9 to 12 bits, most significant bit first,
+     * with the code size increased one code early
+     */
+    private static final class Lzw {
+        private static final int CLEAR_CODE = 256;
+        private static final int END_OF_INFORMATION = 257;
+        private static final int FIRST_CODE = 258;
+        private static final int MAX_CODES = 4096;
+
+        private final int[] prefix = new int[MAX_CODES];
+        private final byte[] suffix = new byte[MAX_CODES];
+        private final byte[] first = new byte[MAX_CODES];
+        private final int[] lengths = new int[MAX_CODES];
+        private int nextCode;
+        private int codeSize;
+
+        private final byte[] output;
+        private final int length;
+        private int written;
+
+        private Lzw(byte[] output, int length) {
+            this.output = output;
+            this.length = length;
+            for (int i = 0; i < 256; i++) {
+                suffix[i] = (byte) i;
+                first[i] = (byte) i;
+                lengths[i] = 1;
+            }
+            reset();
+        }
+
+        /**
+         * Decompresses a LZW chunk
+         * @return number of bytes decompressed
+         * @throws DemFormatException if a code is not valid
+         */
+        static int decode(byte[] data, int offset, int byteCount, byte[] output, int length) throws IOException {
+            Lzw lzw = new Lzw(output, length);
+            long bits = 0;
+            int bitCount = 0;
+            int position = offset;
+            int end = offset + byteCount;
+            int previous = -1;
+            while (lzw.written < length) {
+                while (bitCount < lzw.codeSize && position < end) {
+                    bits = (bits << 8) | (data[position++] & 0xFF);
+                    bitCount += 8;
+                }
+                if (bitCount < lzw.codeSize) break;
+                int code = (int) (bits >>> (bitCount - lzw.codeSize)) & ((1 << lzw.codeSize) - 1);
+                bitCount -= lzw.codeSize;
+
+                if (code == END_OF_INFORMATION) break;
+                if (code == CLEAR_CODE) {
+                    lzw.reset();
+                    previous = -1;
+                    continue;
+                }
+                if (previous == -1) {
+                    if (code >= CLEAR_CODE) throw new DemFormatException("Invalid LZW code " + code);
+                    lzw.write(code);
+                } else if (code < lzw.nextCode) {
+                    lzw.write(code);
+                    lzw.add(previous, lzw.first[code]);
+                } else if (code == lzw.nextCode) {
+                    lzw.add(previous, lzw.first[previous]);
+                    lzw.write(code);
+                } else {
+                    throw new DemFormatException("Invalid LZW code " + code);
+                }
+                previous = code;
+            }
+            return lzw.written;
+        }
+
+        private void reset() {
+            nextCode = FIRST_CODE;
+            codeSize = 9;
+        }
+
+        private void add(int prefixCode, byte lastByte) {
+            if (nextCode >= MAX_CODES) return;
+            prefix[nextCode] = prefixCode;
+            suffix[nextCode] = lastByte;
+            first[nextCode] = first[prefixCode];
+            lengths[nextCode] = lengths[prefixCode] + 1;
+            nextCode++;
+            if (nextCode >= (1 << codeSize) - 1 && codeSize < 12) codeSize++;
+        }
+
+        private void write(int code) {
+            int codeLength = lengths[code];
+            int end = Math.min(written + codeLength, length);
+            //The string of a code is written backwards from its last byte
+            for (int i = written + codeLength - 1; i >= written; i--) {
+                if (i < end) output[i] = suffix[code];
+                code = prefix[code];
+            }
+            written = end;
+        }
+    }
+}
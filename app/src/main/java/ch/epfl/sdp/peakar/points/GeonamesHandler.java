@@ -2,48 +2,42 @@ package ch.epfl.sdp.peakar.points;
 
 
 import android.content.Context;
-import android.os.AsyncTask;
 import android.util.Log;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
-
 import org.osmdroid.bonuspack.location.OverpassAPIProvider;
-import org.osmdroid.bonuspack.location.POI;
 import org.osmdroid.bonuspack.utils.BonusPackHelper;
 import org.osmdroid.util.BoundingBox;
-import org.osmdroid.util.GeoPoint;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
 
+import ch.epfl.sdp.peakar.utils.CachedHttpClient;
 import ch.epfl.sdp.peakar.utils.SettingsUtilities;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
 
 
-public abstract class GeonamesHandler extends AsyncTask<Void,Void,ArrayList<POI>> implements Geonames {
+/**
+ * Queries the named peaks around a point on the NETWORK workload of the TaskScheduler, and
+ * delivers them to onResponseReceived on the UI thread.
+ */
+public abstract class GeonamesHandler implements Geonames {
 
     //Query Constants
     public static final int DEFAULT_RANGE_IN_KM = 20;
-    private static final int DEFAULT_QUERY_MAX_RESULT = 300;
-    private static final int DEFAULT_QUERY_TIMEOUT = 10;
-
-    private static final int DEFAULT_NUMBER_OF_RETRY = 2;
-
-    //List containing query POI's
-    private ArrayList<POI> POIs;
-
-    // API used to retrieve peaks POI
-    private final OverpassAPIProvider poiProvider;
+    static final int DEFAULT_QUERY_MAX_RESULT = 300;
+    static final int DEFAULT_QUERY_TIMEOUT = 10;
+    private static final String PEAK_TAG = "natural=peak";
 
     private final Point userLocation;
     private final double rangeInKm;
     private final int queryMaxResults;
     private final int queryTimeout;
-    private String queryUrl;
-    private int retryNbr;
+    private BoundingBox boundingBox;
 
     /**
      * Initializes provider
@@ -53,24 +47,20 @@ public abstract class GeonamesHandler extends AsyncTask<Void,Void,ArrayList<POI>
         if(userLocation == null)
             throw new IllegalArgumentException("UserPoint user location can't be null");
         this.userLocation = userLocation;
-        this.poiProvider = new OverpassAPIProvider();
-        this.POIs = new ArrayList<>();
 
         //Retrieve the range from the shared preferences
         this.rangeInKm = SettingsUtilities.getSelectedRange(context);
         this.queryMaxResults = DEFAULT_QUERY_MAX_RESULT;
         this.queryTimeout = DEFAULT_QUERY_TIMEOUT;
-        this.retryNbr = 0;
     }
 
 
     /**
      * Class constructor.
-     * Initialises query parameters and OverPassAPIProvider
-     * Initialises result array list
+     * Initialises query parameters
      * @param userLocation user location (center of the query bounding box)
      * @param boundingBoxRangeKm range around the user location to compute the bounding box
-     * @param queryMaxResults max results that the query should return (please do not exceed 500)
+     * @param queryMaxResults max number of peaks returned, the highest ones being kept
      * @param queryTimeout query timeout
      */
     public GeonamesHandler(Point userLocation, double boundingBoxRangeKm, int queryMaxResults, int queryTimeout){
@@ -87,54 +77,51 @@ public abstract class GeonamesHandler extends AsyncTask<Void,Void,ArrayList<POI>
         this.rangeInKm = boundingBoxRangeKm;
         this.queryMaxResults = queryMaxResults;
         this.queryTimeout = queryTimeout;
-        this.poiProvider = new OverpassAPIProvider();
-        this.POIs = new ArrayList<>();
-        this.retryNbr = 0;
     }
 
     /**
-     * onPreExecute method.
-     * Setup bounding box for the POI query
-     * Creates the url query
+     * Starts the query.
+     * Setup bounding box for the POI query, then queries the peaks in the background
+     * @return this handler
      */
-    @Override
-    protected void onPreExecute() {
-        super.onPreExecute();
-        BoundingBox boundingBox = userLocation.computeBoundingBox(rangeInKm);
-        queryUrl = poiProvider.urlForTagSearchKml("natural=peak", boundingBox,queryMaxResults,queryTimeout);
+    public GeonamesHandler execute() {
+        boundingBox = userLocation.computeBoundingBox(rangeInKm);
+        TaskScheduler.getInstance()
+                .submit(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, this::doInBackground)
+                .thenAcceptAsync(this::onResponseReceived, TaskScheduler.getMainExecutor());
+        return this;
     }
+
     /**
-     * filterPOI : filter out point of interest list. The result list contains only peaks
-     * @param pois list containing all points of interests around Geopoint
-    */
-    @Override
-    protected void onPostExecute(ArrayList<POI> pois) {
-        super.onPostExecute(pois);
-        if(pois != null) {
-            //Filter out POI where the name or altitude is null
-            POIs = pois.stream().filter(point -> point.mType != null && point.mLocation.getAltitude() != 0).collect(Collectors.toCollection(ArrayList::new));
-            onResponseReceived(POIs);
-        }
-        else onResponseReceived(null);
+     * Generates the URL of the peaks query in a bounding box
+     * @param boundingBox bounding box of the query
+     * @param queryMaxResults max results that the query should return
+     * @param queryTimeout query timeout
+     * @return query URL
+     */
+    static String generateQueryUrl(BoundingBox boundingBox, int queryMaxResults, int queryTimeout) {
+        return new OverpassAPIProvider().urlForTagSearchKml(PEAK_TAG, boundingBox, queryMaxResults, queryTimeout);
     }
 
     /**
-     * returns the query result
-     * @param voids nothing
-     * @return list of POI
+     * returns the query result.
+     * The peaks are read from the tiles of the POITileCache: only the tiles which are not cached
+     * yet are queried.
+     * @return list of named peaks with an altitude, at most queryMaxResults (the highest ones)
      */
-    @Override
-    protected ArrayList<POI> doInBackground(Void... voids) {
-        ArrayList<POI> resList = null;
-
-        while(this.retryNbr<= DEFAULT_NUMBER_OF_RETRY){
-            try {
-                resList = getPOIsFromUrl(queryUrl);
-                break;
-            } catch (Exception e) {
-                //If the HTTP request fails retry (at most DEFAULT_NUMBER_OF_RETRY times)
-                this.retryNbr++;
-            }
+    protected ArrayList<POIPoint> doInBackground() {
+        ArrayList<POIPoint> resList;
+        try {
+            //The HTTP client retries the failed tiles with a backoff
+            resList = POITileCache.getInstance().getPOIs(boundingBox,
+                    CachedHttpClient.MAX_ATTEMPTS * (CachedHttpClient.CONNECT_TIMEOUT_MS + queryTimeout * 1000L));
+        } catch (IOException e) {
+            Log.e(BonusPackHelper.LOG_TAG, "OverpassAPIProvider: request failed. " + e.getMessage());
+            return null;
+        }
+        if (resList.size() > queryMaxResults) {
+            resList.sort((first, second) -> Double.compare(second.getAltitude(), first.getAltitude()));
+            resList = new ArrayList<>(resList.subList(0, queryMaxResults));
         }
         return resList;
     }
@@ -142,98 +129,27 @@ public abstract class GeonamesHandler extends AsyncTask<Void,Void,ArrayList<POI>
 
     /**
      * Search for POI.
-     * @param url full URL request, built with #urlForPOISearch or equivalent.
+     * The response is parsed while it is downloaded: only the peaks kept are held in memory.
+     * @param url full URL request, built with #generateQueryUrl or equivalent.
      * Main requirements: <br>
      * - Content must be in JSON format<br>
-     * - ways and relations must contain the "center" element. <br>
-     * @return elements as a list of POI
+     * @param queryTimeout timeout of the query (in seconds)
+     * @return named peaks with an altitude
+     * @throws IOException if the request fails or the response is not valid
      */
-    private ArrayList<POI> getPOIsFromUrl(String url) throws Exception {
-        Log.d(BonusPackHelper.LOG_TAG, "OverpassAPIProvider:getPOIsFromUrl:"+url);
-        String jString = BonusPackHelper.requestStringFromUrl(url);
-        if (jString == null) {
-            Log.e(BonusPackHelper.LOG_TAG, "OverpassAPIProvider: request failed.");
-            throw new Exception("OverpassAPIProvider: request failed. --> requestStringFromUrl");
-        }
-        try {
-            //parse JSON and build POIs
-            JsonElement json = JsonParser.parseString(jString);
-            JsonObject jResult = json.getAsJsonObject();
-            JsonArray jElements = jResult.get("elements").getAsJsonArray();
-            ArrayList<POI> pois = new ArrayList<>(jElements.size());
-            for (JsonElement j:jElements){
-                JsonObject jo = j.getAsJsonObject();
-                POI poi = new POI(POI.POI_SERVICE_OVERPASS_API);
-                poi.mId = jo.get("id").getAsLong();
-                poi.mCategory = jo.get("type").getAsString();
-                if (jo.has("tags")){
-                    JsonObject jTags = jo.get("tags").getAsJsonObject();
-                    poi.mType = tagValueFromJson("name", jTags);
-                    //Try to set a relevant POI type by searching for an OSM commonly used tag key, and getting its value:
-                    poi.mDescription = tagValueFromJsonNotNull("natural", jTags);
-                    //remove first "," (quite ugly, I know)
-                    if (poi.mDescription.length()>0)
-                        poi.mDescription = poi.mDescription.substring(1);
-                    //We could try to replicate Nominatim/lib/lib.php/getClassTypes(), but it sounds crazy for the added value.
-                    poi.mUrl = tagValueFromJson("website", jTags);
-
-                }
-                if ("node".equals(poi.mCategory)){
-                    poi.mLocation = geoPointFromJson(jo);
-                }
-                if (poi.mLocation != null)
-                    pois.add(poi);
-            }
-            return pois;
-        } catch (JsonSyntaxException e) {
-            Log.e(BonusPackHelper.LOG_TAG, "OverpassAPIProvider: parsing error.");
-            return null;
+    static ArrayList<POIPoint> fetchPOIs(String url, int queryTimeout) throws IOException {
+        Log.d(BonusPackHelper.LOG_TAG, "OverpassAPIProvider:fetchPOIs:"+url);
+        //The server may take the whole query timeout before sending the response
+        int readTimeoutMs = CachedHttpClient.CONNECT_TIMEOUT_MS + queryTimeout * 1000;
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                CachedHttpClient.getInstance().get(new URL(url), readTimeoutMs), StandardCharsets.UTF_8))) {
+            return OverpassParser.parse(reader);
         }
     }
 
     /**
-     * Extract value identified by key of JSON
-     * @param key key tag for value extraction
-     * @param jTags JSON object containing tags
-     * @return Value
-     */
-    private String tagValueFromJson(String key, JsonObject jTags){
-        JsonElement jTag = jTags.get(key);
-        if (jTag == null)
-            return null;
-        else
-            return jTag.getAsString();
-    }
-
-    /**
-     * Extract value identified by key of JSON with null handling
-     * @param key key tag for value extraction
-     * @param jTags JSON object containing tags
-     * @return Value
-     */
-    private String tagValueFromJsonNotNull(String key, JsonObject jTags){
-        String v = tagValueFromJson(key, jTags);
-        return (v != null ? ","+v : "");
-    }
-
-    /**
-     * Create location Geopoint ot of Json
-     * @param jLatLon JSON object containing lat and long
-     * @return Location of POI
-     */
-    private GeoPoint geoPointFromJson(JsonObject jLatLon){
-        double lat = jLatLon.get("lat").getAsDouble();
-        double lon = jLatLon.get("lon").getAsDouble();
-        String eleStr = (tagValueFromJsonNotNull("ele",jLatLon.get("tags").getAsJsonObject())).replace(",","");
-        if(eleStr.isEmpty())
-            return new GeoPoint(lat, lon);
-        double alt = Double.parseDouble(eleStr);
-        return new GeoPoint(lat, lon,alt);
-    }
-
-    /**
-     * Callback function called when POI list is received
-     * @param result ArrayList containing POI
+     * Callback function called when the peaks are received
+     * @param result ArrayList containing named peaks with an altitude, null if the query failed
      */
-    public abstract void onResponseReceived(ArrayList<POI> result);
+    public abstract void onResponseReceived(ArrayList<POIPoint> result);
 }
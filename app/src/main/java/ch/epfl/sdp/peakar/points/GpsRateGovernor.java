@@ -0,0 +1,80 @@
+package ch.epfl.sdp.peakar.points;
+
+/**
+ * Chooses the interval and the minimum distance of the location updates depending on the movement
+ * of the user and the accuracy of the locations.
+ *
+ * The user is stationary once the locations stayed for STATIONARY_TIME_MS within
+ * the accuracy of the location where the user stopped (at least STATIONARY_RADIUS meters). The
+ * updates are then requested every STATIONARY_INTERVAL_MS, or every ACCURATE_INTERVAL_MS if the
+ * accuracy is already good, and only after a displacement of STATIONARY_MIN_DISTANCE meters: the
+ * first location out of the radius restores the interval of a moving user.
+ */
+final class GpsRateGovernor {
+
+    //Intervals between the updates in milliseconds
+    static final long MOVING_INTERVAL_MS = 1000;
+    static final long MOVING_ACCURATE_INTERVAL_MS = 2000;
+    static final long STATIONARY_INTERVAL_MS = 5000;
+    static final long ACCURATE_INTERVAL_MS = 15000;
+
+    //Minimum distances between the updates in meters
+    static final float MOVING_MIN_DISTANCE = 0;
+    static final float STATIONARY_MIN_DISTANCE = 5;
+
+    //Accuracy in meters under which the location is good
+    static final float GOOD_ACCURACY = 15;
+    //Time in milliseconds and radius in meters for the user to be stationary
+    static final long STATIONARY_TIME_MS = 30000;
+    static final double STATIONARY_RADIUS = 10;
+
+    //Location where the user stopped
+    private final Point anchor = new Point(0, 0, 0);
+    private long anchorTime;
+    private boolean hasAnchor;
+
+    private boolean stationary;
+    private boolean accurate;
+
+    /**
+     * Updates the movement of the user with a new location
+     * @param latitude latitude of the location in degrees
+     * @param longitude longitude of the location in degrees
+     * @param accuracy accuracy of the location in meters
+     * @param timeMillis time of the location in milliseconds
+     * @return true if the interval or the minimum distance changed
+     */
+    boolean onLocation(double latitude, double longitude, float accuracy, long timeMillis) {
+        long interval = getIntervalMs();
+        float minDistance = getMinDistance();
+        accurate = accuracy > 0 && accuracy <= GOOD_ACCURACY;
+
+        Point location = new Point(latitude, longitude, 0);
+        if (!hasAnchor || location.computeFlatDistance(anchor) > Math.max(accuracy, STATIONARY_RADIUS)) {
+            //The user moved, restart from this location
+            hasAnchor = true;
+            anchor.setLatitude(latitude);
+            anchor.setLongitude(longitude);
+            anchorTime = timeMillis;
+            stationary = false;
+        } else if (timeMillis - anchorTime >= STATIONARY_TIME_MS) {
+            stationary = true;
+        }
+        return interval != getIntervalMs() || minDistance != getMinDistance();
+    }
+
+    /**
+     * @return interval between the location updates in milliseconds
+     */
+    long getIntervalMs() {
+        if (stationary) return accurate ? ACCURATE_INTERVAL_MS : STATIONARY_INTERVAL_MS;
+        return accurate ? MOVING_ACCURATE_INTERVAL_MS : MOVING_INTERVAL_MS;
+    }
+
+    /**
+     * @return minimum distance between the location updates in meters
+     */
+    float getMinDistance() {
+        return stationary ? STATIONARY_MIN_DISTANCE : MOVING_MIN_DISTANCE;
+    }
+}
@@ -0,0 +1,207 @@
+package ch.epfl.sdp.peakar.points;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.core.util.Pair;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Terrain source reading the topography map from SRTM .hgt files stored on the device, without
+ * contacting OpenTopography.
+ *
+ * A .hgt file covers 1 x 1 degree and is named after its south west corner (e.g. N46E007.hgt). It
+ * contains 1201 x 1201 (3 arc second) or 3601 x 3601 (1 arc second) big endian int16 elevations,
+ * the first row being the northernmost one, and neighbouring files share their border rows and
+ * columns. The files are memory mapped once, so building a map only reads the cells it needs.
+ *
+ * The files are read from the "hgt" directory of the app's external storage, where they can be
+ * copied from a computer (Android/data/ch.epfl.sdp.peakar/files/hgt).
+ */
+public final class HgtTerrainSource {
+
+    static final String HGT_DIRECTORY = "hgt";
+    private static final String FILE_NAME_FORMAT = "%c%02d%c%03d.hgt";
+    static final int SRTM3_SIZE = 1201;
+    static final int SRTM1_SIZE = 3601;
+
+    private static final String TAG = "HgtTerrainSource";
+
+    private static HgtTerrainSource instance;
+
+    private final File directory;
+
+    /*Mapped files by name, missing and invalid files are looked up again on the next map*/
+    private final Map<String, ShortBuffer> files = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param directory directory containing the .hgt files
+     */
+    HgtTerrainSource(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get singleton, reading the files from the app's external storage, or from the app's file
+     * directory if there is no external storage
+     * @param context context of the application
+     * @return HgtTerrainSource instance
+     */
+    public static synchronized HgtTerrainSource getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            File directory = appContext.getExternalFilesDir(HGT_DIRECTORY);
+            if (directory == null) directory = new File(appContext.getFilesDir(), HGT_DIRECTORY);
+            instance = new HgtTerrainSource(directory);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the name of the file containing a location
+     * @param latitude latitude of the location (in degrees)
+     * @param longitude longitude of the location (in degrees)
+     * @return name of the .hgt file
+     */
+    static String getFileName(double latitude, double longitude) {
+        int south = (int) Math.floor(latitude);
+        int west = (int) Math.floor(longitude);
+        return String.format(Locale.ENGLISH, FILE_NAME_FORMAT,
+                south < 0 ? 'S' : 'N', Math.abs(south), west < 0 ? 'W' : 'E', Math.abs(west));
+    }
+
+    /**
+     * Checks that the files covering a bounding box are available
+     * @param boundingBox bounding box of the map
+     * @return true if every file covering the bounding box is available
+     */
+    public synchronized boolean covers(BoundingBox boundingBox) {
+        int south = (int) Math.floor(boundingBox.getLatSouth());
+        int west = (int) Math.floor(boundingBox.getLonWest());
+        int north = (int) Math.floor(boundingBox.getLatNorth());
+        int east = (int) Math.floor(boundingBox.getLonEast());
+        for (int lat = south; lat <= north; lat++) {
+            for (int lon = west; lon <= east; lon++) {
+                if (getFile(lat, lon) == null) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the topography map of a bounding box. The rows and columns of the map are centered
+     * on the bounding box and sampled at 3 arc seconds, like the downloaded maps, the nearest
+     * elevation being used for each cell: an SRTM1 file is read every third sample, so that its
+     * map is not 9 times larger.
+     * @param boundingBox bounding box of the map
+     * @return pair of the topography map and the map cell size, null if a file is missing
+     */
+    public synchronized Pair<int[][], Double> getTopographyMap(BoundingBox boundingBox) {
+        int south = (int) Math.floor(boundingBox.getLatSouth());
+        int west = (int) Math.floor(boundingBox.getLonWest());
+        int latCount = (int) Math.floor(boundingBox.getLatNorth()) - south + 1;
+        int lonCount = (int) Math.floor(boundingBox.getLonEast()) - west + 1;
+
+        //Files covering the bounding box, indexed from the south west one
+        ShortBuffer[][] tiles = new ShortBuffer[latCount][lonCount];
+        for (int lat = 0; lat < latCount; lat++) {
+            for (int lon = 0; lon < lonCount; lon++) {
+                tiles[lat][lon] = getFile(south + lat, west + lon);
+                if (tiles[lat][lon] == null) return null;
+            }
+        }
+        double cellSize = 1.0 / (SRTM3_SIZE - 1);
+        int nRow = Math.max(1, (int) Math.round((boundingBox.getLatNorth() - boundingBox.getLatSouth()) / cellSize));
+        int nCol = Math.max(1, (int) Math.round((boundingBox.getLonEast() - boundingBox.getLonWest()) / cellSize));
+        double north = boundingBox.getCenterLatitude() + nRow * cellSize / 2;
+        double westEdge = boundingBox.getCenterLongitude() - nCol * cellSize / 2;
+
+        //File column and fraction of each map column, computed once for all the rows
+        int[] colTiles = new int[nCol];
+        double[] colFractions = new double[nCol];
+        for (int col = 0; col < nCol; col++) {
+            double longitude = westEdge + (col + 0.5) * cellSize;
+            int tile = Math.max(0, Math.min(lonCount - 1, (int) Math.floor(longitude) - west));
+            colTiles[col] = tile;
+            colFractions[col] = Math.max(0, Math.min(1, longitude - (west + tile)));
+        }
+
+        int[][] topographyMap = new int[nRow][nCol];
+        for (int row = 0; row < nRow; row++) {
+            double latitude = north - (row + 0.5) * cellSize;
+            int tile = Math.max(0, Math.min(latCount - 1, (int) Math.floor(latitude) - south));
+            double fromNorth = Math.max(0, Math.min(1, south + tile + 1 - latitude));
+            for (int col = 0; col < nCol; col++) {
+                ShortBuffer file = tiles[tile][colTiles[col]];
+                int size = getSize(file);
+                int fileRow = (int) Math.round(fromNorth * (size - 1));
+                int fileCol = (int) Math.round(colFractions[col] * (size - 1));
+                topographyMap[row][col] = file.get(fileRow * size + fileCol);
+            }
+        }
+
+        Log.d(TAG, "Generated Map with size (" + nRow + ", " + nCol + ") from " + latCount * lonCount + " files");
+        return new Pair<>(topographyMap, cellSize);
+    }
+
+    /**
+     * Gets the mapped file of a 1 x 1 degree cell, mapping it on first use
+     * @param south latitude of the south edge of the cell (in degrees)
+     * @param west longitude of the west edge of the cell (in degrees)
+     * @return elevations of the file or null if the file is missing or invalid
+     */
+    private ShortBuffer getFile(int south, int west) {
+        String name = getFileName(south, west);
+        ShortBuffer elevations = files.get(name);
+        if (elevations != null) return elevations;
+
+        File file = new File(directory, name);
+        if (!file.isFile()) file = new File(directory, name.toUpperCase(Locale.ENGLISH));
+        if (file.isFile()) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                 FileChannel channel = randomAccessFile.getChannel()) {
+                long length = channel.size();
+                if (length == 2L * SRTM3_SIZE * SRTM3_SIZE || length == 2L * SRTM1_SIZE * SRTM1_SIZE) {
+                    //The mapping stays valid once the channel is closed
+                    elevations = channel.map(FileChannel.MapMode.READ_ONLY, 0, length)
+                            .order(ByteOrder.BIG_ENDIAN).asShortBuffer();
+                } else {
+                    Log.e(TAG, "Invalid file size " + length + " for " + name);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Could not map " + name + ": " + e.toString());
+            }
+        }
+        if (elevations != null) files.put(name, elevations);
+        return elevations;
+    }
+
+    /**
+     * Gets the number of rows (and columns) of a mapped file
+     * @param file elevations of the file
+     * @return 1201 or 3601
+     */
+    private static int getSize(ShortBuffer file) {
+        return file.capacity() == SRTM3_SIZE * SRTM3_SIZE ? SRTM3_SIZE : SRTM1_SIZE;
+    }
+
+    /**
+     * Drops the references to the mapped files, so that replaced files are mapped again. The
+     * previous mappings are only released once they are garbage collected.
+     */
+    public synchronized void clear() {
+        files.clear();
+    }
+}
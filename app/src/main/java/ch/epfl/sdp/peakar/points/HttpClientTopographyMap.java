@@ -8,19 +8,17 @@ import androidx.core.util.Pair;
 import org.osmdroid.util.BoundingBox;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Arrays;
-import java.util.Scanner;
-import java.util.stream.IntStream;
 
+import ch.epfl.sdp.peakar.utils.CachedHttpClient;
 import ch.epfl.sdp.peakar.utils.SettingsUtilities;
 
 /**
  * Class to request the topography map of the bounding box around a point.
- * The Elevation map is retrieved using the OpenTopography API as an AAIGrid and then converted into
- * an array of integers representing the height. Using the SRTMGL3 data a precision of 3 arc second
+ * The Elevation map is retrieved using the OpenTopography API as a GeoTIFF, or as an AAIGrid if the
+ * GeoTIFF can't be used, and then converted into an array of integers representing the height. Using the SRTMGL3 data a precision of 3 arc second
  * (~90 meter) is obtained.
  *
  * This class should not be used to directly get the topographyMap. To get the topographyMap use
@@ -29,39 +27,38 @@ import ch.epfl.sdp.peakar.utils.SettingsUtilities;
 public class HttpClientTopographyMap {
 
     static final int HTTP_OK_CODE = 200; //range of the bounding box in km
+    //OpenTopography generates the map before sending it
+    private static final int READ_TIMEOUT_MS = 60000;
 
     private static final String BASE_URL = "https://portal.opentopography.org/API/globaldem";
     private static final String DEM_TYPE = "SRTMGL3";
-    private static final String OUTPUT_FORMAT = "AAIGrid";
 
     private Pair<int[][], Double> result;
 
     private final BoundingBox boundingBox;
 
     /**
-     * Constructor of class that handles the download of the AAIGrid and building of the matrix representing
+     * Constructor of class that handles the download of the GeoTIFF and building of the matrix representing
      * the elevation map.
      *
      * @param point     point around which compute the topography map
      * @param context   context of the application.
      */
     public HttpClientTopographyMap(Point point, Context context){
-        boundingBox = point.computeBoundingBox(SettingsUtilities.getSelectedRange(context));
-        URL url = generateURL();
-
-        try {
-            HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-
-            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                result =  parseResponse(urlConnection);
-            } else {
-                Log.d("3d MAP", "Http error code: " + urlConnection.getResponseCode());
-                result = null;
-            }
+        this(point, context, new GeoTiffDecoder());
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Constructor of class that handles the download of the map in the format of the decoder and
+     * building of the matrix representing the elevation map.
+     *
+     * @param point     point around which compute the topography map
+     * @param context   context of the application.
+     * @param decoder   decoder of the format to request, AAIGrid being used as fallback
+     */
+    HttpClientTopographyMap(Point point, Context context, DemDecoder decoder){
+        boundingBox = point.computeBoundingBox(SettingsUtilities.getSelectedRange(context));
+        result = download(decoder);
     }
 
     /**
@@ -73,56 +70,51 @@ public class HttpClientTopographyMap {
     }
 
     /**
-     * This method handles the parsing of the response obtained via HTTP request. It saves the
-     * size of the matrix to build and passes them to the buildMapGrid method.
+     * Downloads and decodes the topography map in the format of the decoder. If the map can't be
+     * decoded in a binary format, it is requested again as an AAIGrid. A failed download is not
+     * retried, the AAIGrid would go through the same connection.
      *
-     * @param response  HTTPResponse to parse.
-     * @return Pair<int[][], Double> that contains the topographyMap and the mapCellSize
+     * @param decoder   decoder of the requested format
+     * @return Pair<int[][], Double> that contains the topographyMap and the mapCellSize, null if the download failed
      */
-    private Pair<int[][], Double> parseResponse(HttpURLConnection response) {
+    private Pair<int[][], Double> download(DemDecoder decoder) {
         try {
-            Scanner responseObj = new Scanner(response.getInputStream());
-            int nCol =  Integer.parseInt(responseObj.nextLine().replaceAll("[\\D]", ""));
-            int nRow = Integer.parseInt(responseObj.nextLine().replaceAll("[\\D]", ""));
-            return buildMapGrid(nRow, nCol, responseObj);
+            return download(boundingBox, decoder);
+        } catch (DemFormatException e) {
+            Log.d("3D MAP", decoder.getOutputFormat() + " decoding failed: " + e.getMessage());
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.d("3D MAP", decoder.getOutputFormat() + " download failed: " + e.getMessage());
+            return null;
+        }
+        if (decoder instanceof AAIGridDecoder) return null;
+        try {
+            return download(boundingBox, new AAIGridDecoder());
+        } catch (IOException e) {
+            Log.d("3D MAP", "Download failed: " + e.getMessage());
+            return null;
         }
-        return null;
     }
 
     /**
-     * This method builds the matrix and saves it in the object.
+     * Downloads and decodes the topography map of a bounding box
      *
-     * @param nRow          height of the matrix.
-     * @param nCol          width of the matrix.
-     * @param responseObj   Scanner to read the HTTPResponse.
+     * @param boundingBox   bounding box of the map to download
+     * @param decoder       decoder of the requested format
      * @return Pair<int[][], Double> that contains the topographyMap and the mapCellSize
+     * @throws IOException if the map can't be downloaded or decoded
      */
-    private Pair<int[][], Double> buildMapGrid(int nRow, int nCol, Scanner responseObj) {
-
-        // skip 2 lines (x, y corner)
-        responseObj.nextLine();
-        responseObj.nextLine();
-
-        // get cell size
-        double mapCellSize = Double.parseDouble(responseObj.nextLine().replaceAll("[a-zA-Z]", ""));
-
-        // skip another line (NODATA_value)
-        responseObj.nextLine();
-
-        // build matrix
-        int[][] topographyMap = IntStream.range(0, nRow)
-                .boxed()
-                .map(i -> Arrays.stream(responseObj.nextLine().substring(1).split(" ", nCol))
-                        .mapToInt(Integer::parseInt)
-                        .toArray())
-                .toArray(int[][]::new);
+    private static Pair<int[][], Double> download(BoundingBox boundingBox, DemDecoder decoder) throws IOException {
+        URL url = generateURL(boundingBox, decoder.getOutputFormat());
+        if (url == null) throw new IOException("Invalid topography URL");
+        DemGrid grid;
+        try (InputStream response = CachedHttpClient.getInstance().get(url, READ_TIMEOUT_MS)) {
+            grid = decoder.decode(response);
+        }
 
-        Log.d("3D MAP", "Generated Map with size (" + nRow + ", " + nCol +")");
-        Log.d("3D MAP", "Cell size = " + mapCellSize);
+        Log.d("3D MAP", "Generated Map with size (" + grid.nRow + ", " + grid.nCol +")");
+        Log.d("3D MAP", "Cell size = " + grid.cellSize);
 
-        return new Pair<>(topographyMap, mapCellSize);
+        return new Pair<>(grid.values, grid.cellSize);
     }
 
     /**
@@ -131,16 +123,17 @@ public class HttpClientTopographyMap {
      * <ul>
      * <li>BASE_URL
      * <li>DEM_TYPE
-     * <li>OUTPUT_FORMAT
      * </ul>
      * <p>
      * To find more about this parameter please check OpenTopographyAPI documentation
      *
      * @see <a href="https://portal.opentopography.org/apidocs/">OpenTopographyAPI</a>
      *
+     * @param boundingBox bounding box of the map to download
+     * @param outputFormat format of the map, given by DemDecoder.getOutputFormat
      * @return  a URL to make the request for downloading the map
      */
-    private URL generateURL() {
+    static URL generateURL(BoundingBox boundingBox, String outputFormat) {
 
         String south = String.valueOf(boundingBox.getLatSouth());
         String north = String.valueOf(boundingBox.getLatNorth());
@@ -154,7 +147,7 @@ public class HttpClientTopographyMap {
                     "north=" + north + "&" +
                     "west=" + west + "&" +
                     "east=" + east + "&" +
-                    "outputFormat=" + OUTPUT_FORMAT);
+                    "outputFormat=" + outputFormat);
             Log.d("3D MAP", "Generated url: " + url.toString());
             return url;
         } catch (MalformedURLException e) {
@@ -5,11 +5,11 @@ import android.content.Context;
 import androidx.core.util.Pair;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
 
 /**
  * This class enables the computation of the visible POIPoints from the user's location.
@@ -18,12 +18,17 @@ import java.util.stream.Collectors;
  * The ELEVATION_DIFFERENCE_THRESHOLD represents the maximum acceptable difference in meters
  * between the line that connects the user to the POIPoint and the actual elevation of the
  * terrain in a given point.
+ *
+ * The line is checked cell by cell near the user and with larger steps further away when the
+ * resolution of the map decreases with the distance (see LodElevationGrid).
+ *
+ * The POIPoints are checked in parallel on the COMPUTE workload of the TaskScheduler.
  */
 public class LineOfSight {
 
     static final int ELEVATION_DIFFERENCE_THRESHOLD = 100; // in meters
 
-    private final UserPoint userPoint;
+    private final Point userPoint;
 
     private final ElevationMap elevationMap;
     private double mapCellSize;
@@ -36,10 +41,11 @@ public class LineOfSight {
      * Constructor for the LineOfSight class.
      *
      * @param topography    pair with topography map and cell size.
-     * @param userPoint     userPoint from wich the visible POIPoints are computed.
+     * @param userPoint     location from wich the visible POIPoints are computed, not modified
+     *                      during the computation.
      * @param context       context of the application.
      */
-    public LineOfSight(Pair<int[][], Double> topography, UserPoint userPoint, Context context) {
+    public LineOfSight(Pair<int[][], Double> topography, Point userPoint, Context context) {
         this.userPoint = userPoint;
         this.mapCellSize = topography.second;
         this.context = context;
@@ -66,9 +72,12 @@ public class LineOfSight {
         double userLongitude = userPoint.getLongitude();
         int userAltitude = (int) userPoint.getAltitude();
 
-        return poiPoints.parallelStream()
-                .filter(p -> isVisible(p, userIndexes, userLatitude, userLongitude, userAltitude))
-                .collect(Collectors.toList());
+        boolean[] visible = computeVisibility(poiPoints, userIndexes, userLatitude, userLongitude, userAltitude);
+        List<POIPoint> visiblePOIPoints = new ArrayList<>();
+        for (int i = 0; i < visible.length; i++) {
+            if (visible[i]) visiblePOIPoints.add(poiPoints.get(i));
+        }
+        return visiblePOIPoints;
 
     }
 
@@ -93,14 +102,33 @@ public class LineOfSight {
         double userLongitude = userPoint.getLongitude();
         int userAltitude = (int) userPoint.getAltitude();
 
-        Map<POIPoint, Boolean> labeledPOIPoints = Collections.synchronizedMap(new HashMap<>());
-
-        poiPoints.parallelStream()
-                .forEach(p -> labeledPOIPoints.put(p, isVisible(p, userIndexes, userLatitude, userLongitude, userAltitude)));
-
+        boolean[] visible = computeVisibility(poiPoints, userIndexes, userLatitude, userLongitude, userAltitude);
+        Map<POIPoint, Boolean> labeledPOIPoints = new HashMap<>();
+        for (int i = 0; i < visible.length; i++) {
+            labeledPOIPoints.put(poiPoints.get(i), visible[i]);
+        }
         return labeledPOIPoints;
     }
 
+    /**
+     * This method computes in parallel if each POIPoint is visible from the user's location.
+     *
+     * @param poiPoints     a List of POIPoint.
+     * @param userIndexes   indexes representing the user's location on the elevation map grid.
+     * @param userLatitude  latitude of the user's location (in degrees).
+     * @param userLongitude longitude of the user's location (in degrees).
+     * @param userAltitude  altitude of the user's location (in meters).
+     * @return              array with <code>true</code> at the index of the visible POIPoints.
+     */
+    private boolean[] computeVisibility(List<POIPoint> poiPoints, Pair<Integer, Integer> userIndexes,
+                                        double userLatitude, double userLongitude, int userAltitude) {
+        boolean[] visible = new boolean[poiPoints.size()];
+        TaskScheduler.getInstance().parallelFor(TaskScheduler.Workload.COMPUTE, TaskScheduler.Priority.HIGH,
+                visible.length, i -> visible[i] = isVisible(poiPoints.get(i), userIndexes, userLatitude,
+                        userLongitude, userAltitude));
+        return visible;
+    }
+
     /**
      * This method computes a boolean that indicates if a single POIPoint is visible from
      * the user's location.
@@ -127,74 +155,25 @@ public class LineOfSight {
 
         double slope = (poiAltitude - userAltitude) / (useRow ? (poiLatitude - userLatitude) : (poiLongitude - userLongitude));
 
-        List<Pair<Integer, Integer>> line = drawLine(  userIndexes.first, userIndexes.second,
-                poiIndexes.first, poiIndexes.second);
-
-        return line.stream()
-                .map(p -> computeMaxElevation(userLatitude, userLongitude, userAltitude, p.first, p.second, useRow, slope) -
-                        elevationMap.getAltitudeAtLocation(p.first, p.second) >
-                        - ELEVATION_DIFFERENCE_THRESHOLD)
-                .reduce(true, (vis, v) -> vis && v);
-
-    }
-
-    /**
-     * This method draws the line between the user's location and the POIPoint on the
-     * elevation map grid.
-     *
-     * @param x1    x index of the user's location on the elevation map grid.
-     * @param y1    y index of the user's location on the elevation map grid.
-     * @param x2    x index of the POIPoint on the elevation map grid.
-     * @param y2    y index of the POIPoint on the elevation map grid.
-     * @return      a List of indexes representing the line in the elevation map grid.
-     */
-    private List<Pair<Integer, Integer>> drawLine(int x1, int y1, int x2, int y2) {
-
-        int pixelX = x2 - x1;
-        int pixelY = y2 - y1;
-
-        int x,y;
-
-        List<Pair<Integer, Integer>> line = new ArrayList<>();
-
-        int ratio;
-        double error;
-        double cumulatedError = 0;
-
-        if (Math.abs(pixelY) >= Math.abs(pixelX)) {
-            ratio = pixelX != 0 ? Math.abs(pixelY / pixelX) : Math.abs(pixelY);
-            error = pixelX != 0 ? Math.abs((double) ratio - Math.abs(((double) pixelY / (double) pixelX))) : 0;
-            for (x = x1, y = y1; x1 < x2 ? x <= x2 : x >= x2; x = x1 < x2 ? x+1 : x-1) {
-                for (int i = 0; i < ratio && (y1 < y2 ? y <= y2 : y >= y2); i++) {
-                    line.add(new Pair<>(x, y));
-                    y = y1 < y2 ? y+1 : y-1;
-                    cumulatedError += error;
-                    if (cumulatedError >= 1) {
-                        line.add(new Pair<>(x, y));
-                        y = y1 < y2 ? y+1 : y-1;
-                        cumulatedError -= 1;
-                    }
-                }
-            }
-        } else {
-            ratio = pixelY != 0 ? Math.abs(pixelX / pixelY) : Math.abs(pixelX);
-            error = pixelY != 0 ? Math.abs((double) ratio - Math.abs(((double) pixelX / (double) pixelY))) : 0;
-            for (x = x1, y = y1; y1 < y2 ? y <= y2 : y >= y2; y = y1 < y2 ? y+1 : y-1) {
-                for (int i = 0; i < ratio && (x1 < x2 ? x <= x2 : x >= x2); i++) {
-                    line.add(new Pair<>(x, y));
-                    x = x1 < x2 ? x+1 : x-1;
-                    cumulatedError += error;
-                    if (cumulatedError >= 1) {
-                        line.add(new Pair<>(x, y));
-                        x = x1 < x2 ? x+1 : x-1;
-                        cumulatedError -= 1;
-                    }
-                }
+        //Step along the line with the size of the cells of the map, which grows with the distance
+        //on long ranges. The cells sharing the coarse cell of the POIPoint are not checked, since
+        //the coarse cell also contains the POIPoint itself.
+        int rowDistance = poiIndexes.first - userIndexes.first;
+        int colDistance = poiIndexes.second - userIndexes.second;
+        int steps = Math.max(Math.abs(rowDistance), Math.abs(colDistance));
+        int step = 0;
+        while (step <= steps) {
+            int row = userIndexes.first + (steps == 0 ? 0 : (int) Math.round((double) rowDistance * step / steps));
+            int col = userIndexes.second + (steps == 0 ? 0 : (int) Math.round((double) colDistance * step / steps));
+            int stride = elevationMap.getStride(row, col);
+            if (stride > 1 && steps - step < stride) break;
+            if (computeMaxElevation(userLatitude, userLongitude, userAltitude, row, col, useRow, slope) -
+                    elevationMap.getAltitudeAtLocation(row, col) <= - ELEVATION_DIFFERENCE_THRESHOLD) {
+                return false;
             }
+            step += stride;
         }
-
-        if (x != x2 || y != y2) line.add(new Pair<>(x2, y2));
-        return line;
+        return true;
 
     }
 
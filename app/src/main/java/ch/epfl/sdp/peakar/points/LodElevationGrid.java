@@ -0,0 +1,210 @@
+package ch.epfl.sdp.peakar.points;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Multi-resolution ElevationGrid for long ranges, centered on the observer.
+ *
+ * The grid is stored as nested levels of LEVEL_SIZE x LEVEL_SIZE cells around the center of the
+ * map. Level 0 keeps the full resolution, and each following level covers twice the distance with
+ * cells twice as large, so the memory only grows with the logarithm of the range. A coarse cell
+ * holds the highest elevation of the cells it replaces: a distant ridge still hides what is behind
+ * it, which is what the line of sight needs.
+ *
+ * Cells are still addressed at full resolution, getStride giving the size of the cell read at a
+ * position so that the line of sight can step over it at once.
+ */
+public final class LodElevationGrid implements ElevationGrid {
+
+    static final int LEVEL_SIZE = 512;
+    private static final int HALF_LEVEL_SIZE = LEVEL_SIZE / 2;
+
+    private final int nRow;
+    private final int nCol;
+    private final int centerRow;
+    private final int centerCol;
+
+    /*Elevations of each level, row-major, the level k having cells of 2^k x 2^k full resolution cells*/
+    private final short[][] levels;
+
+    /**
+     * Private constructor: use build(int[][])
+     */
+    private LodElevationGrid(int nRow, int nCol, short[][] levels) {
+        this.nRow = nRow;
+        this.nCol = nCol;
+        this.centerRow = nRow / 2;
+        this.centerCol = nCol / 2;
+        this.levels = levels;
+    }
+
+    /**
+     * Builds the levels of a topography map. The map is only read to build the first two levels,
+     * the coarser ones being built from a decimated copy of the previous one, so that the callers
+     * can release the map as soon as the grid is built.
+     * @param topographyMap rectangular topography map
+     * @return multi-resolution grid
+     */
+    public static LodElevationGrid build(int[][] topographyMap) {
+        int nRow = topographyMap.length;
+        int nCol = nRow > 0 ? topographyMap[0].length : 0;
+        int centerRow = nRow / 2;
+        int centerCol = nCol / 2;
+        int levelCount = getLevel(Math.max(centerRow, nRow - 1 - centerRow), Math.max(centerCol, nCol - 1 - centerCol)) + 1;
+
+        short[][] levels = new short[levelCount][];
+        levels[0] = extractLevel((row, col) -> topographyMap[row][col], nRow, nCol,
+                centerRow - HALF_LEVEL_SIZE, centerCol - HALF_LEVEL_SIZE);
+        IntBinaryOperator source = (row, col) -> topographyMap[row][col];
+        int sourceRows = nRow;
+        int sourceCols = nCol;
+        for (int level = 1; level < levelCount; level++) {
+            //The decimated map of a level has cells of 2^level x 2^level cells, with a boundary at
+            //the center of the map, the first cell sticking out of the map
+            int cellSize = 1 << level;
+            int firstRowCell = ceilDiv(centerRow, cellSize);
+            int firstColCell = ceilDiv(centerCol, cellSize);
+            int rows = ceilDiv(nRow - centerRow, cellSize) + firstRowCell;
+            int cols = ceilDiv(nCol - centerCol, cellSize) + firstColCell;
+            int[] decimated = decimate(source, sourceRows, sourceCols, rows, cols,
+                    ceilDiv(centerRow, cellSize / 2) - 2 * firstRowCell,
+                    ceilDiv(centerCol, cellSize / 2) - 2 * firstColCell);
+
+            source = (row, col) -> decimated[row * cols + col];
+            sourceRows = rows;
+            sourceCols = cols;
+            levels[level] = extractLevel(source, rows, cols, firstRowCell - HALF_LEVEL_SIZE, firstColCell - HALF_LEVEL_SIZE);
+        }
+        return new LodElevationGrid(nRow, nCol, levels);
+    }
+
+    /**
+     * Halves the resolution of a map, a cell holding the highest elevation of the cells it replaces
+     * @param source elevations of the map, by row and column
+     * @param sourceRows number of rows of the map
+     * @param sourceCols number of columns of the map
+     * @param rows number of rows of the decimated map
+     * @param cols number of columns of the decimated map
+     * @param rowShift row of the map where the first row of the decimated map starts, 0 or -1
+     * @param colShift column of the map where the first column of the decimated map starts, 0 or -1
+     * @return elevations of the decimated map, row-major
+     */
+    private static int[] decimate(IntBinaryOperator source, int sourceRows, int sourceCols, int rows, int cols, int rowShift, int colShift) {
+        int[] decimated = new int[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            int rowStart = Math.max(0, 2 * i + rowShift);
+            int rowEnd = Math.min(sourceRows, 2 * i + rowShift + 2);
+            for (int j = 0; j < cols; j++) {
+                int colStart = Math.max(0, 2 * j + colShift);
+                int colEnd = Math.min(sourceCols, 2 * j + colShift + 2);
+                int max = Integer.MIN_VALUE;
+                for (int row = rowStart; row < rowEnd; row++) {
+                    for (int col = colStart; col < colEnd; col++) max = Math.max(max, source.applyAsInt(row, col));
+                }
+                decimated[i * cols + j] = max;
+            }
+        }
+        return decimated;
+    }
+
+    /**
+     * Copies the LEVEL_SIZE x LEVEL_SIZE cells of a level from a map at the resolution of the level
+     * @param source elevations of the map, by row and column
+     * @param rows number of rows of the map
+     * @param cols number of columns of the map
+     * @param firstRow row of the map of the first row of the level, can be negative
+     * @param firstCol column of the map of the first column of the level, can be negative
+     * @return elevations of the level, row-major
+     */
+    private static short[] extractLevel(IntBinaryOperator source, int rows, int cols, int firstRow, int firstCol) {
+        short[] elevations = new short[LEVEL_SIZE * LEVEL_SIZE];
+        for (int i = 0; i < LEVEL_SIZE; i++) {
+            int row = firstRow + i;
+            if (row < 0 || row >= rows) continue;
+            for (int j = 0; j < LEVEL_SIZE; j++) {
+                int col = firstCol + j;
+                //Cells outside of the map are never read and stay at 0
+                if (col < 0 || col >= cols) continue;
+                int elevation = source.applyAsInt(row, col);
+                elevations[i * LEVEL_SIZE + j] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, elevation));
+            }
+        }
+        return elevations;
+    }
+
+    /**
+     * @param dividend non-negative dividend
+     * @param divisor positive divisor
+     * @return quotient rounded up
+     */
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Gets the finest level containing a cell
+     * @param rowDistance distance in rows from the center
+     * @param colDistance distance in columns from the center
+     * @return level of the cell
+     */
+    private static int getLevel(int rowDistance, int colDistance) {
+        int halfSizes = Math.max(rowDistance, colDistance) / HALF_LEVEL_SIZE;
+        return halfSizes == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(halfSizes);
+    }
+
+    @Override
+    public int getRowCount() {
+        return nRow;
+    }
+
+    @Override
+    public int getColCount() {
+        return nCol;
+    }
+
+    @Override
+    public int get(int row, int col) {
+        int level = getLevel(Math.abs(row - centerRow), Math.abs(col - centerCol));
+        int i = (row - centerRow + (HALF_LEVEL_SIZE << level)) >> level;
+        int j = (col - centerCol + (HALF_LEVEL_SIZE << level)) >> level;
+        return levels[level][i * LEVEL_SIZE + j];
+    }
+
+    /**
+     * Gets the size of the cell read at a position: 1 near the center, then 2, 4, ... with the distance
+     * @param row row of the cell
+     * @param col column of the cell
+     * @return size of the cell (in full resolution cells)
+     */
+    @Override
+    public int getStride(int row, int col) {
+        return 1 << getLevel(Math.abs(row - centerRow), Math.abs(col - centerCol));
+    }
+
+    /**
+     * @return number of levels
+     */
+    int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * @return size of the levels (in bytes)
+     */
+    public long getSize() {
+        return (long) levels.length * LEVEL_SIZE * LEVEL_SIZE * Short.BYTES;
+    }
+
+    /**
+     * Expands the grid at full resolution, the distant cells being repeated
+     * @return array of the elevations, indexed by row then column
+     */
+    @Override
+    public int[][] toArray() {
+        int[][] topographyMap = new int[nRow][nCol];
+        for (int row = 0; row < nRow; row++) {
+            for (int col = 0; col < nCol; col++) topographyMap[row][col] = get(row, col);
+        }
+        return topographyMap;
+    }
+}
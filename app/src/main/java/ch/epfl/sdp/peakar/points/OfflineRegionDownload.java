@@ -0,0 +1,221 @@
+package ch.epfl.sdp.peakar.points;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ch.epfl.sdp.peakar.utils.OfflineContentContainer;
+import ch.epfl.sdp.peakar.utils.SettingsUtilities;
+import ch.epfl.sdp.peakar.utils.TiledDownloader;
+
+/**
+ * Download of the offline content (POIPoints and topography map) of the region around a point.
+ *
+ * The topography map, the largest part of the content, is split into tiles of about
+ * TOPOGRAPHY_TILE_SIDE_KM per side, so that a failed download only loses the tiles in progress, and
+ * at most MAX_TOPOGRAPHY_TILES_PER_SIDE per side since each request counts against the API quota.
+ * The tiles are downloaded concurrently together with the peaks of the region by a TiledDownloader. Completed tiles are stored in the cache directory until the whole region
+ * is downloaded: if the download fails, starting it again for the same point only downloads the
+ * missing tiles.
+ *
+ * The listener is called on the main thread.
+ */
+public class OfflineRegionDownload {
+
+    private static final String TAG = "OfflineRegionDownload";
+
+    static final String DOWNLOADS_DIRECTORY = "region_downloads";
+    //Side of the topography tiles (in km), a few hundred kilobytes each, so that a resumed download loses little
+    static final double TOPOGRAPHY_TILE_SIDE_KM = 25;
+    static final int MAX_TOPOGRAPHY_TILES_PER_SIDE = 4;
+    static final int PARALLEL_DOWNLOADS = 4;
+
+    private static final String TOPOGRAPHY_TILE_FORMAT = "topography_%d.tif";
+    private static final String POI_TILE = "peaks.json";
+    //The number of tiles is part of the directory, so that tiles of another split are never resumed
+    private static final String REGION_DIRECTORY_FORMAT = "%.5f_%.5f_%d_%d";
+
+    private final Point center;
+    private final BoundingBox boundingBox;
+    private final File regionDirectory;
+    private final int topographyTilesPerSide;
+    private final Handler mainHandler;
+
+    private TiledDownloader downloader;
+
+    /**
+     * Listener of the download state, called on the main thread
+     */
+    public interface Listener {
+        /**
+         * Called when the download progresses
+         * @param completedTiles number of completed tiles, including the tiles of a previous attempt
+         * @param totalTiles number of tiles of the region
+         * @param downloadedBytes number of bytes downloaded by this attempt
+         */
+        void onProgress(int completedTiles, int totalTiles, long downloadedBytes);
+
+        /**
+         * Called once the region is downloaded
+         * @param content offline content of the region
+         */
+        void onCompleted(OfflineContentContainer content);
+
+        /**
+         * Called when the region could not be downloaded. The completed tiles are kept.
+         */
+        void onFailed();
+    }
+
+    /**
+     * Constructor
+     * @param context context of the application
+     * @param center point around which the region is downloaded, using the selected range
+     */
+    public OfflineRegionDownload(Context context, Point center) {
+        int rangeInKm = SettingsUtilities.getSelectedRange(context);
+        this.center = center;
+        this.boundingBox = center.computeBoundingBox(rangeInKm);
+        this.topographyTilesPerSide = topographyTilesPerSide(rangeInKm);
+        File downloadsDirectory = new File(context.getCacheDir(), DOWNLOADS_DIRECTORY);
+        this.regionDirectory = new File(downloadsDirectory, String.format(Locale.ENGLISH, REGION_DIRECTORY_FORMAT,
+                center.getLatitude(), center.getLongitude(), rangeInKm, topographyTilesPerSide));
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Computes the number of topography tiles per side of a region
+     * @param rangeInKm range around the center of the region (in kilometers)
+     * @return number of rows and columns of the tiles, each at most TOPOGRAPHY_TILE_SIDE_KM per side
+     * unless the region needs more than MAX_TOPOGRAPHY_TILES_PER_SIDE tiles per side
+     */
+    static int topographyTilesPerSide(double rangeInKm) {
+        double side = 2 * rangeInKm;
+        int tilesPerSide = Math.max(1, (int) Math.ceil(side / TOPOGRAPHY_TILE_SIDE_KM));
+        return Math.min(tilesPerSide, MAX_TOPOGRAPHY_TILES_PER_SIDE);
+    }
+
+    /**
+     * Starts (or resumes) the download
+     * @param listener listener of the download state
+     */
+    public void start(Listener listener) {
+        List<TiledDownloader.Tile> tiles = new ArrayList<>();
+        try {
+            List<BoundingBox> topographyTiles = TopographyTiles.split(boundingBox, topographyTilesPerSide);
+            for (int i = 0; i < topographyTiles.size(); i++) {
+                URL url = HttpClientTopographyMap.generateURL(topographyTiles.get(i), GeoTiffDecoder.OUTPUT_FORMAT);
+                if (url == null) throw new IOException("Invalid topography URL");
+                tiles.add(new TiledDownloader.Tile(String.format(Locale.ENGLISH, TOPOGRAPHY_TILE_FORMAT, i), url));
+            }
+            tiles.add(new TiledDownloader.Tile(POI_TILE, new URL(GeonamesHandler.generateQueryUrl(boundingBox,
+                    GeonamesHandler.DEFAULT_QUERY_MAX_RESULT, GeonamesHandler.DEFAULT_QUERY_TIMEOUT))));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not create the download: " + e.toString());
+            mainHandler.post(listener::onFailed);
+            return;
+        }
+
+        downloader = new TiledDownloader(regionDirectory, tiles, PARALLEL_DOWNLOADS);
+        downloader.start(new TiledDownloader.Listener() {
+            @Override
+            public void onProgress(int completedTiles, int totalTiles, long downloadedBytes) {
+                mainHandler.post(() -> listener.onProgress(completedTiles, totalTiles, downloadedBytes));
+            }
+
+            @Override
+            public void onCompleted(Map<String, File> tileFiles) {
+                try {
+                    OfflineContentContainer content = buildContent(tileFiles);
+                    //Only this region: the other regions may be paused or downloading
+                    deleteRecursively(regionDirectory);
+                    mainHandler.post(() -> listener.onCompleted(content));
+                } catch (IOException e) {
+                    //The tiles can't be used: download them again on the next attempt
+                    Log.e(TAG, "Could not read the downloaded tiles: " + e.toString());
+                    deleteRecursively(regionDirectory);
+                    mainHandler.post(listener::onFailed);
+                }
+            }
+
+            @Override
+            public void onFailed(IOException e) {
+                Log.e(TAG, "Download failed: " + e.toString());
+                mainHandler.post(listener::onFailed);
+            }
+        });
+    }
+
+    /**
+     * Stops the download. The completed tiles are kept and the listener is not called anymore.
+     */
+    public void cancel() {
+        if (downloader != null) downloader.cancel();
+    }
+
+    /**
+     * Builds the offline content from the downloaded tiles
+     * @param tileFiles files of the tiles by tile identifier
+     * @return offline content of the region
+     * @throws IOException if a tile can't be read
+     */
+    private OfflineContentContainer buildContent(Map<String, File> tileFiles) throws IOException {
+        OfflineContentContainer content = new OfflineContentContainer();
+        content.boundingBox = boundingBox;
+
+        //Each tile is copied in the map once decoded, so that a single tile is held in memory
+        DemDecoder decoder = new GeoTiffDecoder();
+        TopographyTiles.Stitcher stitcher = new TopographyTiles.Stitcher(boundingBox);
+        int topographyTiles = topographyTilesPerSide * topographyTilesPerSide;
+        for (int i = 0; i < topographyTiles; i++) {
+            File tileFile = tileFiles.get(String.format(Locale.ENGLISH, TOPOGRAPHY_TILE_FORMAT, i));
+            try (InputStream inputStream = new FileInputStream(tileFile)) {
+                stitcher.add(decoder.decode(inputStream));
+            }
+        }
+        content.topography = stitcher.finish();
+
+        List<POIPoint> poiPoints;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tileFiles.get(POI_TILE)), StandardCharsets.UTF_8))) {
+            poiPoints = OverpassParser.parse(reader);
+        }
+        for (POIPoint poiPoint : poiPoints) {
+            poiPoint.setHorizontalBearing(center);
+            poiPoint.setVerticalBearing(center);
+        }
+        content.POIPoints = poiPoints;
+
+        Log.d(TAG, "Region downloaded: " + poiPoints.size() + " peaks, " + topographyTiles + " topography tiles");
+        return content;
+    }
+
+    /**
+     * Deletes a directory and its content
+     * @param file directory or file to delete
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,171 @@
+package ch.epfl.sdp.peakar.points;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Streaming parser of the JSON response of an Overpass peaks query.
+ *
+ * The response is read token by token from the connection stream: no String of the whole
+ * response nor JSON tree is built, and the elements are converted directly into POIPoints.
+ * Elements that are not named peak nodes with an altitude are skipped while parsing, so the
+ * memory used only depends on the number of peaks kept.
+ */
+final class OverpassParser {
+
+    private static final String ELEMENTS = "elements";
+    private static final String NODE = "node";
+    private static final String PEAK = "peak";
+
+    /**
+     * Private constructor: static helper class
+     */
+    private OverpassParser() {
+    }
+
+    /**
+     * Parses an Overpass response
+     * @param reader reader of the response, should be buffered
+     * @return named peaks with a known altitude, in the order of the response
+     * @throws IOException if the response is not a valid Overpass JSON response
+     */
+    static ArrayList<POIPoint> parse(Reader reader) throws IOException {
+        ArrayList<POIPoint> poiPoints = new ArrayList<>();
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if (!ELEMENTS.equals(jsonReader.nextName())) {
+                    jsonReader.skipValue();
+                    continue;
+                }
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    POIPoint poiPoint = parseElement(jsonReader);
+                    if (poiPoint != null) poiPoints.add(poiPoint);
+                }
+                jsonReader.endArray();
+            }
+            jsonReader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid Overpass response", e);
+        }
+        return poiPoints;
+    }
+
+    /**
+     * Parses an element of the response. The fields can come in any order.
+     * @param jsonReader reader positioned on the element
+     * @return the peak or null if the element is not a named peak node with an altitude
+     * @throws IOException if the element is not valid
+     */
+    private static POIPoint parseElement(JsonReader jsonReader) throws IOException {
+        String type = null;
+        long id = 0;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        Tags tags = new Tags();
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "type":
+                    type = jsonReader.nextString();
+                    break;
+                case "id":
+                    id = jsonReader.nextLong();
+                    break;
+                case "lat":
+                    latitude = jsonReader.nextDouble();
+                    break;
+                case "lon":
+                    longitude = jsonReader.nextDouble();
+                    break;
+                case "tags":
+                    parseTags(jsonReader, tags);
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+
+        if (!NODE.equals(type) || tags.name == null || Double.isNaN(latitude) || Double.isNaN(longitude))
+            return null;
+        if (tags.natural != null && !PEAK.equals(tags.natural))
+            return null;
+        double altitude = parseElevation(tags.ele);
+        if (altitude == 0) return null;
+
+        POIPoint poiPoint = new POIPoint(tags.name, latitude, longitude, 0, null);
+        poiPoint.setAltitude(altitude);
+        poiPoint.setOsmId(id);
+        return poiPoint;
+    }
+
+    /**
+     * Reads the tags used by the app and skips the other ones
+     * @param jsonReader reader positioned on the tags object
+     * @param tags tags to fill
+     * @throws IOException if the tags are not valid
+     */
+    private static void parseTags(JsonReader jsonReader, Tags tags) throws IOException {
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String key = jsonReader.nextName();
+            if (jsonReader.peek() != JsonToken.STRING) {
+                jsonReader.skipValue();
+                continue;
+            }
+            switch (key) {
+                case "name":
+                    tags.name = jsonReader.nextString();
+                    break;
+                case "ele":
+                    tags.ele = jsonReader.nextString();
+                    break;
+                case "natural":
+                    tags.natural = jsonReader.nextString();
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * Parses the "ele" tag. Mappers use several formats ("4808", "4,808", "4808.7", "4808 m"):
+     * the thousands separators are ignored and the number is read up to the first other character.
+     * @param ele value of the tag, can be null
+     * @return altitude in meters, 0 if the tag is missing or is not a number
+     */
+    static double parseElevation(String ele) {
+        if (ele == null) return 0;
+        StringBuilder number = new StringBuilder(ele.length());
+        for (int i = 0; i < ele.length(); i++) {
+            char c = ele.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.' || (c == '-' && number.length() == 0)) number.append(c);
+            else if (c != ',' && !(c == ' ' && number.length() == 0)) break;
+        }
+        try {
+            return Double.parseDouble(number.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Tags of an element used by the app
+     */
+    private static final class Tags {
+        private String name;
+        private String ele;
+        private String natural;
+    }
+}
@@ -4,26 +4,32 @@ import android.util.Log;
 
 import androidx.core.util.Pair;
 
-import com.google.gson.Gson;
-
 import org.osmdroid.util.BoundingBox;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 
+import ch.epfl.sdp.peakar.utils.BinaryStreams;
+import ch.epfl.sdp.peakar.utils.WriteBehindWriter;
+
 /**
  * Class used to cache list of POIs in the surrounding
- * The list of POI is converted to JSON, the corresponding bounding box
- * is added to the JSON and everything is saved in the cache folder
- * of the android device
+ * The bounding box, the list of POI (see POIPointCodec) and the topography
+ * map (see TopographyCodec) are written in a compact binary file saved
+ * in the cache folder of the android device
+ *
+ * The file is written in the background by the WriteBehindWriter, so a crash
+ * in the middle of a write never corrupts the cache.
  */
 public class POICache {
     //Constants
-    private static final String CACHE_FILE_NAME = "POIPointsCache.txt";
+    private static final String CACHE_FILE_NAME = "POIPointsCache.bin";
+    //JSON cache file of the previous versions, deleted on first use
+    private static final String LEGACY_CACHE_FILE_NAME = "POIPointsCache.txt";
     private static final float INNER_BOUNDING_BOX_SCALING_FACTOR = 0.5f;
 
     private static POICache instance;
@@ -33,12 +39,9 @@ public class POICache {
     /*Bounding box saved to cache*/
     private static BoundingBox cachedBoundingBox;
 
-    /*Topography map saved in the cache*/
-    private static Pair<int[][], Double> cachedTopography;
-
-
+    /*True once the legacy cache file has been deleted*/
+    private static boolean legacyCacheDeleted;
 
-    private static Gson gson;
 
     /**
      * Private constructor: the class is a singleton
@@ -46,8 +49,6 @@ public class POICache {
     private POICache(){
         cachedPOIPoints = null;
         cachedBoundingBox = null;
-        cachedTopography = null;
-        gson = new Gson();
     }
 
     /**
@@ -71,67 +72,78 @@ public class POICache {
                                    BoundingBox cachedBoundingBox,
                                    Pair<int[][], Double> cachedTopography,
                                    File cacheDir){
-        //Create a new object with all needed information to save in JSON
+        //Create a new object with all needed information to save
         POICacheContent poiCacheContent = new POICacheContent(cachedPOIPoints,
                 cachedBoundingBox,
                 cachedTopography);
-        //Convert to JSON
-        String serializesCache = gson.toJson(poiCacheContent);
-        saveJson(serializesCache,cacheDir);
+        saveContent(poiCacheContent,cacheDir);
     }
 
     /**
-     * Save the serialized JSON to text file
-     * @param serializedObject string in json format
+     * Queue the serialization of the cache content to the cache file
+     * @param poiCacheContent content to serialize
      * @param cacheDir path to cache directory
      */
-    private static void saveJson(String serializedObject,File cacheDir){
+    private static void saveContent(POICacheContent poiCacheContent,File cacheDir){
+        deleteLegacyCacheFile(cacheDir);
         File outputFile = new File(cacheDir,CACHE_FILE_NAME);
-            try{
-            FileWriter writer = new FileWriter(outputFile);
-            writer.append(serializedObject);
-            writer.flush();
-            writer.close();
-        }
-            catch(IOException e){
-            Log.e("Exception", "File write failed cache POIPoints: " + e.toString());
-        }
+        WriteBehindWriter.getInstance().write(outputFile, outputStream -> {
+            BinaryStreams.writeBoundingBox(outputStream, poiCacheContent.getCachedBoundingBox());
+            POIPointCodec.encode(poiCacheContent.getCachedPOIPoints(), outputStream);
+            TopographyCodec.encode(poiCacheContent.getCachedTopography(), outputStream);
+        });
     }
 
 
     /**
-     * Retrieve POI data from cache and overwrite cachedPOIPoints, cachedBoundingBox
-     * and cached topography map with cache file values
+     * Retrieve POI data from cache and overwrite cachedPOIPoints and cachedBoundingBox
+     * with cache file values. The topography map is not kept in memory: for large ranges it
+     * is the largest part of the cache, and it is only needed to build the ElevationMap.
+     * If the cache file can't be read or is corrupted, it is deleted and the cached
+     * values are reset to null
      * @param cacheDir path to cache directory
+     * @return topography map read from the cache file, null if there is none
      */
-    private static void retrievePOIDataFromCache(File cacheDir){
-        String fileContent = readJSON(cacheDir);
-        POICacheContent poiCacheContent = gson.fromJson(fileContent, POICacheContent.class);
-        cachedPOIPoints = poiCacheContent.getCachedPOIPoints();
-        cachedBoundingBox = poiCacheContent.getCachedBoundingBox();
-        cachedTopography = poiCacheContent.getCachedTopography();
+    private static Pair<int[][], Double> retrievePOIDataFromCache(File cacheDir){
+        POICacheContent poiCacheContent = readContent(cacheDir);
+        cachedPOIPoints = poiCacheContent != null ? poiCacheContent.getCachedPOIPoints() : null;
+        cachedBoundingBox = poiCacheContent != null ? poiCacheContent.getCachedBoundingBox() : null;
+        return poiCacheContent != null ? poiCacheContent.getCachedTopography() : null;
     }
 
 
     /**
-     * Read text file and retrieve serialized
-     * @return serialized string
+     * Read the cache file and deserialize it, waiting for a pending write of the file first
+     * @param path path to cache directory
+     * @return deserialized cache content or null if the file is missing or corrupted
      */
-    private static String readJSON(File path){
+    private static POICacheContent readContent(File path){
+        deleteLegacyCacheFile(path);
         File file = new File(path, CACHE_FILE_NAME);
-        StringBuilder fileContent = new StringBuilder();
-            try{
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
-            String line;
-            while ((line = bufferedReader.readLine()) != null){
-                fileContent.append(line);
-                fileContent.append('\n');
-            }
-            bufferedReader.close();
+        WriteBehindWriter.getInstance().await(file);
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            BoundingBox boundingBox = BinaryStreams.readBoundingBox(inputStream);
+            ArrayList<POIPoint> poiPoints = POIPointCodec.decode(inputStream);
+            Pair<int[][], Double> topography = TopographyCodec.decode(inputStream);
+            return new POICacheContent(poiPoints, boundingBox, topography);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.e("Exception", "File read failed cache POIPoints: " + e.toString());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
         }
-            return fileContent.toString();
+    }
+
+    /**
+     * Deletes the JSON cache file of the previous versions. It is not migrated since the cache
+     * is downloaded again when missing.
+     * @param cacheDir path to cache directory
+     */
+    private static void deleteLegacyCacheFile(File cacheDir){
+        if(legacyCacheDeleted) return;
+        //noinspection ResultOfMethodCallIgnored
+        new File(cacheDir,LEGACY_CACHE_FILE_NAME).delete();
+        legacyCacheDeleted = true;
     }
 
     /**
@@ -144,9 +156,10 @@ public class POICache {
      * @return true if the user is in the middle of the cached bounding box
      *          false if not
      */
-    public boolean isUserInBoundingBox(UserPoint userPoint,File cacheDir){
+    public boolean isUserInBoundingBox(Point userPoint,File cacheDir){
         //Get the bounding box from file if not already present
         retrievePOIDataFromCache(cacheDir);
+        if(cachedBoundingBox == null) return false;
         //Decrease the size of the bounding box by half
         BoundingBox innerBox = cachedBoundingBox.increaseByScale(INNER_BOUNDING_BOX_SCALING_FACTOR);
         return innerBox.contains(userPoint.getLatitude(), userPoint.getLongitude());
@@ -160,7 +173,7 @@ public class POICache {
      */
     public boolean isCacheFilePresent(File cacheDir){
         File file = new File(cacheDir,CACHE_FILE_NAME);
-        return file.exists();
+        return WriteBehindWriter.getInstance().isPending(file) || file.exists();
     }
 
     /**
@@ -179,8 +192,7 @@ public class POICache {
      * @return topography map
      */
     public Pair<int[][], Double> getCachedTopography(File cacheDir){
-        retrievePOIDataFromCache(cacheDir);
-        return cachedTopography;
+        return retrievePOIDataFromCache(cacheDir);
     }
 
 
@@ -192,6 +204,7 @@ public class POICache {
      */
     public void deleteCacheFile(File cacheDir){
         File outputFile = new File(cacheDir,CACHE_FILE_NAME);
+        WriteBehindWriter.getInstance().cancel(outputFile);
         //noinspection ResultOfMethodCallIgnored
         outputFile.delete();
     }
@@ -9,7 +9,7 @@ import java.util.ArrayList;
 /**
  * Class used to create object that will be serialized and deserialized
  * in POICache.java file.
- * in JSON format
+ * in binary format (see POIPointCodec and TopographyCodec)
  */
 public class POICacheContent {
     /*List of POIs contained in the cache*/
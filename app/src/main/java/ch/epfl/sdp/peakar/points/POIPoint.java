@@ -3,8 +3,6 @@ package ch.epfl.sdp.peakar.points;
 import org.osmdroid.bonuspack.location.POI;
 import org.osmdroid.util.GeoPoint;
 
-import java.util.Objects;
-
 /**
  * POIPoint is a class that extends Point.java and represents a POI in the map.
  *
@@ -22,6 +20,7 @@ public class POIPoint extends Point {
 
     private String name;
     private String discoveredDate;
+    private long osmId;
 
     /**
      * Constructor for POIPoint.
@@ -39,6 +38,7 @@ public class POIPoint extends Point {
     public POIPoint(POI point) {
         super(point.mLocation.getLatitude(), point.mLocation.getLongitude(), point.mLocation.getAltitude());
         this.setName(point.mType);
+        this.setOsmId(point.mId);
     }
 
     /**
@@ -55,12 +55,17 @@ public class POIPoint extends Point {
     }
 
     /**
-     * Override method for POIPoint HashSet comparison
+     * Override method for POIPoint HashSet comparison. Same value as Objects.hash of the name hash,
+     * latitude, longitude and altitude, computed without boxing since the POIPoints are looked up
+     * while drawing every frame.
      * @return hashcode
      */
     @Override
     public int hashCode() {
-        return Objects.hash(name.hashCode(), this.getLatitude(), this.getLongitude(), this.getAltitude());
+        int hash = 31 + name.hashCode();
+        hash = 31 * hash + Double.hashCode(this.getLatitude());
+        hash = 31 * hash + Double.hashCode(this.getLongitude());
+        return 31 * hash + Double.hashCode(this.getAltitude());
     }
 
     /**
@@ -96,4 +101,22 @@ public class POIPoint extends Point {
     public void setDiscoveredDate(String date){
         discoveredDate = date;
     }
+
+    /**
+     * Get the OpenStreetMap id of the POIPoint
+     *
+     * @return OSM node id, 0 if the POIPoint does not come from OpenStreetMap
+     */
+    public long getOsmId(){
+        return osmId;
+    }
+
+    /**
+     * Set the OpenStreetMap id of the POIPoint
+     *
+     * @param osmId OSM node id
+     */
+    public void setOsmId(long osmId){
+        this.osmId = osmId;
+    }
 }
@@ -0,0 +1,184 @@
+package ch.epfl.sdp.peakar.points;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readInt;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readSignedVarLong;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readSize;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readString;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readVarInt;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.writeInt;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.writeSignedVarLong;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.writeString;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.writeVarLong;
+
+/**
+ * Compact and versioned binary codec for lists of POIPoints, used by the POI cache and the
+ * offline content instead of JSON.
+ *
+ * Only the persistent fields of a POIPoint are written (OSM id, name, coordinates, altitude and
+ * discovered date). The derived fields (bearings and distance to the user) are recomputed
+ * by the app once the points are loaded.
+ *
+ * Format (version 1):
+ * <ul>
+ * <li>magic number and version
+ * <li>string table: every distinct name and discovered date, stored once
+ * <li>number of points
+ * <li>for each point, delta encoded with respect to the previous point: OSM id, latitude and
+ * longitude in 1e-7 degrees, altitude in decimeters, followed by the string table index of the
+ * name and of the discovered date (0 for null)
+ * </ul>
+ * The order of the list is preserved.
+ */
+public final class POIPointCodec {
+
+    static final int MAGIC = 0x504F4942; // "POIB"
+    static final int VERSION = 1;
+
+    private static final double COORDINATE_SCALE = 1e7;  // 1e-7 degrees ~ 1 cm
+    private static final double ALTITUDE_SCALE = 10;     // decimeters
+
+    private static final int NULL_STRING_INDEX = 0;
+
+    //Largest number of points of a list, far beyond the peaks of the largest offline region
+    static final int MAX_POINT_COUNT = 1 << 20;
+    //Each point has a name and a discovered date
+    static final int MAX_STRING_COUNT = 2 * MAX_POINT_COUNT;
+    //The lists grow with the points actually read, so that a corrupted count is not allocated upfront
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Writes a list of POIPoints in the stream
+     * @param poiPoints POIPoints to write
+     * @param out stream to write to, should be buffered
+     * @throws IOException if the stream can't be written
+     */
+    public static void encode(List<POIPoint> poiPoints, OutputStream out) throws IOException {
+        writeInt(out, MAGIC);
+        writeVarLong(out, VERSION);
+
+        // Build the string table
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (POIPoint poiPoint : poiPoints) {
+            addToStringTable(poiPoint.getName(), stringIndexes, strings);
+            addToStringTable(poiPoint.getDiscoveredDate(), stringIndexes, strings);
+        }
+        writeVarLong(out, strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+
+        // Write the points
+        writeVarLong(out, poiPoints.size());
+        long previousId = 0;
+        long previousLatitude = 0;
+        long previousLongitude = 0;
+        long previousAltitude = 0;
+        for (POIPoint poiPoint : poiPoints) {
+            long latitude = Math.round(poiPoint.getLatitude() * COORDINATE_SCALE);
+            long longitude = Math.round(poiPoint.getLongitude() * COORDINATE_SCALE);
+            long altitude = Math.round(poiPoint.getAltitude() * ALTITUDE_SCALE);
+
+            writeSignedVarLong(out, poiPoint.getOsmId() - previousId);
+            writeSignedVarLong(out, latitude - previousLatitude);
+            writeSignedVarLong(out, longitude - previousLongitude);
+            writeSignedVarLong(out, altitude - previousAltitude);
+            writeVarLong(out, stringIndex(poiPoint.getName(), stringIndexes));
+            writeVarLong(out, stringIndex(poiPoint.getDiscoveredDate(), stringIndexes));
+
+            previousId = poiPoint.getOsmId();
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+            previousAltitude = altitude;
+        }
+    }
+
+    /**
+     * Reads a list of POIPoints written by {@link #encode(List, OutputStream)}
+     * @param in stream to read from, should be buffered
+     * @return decoded POIPoints, in the order they were written
+     * @throws IOException if the stream ends, is not a POIPoint list, has an unknown version or an
+     * invalid size
+     */
+    public static ArrayList<POIPoint> decode(InputStream in) throws IOException {
+        if (readInt(in) != MAGIC) throw new IOException("Not a POIPoint list");
+        int version = readVarInt(in);
+        if (version != VERSION) throw new IOException("Unsupported POIPoint list version " + version);
+
+        // Read the string table
+        int stringCount = readSize(in, MAX_STRING_COUNT);
+        List<String> strings = new ArrayList<>(Math.min(stringCount, INITIAL_CAPACITY) + 1);
+        strings.add(null);
+        for (int i = 1; i <= stringCount; i++) {
+            strings.add(readString(in));
+        }
+
+        // Read the points
+        int pointCount = readSize(in, MAX_POINT_COUNT);
+        ArrayList<POIPoint> poiPoints = new ArrayList<>(Math.min(pointCount, INITIAL_CAPACITY));
+        long id = 0;
+        long latitude = 0;
+        long longitude = 0;
+        long altitude = 0;
+        for (int i = 0; i < pointCount; i++) {
+            id += readSignedVarLong(in);
+            latitude += readSignedVarLong(in);
+            longitude += readSignedVarLong(in);
+            altitude += readSignedVarLong(in);
+            String name = readTableString(in, strings);
+            String discoveredDate = readTableString(in, strings);
+
+            POIPoint poiPoint = new POIPoint(name, latitude / COORDINATE_SCALE, longitude / COORDINATE_SCALE,
+                    0, discoveredDate);
+            poiPoint.setAltitude(altitude / ALTITUDE_SCALE);
+            poiPoint.setOsmId(id);
+            poiPoints.add(poiPoint);
+        }
+        return poiPoints;
+    }
+
+    /**
+     * Adds a string to the string table if it is not already contained
+     * @param string string to add, ignored if null
+     * @param stringIndexes index of each string in the table
+     * @param strings string table
+     */
+    private static void addToStringTable(String string, Map<String, Integer> stringIndexes, List<String> strings) {
+        if (string != null && !stringIndexes.containsKey(string)) {
+            strings.add(string);
+            stringIndexes.put(string, strings.size());
+        }
+    }
+
+    /**
+     * Gets the index of a string in the string table
+     * @param string string to look up
+     * @param stringIndexes index of each string in the table
+     * @return index of the string, NULL_STRING_INDEX if the string is null
+     */
+    @SuppressWarnings("ConstantConditions")
+    private static int stringIndex(String string, Map<String, Integer> stringIndexes) {
+        return string == null ? NULL_STRING_INDEX : stringIndexes.get(string);
+    }
+
+    /**
+     * Reads a string table index and returns the corresponding string
+     * @param in stream to read from
+     * @param strings string table, the first element being null
+     * @return the string or null
+     * @throws IOException if the index is out of the table
+     */
+    private static String readTableString(InputStream in, List<String> strings) throws IOException {
+        int index = readVarInt(in);
+        if (index >= strings.size()) throw new IOException("Invalid string index " + index);
+        return strings.get(index);
+    }
+}
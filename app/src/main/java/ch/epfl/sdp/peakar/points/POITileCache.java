@@ -0,0 +1,435 @@
+package ch.epfl.sdp.peakar.points;
+
+import android.util.Log;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
+
+/**
+ * Cache of the peaks of fixed geographic tiles.
+ *
+ * The world is split in tiles of TILE_SIZE_DEG x TILE_SIZE_DEG degrees. A query for a bounding box
+ * fetches the tiles it overlaps which are not cached yet, with an Overpass query for each run of
+ * contiguous missing tiles of a row, so that the cached tiles are never downloaded again, and splits
+ * the peaks between them. A fetched tile is kept for TILE_TTL_MS, so the queries made while the
+ * user moves only fetch the tiles that entered the range. Concurrent queries needing the same tile
+ * share a single in-flight fetch. At most MAX_TILES tiles are kept, the expired ones being evicted
+ * first.
+ *
+ * A response reaching the maximum number of results may be cut off: the run is fetched again in
+ * two halves, and a single tile reaching it is returned but not kept, so that it is fetched again
+ * by the next query instead of missing peaks until it expires.
+ *
+ * The runs are fetched on the NETWORK workload of the TaskScheduler. A waiting query may itself hold
+ * a thread of this workload, but it gives up after its timeout, so it cannot starve the fetches.
+ *
+ * A bounding box crossing the antimeridian is split in two boxes, fetched with a query each.
+ *
+ * The cache is in memory only: the peaks of the last position are persisted by POICache.
+ */
+public final class POITileCache {
+
+    private static final String TAG = "POITileCache";
+
+    //About 28 x 20 km in the Alps
+    static final double TILE_SIZE_DEG = 0.25;
+    static final long TILE_TTL_MS = 6 * 60 * 60 * 1000L;
+    //About the tiles of 10 positions at the largest range
+    static final int MAX_TILES = 1024;
+
+    //Maximum number of peaks of a query: the number of peaks returned to the user is only capped
+    //after merging the tiles, so that the cached tiles are complete
+    static final int QUERY_MAX_RESULTS = 10000;
+
+    //Overpass only runs two queries at the same time for a given IP address: the queued runs are
+    //fetched by this number of serial executors
+    private static final int PARALLEL_FETCHES = 2;
+
+    private static POITileCache instance = null;
+
+    private final TileFetcher fetcher;
+    private final long ttlMs;
+    private final int maxResults;
+    private final Executor[] executors = new Executor[PARALLEL_FETCHES];
+    private final AtomicInteger nextExecutor = new AtomicInteger();
+
+    /*Fetched and in-flight tiles in access order, guarded by the map itself*/
+    private final LinkedHashMap<Tile, TileEntry> tiles = new LinkedHashMap<Tile, TileEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Tile, TileEntry> eldest) {
+            //The queries waiting for an evicted in-flight tile still get its peaks
+            return size() > MAX_TILES;
+        }
+    };
+
+    /**
+     * Fetches the peaks of a bounding box
+     */
+    interface TileFetcher {
+        /**
+         * @param boundingBox bounding box of the tiles to fetch, not crossing the antimeridian
+         * @return peaks of the bounding box
+         * @throws IOException if the peaks can't be fetched
+         */
+        List<POIPoint> fetch(BoundingBox boundingBox) throws IOException;
+    }
+
+    /**
+     * Constructor
+     * @param fetcher fetcher of the tiles
+     * @param ttlMs time to live of a fetched tile (in milliseconds)
+     */
+    POITileCache(TileFetcher fetcher, long ttlMs) {
+        this(fetcher, ttlMs, QUERY_MAX_RESULTS);
+    }
+
+    /**
+     * Constructor
+     * @param fetcher fetcher of the tiles
+     * @param ttlMs time to live of a fetched tile (in milliseconds)
+     * @param maxResults maximum number of peaks returned by the fetcher for a query
+     */
+    POITileCache(TileFetcher fetcher, long ttlMs, int maxResults) {
+        this.fetcher = fetcher;
+        this.ttlMs = ttlMs;
+        this.maxResults = maxResults;
+        for (int i = 0; i < PARALLEL_FETCHES; i++) {
+            executors[i] = TaskScheduler.getInstance().serialExecutor(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH);
+        }
+    }
+
+    /**
+     * Returns the instance of the POITileCache, fetching the tiles from Overpass
+     * @return POITileCache instance
+     */
+    public static synchronized POITileCache getInstance() {
+        if (instance == null) {
+            instance = new POITileCache(boundingBox -> GeonamesHandler.fetchPOIs(
+                    GeonamesHandler.generateQueryUrl(boundingBox, QUERY_MAX_RESULTS,
+                            GeonamesHandler.DEFAULT_QUERY_TIMEOUT), GeonamesHandler.DEFAULT_QUERY_TIMEOUT), TILE_TTL_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the peaks inside a bounding box. Blocks until the missing tiles are fetched.
+     * A tile that fails is not cached: calling this method again only fetches the failed tiles.
+     * @param boundingBox bounding box of the query, its east longitude being lower than its west
+     *                    one or beyond 180° if it crosses the antimeridian
+     * @param timeoutMs maximum time to wait for the tiles (in milliseconds)
+     * @return copies of the peaks inside the bounding box, which can be modified by the caller
+     * @throws IOException if a tile can't be fetched in time
+     */
+    public ArrayList<POIPoint> getPOIs(BoundingBox boundingBox, long timeoutMs) throws IOException {
+        List<BoundingBox> boxes = splitAtAntimeridian(boundingBox);
+        List<TileEntry> entries = new ArrayList<>();
+        List<List<TileEntry>> runs = new ArrayList<>();
+        synchronized (tiles) {
+            long now = System.currentTimeMillis();
+            evictExpired(now);
+            for (BoundingBox box : boxes) {
+                List<TileEntry> run = null;
+                Tile previous = null;
+                for (Tile tile : Tile.covering(box)) {
+                    TileEntry entry = tiles.get(tile);
+                    if (entry == null || entry.isExpired(now, ttlMs)) {
+                        entry = new TileEntry(tile);
+                        tiles.put(tile, entry);
+                        //A run ends at a cached tile and at the end of a row
+                        if (run == null || !tile.follows(previous)) {
+                            run = new ArrayList<>();
+                            runs.add(run);
+                        }
+                        run.add(entry);
+                        previous = tile;
+                    }
+                    entries.add(entry);
+                }
+            }
+        }
+        for (List<TileEntry> run : runs) {
+            executors[Math.floorMod(nextExecutor.getAndIncrement(), PARALLEL_FETCHES)].execute(() -> fetch(run));
+        }
+
+        Map<Long, POIPoint> merged = new LinkedHashMap<>();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (TileEntry entry : entries) {
+            for (POIPoint poiPoint : await(entry, deadline)) {
+                if (contains(boxes, poiPoint)) merged.put(poiPoint.getOsmId(), copyOf(poiPoint));
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Empties the cache. The in-flight fetches complete but are not kept.
+     */
+    public void clear() {
+        synchronized (tiles) {
+            tiles.clear();
+        }
+    }
+
+    /**
+     * @return number of tiles in the cache, fetched or in flight
+     */
+    int size() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * Removes the expired and failed tiles, called with the lock of the tiles held
+     * @param now current time
+     */
+    private void evictExpired(long now) {
+        Iterator<TileEntry> iterator = tiles.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now, ttlMs)) iterator.remove();
+        }
+    }
+
+    /**
+     * Fetches contiguous tiles of a row with a single query over their union and splits the peaks
+     * between them. A response reaching the maximum number of results is fetched again in two
+     * halves, down to a single tile which is then not kept.
+     * @param missing entries of the tiles to fetch, from the same side of the antimeridian
+     */
+    private void fetch(List<TileEntry> missing) {
+        int south = Integer.MAX_VALUE, north = Integer.MIN_VALUE, west = Integer.MAX_VALUE, east = Integer.MIN_VALUE;
+        for (TileEntry entry : missing) {
+            south = Math.min(south, entry.tile.latIndex);
+            north = Math.max(north, entry.tile.latIndex);
+            west = Math.min(west, entry.tile.lonIndex);
+            east = Math.max(east, entry.tile.lonIndex);
+        }
+        BoundingBox union = new BoundingBox((north + 1) * TILE_SIZE_DEG, (east + 1) * TILE_SIZE_DEG,
+                south * TILE_SIZE_DEG, west * TILE_SIZE_DEG);
+
+        List<POIPoint> poiPoints;
+        try {
+            poiPoints = fetcher.fetch(union);
+        } catch (IOException | RuntimeException e) {
+            for (TileEntry entry : missing) entry.peaks.completeExceptionally(e);
+            return;
+        }
+        boolean truncated = poiPoints.size() >= maxResults;
+        if (truncated && missing.size() > 1) {
+            int half = missing.size() / 2;
+            fetch(missing.subList(0, half));
+            fetch(missing.subList(half, missing.size()));
+            return;
+        }
+        if (truncated) Log.w(TAG, "Tile " + missing.get(0).tile + " cut off at " + maxResults + " peaks, not cached");
+
+        //Each peak goes to the tile containing it, a peak on an edge to the north-east tile
+        Map<Tile, List<POIPoint>> split = new HashMap<>();
+        for (TileEntry entry : missing) split.put(entry.tile, new ArrayList<>());
+        for (POIPoint poiPoint : poiPoints) {
+            List<POIPoint> tilePeaks = split.get(Tile.of(poiPoint.getLatitude(), poiPoint.getLongitude()));
+            if (tilePeaks != null) tilePeaks.add(poiPoint);
+        }
+        long fetchTime = System.currentTimeMillis();
+        for (TileEntry entry : missing) {
+            entry.fetchTime = fetchTime;
+            entry.truncated = truncated;
+            entry.peaks.complete(split.get(entry.tile));
+        }
+        Log.d(TAG, "Fetched " + missing.size() + " tiles in " + union + ": " + poiPoints.size() + " peaks");
+    }
+
+    /**
+     * Waits for the peaks of a tile
+     * @param entry entry of the tile
+     * @param deadline time until which to wait (System.currentTimeMillis())
+     * @return peaks of the tile
+     * @throws IOException if the tile can't be fetched in time
+     */
+    private List<POIPoint> await(TileEntry entry, long deadline) throws IOException {
+        try {
+            return entry.peaks.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            //The fetch goes on: the next query for the tile waits for it instead of starting another one
+            throw new IOException("Timeout while fetching tile " + entry.tile, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching tile " + entry.tile, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to fetch tile " + entry.tile, e.getCause());
+        }
+    }
+
+    /**
+     * Splits a bounding box crossing the antimeridian in two boxes with longitudes in [-180, 180]
+     * @param boundingBox bounding box
+     * @return one or two bounding boxes covering the bounding box
+     */
+    static List<BoundingBox> splitAtAntimeridian(BoundingBox boundingBox) {
+        double west = boundingBox.getLonWest();
+        double east = boundingBox.getLonEast();
+        if (east < west) east += 360;
+        //Bring the west longitude in [-180, 180)
+        double shift = Math.floor((west + 180) / 360) * 360;
+        west -= shift;
+        east -= shift;
+
+        List<BoundingBox> boxes = new ArrayList<>(2);
+        double north = boundingBox.getLatNorth();
+        double south = boundingBox.getLatSouth();
+        if (east <= 180) {
+            boxes.add(new BoundingBox(north, east, south, west));
+        } else {
+            boxes.add(new BoundingBox(north, 180, south, west));
+            boxes.add(new BoundingBox(north, Math.min(east - 360, west), south, -180));
+        }
+        return boxes;
+    }
+
+    /**
+     * @param boxes bounding boxes not crossing the antimeridian
+     * @param poiPoint peak
+     * @return true if the peak is inside one of the boxes
+     */
+    private static boolean contains(List<BoundingBox> boxes, POIPoint poiPoint) {
+        for (BoundingBox box : boxes) {
+            if (poiPoint.getLatitude() >= box.getLatSouth() && poiPoint.getLatitude() <= box.getLatNorth()
+                    && poiPoint.getLongitude() >= box.getLonWest() && poiPoint.getLongitude() <= box.getLonEast()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copies a peak of a tile, so that the callers never share the cached POIPoints
+     * @param poiPoint peak to copy
+     * @return copy of the peak
+     */
+    private static POIPoint copyOf(POIPoint poiPoint) {
+        POIPoint copy = new POIPoint(poiPoint.getName(), poiPoint.getLatitude(), poiPoint.getLongitude(), 0, poiPoint.getDiscoveredDate());
+        copy.setAltitude(poiPoint.getAltitude());
+        copy.setOsmId(poiPoint.getOsmId());
+        return copy;
+    }
+
+    /**
+     * Fetched or in-flight tile
+     */
+    private static final class TileEntry {
+        private final Tile tile;
+        private final CompletableFuture<List<POIPoint>> peaks = new CompletableFuture<>();
+        private volatile long fetchTime;
+        //True if the response of the tile was cut off
+        private volatile boolean truncated;
+
+        private TileEntry(Tile tile) {
+            this.tile = tile;
+        }
+
+        /**
+         * Checks whether the entry must be fetched again. In-flight fetches are never expired.
+         * @param now current time
+         * @param ttlMs time to live of a tile
+         * @return true if the tile failed, was cut off or was fetched more than ttlMs ago
+         */
+        private boolean isExpired(long now, long ttlMs) {
+            if (!peaks.isDone()) return false;
+            return peaks.isCompletedExceptionally() || truncated || now - fetchTime > ttlMs;
+        }
+    }
+
+    /**
+     * Tile of the grid, identified by the indexes of its south-west corner
+     */
+    static final class Tile {
+        private final int latIndex;
+        private final int lonIndex;
+
+        Tile(int latIndex, int lonIndex) {
+            this.latIndex = latIndex;
+            this.lonIndex = lonIndex;
+        }
+
+        /**
+         * @param latitude latitude
+         * @param longitude longitude
+         * @return tile containing the coordinates
+         */
+        static Tile of(double latitude, double longitude) {
+            return new Tile(index(latitude), index(longitude));
+        }
+
+        /**
+         * Gets the tiles overlapping a bounding box
+         * @param boundingBox bounding box, not crossing the antimeridian
+         * @return tiles overlapping the bounding box, row by row from the south-west one
+         */
+        static List<Tile> covering(BoundingBox boundingBox) {
+            int south = index(boundingBox.getLatSouth());
+            int north = index(boundingBox.getLatNorth());
+            int west = index(boundingBox.getLonWest());
+            //The tiles east of 180° are the ones east of -180°
+            int east = Math.min(index(boundingBox.getLonEast()), index(180) - 1);
+            List<Tile> covering = new ArrayList<>((north - south + 1) * (east - west + 1));
+            for (int lat = south; lat <= north; lat++) {
+                for (int lon = west; lon <= east; lon++) covering.add(new Tile(lat, lon));
+            }
+            return covering;
+        }
+
+        /**
+         * @param coordinate latitude or longitude
+         * @return index of the tiles containing the coordinate
+         */
+        private static int index(double coordinate) {
+            return (int) Math.floor(coordinate / TILE_SIZE_DEG);
+        }
+
+        /**
+         * @param previous tile, may be null
+         * @return true if this tile is the eastern neighbour of the previous tile
+         */
+        boolean follows(Tile previous) {
+            return previous != null && previous.latIndex == latIndex && previous.lonIndex + 1 == lonIndex;
+        }
+
+        /**
+         * @return bounding box of the tile
+         */
+        BoundingBox getBoundingBox() {
+            return new BoundingBox((latIndex + 1) * TILE_SIZE_DEG, (lonIndex + 1) * TILE_SIZE_DEG,
+                    latIndex * TILE_SIZE_DEG, lonIndex * TILE_SIZE_DEG);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Tile)) return false;
+            Tile other = (Tile) obj;
+            return latIndex == other.latIndex && lonIndex == other.lonIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * latIndex + lonIndex;
+        }
+
+        @Override
+        public String toString() {
+            return latIndex + "_" + lonIndex;
+        }
+    }
+}
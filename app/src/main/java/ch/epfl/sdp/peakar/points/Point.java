@@ -155,9 +155,9 @@ public class Point {
 
     /**
      * Sets the distance between the point and the given userPoint
-     * @param userPoint userPoint for which the distance will be computed.
+     * @param userPoint location of the user for which the distance will be computed.
      */
-    public void setDistanceToUser(UserPoint userPoint){
+    public void setDistanceToUser(Point userPoint){
         distanceToUser = this.computeDistance(userPoint);
     }
 
@@ -0,0 +1,126 @@
+package ch.epfl.sdp.peakar.points;
+
+/**
+ * Kalman filter of the location of the user.
+ *
+ * The position is modeled as a random walk at walking speed: its variance grows with the time since
+ * the last fix, and each fix is weighted by its accuracy. Under trees or in canyons the fixes jump
+ * by tens of meters with a large accuracy radius, and the estimate only moves by a fraction of the
+ * jump. The horizontal filter is isotropic, so the same gain applies to the latitude and the
+ * longitude. A fix further than RESET_SIGMAS standard deviations from the estimate, like the first
+ * real fix after the default location, restarts the filter, and so does a fix of accuracy 0 like the
+ * default location, which is taken as exact.
+ */
+final class PositionEstimator {
+
+    //Variance of the movement of the user in m^2/s, about walking speed
+    private static final double MOVEMENT_VARIANCE = 2.0;
+    //Ratio of the vertical and horizontal accuracies of the fixes
+    private static final double VERTICAL_ACCURACY_FACTOR = 1.5;
+    //Number of standard deviations by which a move must exceed the uncertainty to be significant
+    static final double SIGNIFICANCE = 2;
+    //Number of standard deviations of the innovation after which the filter restarts from the fix
+    static final double RESET_SIGMAS = 10;
+
+    private boolean initialized;
+    private long lastTime;
+    private final Point estimate = new Point(0, 0, 0);
+
+    //Variances of the horizontal and vertical positions in m^2
+    private double horizontalVariance;
+    private double verticalVariance;
+
+    /**
+     * Adds a fix. Fixes older than the last one are ignored, so the same fix can be added twice.
+     * @param latitude latitude of the fix in degrees
+     * @param longitude longitude of the fix in degrees
+     * @param altitude altitude of the fix in meters
+     * @param accuracy accuracy of the fix in meters, 0 if the fix is exact
+     * @param timeMillis time of the fix in milliseconds
+     * @return true if the estimate changed
+     */
+    boolean update(double latitude, double longitude, double altitude, double accuracy, long timeMillis) {
+        if (initialized && timeMillis <= lastTime) return false;
+        double horizontalMeasureVariance = square(accuracy);
+        double verticalMeasureVariance = square(VERTICAL_ACCURACY_FACTOR) * horizontalMeasureVariance;
+
+        if (accuracy <= 0) initialized = false;
+        if (initialized) {
+            //Predict: the user may have moved since the last fix
+            double movementVariance = MOVEMENT_VARIANCE * (timeMillis - lastTime) / 1000.0;
+            horizontalVariance += movementVariance;
+            verticalVariance += movementVariance;
+
+            double innovation = estimate.computeFlatDistance(new Point(latitude, longitude, 0));
+            if (innovation > RESET_SIGMAS * Math.sqrt(horizontalVariance + horizontalMeasureVariance)) {
+                initialized = false;
+            }
+        }
+
+        if (!initialized) {
+            initialized = true;
+            estimate.setLatitude(latitude);
+            estimate.setLongitude(longitude);
+            estimate.setAltitude(altitude);
+            horizontalVariance = horizontalMeasureVariance;
+            verticalVariance = verticalMeasureVariance;
+        } else {
+            //Update with the fix weighted by its accuracy
+            double horizontalGain = horizontalVariance / (horizontalVariance + horizontalMeasureVariance);
+            double verticalGain = verticalVariance / (verticalVariance + verticalMeasureVariance);
+            estimate.setLatitude(estimate.getLatitude() + horizontalGain * (latitude - estimate.getLatitude()));
+            estimate.setLongitude(estimate.getLongitude() + horizontalGain * (longitude - estimate.getLongitude()));
+            estimate.setAltitude(estimate.getAltitude() + verticalGain * (altitude - estimate.getAltitude()));
+            horizontalVariance *= 1 - horizontalGain;
+            verticalVariance *= 1 - verticalGain;
+        }
+        lastTime = timeMillis;
+        return true;
+    }
+
+    /**
+     * Checks if a move is significant: longer than the minimum distance and than the uncertainty of
+     * both positions
+     * @param distance distance between the positions in meters
+     * @param accuracy accuracy of the new position in meters
+     * @param lastAccuracy accuracy of the last position in meters
+     * @param minDistance minimum distance in meters
+     * @return true if the move is significant
+     */
+    static boolean isSignificantMove(double distance, double accuracy, double lastAccuracy, double minDistance) {
+        double uncertainty = Math.sqrt(square(accuracy) + square(lastAccuracy));
+        return distance > minDistance && distance > SIGNIFICANCE * uncertainty;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    /**
+     * @return estimated latitude in degrees
+     */
+    double getLatitude() {
+        return estimate.getLatitude();
+    }
+
+    /**
+     * @return estimated longitude in degrees
+     */
+    double getLongitude() {
+        return estimate.getLongitude();
+    }
+
+    /**
+     * @return estimated altitude in meters
+     */
+    double getAltitude() {
+        return estimate.getAltitude();
+    }
+
+    /**
+     * @return accuracy of the estimated position in meters (standard deviation)
+     */
+    double getAccuracy() {
+        return Math.sqrt(horizontalVariance);
+    }
+}
@@ -0,0 +1,101 @@
+package ch.epfl.sdp.peakar.points;
+
+import androidx.core.util.Pair;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readDouble;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readSignedVarLong;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readSize;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.readVarInt;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.writeDouble;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.writeSignedVarLong;
+import static ch.epfl.sdp.peakar.utils.BinaryStreams.writeVarLong;
+
+/**
+ * Compact binary codec for the topography map (elevation grid and cell size), used by the POI
+ * cache and the offline content together with POIPointCodec.
+ *
+ * Each elevation is written as the zig-zag encoded difference with its left neighbour (the first
+ * cell of a row with the first cell of the previous row). Neighbouring cells of the SRTMGL3 grid are
+ * 90 m apart, so most differences fit in one or two bytes.
+ * A missing topography map is written as a single flag.
+ */
+public final class TopographyCodec {
+
+    static final int VERSION = 1;
+
+    private static final int ABSENT = 0;
+    private static final int PRESENT = 1;
+
+    //Largest number of cells of a map, about 370 x 370 km at 3 arc seconds, beyond the largest range
+    static final int MAX_CELL_COUNT = 1 << 24;
+
+    /**
+     * Writes a topography map in the stream
+     * @param topography pair of the topography map and the map cell size, can be null
+     * @param out stream to write to, should be buffered
+     * @throws IOException if the stream can't be written
+     */
+    @SuppressWarnings("ConstantConditions")
+    public static void encode(Pair<int[][], Double> topography, OutputStream out) throws IOException {
+        writeVarLong(out, VERSION);
+        if (topography == null || topography.first == null || topography.second == null) {
+            writeVarLong(out, ABSENT);
+            return;
+        }
+        writeVarLong(out, PRESENT);
+
+        int[][] topographyMap = topography.first;
+        int nRow = topographyMap.length;
+        int nCol = nRow > 0 ? topographyMap[0].length : 0;
+        writeDouble(out, topography.second);
+        writeVarLong(out, nRow);
+        writeVarLong(out, nCol);
+
+        int rowStart = 0;
+        for (int[] row : topographyMap) {
+            if (row.length != nCol) throw new IOException("Topography map is not rectangular");
+            int previous = rowStart;
+            for (int col = 0; col < nCol; col++) {
+                writeSignedVarLong(out, (long) row[col] - previous);
+                previous = row[col];
+            }
+            if (nCol > 0) rowStart = row[0];
+        }
+    }
+
+    /**
+     * Reads a topography map written by {@link #encode(Pair, OutputStream)}
+     * @param in stream to read from, should be buffered
+     * @return pair of the topography map and the map cell size, null if no map was written
+     * @throws IOException if the stream ends, has an unknown version or more than MAX_CELL_COUNT cells
+     */
+    public static Pair<int[][], Double> decode(InputStream in) throws IOException {
+        int version = readVarInt(in);
+        if (version != VERSION) throw new IOException("Unsupported topography version " + version);
+        if (readVarInt(in) == ABSENT) return null;
+
+        double mapCellSize = readDouble(in);
+        int nRow = readSize(in, MAX_CELL_COUNT);
+        int nCol = readSize(in, MAX_CELL_COUNT);
+        if ((long) nRow * nCol > MAX_CELL_COUNT) throw new IOException("Invalid topography size " + nRow + " x " + nCol);
+
+        //The rows are allocated as they are read, so that a truncated map fails before allocating the whole map
+        int[][] topographyMap = new int[nRow][];
+        int rowStart = 0;
+        for (int i = 0; i < nRow; i++) {
+            int[] row = new int[nCol];
+            topographyMap[i] = row;
+            int previous = rowStart;
+            for (int col = 0; col < nCol; col++) {
+                previous += (int) readSignedVarLong(in);
+                row[col] = previous;
+            }
+            if (nCol > 0) rowStart = row[0];
+        }
+        return new Pair<>(topographyMap, mapCellSize);
+    }
+}
@@ -0,0 +1,144 @@
+package ch.epfl.sdp.peakar.points;
+
+import androidx.core.util.Pair;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Helper to download the topography map of a large region as several smaller tiles.
+ *
+ * The region is split into a grid of bounding boxes, each tile is requested from OpenTopography
+ * and decoded by a DemDecoder, and the tiles are then stitched into one topography map covering the region. The
+ * position of a tile in the stitched map is computed from its lower left corner, so overlapping
+ * edges are merged and the map has the same layout as a map downloaded in a single request.
+ */
+public final class TopographyTiles {
+
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+
+    /**
+     * Splits a bounding box in a grid of tiles
+     * @param boundingBox bounding box to split
+     * @param tilesPerSide number of rows and columns of the grid
+     * @return tiles ordered row by row, from the north west corner
+     */
+    public static List<BoundingBox> split(BoundingBox boundingBox, int tilesPerSide) {
+        if (tilesPerSide < 1)
+            throw new IllegalArgumentException("A bounding box must be split in at least one tile");
+        double latStep = (boundingBox.getLatNorth() - boundingBox.getLatSouth()) / tilesPerSide;
+        double lonStep = (boundingBox.getLonEast() - boundingBox.getLonWest()) / tilesPerSide;
+        List<BoundingBox> tiles = new ArrayList<>(tilesPerSide * tilesPerSide);
+        for (int row = 0; row < tilesPerSide; row++) {
+            double north = boundingBox.getLatNorth() - row * latStep;
+            for (int col = 0; col < tilesPerSide; col++) {
+                double west = boundingBox.getLonWest() + col * lonStep;
+                tiles.add(new BoundingBox(north, west + lonStep, north - latStep, west));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Stitches the AAIGrid tiles of a region in one topography map
+     * @param boundingBox bounding box of the region
+     * @param tiles AAIGrid tiles of the region
+     * @return pair of the topography map and the map cell size
+     * @throws IOException if there is no tile or a tile is not a valid AAIGrid
+     */
+    public static Pair<int[][], Double> stitch(BoundingBox boundingBox, List<Reader> tiles) throws IOException {
+        List<DemGrid> grids = new ArrayList<>(tiles.size());
+        for (Reader tile : tiles) grids.add(AAIGridDecoder.parse(tile));
+        return stitchGrids(boundingBox, grids);
+    }
+
+    /**
+     * Stitches the tiles of a region in one topography map. Cells that are not covered by any
+     * tile take the value of their west (or north) neighbour.
+     * @param boundingBox bounding box of the region
+     * @param grids decoded tiles of the region
+     * @return pair of the topography map and the map cell size
+     * @throws IOException if there is no tile
+     */
+    static Pair<int[][], Double> stitchGrids(BoundingBox boundingBox, List<DemGrid> grids) throws IOException {
+        Stitcher stitcher = new Stitcher(boundingBox);
+        for (DemGrid grid : grids) stitcher.add(grid);
+        return stitcher.finish();
+    }
+
+    /**
+     * Stitches the tiles of a region one after the other, so that only the topography map and the
+     * tile being added are held in memory
+     */
+    static final class Stitcher {
+        private final BoundingBox boundingBox;
+        private double cellSize;
+        private int[][] topographyMap;
+
+        /**
+         * Constructor
+         * @param boundingBox bounding box of the region
+         */
+        Stitcher(BoundingBox boundingBox) {
+            this.boundingBox = boundingBox;
+        }
+
+        /**
+         * Copies a tile in the topography map. The map has the cell size of the first tile.
+         * @param grid decoded tile of the region
+         */
+        void add(DemGrid grid) {
+            if (topographyMap == null) {
+                cellSize = grid.cellSize;
+                int nRow = Math.max(1, (int) Math.round((boundingBox.getLatNorth() - boundingBox.getLatSouth()) / cellSize));
+                int nCol = Math.max(1, (int) Math.round((boundingBox.getLonEast() - boundingBox.getLonWest()) / cellSize));
+                topographyMap = new int[nRow][nCol];
+                for (int[] row : topographyMap) Arrays.fill(row, NO_VALUE);
+            }
+
+            int nRow = topographyMap.length;
+            int nCol = topographyMap[0].length;
+            double gridNorth = grid.yllCorner + grid.nRow * grid.cellSize;
+            int rowOffset = (int) Math.round((boundingBox.getLatNorth() - gridNorth) / cellSize);
+            int colOffset = (int) Math.round((grid.xllCorner - boundingBox.getLonWest()) / cellSize);
+            for (int row = Math.max(0, -rowOffset); row < grid.nRow && row + rowOffset < nRow; row++) {
+                int firstCol = Math.max(0, -colOffset);
+                int lastCol = Math.min(grid.nCol, nCol - colOffset);
+                if (lastCol > firstCol)
+                    System.arraycopy(grid.values[row], firstCol, topographyMap[row + rowOffset], firstCol + colOffset, lastCol - firstCol);
+            }
+        }
+
+        /**
+         * Fills the cells not covered by the tiles
+         * @return pair of the topography map and the map cell size
+         * @throws IOException if no tile was added
+         */
+        Pair<int[][], Double> finish() throws IOException {
+            if (topographyMap == null) throw new IOException("No topography tile");
+            fillGaps(topographyMap);
+            return new Pair<>(topographyMap, cellSize);
+        }
+    }
+
+    /**
+     * Fills the cells not covered by a tile with the value of their west neighbour, or of their
+     * north neighbour for the first column
+     * @param topographyMap stitched topography map
+     */
+    private static void fillGaps(int[][] topographyMap) {
+        for (int row = 0; row < topographyMap.length; row++) {
+            for (int col = 0; col < topographyMap[row].length; col++) {
+                if (topographyMap[row][col] != NO_VALUE) continue;
+                if (col > 0) topographyMap[row][col] = topographyMap[row][col - 1];
+                else if (row > 0) topographyMap[row][col] = topographyMap[row - 1][col];
+                else topographyMap[row][col] = 0;
+            }
+        }
+    }
+}
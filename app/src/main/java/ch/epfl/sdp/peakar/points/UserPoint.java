@@ -2,10 +2,7 @@ package ch.epfl.sdp.peakar.points;
 
 import android.content.Context;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Observer;
-
+import ch.epfl.sdp.peakar.utils.EventTopic;
 
 /**
  * UserPoint is a class that represents a general point on earth.
@@ -24,13 +21,20 @@ import java.util.Observer;
  *
  * This class should be used as a observer that observes a GPSTracker.
  *
- * This class can be observed; The updates will be called only if the location changes
- * more than MIN_DISTANCE_FOR_UPDATES meters.
+ * The GPS fixes are fused by a PositionEstimator weighting them by their accuracy.
+ *
+ * A copy of the location is published on LOCATION_TOPIC, so that the subscribers running on other
+ * threads read the location of the update; The updates will be published only if the location changes
+ * more than MIN_DISTANCE_FOR_UPDATES meters and more than the uncertainty of the current and
+ * last notified locations, so that the noise of the fixes does not trigger updates. A custom location
+ * is exact: it is published as soon as it changes.
  */
 public final class UserPoint extends Point {
 
     public static final int MIN_DISTANCE_FOR_UPDATES = 100; // in meters
 
+    public static final EventTopic<Point> LOCATION_TOPIC = EventTopic.state("location"); // copies of the location updates
+
     private static UserPoint single_instance = null; // singleton instance
   
     private GPSTracker gpsTracker;
@@ -39,10 +43,12 @@ public final class UserPoint extends Point {
 
     private boolean customLocation;
 
-    private final List<Observer> observers;
-
     private final Point lastLocation;
 
+    private double lastLocationAccuracy;
+
+    private final PositionEstimator positionEstimator = new PositionEstimator();
+
     /**
      * Constructor for the UserPoint. Private because it is a singleton.
      *
@@ -53,19 +59,9 @@ public final class UserPoint extends Point {
         gpsTracker = new GPSTracker(mContext, this);
         customLocation = false;
         single_instance = this;
-        observers = new LinkedList<>();
         lastLocation = new Point(0,0,0);
     }
 
-    /**
-     * Allows to add observers to the UserPoint.
-     *
-     * @param o observer to add
-     */
-    public void addObserver(Observer o) {
-        this.observers.add(o);
-    }
-
     /**
      * Method to get the singleton instance of this class. If the class was already
      * initialized the parameter will be ignored.
@@ -84,24 +80,41 @@ public final class UserPoint extends Point {
     /**
      * Method that is used to update the current user location.
      *
-     * It updates the observers if the point has moved more than MIN_DISTANCE_FOR_UPDATES
-     * from the last saved location.
+     * It publishes the location on LOCATION_TOPIC if the point has moved significantly from the last saved
+     * location: more than MIN_DISTANCE_FOR_UPDATES and more than the uncertainty of both locations.
+     * A custom location bypasses the estimator and the accuracy gate: it is published whenever it changes.
      */
     public void update() {
-        if (!customLocation) {
-            super.setLatitude(gpsTracker.getLatitude());
-            super.setLongitude(gpsTracker.getLongitude());
-            super.setAltitude(gpsTracker.getAltitude());
-            accuracy = gpsTracker.getAccuracy();
+        if (customLocation) {
+            if (this.latitude != lastLocation.getLatitude() || this.longitude != lastLocation.getLongitude()
+                    || this.altitude != lastLocation.getAltitude()) {
+                publishLocation();
+            }
+            return;
         }
-        if (this.computeDistance(lastLocation) > MIN_DISTANCE_FOR_UPDATES) {
-            lastLocation.setLatitude(this.latitude);
-            lastLocation.setLongitude(this.longitude);
-            lastLocation.setAltitude(this.altitude);
-            observers.forEach(o -> o.update(null, null));
+        positionEstimator.update(gpsTracker.getLatitude(), gpsTracker.getLongitude(),
+                gpsTracker.getAltitude(), gpsTracker.getAccuracy(), gpsTracker.getTime());
+        super.setLatitude(positionEstimator.getLatitude());
+        super.setLongitude(positionEstimator.getLongitude());
+        super.setAltitude(positionEstimator.getAltitude());
+        accuracy = positionEstimator.getAccuracy();
+        if (PositionEstimator.isSignificantMove(this.computeDistance(lastLocation), accuracy,
+                lastLocationAccuracy, MIN_DISTANCE_FOR_UPDATES)) {
+            publishLocation();
         }
     }
 
+    /**
+     * Saves the current location as the last notified one and publishes a copy of it on LOCATION_TOPIC
+     */
+    private void publishLocation() {
+        lastLocation.setLatitude(this.latitude);
+        lastLocation.setLongitude(this.longitude);
+        lastLocation.setAltitude(this.altitude);
+        lastLocationAccuracy = accuracy;
+        LOCATION_TOPIC.publish(new Point(this.latitude, this.longitude, this.altitude));
+    }
+
     /**
      * Getter for the accuracy.
      *
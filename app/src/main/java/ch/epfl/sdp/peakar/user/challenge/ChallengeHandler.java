@@ -6,48 +6,55 @@ import android.os.Build;
 import androidx.annotation.RequiresApi;
 
 import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
 
 import ch.epfl.sdp.peakar.user.challenge.goal.RemotePointsChallenge;
 import ch.epfl.sdp.peakar.user.services.AuthAccount;
 import ch.epfl.sdp.peakar.user.services.AuthService;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
+import ch.epfl.sdp.peakar.utils.TimingWheel;
 
 /**
  * This class handles challenges that the user is enrolled in
  * Check finish time, handle rewards...
+ *
+ * The finish times of all the challenges are held by a single timing wheel, instead of a timer
+ * thread per challenge, and the challenges are ended on the background threads of the TaskScheduler.
  */
 public class ChallengeHandler {
 
+    //Duration of a tick of the wheel, a challenge is ended at most one tick after its finish time
+    private static final long TICK_MILLIS = 1000;
+    //Number of buckets of the wheel, the finish times further than a turn wait for their round
+    private static final int WHEEL_SIZE = 512;
+
+    private static final TimingWheel expirationWheel = new TimingWheel(TICK_MILLIS, WHEEL_SIZE,
+            TaskScheduler.getInstance().executor(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.LOW));
+
     private static AuthAccount userAccount = null;
-    private static ArrayList<Timer> challengeExpirationList = null;
+    //Pending expiration of each challenge of the account, by challenge ID
+    private static final Map<String, TimingWheel.Timeout> challengeExpirations = new HashMap<>();
 
     /**
-     * challenge handler singleton
+     * challenge handler singleton, to call again when the account changes
      */
     @SuppressLint("NewApi")
-    public static void init(){
-        userAccount = AuthService.getInstance().getAuthAccount();
-        challengeExpirationList = new ArrayList<>();
-
-        // Replace the account and stop the old timers
+    public static synchronized void init(){
+        // Stop the expirations of the old account before replacing it
+        for (TimingWheel.Timeout expiration : challengeExpirations.values()) {
+            expiration.cancel();
+        }
+        challengeExpirations.clear();
         userAccount = AuthService.getInstance().getAuthAccount();
-        challengeExpirationList.forEach(x -> {
-            x.cancel();
-            x.purge();
-        });
-        challengeExpirationList.clear();
 
         // Set up a new listener
-        initChallengeFinishTimeListener();
-
+        if (userAccount != null) initChallengeFinishTimeListener();
     }
 
     /**
-     * Creates a listener for each event
+     * Schedules the expiration of each challenge
      */
     @RequiresApi(api = Build.VERSION_CODES.O)
     private static void initChallengeFinishTimeListener(){
@@ -55,47 +62,32 @@ public class ChallengeHandler {
         List<Challenge> challengeList = userAccount.getChallenges();
         //add listener for enrolled challenges
         for(Challenge challenge : challengeList){
-            Timer expirationTimer = new Timer();
-            Date finishDate = Date.from(challenge.getFinishDateTime().atZone(ZoneId.systemDefault()).toInstant());
-            expirationTimer.schedule(new ChallengeExpirationTimerTask((RemotePointsChallenge)challenge,expirationTimer),finishDate);
-            //Add timer to list of all timers
-            challengeExpirationList.add(expirationTimer);
+            long finishMillis = challenge.getFinishDateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            AuthAccount account = userAccount;
+            TimingWheel.Timeout expiration = expirationWheel.scheduleAfter(
+                    () -> onChallengeExpired(account, (RemotePointsChallenge) challenge),
+                    finishMillis - System.currentTimeMillis());
+            TimingWheel.Timeout previous = challengeExpirations.put(challenge.getID(), expiration);
+            if (previous != null) previous.cancel();
         }
     }
 
-
     /**
-     * Class used to link a timed callback to each challenge.
-     * The run method gets called when the challenge finishes
+     * Called when a challenge finishes
+     * @param account account for which the expiration was scheduled
+     * @param challenge finished challenge
      */
-    private static class ChallengeExpirationTimerTask extends TimerTask{
-
-        /* Reference to the challenge used in callback */
-        private final RemotePointsChallenge challenge;
-        private final Timer timer;
-
-        /**
-         * Class constructor
-         * @param challenge reference to the current challenge
-         * @param timer timer that issues when challenge is over
-         */
-        public ChallengeExpirationTimerTask(RemotePointsChallenge challenge, Timer timer){
-            this.challenge = challenge;
-            this.timer = timer;
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private static void onChallengeExpired(AuthAccount account, RemotePointsChallenge challenge) {
+        synchronized (ChallengeHandler.class) {
+            //The account was switched while the expiration was waiting for a thread
+            if (account != userAccount) return;
+            challengeExpirations.remove(challenge.getID());
         }
 
-        @RequiresApi(api = Build.VERSION_CODES.O)
-        @Override
-        public void run() {
-            //Get the reward that currently logged user has retrieved
-            int reward = challenge.endChallenge();
-
-            // Add here actions if something should be displayed when the challenge has finished
+        //Get the reward that currently logged user has retrieved
+        int reward = challenge.endChallenge();
 
-            //Clean up ChallengeTimerTask
-            challengeExpirationList.remove(timer);
-            timer.cancel();
-            timer.purge();
-        }
+        // Add here actions if something should be displayed when the challenge has finished
     }
 }
@@ -14,9 +14,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import ch.epfl.sdp.peakar.database.Database;
 import ch.epfl.sdp.peakar.database.DatabaseReference;
+import ch.epfl.sdp.peakar.database.DatabaseSnapshot;
 import ch.epfl.sdp.peakar.user.challenge.Challenge;
 import ch.epfl.sdp.peakar.user.challenge.ChallengeStatus;
 import ch.epfl.sdp.peakar.user.score.ScoringConstants;
@@ -233,28 +235,26 @@ public class RemotePointsChallenge extends PointsChallenge {
      * @return HashMap<String,Integer> with key = UID and value = points gained
      */
     public HashMap<String,Integer> getPointsGainedPerUser(List<String> enrolledUsers){
-        HashMap<String, Integer> retScoreMap = new HashMap<>();
+        //Retrieve the scores of all the users concurrently
+        List<CompletableFuture<List<DatabaseSnapshot>>> usersScores = new ArrayList<>();
         for(String user : enrolledUsers){
-            //Get user score at beginning of challenge
-            int initialScore =  Optional.ofNullable(Database.getInstance().getReference()
+            usersScores.add(Database.getInstance().getReference()
                     .child(Database.CHILD_USERS).child(user)
-                    .child(Database.CHILD_CHALLENGES).child(getID())
-                    .get().getValue(Integer.class)).orElse(0);
+                    .getAll(Database.CHILD_CHALLENGES + getID(), Database.CHILD_SCORE));
+        }
+        List<List<DatabaseSnapshot>> retrievedScores = DatabaseReference.all(usersScores).join();
 
-            //Get current user score
-            int currentScore = Optional.ofNullable(Database.getInstance().getReference()
-                    .child(Database.CHILD_USERS).child(user)
-                    .child(Database.CHILD_SCORE)
-                    .get().getValue(Integer.class)).orElse(0);
+        HashMap<String, Integer> retScoreMap = new HashMap<>();
+        for(int i = 0; i < enrolledUsers.size(); i++){
+            //Get user score at beginning of challenge
+            int initialScore = Optional.ofNullable(retrievedScores.get(i).get(0).getValue(Integer.class)).orElse(0);
 
-            String username = Optional.ofNullable(Database.getInstance().getReference()
-                    .child(Database.CHILD_USERS).child(user)
-                    .child(Database.CHILD_USERNAME)
-                    .get().getValue(String.class)).orElse("");
+            //Get current user score
+            int currentScore = Optional.ofNullable(retrievedScores.get(i).get(1).getValue(Integer.class)).orElse(0);
 
             //Compute the number of points gained during the challenge
             int pointsGainedInChallenge = currentScore - initialScore;
-            retScoreMap.put(user,pointsGainedInChallenge);
+            retScoreMap.put(enrolledUsers.get(i),pointsGainedInChallenge);
         }
         return retScoreMap;
     }
@@ -44,6 +44,7 @@ import ch.epfl.sdp.peakar.user.services.Account;
 import ch.epfl.sdp.peakar.user.services.AuthService;
 import ch.epfl.sdp.peakar.user.services.OtherAccount;
 import ch.epfl.sdp.peakar.utils.StatusBarHandler;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
 import ch.epfl.sdp.peakar.utils.UIUtils;
 
 import static ch.epfl.sdp.peakar.utils.POIPointsUtilities.getCountryFromCoordinates;
@@ -68,7 +69,7 @@ public class ProfileActivity extends AppCompatActivity {
         isAuthProfile = startingIntent.getBooleanExtra(AUTH_INTENT, false);
         if(!isAuthProfile) {
             otherId = startingIntent.getStringExtra(OTHER_INTENT);
-            new Thread(() -> {
+            TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
                 displayedAccount = OtherAccount.getInstance(otherId);
                 runOnUiThread(() -> {
                     setContentView(R.layout.activity_profile);
@@ -77,13 +78,13 @@ public class ProfileActivity extends AppCompatActivity {
                     SwipeRefreshLayout swipeRefreshLayout = findViewById(R.id.swipe_refresh);
                     swipeRefreshLayout.setEnabled(true);
                     swipeRefreshLayout.setOnRefreshListener(() -> {
-                        new Thread(() -> {
+                        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
                             displayedAccount = OtherAccount.getNewInstance(otherId);
                             runOnUiThread(() -> {
                                 setupProfile();
                                 swipeRefreshLayout.setRefreshing(false);
                             });
-                        }).start();
+                        });
                     });
 
 
@@ -96,7 +97,7 @@ public class ProfileActivity extends AppCompatActivity {
                     }
                     setupProfile();
                 });
-            }).start();
+            });
         } else {
             setContentView(R.layout.activity_profile);
 
@@ -172,7 +173,7 @@ public class ProfileActivity extends AppCompatActivity {
         // Show correct text if empty
         ((TextView)findViewById(R.id.profile_empty_text)).setText(R.string.empty_collection);
 
-        new Thread(() -> {
+        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.NORMAL, () -> {
             ArrayList<NewCollectedItem> items = new ArrayList<>();
             for(POIPoint discoveredPeak: displayedAccount.getDiscoveredPeaks()) {
                 NewCollectedItem newCollectedItem = new NewCollectedItem(
@@ -204,7 +205,7 @@ public class ProfileActivity extends AppCompatActivity {
                 }
                 collectionListView.setOnItemClickListener(collectionClicked);
             });
-        }).start();
+        });
     }
 
     /**
@@ -307,10 +308,10 @@ public class ProfileActivity extends AppCompatActivity {
      * On sign out button click
      */
     public void signOutButton(View view) {
-        new Thread(() -> {
+        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
             AuthService.getInstance().signOut(this);
             finish();
-        }).start();
+        });
     }
 
     /**
@@ -352,31 +353,27 @@ public class ProfileActivity extends AppCompatActivity {
         EditText usernameEdit = findViewById(R.id.profile_username_edit);
         String newUsername = usernameEdit.getText().toString();
 
-        // Start a new thread that will handle the process
-        Thread changeThread = new Thread(){
-            @Override
-            public void run() {
-                // Change the username and wait for the task to end
-                ProfileOutcome result = AuthService.getInstance().getAuthAccount().changeUsername(newUsername);
+        // Handle the process in the background
+        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
+            // Change the username and wait for the task to end
+            ProfileOutcome result = AuthService.getInstance().getAuthAccount().changeUsername(newUsername);
 
-                // Update the view on the UI thread
-                runOnUiThread(() -> {
+            // Update the view on the UI thread
+            runOnUiThread(() -> {
 
-                    // If username has changed, update the username text view
-                    // If username has changed, hide the keyboard and update the username text view
-                    if(result == ProfileOutcome.USERNAME_CHANGED || result == ProfileOutcome.USERNAME_REGISTERED) {
-                        removeUsernameChangeUI();
-                        ((TextView)findViewById(R.id.profile_username)).setText(AuthService.getInstance().getAuthAccount().getUsername());
-                    }
-                    if(result == ProfileOutcome.USERNAME_REGISTERED) fillCollectedListView();
+                // If username has changed, update the username text view
+                // If username has changed, hide the keyboard and update the username text view
+                if(result == ProfileOutcome.USERNAME_CHANGED || result == ProfileOutcome.USERNAME_REGISTERED) {
+                    removeUsernameChangeUI();
+                    ((TextView)findViewById(R.id.profile_username)).setText(AuthService.getInstance().getAuthAccount().getUsername());
+                }
+                if(result == ProfileOutcome.USERNAME_REGISTERED) fillCollectedListView();
 
-                    // Display the message
-                    Snackbar snackbar = Snackbar.make(findViewById(android.R.id.content), result.getMessage(), Snackbar.LENGTH_LONG);
-                    snackbar.show();
-                });
-            }
-        };
-        changeThread.start();
+                // Display the message
+                Snackbar snackbar = Snackbar.make(findViewById(android.R.id.content), result.getMessage(), Snackbar.LENGTH_LONG);
+                snackbar.show();
+            });
+        });
     }
     /**
      * Hides the keyboard and updates the UI after the username was changed or cancelled only if the
@@ -542,32 +539,28 @@ public class ProfileActivity extends AppCompatActivity {
             return;
         }
 
-        // Start a new thread that will handle the process
-        Thread addThread = new Thread(){
-            @Override
-            public void run() {
-                // Add the friend and wait for the task to end
-                ProfileOutcome addFriendOutcome = AuthService.getInstance().getAuthAccount().addFriend(((OtherAccount)displayedAccount).getUserID());
+        // Handle the process in the background
+        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
+            // Add the friend and wait for the task to end
+            ProfileOutcome addFriendOutcome = AuthService.getInstance().getAuthAccount().addFriend(((OtherAccount)displayedAccount).getUserID());
 
-                // Update the view on the UI thread
-                runOnUiThread(() -> {
+            // Update the view on the UI thread
+            runOnUiThread(() -> {
 
-                    String outcomeMessage = getResources().getString(addFriendOutcome.getMessage());
+                String outcomeMessage = getResources().getString(addFriendOutcome.getMessage());
 
-                    if(addFriendOutcome == ProfileOutcome.FRIEND_ADDED) {
-                        // Update UI
-                        hideUI(false, true);
+                if(addFriendOutcome == ProfileOutcome.FRIEND_ADDED) {
+                    // Update UI
+                    hideUI(false, true);
 
-                        outcomeMessage = displayedAccount.getUsername() + " " + outcomeMessage;
-                    }
+                    outcomeMessage = displayedAccount.getUsername() + " " + outcomeMessage;
+                }
 
-                    // Display the message
-                    Snackbar snackbar = Snackbar.make(findViewById(android.R.id.content), outcomeMessage, Snackbar.LENGTH_LONG);
-                    snackbar.show();
-                });
-            }
-        };
-        addThread.start();
+                // Display the message
+                Snackbar snackbar = Snackbar.make(findViewById(android.R.id.content), outcomeMessage, Snackbar.LENGTH_LONG);
+                snackbar.show();
+            });
+        });
     }
 
     /**
@@ -582,26 +575,22 @@ public class ProfileActivity extends AppCompatActivity {
             return;
         }
 
-        // Start a new thread that will handle the process
-        Thread removeThread = new Thread(){
-            @Override
-            public void run() {
-                // Remove the friend and wait for the task to end
-                AuthService.getInstance().getAuthAccount().removeFriend(((OtherAccount)displayedAccount).getUserID());
+        // Handle the process in the background
+        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
+            // Remove the friend and wait for the task to end
+            AuthService.getInstance().getAuthAccount().removeFriend(((OtherAccount)displayedAccount).getUserID());
 
-                // Update the view on the UI thread
-                runOnUiThread(() -> {
-                    // Update UI
-                    hideUI(false, false);
+            // Update the view on the UI thread
+            runOnUiThread(() -> {
+                // Update UI
+                hideUI(false, false);
 
-                    String removedMessage = displayedAccount.getUsername() + " " + getResources().getString(R.string.friend_removed);
-                    // Display the message
-                    Snackbar snackbar = Snackbar.make(findViewById(android.R.id.content), removedMessage, Snackbar.LENGTH_LONG);
-                    snackbar.show();
-                });
-            }
-        };
-        removeThread.start();
+                String removedMessage = displayedAccount.getUsername() + " " + getResources().getString(R.string.friend_removed);
+                // Display the message
+                Snackbar snackbar = Snackbar.make(findViewById(android.R.id.content), removedMessage, Snackbar.LENGTH_LONG);
+                snackbar.show();
+            });
+        });
     }
 
     /**
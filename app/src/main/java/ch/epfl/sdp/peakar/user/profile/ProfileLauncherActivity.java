@@ -21,6 +21,7 @@ import ch.epfl.sdp.peakar.general.remote.RemoteOutcome;
 import ch.epfl.sdp.peakar.user.outcome.ProfileOutcome;
 import ch.epfl.sdp.peakar.user.services.AuthProvider;
 import ch.epfl.sdp.peakar.user.services.AuthService;
+import ch.epfl.sdp.peakar.utils.TaskScheduler;
 
 import static ch.epfl.sdp.peakar.user.services.AuthProvider.GOOGLE;
 
@@ -52,10 +53,10 @@ public class ProfileLauncherActivity extends AppCompatActivity {
             authService = AuthService.getInstance();
 
             if(isUserSignedIn()){
-                new Thread(() -> {
+                TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
                     AuthService.getInstance().getAuthAccount().init();
                     runOnUiThread(this::launchProfileActivity);
-                }).start();
+                });
 
             }
             else{
@@ -100,25 +101,21 @@ public class ProfileLauncherActivity extends AppCompatActivity {
      */
     private void handleAuth(AuthProvider provider, String token, Dialog loadingDialog) {
 
-        // Start a new thread that will handle the auth process
-        Thread authThread = new Thread(){
-            @Override
-            public void run() {
-                // Start the authentication using the auth service
-                RemoteOutcome authResult = authService.authWithProvider(provider, token);
-
-                // Update the view on the UI thread
-                runOnUiThread(() -> {
-                    // Handle the auth result
-                    if(authResult != RemoteOutcome.FAIL){
-                        loadingDialog.dismiss();
-                        launchProfileActivity();
-                        finish();
-                    }
-                });
-            }
-        };
-        authThread.start();
+        // Handle the auth process in the background
+        TaskScheduler.getInstance().execute(TaskScheduler.Workload.NETWORK, TaskScheduler.Priority.HIGH, () -> {
+            // Start the authentication using the auth service
+            RemoteOutcome authResult = authService.authWithProvider(provider, token);
+
+            // Update the view on the UI thread
+            runOnUiThread(() -> {
+                // Handle the auth result
+                if(authResult != RemoteOutcome.FAIL){
+                    loadingDialog.dismiss();
+                    launchProfileActivity();
+                    finish();
+                }
+            });
+        });
     }
 
     /**
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import ch.epfl.sdp.peakar.database.Database;
 import ch.epfl.sdp.peakar.database.DatabaseReference;
 import ch.epfl.sdp.peakar.database.DatabaseSnapshot;
@@ -25,6 +26,11 @@ import ch.epfl.sdp.peakar.user.challenge.goal.RemotePointsChallenge;
  * This class implements helper methods that can generate an <code>AccountData</code> retrieving data from the DB.
  */
 public class RemoteAccountDataFactory implements RemoteResource {
+    // Indexes of the data retrieved for each user of a challenge
+    private static final int USER_SCORE = 0;
+    private static final int USER_INIT_SCORE = 1;
+    private static final int USER_NAME = 2;
+
     private final AccountData accountData;
 
     private final DatabaseReference dbRefUser;
@@ -170,26 +176,41 @@ public class RemoteAccountDataFactory implements RemoteResource {
 
     /**
      * Load added challenges.
+     * The challenges are retrieved at once, then the data of their users, so that loading many
+     * challenges costs about two round-trips.
      */
     @SuppressLint("NewApi")
     private void loadChallenges(DatabaseSnapshot data) {
         Log.d("FirebaseAccountDataFactory", "loadChallenges: entered");
+        List<String> challengeIds = new ArrayList<>();
         for (DatabaseSnapshot challengeEntry : data.getChildren()) {
-            Log.d("FirebaseAccountDataFactory", "loadChallenges: entered for");
             String challengeId = challengeEntry.getKey();
             assert challengeId != null;
             Log.d("FirebaseAccountDataFactory", "loadChallenges: challenge id = " + challengeId);
-            Log.d("FirebaseAccountDataFactory", "loadChallenges: entered if");
-            DatabaseSnapshot retrieveChallenge = Database.getInstance().getReference().child(Database.CHILD_CHALLENGES).child(challengeId).get();
-            loadPointsChallenge(retrieveChallenge);
+            challengeIds.add(challengeId);
+        }
+        List<DatabaseSnapshot> retrievedChallenges = Database.getInstance().getReference().child(Database.CHILD_CHALLENGES)
+                .getAll(challengeIds.toArray(new String[0])).join();
+
+        // Send the requests of all the challenges before waiting for any
+        List<CompletableFuture<RemotePointsChallenge>> pointsChallenges = new ArrayList<>();
+        for (DatabaseSnapshot retrievedChallenge : retrievedChallenges) {
+            pointsChallenges.add(loadPointsChallenge(retrievedChallenge));
+        }
+
+        // Add the challenges
+        for (CompletableFuture<RemotePointsChallenge> pointsChallenge : pointsChallenges) {
+            accountData.addChallenge(pointsChallenge.join());
         }
+        Log.d("FirebaseAccountDataFactory", "loadChallenges: new challenges size = " + accountData.getChallenges().size());
     }
 
     /**
      * Load points challenge.
+     * @return future of the challenge, completed when the data of its users is retrieved.
      */
     @RequiresApi(api = Build.VERSION_CODES.O)
-    private void loadPointsChallenge(DatabaseSnapshot data) {
+    private CompletableFuture<RemotePointsChallenge> loadPointsChallenge(DatabaseSnapshot data) {
         Log.d("FirebaseAccountDataFactory", "loadPointsChallenge: entered");
 
         // Get ID of new challenge
@@ -231,40 +252,59 @@ public class RemoteAccountDataFactory implements RemoteResource {
         // Get challenge status
         int challengeStatus = Optional.ofNullable(data.child(Database.CHILD_CHALLENGE_STATUS).getValue(Integer.class)).orElse(0);
 
-        // Compute challenge ranking
-        HashMap<String, Integer> challengeRanking = computeChallengeRanking(id,users);
+        // Retrieve the data of the users and the founder picture concurrently
+        CompletableFuture<List<List<DatabaseSnapshot>>> usersData = retrieveEnrolledUsersData(id, users);
+        CompletableFuture<DatabaseSnapshot> founderPhoto = Database.getInstance().getReference()
+                .child(Database.CHILD_USERS).child(founderID).child(Database.CHILD_PHOTO_URL).getAsync();
 
-        // Retrieve usernames
-        HashMap<String,String> userIDUserNames = retrieveEnrolledUserNames(users);
+        LocalDateTime finalStartDateTime = startDateTime;
+        LocalDateTime finalFinishDateTime = finishDateTime;
+        LocalDateTime finalCreationDateTime = creationDateTime;
+        return usersData.thenCombine(founderPhoto, (retrievedUsersData, retrievedFounderPhoto) -> {
+            // Compute challenge ranking
+            HashMap<String, Integer> challengeRanking = computeChallengeRanking(users, retrievedUsersData);
 
-        String stringUri = Optional.ofNullable(Database.getInstance().getReference()
-                .child(Database.CHILD_USERS).child(founderID).child(Database.CHILD_PHOTO_URL)
-                .get().getValue(String.class)).orElse("");
-        Uri founderUri = Uri.parse(stringUri);
+            // Retrieve usernames
+            HashMap<String,String> userIDUserNames = retrieveEnrolledUserNames(users, retrievedUsersData);
 
+            String stringUri = Optional.ofNullable(retrievedFounderPhoto.getValue(String.class)).orElse("");
+            Uri founderUri = Uri.parse(stringUri);
 
-        // Add the challenge
-        accountData.addChallenge(new RemotePointsChallenge(id,founderID,founderUri,challengeName, users,
-                challengeStatus,creationDateTime,durationInDays,startDateTime, finishDateTime,challengeRanking,userIDUserNames));
-        Log.d("FirebaseAccountDataFactory", "loadPointsChallenge: new challenges size = " + accountData.getChallenges().size());
+            return new RemotePointsChallenge(id,founderID,founderUri,challengeName, users,
+                    challengeStatus,finalCreationDateTime,durationInDays,finalStartDateTime, finalFinishDateTime,challengeRanking,userIDUserNames);
+        });
     }
 
     /**
-     * Compute the actual ranking of the challenge
+     * Retrieve concurrently the data of the users of a challenge
      * @param challengeID challenge ID
      * @param users list of enrolled users
+     * @return future of the data of each user: score, score when joining the challenge and username
+     */
+    private CompletableFuture<List<List<DatabaseSnapshot>>> retrieveEnrolledUsersData(String challengeID, List<String> users) {
+        List<CompletableFuture<List<DatabaseSnapshot>>> usersData = new ArrayList<>();
+        if(users.size() == 1) return DatabaseReference.all(usersData); // only one user in challenge return immediately
+        for(String user : users) {
+            usersData.add(Database.getInstance().getReference().child(Database.CHILD_USERS).child(user)
+                    .getAll(Database.CHILD_SCORE, Database.CHILD_CHALLENGES + challengeID, Database.CHILD_USERNAME));
+        }
+        return DatabaseReference.all(usersData);
+    }
+
+    /**
+     * Compute the actual ranking of the challenge
+     * @param users list of enrolled users
+     * @param usersData data of each user, retrieved by retrieveEnrolledUsersData
      * @return HashMap containing user ID and current score for the challenge
      */
-    private HashMap<String,Integer> computeChallengeRanking(String challengeID, List<String> users){
+    private HashMap<String,Integer> computeChallengeRanking(List<String> users, List<List<DatabaseSnapshot>> usersData){
         if(users.size() == 1) return null; // only one user in challenge return immediately
         HashMap<String,Integer> retChallengeRanking = new HashMap<>();
-        for(String user : users){
-            int userScore = Optional.ofNullable(Database.getInstance().getReference().child(Database.CHILD_USERS)
-                    .child(user).child(Database.CHILD_SCORE).get().getValue(Integer.class)).orElse(0);
-            int userInitScore = Optional.ofNullable(Database.getInstance().getReference().child(Database.CHILD_USERS)
-                    .child(user).child(Database.CHILD_CHALLENGES).child(challengeID).get().getValue(Integer.class)).orElse(0);
+        for(int i = 0; i < users.size(); i++){
+            int userScore = Optional.ofNullable(usersData.get(i).get(USER_SCORE).getValue(Integer.class)).orElse(0);
+            int userInitScore = Optional.ofNullable(usersData.get(i).get(USER_INIT_SCORE).getValue(Integer.class)).orElse(0);
 
-            retChallengeRanking.put(user,userScore - userInitScore);
+            retChallengeRanking.put(users.get(i),userScore - userInitScore);
         }
         return retChallengeRanking;
     }
@@ -272,15 +312,15 @@ public class RemoteAccountDataFactory implements RemoteResource {
     /**
      * Retrieve the userNames of the participants
      * @param users list of user IDs
+     * @param usersData data of each user, retrieved by retrieveEnrolledUsersData
      * @return HashMap containing UID as key and username as value
      */
-    private HashMap<String,String> retrieveEnrolledUserNames(List<String> users){
+    private HashMap<String,String> retrieveEnrolledUserNames(List<String> users, List<List<DatabaseSnapshot>> usersData){
         if(users.size() == 1) return null; // only one user in challenge return immediately
         HashMap<String,String> retChallengeUserNames = new HashMap<>();
-        for(String user : users) {
-            String username = Optional.ofNullable(Database.getInstance().getReference().child(Database.CHILD_USERS)
-                    .child(user).child(Database.CHILD_USERNAME).get().getValue(String.class)).orElse("");
-            retChallengeUserNames.put(user,username);
+        for(int i = 0; i < users.size(); i++) {
+            String username = Optional.ofNullable(usersData.get(i).get(USER_NAME).getValue(String.class)).orElse("");
+            retChallengeUserNames.put(users.get(i),username);
         }
         return retChallengeUserNames;
     }
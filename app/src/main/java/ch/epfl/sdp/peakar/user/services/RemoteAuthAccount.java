@@ -3,7 +3,9 @@ package ch.epfl.sdp.peakar.user.services;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import ch.epfl.sdp.peakar.database.Database;
 import ch.epfl.sdp.peakar.database.DatabaseReference;
@@ -164,10 +166,27 @@ public class RemoteAuthAccount extends AuthAccount implements RemoteResource {
         final List<POIPoint> addedList = new ArrayList<>(newDiscoveredPeaks);
         final DatabaseReference discoveredRef = Database.getInstance().getReference().child(Database.CHILD_USERS).child(currentID).child(Database.CHILD_DISCOVERED_PEAKS);
         for(POIPoint poiPoint: addedList) {
-            discoveredRef.push().setValue(poiPoint);
+            discoveredRef.push().setValue(toRemotePeak(poiPoint));
         }
 
         // Add locally
         super.setDiscoveredPeaks(newDiscoveredPeaks);
     }
+
+    /**
+     * Build the remote representation of a discovered peak. Only the fields read back by
+     * RemoteAccountDataFactory are pushed, the derived fields (bearings and distance to the user)
+     * are left out.
+     * @param poiPoint discovered peak
+     * @return map of the peak attributes
+     */
+    private static Map<String, Object> toRemotePeak(POIPoint poiPoint) {
+        Map<String, Object> remotePeak = new HashMap<>();
+        remotePeak.put(Database.CHILD_ATTRIBUTE_PEAK_NAME, poiPoint.getName());
+        remotePeak.put(Database.CHILD_ATTRIBUTE_PEAK_LATITUDE, poiPoint.getLatitude());
+        remotePeak.put(Database.CHILD_ATTRIBUTE_PEAK_LONGITUDE, poiPoint.getLongitude());
+        remotePeak.put(Database.CHILD_ATTRIBUTE_PEAK_ALTITUDE, (long) poiPoint.getAltitude());
+        remotePeak.put(Database.CHILD_ATTRIBUTE_PEAK_DISCOVERED_DATE, poiPoint.getDiscoveredDate());
+        return remotePeak;
+    }
 }
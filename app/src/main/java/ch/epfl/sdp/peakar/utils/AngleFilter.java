@@ -0,0 +1,27 @@
+package ch.epfl.sdp.peakar.utils;
+
+/**
+ * Filter of the angles measured by the orientation sensors, removing the jitter of the sensors.
+ *
+ * The angles are cyclic: the filters handle the jump from pi to -pi. The timestamps of the sensor
+ * events let the filters adapt to the actual rate of the events.
+ */
+public interface AngleFilter {
+
+    /**
+     * Adds a measured angle and returns the filtered angle
+     * @param radians measured angle in radians
+     * @param timestampNanos timestamp of the measure in nanoseconds
+     * @return filtered angle in radians, in [-pi, pi]
+     */
+    float filter(float radians, long timestampNanos);
+
+    /**
+     * Wraps an angle in [-pi, pi)
+     * @param radians angle in radians
+     * @return same angle in [-pi, pi)
+     */
+    static float wrap(float radians) {
+        return (float) (radians - 2*Math.PI*Math.floor((radians + Math.PI) / (2*Math.PI)));
+    }
+}
@@ -1,45 +1,61 @@
 package ch.epfl.sdp.peakar.utils;
 
-import java.util.ArrayDeque;
-
 /**
  * Lowpass filter for angles. Converts radians into sum of sine and cosine to overcome the problem
  * that angle values are cyclic. For example when the angles changes from 2*pi to 0 or from -pi to pi
  * See <a href="StackOverflow">https://stackoverflow.com/a/18911252</a>
+ *
+ * The sine and cosine of the last LENGTH angles are kept in a preallocated ring buffer, so that
+ * adding an angle computes them once and does not allocate.
  */
-public class AngleLowpassFilter {
+public class AngleLowpassFilter implements AngleFilter {
     //Defines the length of the queue
     private static final int LENGTH = 5;
 
-    private float sumSin, sumCos;
-
-    private final ArrayDeque<Float> queue = new ArrayDeque<>();
+    //Ring buffer of the sine and cosine of the angles, next being the index of the oldest one
+    private final float[] sines = new float[LENGTH];
+    private final float[] cosines = new float[LENGTH];
+    private int next;
+    private int size;
 
     /**
-     * Adds an element to the queue and expresses the angle through their sine and cosine values
+     * Adds an element to the queue and expresses the angle through their sine and cosine values.
+     * If the queue is full, the oldest element is replaced.
      * @param radians angle that gets added
      */
     public void add(float radians){
-        sumSin += (float) Math.sin(radians);
-        sumCos += (float) Math.cos(radians);
-        queue.add(radians);
-
-        //If the queue is greater then the defined length
-        if(queue.size() > LENGTH){
-            //remove the oldest element
-            float old = queue.poll();
-            //Substract their sine and cosine from the sine and cosine sum
-            sumSin -= Math.sin(old);
-            sumCos -= Math.cos(old);
-        }
+        sines[next] = (float) Math.sin(radians);
+        cosines[next] = (float) Math.cos(radians);
+        next = (next + 1) % LENGTH;
+        if(size < LENGTH) size++;
     }
 
     /**
-     * Returns an average of the queue
+     * Returns an average of the queue. The sums are computed from the cached sines and cosines
+     * instead of being updated on each add, so that rounding errors do not accumulate.
      * @return average angle of the queue
      */
     public float average(){
-        int size = queue.size();
+        //Sum from the oldest to the newest angle
+        int oldest = size < LENGTH ? 0 : next;
+        float sumSin = 0, sumCos = 0;
+        for(int i = 0; i < size; i++){
+            int index = (oldest + i) % LENGTH;
+            sumSin += sines[index];
+            sumCos += cosines[index];
+        }
         return (float) Math.atan2(sumSin/size, sumCos/size);
     }
+
+    /**
+     * Adds an element to the queue and returns the average of the queue, the timestamp is not used
+     * @param radians angle that gets added
+     * @param timestampNanos timestamp of the angle
+     * @return average angle of the queue
+     */
+    @Override
+    public float filter(float radians, long timestampNanos){
+        add(radians);
+        return average();
+    }
 }
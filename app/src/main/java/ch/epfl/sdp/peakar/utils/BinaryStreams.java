@@ -0,0 +1,242 @@
+package ch.epfl.sdp.peakar.utils;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility class to write and read primitive values in the compact binary files of the app
+ * (POI lists, topography maps and offline content).
+ *
+ * Integers are written as variable length integers (7 bits per byte, the highest bit
+ * indicating that another byte follows). Signed values are zig-zag encoded first so that
+ * small negative values also take a single byte.
+ *
+ * The streams should be buffered, since values are written and read byte by byte.
+ */
+public final class BinaryStreams {
+
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION = 0x80;
+    private static final int MAX_VARINT_SHIFT = 63;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int BYTES_PER_INT = 4;
+    private static final int BYTES_PER_LONG = 8;
+    //Longest string read (in bytes), the strings being names, dates and file names
+    static final int MAX_STRING_BYTES = 1 << 16;
+
+    /**
+     * Writes an unsigned variable length integer
+     * @param out stream to write to
+     * @param value value to write, interpreted as unsigned
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~VARINT_PAYLOAD_MASK) != 0) {
+            out.write((int) ((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION));
+            value >>>= VARINT_PAYLOAD_BITS;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable length integer
+     * @param in stream to read from
+     * @return read value
+     * @throws IOException if the stream ends or the value is malformed
+     */
+    public static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift <= MAX_VARINT_SHIFT; shift += VARINT_PAYLOAD_BITS) {
+            int b = readByte(in);
+            value |= (long) (b & VARINT_PAYLOAD_MASK) << shift;
+            if ((b & VARINT_CONTINUATION) == 0) return value;
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Writes a signed variable length integer using zig-zag encoding
+     * @param out stream to write to
+     * @param value value to write
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeSignedVarLong(OutputStream out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> MAX_VARINT_SHIFT));
+    }
+
+    /**
+     * Reads a zig-zag encoded signed variable length integer
+     * @param in stream to read from
+     * @return read value
+     * @throws IOException if the stream ends or the value is malformed
+     */
+    public static long readSignedVarLong(InputStream in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads an unsigned variable length integer that must fit in a non-negative int
+     * (sizes, counts and indexes)
+     * @param in stream to read from
+     * @return read value
+     * @throws IOException if the stream ends or the value does not fit in an int
+     */
+    public static int readVarInt(InputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) throw new IOException("Invalid size " + value);
+        return (int) value;
+    }
+
+    /**
+     * Reads a size or count before allocating it, so that a corrupted file fails with an
+     * IOException instead of an OutOfMemoryError
+     * @param in stream to read from
+     * @param max largest valid value
+     * @return read value, between 0 and max
+     * @throws IOException if the stream ends or the value is larger than max
+     */
+    public static int readSize(InputStream in, int max) throws IOException {
+        int value = readVarInt(in);
+        if (value > max) throw new IOException("Invalid size " + value + ", at most " + max);
+        return value;
+    }
+
+    /**
+     * Writes a 4 bytes big-endian integer
+     * @param out stream to write to
+     * @param value value to write
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeInt(OutputStream out, int value) throws IOException {
+        for (int i = BYTES_PER_INT - 1; i >= 0; i--) {
+            out.write((value >>> (i * BITS_PER_BYTE)) & BYTE_MASK);
+        }
+    }
+
+    /**
+     * Reads a 4 bytes big-endian integer
+     * @param in stream to read from
+     * @return read value
+     * @throws IOException if the stream ends
+     */
+    public static int readInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < BYTES_PER_INT; i++) {
+            value = (value << BITS_PER_BYTE) | readByte(in);
+        }
+        return value;
+    }
+
+    /**
+     * Writes a double as its 8 bytes IEEE 754 representation
+     * @param out stream to write to
+     * @param value value to write
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeDouble(OutputStream out, double value) throws IOException {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = BYTES_PER_LONG - 1; i >= 0; i--) {
+            out.write((int) ((bits >>> (i * BITS_PER_BYTE)) & BYTE_MASK));
+        }
+    }
+
+    /**
+     * Reads a double written by {@link #writeDouble(OutputStream, double)}
+     * @param in stream to read from
+     * @return read value
+     * @throws IOException if the stream ends
+     */
+    public static double readDouble(InputStream in) throws IOException {
+        long bits = 0;
+        for (int i = 0; i < BYTES_PER_LONG; i++) {
+            bits = (bits << BITS_PER_BYTE) | readByte(in);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Writes an UTF-8 string prefixed by its length in bytes
+     * @param out stream to write to
+     * @param value string to write
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(OutputStream, String)}
+     * @param in stream to read from
+     * @return read string
+     * @throws IOException if the stream ends or the string is longer than MAX_STRING_BYTES
+     */
+    public static String readString(InputStream in) throws IOException {
+        byte[] bytes = new byte[readSize(in, MAX_STRING_BYTES)];
+        readFully(in, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the four edges of a bounding box
+     * @param out stream to write to
+     * @param boundingBox bounding box to write
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeBoundingBox(OutputStream out, BoundingBox boundingBox) throws IOException {
+        writeDouble(out, boundingBox.getLatNorth());
+        writeDouble(out, boundingBox.getLonEast());
+        writeDouble(out, boundingBox.getLatSouth());
+        writeDouble(out, boundingBox.getLonWest());
+    }
+
+    /**
+     * Reads a bounding box written by {@link #writeBoundingBox(OutputStream, BoundingBox)}
+     * @param in stream to read from
+     * @return read bounding box
+     * @throws IOException if the stream ends
+     */
+    public static BoundingBox readBoundingBox(InputStream in) throws IOException {
+        double north = readDouble(in);
+        double east = readDouble(in);
+        double south = readDouble(in);
+        double west = readDouble(in);
+        return new BoundingBox(north, east, south, west);
+    }
+
+    /**
+     * Reads exactly buffer.length bytes
+     * @param in stream to read from
+     * @param buffer buffer to fill
+     * @throws IOException if the stream ends before the buffer is filled
+     */
+    public static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = in.read(buffer, offset, buffer.length - offset);
+            if (read < 0) throw new EOFException();
+            offset += read;
+        }
+    }
+
+    /**
+     * Reads a single byte
+     * @param in stream to read from
+     * @return read byte as an unsigned value
+     * @throws IOException if the stream ends
+     */
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException();
+        return b;
+    }
+}
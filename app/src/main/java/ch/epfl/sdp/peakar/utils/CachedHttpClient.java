@@ -0,0 +1,459 @@
+package ch.epfl.sdp.peakar.utils;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client shared by the terrain and POI fetchers.
+ *
+ * <ul>
+ * <li>Responses are requested gzip-compressed and decompressed while they are read.
+ * <li>Responses with an ETag or a Last-Modified header are stored, still compressed, in a disk
+ * cache. The next request for the same URL is conditional and a 304 response is served from the
+ * cache.
+ * <li>Connection failures, 5xx and 429 responses are retried with a jittered exponential backoff.
+ * <li>Response bodies are read to the end before being closed (unless more than MAX_DRAINED_BYTES
+ * remain), so the connection goes back to the keep-alive pool of HttpURLConnection and the next
+ * request to the same host reuses it.
+ * </ul>
+ *
+ * The disk cache is disabled until a directory is set with setCacheDirectory(File).
+ */
+public final class CachedHttpClient {
+
+    private static final String TAG = "CachedHttpClient";
+
+    public static final int MAX_ATTEMPTS = 3;
+    public static final int CONNECT_TIMEOUT_MS = 10000;
+    static final long BASE_RETRY_DELAY_MS = 500;
+    static final long MAX_CACHE_SIZE_BYTES = 64L * 1024 * 1024;
+
+    private static final String GZIP = "gzip";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_DRAINED_BYTES = 64 * 1024;
+
+    private static CachedHttpClient instance = null;
+
+    private final long baseRetryDelayMs;
+    private final long maxCacheSizeBytes;
+    private final Random random = new Random();
+    private volatile File cacheDirectory;
+
+    /**
+     * Constructor
+     * @param baseRetryDelayMs delay before the first retry (in milliseconds), doubled at every retry
+     * @param maxCacheSizeBytes maximum size of the disk cache (in bytes)
+     */
+    CachedHttpClient(long baseRetryDelayMs, long maxCacheSizeBytes) {
+        this.baseRetryDelayMs = baseRetryDelayMs;
+        this.maxCacheSizeBytes = maxCacheSizeBytes;
+    }
+
+    /**
+     * Returns the instance of the CachedHttpClient
+     * @return CachedHttpClient instance
+     */
+    public static synchronized CachedHttpClient getInstance() {
+        if (instance == null) instance = new CachedHttpClient(BASE_RETRY_DELAY_MS, MAX_CACHE_SIZE_BYTES);
+        return instance;
+    }
+
+    /**
+     * Enables the disk cache
+     * @param cacheDirectory directory of the disk cache, created if needed
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            Log.e(TAG, "Unable to create the HTTP cache directory");
+            return;
+        }
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Sends a GET request
+     * @param url URL to request
+     * @param readTimeoutMs read timeout (in milliseconds)
+     * @return decompressed body of the response, which must be closed
+     * @throws IOException if all the attempts fail or if the server answers with an error
+     */
+    public InputStream get(URL url, int readTimeoutMs) throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) backoff(attempt);
+            try {
+                return request(url, readTimeoutMs);
+            } catch (RetryableException e) {
+                failure = e;
+                Log.d(TAG, "Attempt " + (attempt + 1) + " failed for " + url + ": " + e.getMessage());
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Sends one request
+     * @param url URL to request
+     * @param readTimeoutMs read timeout (in milliseconds)
+     * @return decompressed body of the response
+     * @throws RetryableException if the request can be retried
+     * @throws IOException if the server answers with an error
+     */
+    private InputStream request(URL url, int readTimeoutMs) throws IOException {
+        File directory = cacheDirectory;
+        CacheEntry entry = directory == null ? null : CacheEntry.read(directory, url);
+
+        HttpURLConnection connection;
+        int responseCode;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestProperty("Accept-Encoding", GZIP);
+            if (entry != null && entry.eTag != null) connection.setRequestProperty("If-None-Match", entry.eTag);
+            if (entry != null && entry.lastModified != null) connection.setRequestProperty("If-Modified-Since", entry.lastModified);
+            responseCode = connection.getResponseCode();
+        } catch (IOException e) {
+            throw new RetryableException(e.getMessage(), e);
+        }
+
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && entry != null) {
+            drain(connection.getInputStream());
+            Log.d(TAG, "Revalidated " + url);
+            return decode(entry.openBody(), entry.contentEncoding);
+        }
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            drain(connection.getErrorStream());
+            String message = "HTTP " + responseCode + " for " + url;
+            if (responseCode >= 500 || responseCode == 429) throw new RetryableException(message, null);
+            throw new IOException(message);
+        }
+
+        String contentEncoding = connection.getContentEncoding();
+        String eTag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        InputStream body = connection.getInputStream();
+        if (directory != null && (eTag != null || lastModified != null)) {
+            body = new CachingInputStream(body, new CacheEntry(directory, url, eTag, lastModified, contentEncoding));
+        }
+        return decode(body, contentEncoding);
+    }
+
+    /**
+     * Decompresses a body if needed
+     * @param body raw body
+     * @param contentEncoding content encoding of the body
+     * @return decompressed body, which reads the raw body to the end when it is closed
+     * @throws IOException if the gzip header is not valid
+     */
+    private static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        InputStream raw = new BufferedInputStream(body, BUFFER_SIZE);
+        InputStream decoded = GZIP.equalsIgnoreCase(contentEncoding) ? new GZIPInputStream(raw, BUFFER_SIZE) : raw;
+        return new FilterInputStream(decoded) {
+            private boolean complete;
+
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                if (read == -1) complete = true;
+                return read;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read == -1) complete = true;
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                //Parsers stop at the end of the document: read what remains if it is small
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int drained = 0; !complete && drained < MAX_DRAINED_BYTES; drained += BUFFER_SIZE) {
+                    if (read(buffer, 0, BUFFER_SIZE) == -1) complete = true;
+                }
+                //The gzip trailer can be followed by bytes which are never read by GZIPInputStream
+                if (complete) drain(raw);
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Waits before a retry: a random delay up to BASE_RETRY_DELAY_MS * 2^(attempt - 1), so that
+     * clients failing together do not retry together
+     * @param attempt index of the next attempt
+     * @throws IOException if the thread is interrupted
+     */
+    private void backoff(int attempt) throws IOException {
+        long maxDelay = baseRetryDelayMs << (attempt - 1);
+        long delay;
+        synchronized (random) {
+            delay = (long) (random.nextDouble() * maxDelay);
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during backoff", e);
+        }
+    }
+
+    /**
+     * Reads a stream to the end and closes it, so that its connection can be reused
+     * @param inputStream stream to drain, can be null
+     */
+    private static void drain(InputStream inputStream) {
+        if (inputStream == null) return;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (inputStream.read(buffer) != -1) {
+                //discard
+            }
+            inputStream.close();
+        } catch (IOException e) {
+            //The connection is not reused
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache is smaller than maxCacheSizeBytes
+     * @param directory cache directory
+     * @param keptKey key of the entry just stored, never evicted
+     */
+    private void evict(File directory, String keptKey) {
+        File[] bodies = directory.listFiles((dir, name) -> name.endsWith(BODY_SUFFIX));
+        if (bodies == null) return;
+        long size = 0;
+        for (File body : bodies) size += body.length();
+        if (size <= maxCacheSizeBytes) return;
+
+        Arrays.sort(bodies, Comparator.comparingLong(File::lastModified));
+        for (File body : bodies) {
+            if (size <= maxCacheSizeBytes) break;
+            String key = body.getName().substring(0, body.getName().length() - BODY_SUFFIX.length());
+            if (key.equals(keptKey)) continue;
+            size -= body.length();
+            if (!new File(directory, key + META_SUFFIX).delete() || !body.delete())
+                Log.e(TAG, "Unable to evict cache entry " + key);
+        }
+    }
+
+    /**
+     * Failure of a request which can be retried
+     */
+    private static final class RetryableException extends IOException {
+        private RetryableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Cached response: the raw body and the metadata used to revalidate it
+     */
+    private static final class CacheEntry {
+        private final File directory;
+        private final String key;
+        private final URL url;
+        private final String eTag;
+        private final String lastModified;
+        private final String contentEncoding;
+
+        private CacheEntry(File directory, URL url, String eTag, String lastModified, String contentEncoding) {
+            this.directory = directory;
+            this.key = key(url);
+            this.url = url;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.contentEncoding = contentEncoding;
+        }
+
+        /**
+         * Reads the cache entry of a URL
+         * @param directory cache directory
+         * @param url requested URL
+         * @return the entry or null if the URL is not cached
+         */
+        private static CacheEntry read(File directory, URL url) {
+            String key = key(url);
+            File meta = new File(directory, key + META_SUFFIX);
+            if (!meta.exists() || !new File(directory, key + BODY_SUFFIX).exists()) return null;
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)))) {
+                if (!url.toString().equals(input.readUTF())) return null;
+                return new CacheEntry(directory, url, readNullable(input), readNullable(input), readNullable(input));
+            } catch (IOException e) {
+                Log.e(TAG, "Invalid cache entry " + key);
+                return null;
+            }
+        }
+
+        /**
+         * Opens the cached body and marks the entry as recently used
+         * @return raw body
+         * @throws IOException if the body can't be read
+         */
+        private InputStream openBody() throws IOException {
+            File body = new File(directory, key + BODY_SUFFIX);
+            if (!body.setLastModified(System.currentTimeMillis())) Log.d(TAG, "Unable to touch " + key);
+            return new FileInputStream(body);
+        }
+
+        /**
+         * Stores the entry once its body is completely downloaded
+         * @param temporaryBody temporary file containing the downloaded body
+         * @throws IOException if the entry can't be written
+         */
+        private void commit(File temporaryBody) throws IOException {
+            File meta = new File(directory, key + META_SUFFIX);
+            File temporaryMeta = File.createTempFile(key, META_SUFFIX + TMP_SUFFIX, directory);
+            try (DataOutputStream output = new DataOutputStream(new FileOutputStream(temporaryMeta))) {
+                output.writeUTF(url.toString());
+                writeNullable(output, eTag);
+                writeNullable(output, lastModified);
+                writeNullable(output, contentEncoding);
+            }
+            //The meta file is renamed last: an entry without meta file is ignored
+            if (!meta.delete() && meta.exists()) throw new IOException("Unable to replace " + meta);
+            if (!temporaryBody.renameTo(new File(directory, key + BODY_SUFFIX)) || !temporaryMeta.renameTo(meta))
+                throw new IOException("Unable to commit cache entry " + key);
+        }
+
+        /**
+         * @param url URL
+         * @return name of the cache files of the URL
+         */
+        private static String key(URL url) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.toString().getBytes(StandardCharsets.UTF_8));
+                StringBuilder key = new StringBuilder(digest.length * 2);
+                for (byte b : digest) key.append(String.format("%02x", b));
+                return key.toString();
+            } catch (NoSuchAlgorithmException e) {
+                return Integer.toHexString(url.toString().hashCode());
+            }
+        }
+
+        private static void writeNullable(DataOutputStream output, String value) throws IOException {
+            output.writeBoolean(value != null);
+            if (value != null) output.writeUTF(value);
+        }
+
+        private static String readNullable(DataInputStream input) throws IOException {
+            return input.readBoolean() ? input.readUTF() : null;
+        }
+    }
+
+    /**
+     * Raw body copied in the cache while it is read. The entry is stored only if the body is read
+     * to the end.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+        private final CacheEntry entry;
+        private File temporaryBody;
+        private OutputStream copy;
+
+        private CachingInputStream(InputStream body, CacheEntry entry) {
+            super(body);
+            this.entry = entry;
+            try {
+                //Each download has its own temporary file: the same URL can be downloaded concurrently
+                temporaryBody = File.createTempFile(entry.key, BODY_SUFFIX + TMP_SUFFIX, entry.directory);
+                copy = new FileOutputStream(temporaryBody);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to cache " + entry.url);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) complete();
+            else write(new byte[]{(byte) read}, 0, 1);
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) complete();
+            else write(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (copy != null) {
+                //Incomplete body
+                discardCopy();
+            }
+            super.close();
+        }
+
+        /**
+         * Appends bytes to the cached copy, giving up the caching if they can't be written
+         */
+        private void write(byte[] buffer, int offset, int length) {
+            if (copy == null) return;
+            try {
+                copy.write(buffer, offset, length);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to cache " + entry.url);
+                discardCopy();
+            }
+        }
+
+        /**
+         * Stores the entry when the end of the body is reached
+         */
+        private void complete() {
+            if (copy == null) return;
+            closeCopy();
+            try {
+                entry.commit(temporaryBody);
+                evict(entry.directory, entry.key);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to cache " + entry.url + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Gives up the caching of the body
+         */
+        private void discardCopy() {
+            closeCopy();
+            if (!temporaryBody.delete()) Log.e(TAG, "Unable to delete " + temporaryBody);
+        }
+
+        private void closeCopy() {
+            try {
+                copy.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to close the cached copy of " + entry.url);
+            }
+            copy = null;
+        }
+    }
+}
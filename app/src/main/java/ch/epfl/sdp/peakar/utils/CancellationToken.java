@@ -0,0 +1,37 @@
+package ch.epfl.sdp.peakar.utils;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Token used to cancel the tasks of the TaskScheduler.
+ *
+ * A task whose token is cancelled before it starts is not run. A running task is not interrupted:
+ * a long task checks its token between its steps with isCancelled or throwIfCancelled. The same
+ * token can be shared by several tasks to cancel them together.
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Cancels the tasks of the token
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the token was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops a running task if its token was cancelled
+     * @throws CancellationException if the token was cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) throw new CancellationException();
+    }
+}
@@ -0,0 +1,224 @@
+package ch.epfl.sdp.peakar.utils;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * EventTopic is a typed topic of the event bus of the app.
+ *
+ * Each subscriber chooses the executor on which it receives the events, like the UI thread or a
+ * background thread, and has its own mailbox drained by one task at a time on that executor: its
+ * events are delivered in order and never concurrently. Publishing only fills the mailboxes and
+ * schedules the drain, so a slow subscriber does not stall the publisher, like the GPS callback.
+ *
+ * Two kinds of topics are available:
+ * <ul>
+ * <li>state topics coalesce the events: a subscriber only receives the latest state, however many
+ * were published while it was busy
+ * <li>event topics keep at most their capacity of pending events per subscriber, the oldest ones
+ * being dropped when the subscriber falls behind
+ * </ul>
+ *
+ * Publishing does not lock: the subscriptions are read from a copy-on-write list and the mailboxes
+ * are lock-free.
+ *
+ * @param <T> type of the events
+ */
+public final class EventTopic<T> {
+
+    private final String name;
+    private final boolean coalesced;
+    private final int capacity;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor of the topic, use state or events
+     * @param name name of the topic
+     * @param coalesced true if only the latest event is delivered
+     * @param capacity maximum number of pending events per subscriber
+     */
+    private EventTopic(String name, boolean coalesced, int capacity) {
+        this.name = name;
+        this.coalesced = coalesced;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates a state topic, whose subscribers only receive the latest event
+     * @param name name of the topic
+     * @param <T> type of the events
+     * @return new state topic
+     */
+    public static <T> EventTopic<T> state(String name) {
+        return new EventTopic<>(name, true, 1);
+    }
+
+    /**
+     * Creates an event topic, whose subscribers receive every event unless they fall behind by more
+     * than the capacity
+     * @param name name of the topic
+     * @param capacity maximum number of pending events per subscriber
+     * @param <T> type of the events
+     * @return new event topic
+     */
+    public static <T> EventTopic<T> events(String name, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("The capacity must be positive");
+        return new EventTopic<>(name, false, capacity);
+    }
+
+    /**
+     * Subscribes to the topic
+     * @param executor executor on which the events are delivered
+     * @param subscriber subscriber of the events
+     * @return subscription, to unsubscribe
+     */
+    public Subscription subscribe(Executor executor, Consumer<? super T> subscriber) {
+        Subscription subscription = new Subscription(executor, subscriber);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Publishes an event to the subscribers, without waiting for them
+     * @param event event, not null
+     */
+    public void publish(T event) {
+        Objects.requireNonNull(event, "The events of " + name + " cannot be null");
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * @return name of the topic
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Subscription to a topic, delivering the events to its subscriber on its executor
+     */
+    public final class Subscription implements Runnable {
+
+        private final Executor executor;
+        private final Consumer<? super T> subscriber;
+
+        //Latest state of a state topic
+        private final AtomicReference<T> latest = new AtomicReference<>();
+        //Pending events of an event topic, the size being counted apart as the queue does not
+        private final Queue<T> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean active = true;
+
+        /**
+         * Constructor of the subscription
+         * @param executor executor on which the events are delivered
+         * @param subscriber subscriber of the events
+         */
+        private Subscription(Executor executor, Consumer<? super T> subscriber) {
+            this.executor = executor;
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds an event to the mailbox and schedules its delivery
+         * @param event event
+         */
+        private void offer(T event) {
+            if (coalesced) {
+                if (latest.getAndSet(event) != null) dropped.incrementAndGet();
+            } else {
+                //Drop the oldest pending event rather than blocking the publisher
+                if (pendingCount.incrementAndGet() > capacity && pending.poll() != null) {
+                    pendingCount.decrementAndGet();
+                    dropped.incrementAndGet();
+                }
+                pending.offer(event);
+            }
+            schedule();
+        }
+
+        /**
+         * Schedules the delivery of the pending events, if not already scheduled
+         */
+        private void schedule() {
+            if (!active || !scheduled.compareAndSet(false, true)) return;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                //The executor was shut down, the events cannot be delivered anymore
+                scheduled.set(false);
+            }
+        }
+
+        /**
+         * Takes the next pending event
+         * @return next event, null if there is none
+         */
+        private T poll() {
+            if (coalesced) return latest.getAndSet(null);
+            T event = pending.poll();
+            if (event != null) pendingCount.decrementAndGet();
+            return event;
+        }
+
+        /**
+         * @return true if an event is pending
+         */
+        private boolean hasPending() {
+            return coalesced ? latest.get() != null : !pending.isEmpty();
+        }
+
+        /**
+         * Delivers the pending events on the executor, at most the capacity of the topic at a time
+         * so that a busy topic does not monopolize a shared executor. If the subscriber throws, the
+         * exception is passed to the executor and the next events are still delivered.
+         */
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < capacity && active; i++) {
+                    T event = poll();
+                    if (event == null) break;
+                    subscriber.accept(event);
+                }
+            } finally {
+                scheduled.set(false);
+                //Schedule again for the events published during the delivery
+                if (hasPending()) schedule();
+            }
+        }
+
+        /**
+         * Unsubscribes from the topic, the pending events are dropped
+         */
+        public void unsubscribe() {
+            active = false;
+            subscriptions.remove(this);
+            latest.set(null);
+            pending.clear();
+            pendingCount.set(0);
+        }
+
+        /**
+         * @return number of events dropped because the subscriber fell behind
+         */
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+    }
+}
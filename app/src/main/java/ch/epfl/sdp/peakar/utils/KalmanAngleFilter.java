@@ -0,0 +1,60 @@
+package ch.epfl.sdp.peakar.utils;
+
+/**
+ * Kalman filter for angles with a constant angular speed model. The state is the angle and the
+ * angular speed: while panning the speed is estimated and the predicted angle follows the device,
+ * at rest the speed goes to zero and the measures are averaged.
+ */
+public class KalmanAngleFilter implements AngleFilter {
+
+    //Variance of the angular acceleration in rad^2/s^3 at rest and its increase with the squared
+    //angular speed: the filter trusts the measures more while panning
+    private static final float REST_ACCELERATION_VARIANCE = 0.01f;
+    private static final float SPEED_ACCELERATION_VARIANCE = 40f;
+    //Variance of the measured angle in rad^2 (about 1°)
+    private static final float MEASURE_VARIANCE = 3e-4f;
+
+    private boolean initialized;
+    private long lastTimestamp;
+    private float angle;
+    private float speed;
+
+    //Covariance of the state
+    private float pAngle, pCross, pSpeed;
+
+    @Override
+    public float filter(float radians, long timestampNanos) {
+        if (!initialized) {
+            initialized = true;
+            lastTimestamp = timestampNanos;
+            angle = AngleFilter.wrap(radians);
+            pAngle = MEASURE_VARIANCE;
+            pSpeed = 1;
+            return angle;
+        }
+        float dt = (timestampNanos - lastTimestamp) / 1e9f;
+        if (dt <= 0) return angle;
+        lastTimestamp = timestampNanos;
+
+        //Predict the state and its covariance
+        angle += speed * dt;
+        float accelerationVariance = REST_ACCELERATION_VARIANCE + SPEED_ACCELERATION_VARIANCE * speed * speed;
+        float dt2 = dt * dt;
+        pAngle += dt * (2*pCross + dt*pSpeed) + accelerationVariance * dt2 * dt / 3;
+        pCross += dt * pSpeed + accelerationVariance * dt2 / 2;
+        pSpeed += accelerationVariance * dt;
+
+        //Update with the shortest difference between the measured and the predicted angle
+        float innovation = AngleFilter.wrap(radians - angle);
+        float innovationVariance = pAngle + MEASURE_VARIANCE;
+        float gainAngle = pAngle / innovationVariance;
+        float gainSpeed = pCross / innovationVariance;
+        angle = AngleFilter.wrap(angle + gainAngle * innovation);
+        speed += gainSpeed * innovation;
+
+        pSpeed -= gainSpeed * pCross;
+        pCross -= gainAngle * pCross;
+        pAngle -= gainAngle * pAngle;
+        return angle;
+    }
+}
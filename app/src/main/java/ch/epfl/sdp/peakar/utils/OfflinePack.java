@@ -0,0 +1,78 @@
+package ch.epfl.sdp.peakar.utils;
+
+import org.osmdroid.util.BoundingBox;
+
+/**
+ * Entry of the offline pack manifest. Describes a downloaded region without loading its content:
+ * the content (POIPoints and topography map) is only read from the pack file once the pack is
+ * selected by OfflinePackStore.
+ */
+public class OfflinePack {
+
+    private final String name;
+    private final String fileName;
+    private final BoundingBox boundingBox;
+    private final int poiCount;
+    private final long creationTime;
+
+    /**
+     * Constructor
+     * @param name name of the region displayed to the user
+     * @param fileName name of the file containing the pack content
+     * @param boundingBox downloaded bounding box
+     * @param poiCount number of POIPoints in the pack
+     * @param creationTime time of the download in milliseconds since epoch
+     */
+    public OfflinePack(String name, String fileName, BoundingBox boundingBox, int poiCount, long creationTime) {
+        this.name = name;
+        this.fileName = fileName;
+        this.boundingBox = boundingBox;
+        this.poiCount = poiCount;
+        this.creationTime = creationTime;
+    }
+
+    /**
+     * @return name of the region
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return name of the file containing the pack content
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return downloaded bounding box
+     */
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * @return number of POIPoints in the pack
+     */
+    public int getPoiCount() {
+        return poiCount;
+    }
+
+    /**
+     * @return time of the download in milliseconds since epoch
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Checks if a location is inside the downloaded bounding box
+     * @param latitude latitude (in degrees)
+     * @param longitude longitude (in degrees)
+     * @return true if the location is covered by the pack
+     */
+    public boolean contains(double latitude, double longitude) {
+        return boundingBox.contains(latitude, longitude);
+    }
+}
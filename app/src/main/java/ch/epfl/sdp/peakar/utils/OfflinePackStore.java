@@ -0,0 +1,298 @@
+package ch.epfl.sdp.peakar.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import org.osmdroid.util.BoundingBox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.sdp.peakar.points.POIPointCodec;
+import ch.epfl.sdp.peakar.points.Point;
+import ch.epfl.sdp.peakar.points.TopographyCodec;
+
+/**
+ * Store of the offline packs: each downloaded region is saved in its own pack file, and a small
+ * manifest lists the name and the bounding box of every pack.
+ *
+ * Opening the store only reads the manifest. The content of a pack (POIPoints and topography map)
+ * is decoded straight from the file stream once the pack is selected, by looking up the pack
+ * covering the user location.
+ *
+ * Pack files and the manifest are written in the background by the WriteBehindWriter, the pack
+ * before the manifest referencing it.
+ *
+ * The content downloaded by the previous versions, a single JSON file, is imported as a pack
+ * when the store is first opened.
+ */
+public final class OfflinePackStore {
+
+    private static final String TAG = "OfflinePackStore";
+
+    static final String PACKS_DIRECTORY = "offline_packs";
+    static final String MANIFEST_FILE = "manifest.bin";
+    private static final String PACK_FILE_PREFIX = "pack_";
+    private static final String PACK_FILE_EXTENSION = ".bin";
+    //Single offline content file of the previous versions, in JSON
+    static final String LEGACY_CONTENT_FILE = "offline_content.txt";
+
+    static final int MANIFEST_MAGIC = 0x4F464D46; // "OFMF"
+    static final int MANIFEST_VERSION = 1;
+
+    private static OfflinePackStore instance;
+
+    private final File directory;
+    private final File manifestFile;
+
+    /*Packs listed in the manifest, loaded on first use*/
+    private List<OfflinePack> packs;
+
+    /**
+     * Constructor
+     * @param directory directory containing the manifest and the pack files
+     */
+    OfflinePackStore(File directory) {
+        this.directory = directory;
+        this.manifestFile = new File(directory, MANIFEST_FILE);
+    }
+
+    /**
+     * Get singleton, storing the packs in the app's file directory
+     * @param context context of the application
+     * @return OfflinePackStore instance
+     */
+    public static synchronized OfflinePackStore getInstance(Context context) {
+        if (instance == null) {
+            File filesDirectory = context.getApplicationContext().getFilesDir();
+            instance = new OfflinePackStore(new File(filesDirectory, PACKS_DIRECTORY));
+            instance.migrateLegacyContent(new File(filesDirectory, LEGACY_CONTENT_FILE));
+        }
+        return instance;
+    }
+
+    /**
+     * Imports the offline content of the previous versions as a pack named after the center of
+     * its bounding box. The legacy file is deleted afterwards, also if it can't be read.
+     * @param legacyFile JSON file of the OfflineContentContainer
+     */
+    synchronized void migrateLegacyContent(File legacyFile) {
+        if (!legacyFile.exists()) return;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(legacyFile), StandardCharsets.UTF_8))) {
+            OfflineContentContainer content = new Gson().fromJson(reader, OfflineContentContainer.class);
+            if (content != null && content.boundingBox != null) {
+                OfflinePack pack = savePack(StorageHandler.getOfflinePackName(content.boundingBox), content);
+                //Keep the legacy file until the pack is on the disk
+                WriteBehindWriter.getInstance().await(new File(directory, pack.getFileName()));
+                WriteBehindWriter.getInstance().await(manifestFile);
+            }
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Legacy offline content migration failed: " + e.toString());
+        }
+        //noinspection ResultOfMethodCallIgnored
+        legacyFile.delete();
+    }
+
+    /**
+     * Gets the packs listed in the manifest
+     * @return unmodifiable list of the packs, in download order
+     */
+    public synchronized List<OfflinePack> getPacks() {
+        return Collections.unmodifiableList(new ArrayList<>(loadManifest()));
+    }
+
+    /**
+     * Gets the most recently saved pack
+     * @return latest pack or null if the store is empty
+     */
+    public synchronized OfflinePack getLatestPack() {
+        List<OfflinePack> manifest = loadManifest();
+        return manifest.isEmpty() ? null : manifest.get(manifest.size() - 1);
+    }
+
+    /**
+     * Finds the pack covering a location. If several packs contain the location, the one whose
+     * center is the closest is selected, since the user is further from its edges.
+     * @param latitude latitude of the location (in degrees)
+     * @param longitude longitude of the location (in degrees)
+     * @return pack covering the location or null if no pack covers it
+     */
+    public synchronized OfflinePack findPack(double latitude, double longitude) {
+        Point location = new Point(latitude, longitude, 0);
+        OfflinePack bestPack = null;
+        double bestDistance = Double.MAX_VALUE;
+        for (OfflinePack pack : loadManifest()) {
+            if (!pack.contains(latitude, longitude)) continue;
+            BoundingBox boundingBox = pack.getBoundingBox();
+            double distance = location.computeFlatDistance(
+                    new Point(boundingBox.getCenterLatitude(), boundingBox.getCenterLongitude(), 0));
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestPack = pack;
+            }
+        }
+        return bestPack;
+    }
+
+    /**
+     * Saves a region as a new pack. A pack with the same name is replaced.
+     * @param name name of the region
+     * @param content downloaded content of the region
+     * @return manifest entry of the new pack
+     */
+    public synchronized OfflinePack savePack(String name, OfflineContentContainer content) {
+        List<OfflinePack> manifest = loadManifest();
+        OfflinePack replaced = findByName(manifest, name);
+        if (replaced != null) {
+            manifest.remove(replaced);
+            deletePackFile(replaced);
+        }
+
+        long creationTime = System.currentTimeMillis();
+        String fileName = PACK_FILE_PREFIX + creationTime + "_" + manifest.size() + PACK_FILE_EXTENSION;
+        OfflinePack pack = new OfflinePack(name, fileName, content.boundingBox,
+                content.POIPoints == null ? 0 : content.POIPoints.size(), creationTime);
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        WriteBehindWriter.getInstance().write(new File(directory, fileName), outputStream -> writePack(content, outputStream));
+
+        manifest.add(pack);
+        saveManifest(manifest);
+        return pack;
+    }
+
+    /**
+     * Deletes a pack and its file
+     * @param pack pack to delete
+     */
+    public synchronized void deletePack(OfflinePack pack) {
+        List<OfflinePack> manifest = loadManifest();
+        if (manifest.remove(pack)) {
+            deletePackFile(pack);
+            saveManifest(manifest);
+        }
+    }
+
+    /**
+     * Reads the content of a pack, streaming it from its file
+     * @param pack pack to read
+     * @return content of the pack
+     * @throws IOException if the pack file is missing or corrupted
+     */
+    public OfflineContentContainer readPack(OfflinePack pack) throws IOException {
+        File packFile = new File(directory, pack.getFileName());
+        WriteBehindWriter.getInstance().await(packFile);
+
+        OfflineContentContainer content = new OfflineContentContainer();
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(packFile))) {
+            content.boundingBox = BinaryStreams.readBoundingBox(inputStream);
+            content.POIPoints = POIPointCodec.decode(inputStream);
+            content.topography = TopographyCodec.decode(inputStream);
+        }
+        return content;
+    }
+
+    /**
+     * Writes the content of a pack
+     * @param content content to write
+     * @param outputStream stream of the pack file
+     * @throws IOException if the stream can't be written
+     */
+    private static void writePack(OfflineContentContainer content, OutputStream outputStream) throws IOException {
+        BinaryStreams.writeBoundingBox(outputStream, content.boundingBox);
+        POIPointCodec.encode(content.POIPoints == null ? Collections.emptyList() : content.POIPoints, outputStream);
+        TopographyCodec.encode(content.topography, outputStream);
+    }
+
+    /**
+     * Deletes the file of a pack, cancelling its pending write if any
+     * @param pack pack whose file is deleted
+     */
+    private void deletePackFile(OfflinePack pack) {
+        File packFile = new File(directory, pack.getFileName());
+        WriteBehindWriter.getInstance().cancel(packFile);
+        //noinspection ResultOfMethodCallIgnored
+        packFile.delete();
+    }
+
+    /**
+     * Finds a pack by its name
+     * @param manifest packs to search
+     * @param name name of the pack
+     * @return pack with the given name or null
+     */
+    private static OfflinePack findByName(List<OfflinePack> manifest, String name) {
+        for (OfflinePack pack : manifest) {
+            if (pack.getName().equals(name)) return pack;
+        }
+        return null;
+    }
+
+    /**
+     * Loads the manifest from its file if it is not loaded yet. A missing or corrupted manifest
+     * results in an empty store.
+     * @return mutable list of the packs
+     */
+    private List<OfflinePack> loadManifest() {
+        if (packs != null) return packs;
+        packs = new ArrayList<>();
+        WriteBehindWriter.getInstance().await(manifestFile);
+        if (!manifestFile.exists()) return packs;
+
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(manifestFile))) {
+            if (BinaryStreams.readInt(inputStream) != MANIFEST_MAGIC) throw new IOException("Not a manifest");
+            int version = BinaryStreams.readVarInt(inputStream);
+            if (version != MANIFEST_VERSION) throw new IOException("Unsupported manifest version " + version);
+            int packCount = BinaryStreams.readVarInt(inputStream);
+            for (int i = 0; i < packCount; i++) {
+                String name = BinaryStreams.readString(inputStream);
+                String fileName = BinaryStreams.readString(inputStream);
+                BoundingBox boundingBox = BinaryStreams.readBoundingBox(inputStream);
+                int poiCount = BinaryStreams.readVarInt(inputStream);
+                long creationTime = BinaryStreams.readVarLong(inputStream);
+                packs.add(new OfflinePack(name, fileName, boundingBox, poiCount, creationTime));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Manifest read failed: " + e.toString());
+            packs.clear();
+        }
+        return packs;
+    }
+
+    /**
+     * Queues the write of the manifest
+     * @param manifest packs to list in the manifest
+     */
+    private void saveManifest(List<OfflinePack> manifest) {
+        List<OfflinePack> snapshot = new ArrayList<>(manifest);
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        WriteBehindWriter.getInstance().write(manifestFile, outputStream -> {
+            BinaryStreams.writeInt(outputStream, MANIFEST_MAGIC);
+            BinaryStreams.writeVarLong(outputStream, MANIFEST_VERSION);
+            BinaryStreams.writeVarLong(outputStream, snapshot.size());
+            for (OfflinePack pack : snapshot) {
+                BinaryStreams.writeString(outputStream, pack.getName());
+                BinaryStreams.writeString(outputStream, pack.getFileName());
+                BinaryStreams.writeBoundingBox(outputStream, pack.getBoundingBox());
+                BinaryStreams.writeVarLong(outputStream, pack.getPoiCount());
+                BinaryStreams.writeVarLong(outputStream, pack.getCreationTime());
+            }
+        });
+    }
+}
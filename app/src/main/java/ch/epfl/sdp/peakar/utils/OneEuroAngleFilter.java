@@ -0,0 +1,53 @@
+package ch.epfl.sdp.peakar.utils;
+
+/**
+ * One euro filter for angles: a lowpass filter whose cutoff frequency increases with the angular
+ * speed. At rest the cutoff is low and the jitter is removed, while panning the cutoff is high and
+ * the filtered angle follows the device with little lag.
+ * See <a href="1€ Filter">https://gery.casiez.net/1euro/</a>
+ */
+public class OneEuroAngleFilter implements AngleFilter {
+
+    //Cutoff frequency at rest in Hz
+    private static final float MIN_CUTOFF = 0.5f;
+    //Increase of the cutoff frequency in Hz per radian per second
+    private static final float BETA = 6f;
+    //Cutoff frequency of the filtered angular speed in Hz
+    private static final float DERIVATIVE_CUTOFF = 1f;
+
+    private boolean initialized;
+    private long lastTimestamp;
+    private float angle;
+    private float speed;
+
+    @Override
+    public float filter(float radians, long timestampNanos) {
+        if (!initialized) {
+            initialized = true;
+            lastTimestamp = timestampNanos;
+            angle = AngleFilter.wrap(radians);
+            return angle;
+        }
+        float dt = (timestampNanos - lastTimestamp) / 1e9f;
+        if (dt <= 0) return angle;
+        lastTimestamp = timestampNanos;
+
+        //Shortest difference to the filtered angle, 179° and -179° being 2° apart
+        float delta = AngleFilter.wrap(radians - angle);
+        speed += smoothingFactor(dt, DERIVATIVE_CUTOFF) * (delta / dt - speed);
+        float cutoff = MIN_CUTOFF + BETA * Math.abs(speed);
+        angle = AngleFilter.wrap(angle + smoothingFactor(dt, cutoff) * delta);
+        return angle;
+    }
+
+    /**
+     * Computes the smoothing factor of an exponential lowpass filter
+     * @param dt time since the last measure in seconds
+     * @param cutoff cutoff frequency in Hz
+     * @return smoothing factor in [0, 1]
+     */
+    private static float smoothingFactor(float dt, float cutoff) {
+        float tau = (float) (1 / (2*Math.PI*cutoff));
+        return 1 / (1 + tau/dt);
+    }
+}
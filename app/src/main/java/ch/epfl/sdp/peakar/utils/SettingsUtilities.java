@@ -152,8 +152,31 @@ public final class SettingsUtilities {
             case "fifth_range":
                 returnVal = 50;
                 break;
+            case "sixth_range":
+                returnVal = 100;
+                break;
         }
         return returnVal;
     }
 
+    /**
+     * Creates the filter of the orientation angles selected in the preferences
+     * @param context application context
+     * @return new filter of the orientation angles
+     */
+    public static AngleFilter createOrientationFilter(Context context){
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        String selectedFilter = sharedPreferences.getString(context.getResources().getString(R.string.orientationFilter_key),
+                context.getResources().getStringArray(R.array.orientationFilter_values)[1]);
+        switch (selectedFilter){
+            case "moving_average":
+                return new AngleLowpassFilter();
+            case "kalman":
+                return new KalmanAngleFilter();
+            case "one_euro":
+            default:
+                return new OneEuroAngleFilter();
+        }
+    }
+
 }
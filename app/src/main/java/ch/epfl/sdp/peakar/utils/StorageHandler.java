@@ -4,16 +4,12 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.GeoPoint;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -27,7 +23,7 @@ public final class StorageHandler {
 
     private static final String FILENAME_PHOTO = "yyyy-MM-dd-HH-mm-ss-SSS";
     private static final String PHOTO_EXTENSION = ".jpg";
-    public static final String OFFLINE_CONTENT_FILE =  "offline_content.txt";
+    private static final String OFFLINE_PACK_NAME_FORMAT = "%.3f°, %.3f°";
 
     private static final int NO_COMPRESSION = 100;
 
@@ -90,48 +86,39 @@ public final class StorageHandler {
     }
 
     /**
-     * Helper method to load the downloaded json of the OfflineContentContainer.
+     * Helper method to load the most recently downloaded OfflineContentContainer.
+     * To load the pack covering a location, use OfflinePackStore#findPack.
      *
      * @return an OfflineContainer containing the downloaded content.
+     * @throws IOException if no content was downloaded or if the file is corrupted
      */
      public static OfflineContentContainer readOfflineContentContainer(Context context) throws IOException {
-
-        Gson gson = new Gson();
-
-        String ret = "";
-
-        InputStream inputStream =  context.openFileInput(OFFLINE_CONTENT_FILE);
-        if ( inputStream != null ) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-            BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
-            String receiveString;
-            StringBuilder stringBuilder = new StringBuilder();
-            while ( (receiveString = bufferedReader.readLine()) != null ) {
-                stringBuilder.append(receiveString);
-            }
-            inputStream.close();
-            ret = stringBuilder.toString();
+        OfflinePackStore offlinePackStore = OfflinePackStore.getInstance(context);
+        OfflinePack latestPack = offlinePackStore.getLatestPack();
+        if (latestPack == null) {
+            throw new IOException("No offline content downloaded");
         }
-
         Log.d("computePOIPointsInstance", "Offline content downloaded");
-        return gson.fromJson(ret, OfflineContentContainer.class);
+        return offlinePackStore.readPack(latestPack);
     }
 
     /**
-     * Saves the OfflineContentContainer as a .txt file.
+     * Saves the OfflineContentContainer as a new offline pack named after the center of its
+     * bounding box. The pack is written in the background.
      *
-     * @param saveObject  json to save.
+     * @param saveObject  container to save.
      */
     public static void saveOfflineContentContainer(OfflineContentContainer saveObject, Context context) {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        String jsonString = gson.toJson(saveObject);
-        try {
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(context.openFileOutput(OFFLINE_CONTENT_FILE, Context.MODE_PRIVATE));
-            outputStreamWriter.write(jsonString);
-            outputStreamWriter.close();
-        }
-        catch (IOException e) {
-            Log.e("Exception", "File write failed: " + e.toString());
-        }
+        OfflinePackStore.getInstance(context).savePack(getOfflinePackName(saveObject.boundingBox), saveObject);
+    }
+
+    /**
+     * Gets the name of the offline pack of a region, made of the coordinates of its center
+     * @param boundingBox bounding box of the region
+     * @return name of the pack
+     */
+    static String getOfflinePackName(BoundingBox boundingBox) {
+        GeoPoint center = boundingBox.getCenterWithDateLine();
+        return String.format(Locale.ENGLISH, OFFLINE_PACK_NAME_FORMAT, center.getLatitude(), center.getLongitude());
     }
 }
@@ -0,0 +1,534 @@
+package ch.epfl.sdp.peakar.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the background work of the app, replacing the AsyncTasks and the threads created for each
+ * task.
+ *
+ * The tasks are split by workload, each workload having its own bounded pool of threads, so that
+ * the CPU computations do not starve the network callbacks and a saturated network does not delay
+ * the actions the user is waiting for:
+ * <ul>
+ * <li>UI_CRITICAL for the short tasks whose result the user is waiting for on screen, which never
+ * wait for the network or the disk
+ * <li>NETWORK for the requests to the servers and the database, including the blocking calls the
+ * user is waiting for
+ * <li>DISK for the reads and writes of files
+ * <li>COMPUTE for the CPU-bound computations, on fewer threads than cores and at a lower thread
+ * priority
+ * </ul>
+ * In a workload, the tasks run by priority and in submission order for the same priority. The idle
+ * threads are released after KEEP_ALIVE_SECONDS. Each workload keeps metrics of its queue.
+ *
+ * A failure of a task run by execute is also passed to the uncaught exception handler, like the
+ * failure of a thread, since nobody may be waiting for its future.
+ *
+ * This class is a singleton.
+ */
+public final class TaskScheduler {
+
+    private static final String TAG = "TaskScheduler";
+    //Time after which an idle thread is released
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Class of the tasks, each one having its own pool of threads
+     */
+    public enum Workload {
+        UI_CRITICAL(2, Thread.NORM_PRIORITY + 1),
+        NETWORK(4, Thread.NORM_PRIORITY),
+        DISK(2, Thread.NORM_PRIORITY),
+        COMPUTE(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), Thread.NORM_PRIORITY - 2);
+
+        private final int threads;
+        private final int threadPriority;
+
+        /**
+         * Constructor of the workload
+         * @param threads maximum number of threads of the workload
+         * @param threadPriority priority of the threads of the workload
+         */
+        Workload(int threads, int threadPriority) {
+            this.threads = threads;
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    /**
+     * Priority of a task in its workload
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private static TaskScheduler instance;
+    private static Executor mainExecutor;
+
+    private final Map<Workload, WorkQueue> queues = new EnumMap<>(Workload.class);
+
+    /**
+     * Private constructor: the class is a singleton
+     */
+    private TaskScheduler() {
+        for (Workload workload : Workload.values()) {
+            queues.put(workload, new WorkQueue(workload, workload.threads));
+        }
+    }
+
+    /**
+     * Constructor with the same number of threads for every workload, for the tests
+     * @param threads number of threads of each workload
+     */
+    TaskScheduler(int threads) {
+        for (Workload workload : Workload.values()) {
+            queues.put(workload, new WorkQueue(workload, threads));
+        }
+    }
+
+    /**
+     * Get singleton
+     * @return TaskScheduler instance
+     */
+    public static synchronized TaskScheduler getInstance() {
+        if (instance == null)
+            instance = new TaskScheduler();
+        return instance;
+    }
+
+    /**
+     * Gets the executor of the UI thread, to deliver the results of the tasks
+     * @return executor posting to the main looper
+     */
+    public static synchronized Executor getMainExecutor() {
+        if (mainExecutor == null) {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            mainExecutor = mainHandler::post;
+        }
+        return mainExecutor;
+    }
+
+    /**
+     * Runs a task. If the task fails, the failure is passed to the uncaught exception handler.
+     * @param workload workload of the task
+     * @param priority priority of the task in its workload
+     * @param task task to run
+     * @return future completed once the task has run
+     */
+    public CompletableFuture<Void> execute(Workload workload, Priority priority, Runnable task) {
+        PrioritizedTask<Void> prioritizedTask = new PrioritizedTask<>(priority, new CancellationToken(), () -> {
+            task.run();
+            return null;
+        }, true);
+        queues.get(workload).execute(prioritizedTask);
+        return prioritizedTask.future;
+    }
+
+    /**
+     * Runs a task computing a result
+     * @param workload workload of the task
+     * @param priority priority of the task in its workload
+     * @param task task to run
+     * @param <T> type of the result
+     * @return future of the result
+     */
+    public <T> CompletableFuture<T> submit(Workload workload, Priority priority, Callable<T> task) {
+        return submit(workload, priority, new CancellationToken(), task);
+    }
+
+    /**
+     * Runs a task computing a result, unless it is cancelled before it starts. The future is
+     * cancelled if the task is skipped, and cancelling the future also skips the task.
+     * @param workload workload of the task
+     * @param priority priority of the task in its workload
+     * @param token token cancelling the task
+     * @param task task to run
+     * @param <T> type of the result
+     * @return future of the result
+     */
+    public <T> CompletableFuture<T> submit(Workload workload, Priority priority, CancellationToken token,
+                                           Callable<T> task) {
+        PrioritizedTask<T> prioritizedTask = new PrioritizedTask<>(priority, token, task, false);
+        queues.get(workload).execute(prioritizedTask);
+        return prioritizedTask.future;
+    }
+
+    /**
+     * Gets an executor running its tasks in a workload, to use with the APIs taking an Executor
+     * @param workload workload of the tasks
+     * @param priority priority of the tasks in their workload
+     * @return executor of the workload
+     */
+    public Executor executor(Workload workload, Priority priority) {
+        return task -> execute(workload, priority, task);
+    }
+
+    /**
+     * Creates an executor running its tasks one at a time in submission order on a workload, for
+     * the state confined to a single background thread at a time. Each task is queued in the
+     * workload once the previous one has ended, so a serial executor never holds more than one
+     * thread of the workload.
+     * @param workload workload of the tasks
+     * @param priority priority of the tasks in their workload
+     * @return new serial executor
+     */
+    public Executor serialExecutor(Workload workload, Priority priority) {
+        return new SerialExecutor(workload, priority);
+    }
+
+    /**
+     * Runs an action for each index in parallel on the threads of a workload and waits for the
+     * end. The calling thread takes part in the work, so the call completes even if every thread
+     * of the workload is busy, or if it is made from a task of the same workload.
+     * @param workload workload of the action, usually COMPUTE
+     * @param priority priority of the action in its workload
+     * @param count number of indexes, from 0 to count - 1
+     * @param action action run for each index
+     */
+    public void parallelFor(Workload workload, Priority priority, int count, IntConsumer action) {
+        if (count <= 0) return;
+        WorkQueue queue = queues.get(workload);
+        int chunks = Math.min(count, queue.threads + 1);
+        AtomicInteger nextChunk = new AtomicInteger();
+        CountDownLatch remainingChunks = new CountDownLatch(chunks);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        //Each helper and the calling thread take the chunks until there is none left
+        Runnable worker = () -> {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                try {
+                    for (int i = chunk * count / chunks; i < (chunk + 1) * count / chunks; i++) {
+                        action.accept(i);
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    remainingChunks.countDown();
+                }
+            }
+        };
+        for (int i = 1; i < chunks; i++) {
+            queue.execute(new PrioritizedTask<>(priority, new CancellationToken(), () -> {
+                worker.run();
+                return null;
+            }, false));
+        }
+        worker.run();
+
+        try {
+            remainingChunks.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the parallel action", e);
+        }
+        if (failure.get() != null) throw failure.get();
+    }
+
+    /**
+     * Gets the metrics of the queue of a workload
+     * @param workload workload
+     * @return snapshot of the metrics
+     */
+    public Metrics getMetrics(Workload workload) {
+        return queues.get(workload).getMetrics();
+    }
+
+    /**
+     * Snapshot of the metrics of the queue of a workload
+     */
+    public static final class Metrics {
+        private final long submitted;
+        private final long completed;
+        private final long failed;
+        private final long cancelled;
+        private final int queued;
+        private final int active;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+
+        private Metrics(long submitted, long completed, long failed, long cancelled, int queued, int active,
+                        long totalWaitNanos, long maxWaitNanos) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.cancelled = cancelled;
+            this.queued = queued;
+            this.active = active;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        /**
+         * @return number of tasks submitted
+         */
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return number of tasks run without error
+         */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return number of tasks which failed
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return number of tasks cancelled before they started or stopped by their token
+         */
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return number of tasks waiting in the queue
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return number of tasks running
+         */
+        public int getActive() {
+            return active;
+        }
+
+        /**
+         * @return average time spent by the started tasks in the queue, in milliseconds
+         */
+        public double getAverageWaitMillis() {
+            long started = completed + failed + cancelled;
+            return started == 0 ? 0 : totalWaitNanos / 1e6 / started;
+        }
+
+        /**
+         * @return longest time spent by a task in the queue, in milliseconds
+         */
+        public double getMaxWaitMillis() {
+            return maxWaitNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return "submitted=" + submitted + " completed=" + completed + " failed=" + failed
+                    + " cancelled=" + cancelled + " queued=" + queued + " active=" + active
+                    + " averageWaitMs=" + getAverageWaitMillis() + " maxWaitMs=" + getMaxWaitMillis();
+        }
+    }
+
+    /**
+     * Executor running its tasks one at a time on a workload, in submission order
+     */
+    private final class SerialExecutor implements Executor {
+        private final Workload workload;
+        private final Priority priority;
+
+        //Tasks waiting for the running one, guarded by this
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean running;
+
+        /**
+         * Constructor of the serial executor
+         * @param workload workload of the tasks
+         * @param priority priority of the tasks in their workload
+         */
+        private SerialExecutor(Workload workload, Priority priority) {
+            this.workload = workload;
+            this.priority = priority;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.offer(Objects.requireNonNull(task, "The task cannot be null"));
+            if (!running) {
+                running = true;
+                TaskScheduler.this.execute(workload, priority, this::runNext);
+            }
+        }
+
+        /**
+         * Runs the oldest task, then queues the next one even if the task failed
+         */
+        private void runNext() {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+            }
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    if (tasks.isEmpty()) running = false;
+                    else TaskScheduler.this.execute(workload, priority, this::runNext);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pool of threads of a workload, taking its tasks by priority
+     */
+    private static final class WorkQueue {
+        private final Workload workload;
+        private final int threads;
+        private final ThreadPoolExecutor executor;
+
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong cancelled = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        /**
+         * Constructor of the pool
+         * @param workload workload of the pool
+         * @param threads number of threads of the pool
+         */
+        private WorkQueue(Workload workload, int threads) {
+            this.workload = workload;
+            this.threads = threads;
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, workload.name() + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(workload.threadPriority);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * Queues a task
+         * @param task task to queue
+         */
+        private void execute(PrioritizedTask<?> task) {
+            task.queue = this;
+            task.sequence = sequence.getAndIncrement();
+            task.enqueueNanos = System.nanoTime();
+            submitted.incrementAndGet();
+            executor.execute(task);
+        }
+
+        /**
+         * Records the time spent by a task in the queue
+         * @param waitNanos time spent in the queue
+         */
+        private void onStarted(long waitNanos) {
+            totalWaitNanos.addAndGet(waitNanos);
+            long max;
+            do {
+                max = maxWaitNanos.get();
+            } while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos));
+        }
+
+        /**
+         * @return snapshot of the metrics of the queue
+         */
+        private Metrics getMetrics() {
+            return new Metrics(submitted.get(), completed.get(), failed.get(), cancelled.get(),
+                    executor.getQueue().size(), executor.getActiveCount(), totalWaitNanos.get(), maxWaitNanos.get());
+        }
+    }
+
+    /**
+     * Task ordered by priority, then by submission order
+     * @param <T> type of the result of the task
+     */
+    private static final class PrioritizedTask<T> implements Runnable, Comparable<PrioritizedTask<?>> {
+        private final Priority priority;
+        private final CancellationToken token;
+        private final Callable<T> callable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        //True if the failures are passed to the uncaught exception handler
+        private final boolean uncaught;
+
+        private WorkQueue queue;
+        private long sequence;
+        private long enqueueNanos;
+
+        /**
+         * Constructor of the task
+         * @param priority priority of the task
+         * @param token token cancelling the task
+         * @param callable work of the task
+         * @param uncaught true if the failures are passed to the uncaught exception handler
+         */
+        private PrioritizedTask(Priority priority, CancellationToken token, Callable<T> callable, boolean uncaught) {
+            this.priority = priority;
+            this.token = token;
+            this.callable = callable;
+            this.uncaught = uncaught;
+        }
+
+        /**
+         * Runs the task and completes its future, once the metrics are updated
+         */
+        @Override
+        public void run() {
+            queue.onStarted(System.nanoTime() - enqueueNanos);
+            if (token.isCancelled() || future.isDone()) {
+                queue.cancelled.incrementAndGet();
+                future.cancel(false);
+                return;
+            }
+            T result;
+            try {
+                result = callable.call();
+            } catch (CancellationException e) {
+                //The task stopped itself after its token was cancelled
+                queue.cancelled.incrementAndGet();
+                future.cancel(false);
+                return;
+            } catch (Throwable e) {
+                queue.failed.incrementAndGet();
+                future.completeExceptionally(e);
+                if (uncaught) {
+                    //The thread of the pool is kept, the handler decides what the failure means
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                } else {
+                    Log.e(TAG, "Task of the " + queue.workload + " workload failed", e);
+                }
+                return;
+            }
+            queue.completed.incrementAndGet();
+            future.complete(result);
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package ch.epfl.sdp.peakar.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Download engine fetching a set of tiles (one URL per tile) concurrently into a directory.
+ *
+ * Tiles are downloaded by a bounded pool of threads. Each tile is first written to a ".part" file,
+ * which is renamed to the tile file once the response is complete: a completed tile is never
+ * downloaded again, so starting a download on the same directory resumes it where it stopped.
+ * A partially downloaded tile is resumed with an HTTP range request when the server supports it,
+ * and a tile whose transfer fails is retried before the whole download is reported as failed.
+ *
+ * The listener is called from the download threads.
+ */
+public class TiledDownloader {
+
+    private static final String TAG = "TiledDownloader";
+    private static final String PART_EXTENSION = ".part";
+
+    static final int MAX_ATTEMPTS = 3;
+    static final long RETRY_DELAY_MS = 200;
+    static final long PROGRESS_INTERVAL_MS = 100;
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 60000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final File directory;
+    private final List<Tile> tiles;
+    private final int parallelism;
+
+    private final AtomicInteger completedTiles = new AtomicInteger();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong lastProgressTime = new AtomicLong();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private ExecutorService executor;
+    private Listener listener;
+
+    /**
+     * Tile of a download: an identifier, used as file name, and the URL of its content
+     */
+    public static final class Tile {
+        private final String id;
+        private final URL url;
+
+        /**
+         * Constructor
+         * @param id identifier of the tile, must be a valid file name
+         * @param url URL of the tile content
+         */
+        public Tile(String id, URL url) {
+            this.id = id;
+            this.url = url;
+        }
+
+        /**
+         * @return identifier of the tile
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return URL of the tile content
+         */
+        public URL getUrl() {
+            return url;
+        }
+    }
+
+    /**
+     * Listener of the download state
+     */
+    public interface Listener {
+        /**
+         * Called when a tile completes and periodically while tiles are transferred
+         * @param completedTiles number of completed tiles, including the tiles of a previous run
+         * @param totalTiles number of tiles of the download
+         * @param downloadedBytes number of bytes transferred by this run
+         */
+        void onProgress(int completedTiles, int totalTiles, long downloadedBytes);
+
+        /**
+         * Called once every tile is completed
+         * @param tileFiles files of the tiles by tile identifier, in the order of the tiles
+         */
+        void onCompleted(Map<String, File> tileFiles);
+
+        /**
+         * Called when a tile could not be downloaded. The completed tiles are kept.
+         * @param e error of the last attempt
+         */
+        void onFailed(IOException e);
+    }
+
+    /**
+     * Constructor
+     * @param directory directory in which the tiles are stored
+     * @param tiles tiles to download
+     * @param parallelism maximum number of tiles downloaded at the same time
+     */
+    public TiledDownloader(File directory, List<Tile> tiles, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism can't be less than 1");
+        this.directory = directory;
+        this.tiles = Collections.unmodifiableList(new ArrayList<>(tiles));
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Gets the file in which a tile is stored once completed
+     * @param tile tile of the download
+     * @return file of the tile
+     */
+    public File getTileFile(Tile tile) {
+        return new File(directory, tile.getId());
+    }
+
+    /**
+     * Starts the download of the missing tiles. The tiles completed by a previous run are not
+     * downloaded again.
+     * @param listener listener of the download state
+     */
+    public synchronized void start(Listener listener) {
+        if (executor != null)
+            throw new IllegalStateException("Download already started");
+        this.listener = listener;
+
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        List<Tile> missingTiles = new ArrayList<>();
+        for (Tile tile : tiles) {
+            if (!getTileFile(tile).exists()) missingTiles.add(tile);
+        }
+        completedTiles.set(tiles.size() - missingTiles.size());
+        Log.d(TAG, "Resuming download: " + completedTiles.get() + "/" + tiles.size() + " tiles completed");
+
+        listener.onProgress(completedTiles.get(), tiles.size(), 0);
+        if (missingTiles.isEmpty()) {
+            finish(null);
+            return;
+        }
+
+        executor = Executors.newFixedThreadPool(Math.min(parallelism, missingTiles.size()), r -> {
+            Thread thread = new Thread(r, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Tile tile : missingTiles) {
+            executor.execute(() -> runTile(tile));
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Stops the download. The completed tiles and the partial tiles are kept so that the download
+     * can be resumed later, and the listener is not called anymore.
+     */
+    public synchronized void cancel() {
+        finished.set(true);
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /**
+     * Downloads a tile, retrying it up to MAX_ATTEMPTS times
+     * @param tile tile to download
+     */
+    private void runTile(Tile tile) {
+        IOException error = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && !finished.get(); attempt++) {
+            try {
+                downloadTile(tile);
+                int completed = completedTiles.incrementAndGet();
+                notifyProgress(true);
+                if (completed == tiles.size()) finish(null);
+                return;
+            } catch (IOException e) {
+                //The download was cancelled, the partial tile is kept
+                if (finished.get() || Thread.currentThread().isInterrupted()) return;
+                Log.d(TAG, "Attempt " + attempt + " failed for tile " + tile.getId() + ": " + e.toString());
+                error = e;
+            }
+            try {
+                Thread.sleep(RETRY_DELAY_MS * attempt);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+        if (error != null) finish(error);
+    }
+
+    /**
+     * Downloads a tile in its ".part" file, resuming a partial transfer if possible, and renames it
+     * to the tile file once complete
+     * @param tile tile to download
+     * @throws IOException if the transfer fails or is incomplete
+     */
+    private void downloadTile(Tile tile) throws IOException {
+        File tileFile = getTileFile(tile);
+        File partFile = new File(tileFile.getPath() + PART_EXTENSION);
+        long offset = partFile.length();
+
+        HttpURLConnection connection = (HttpURLConnection) tile.getUrl().openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            if (offset > 0) connection.setRequestProperty("Range", "bytes=" + offset + "-");
+
+            int responseCode = connection.getResponseCode();
+            boolean append;
+            if (responseCode == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+                append = true;
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                //The server ignored the range request: restart the tile from the beginning
+                append = false;
+            } else {
+                //An invalid range means the partial file does not match the resource anymore
+                if (responseCode == 416) {
+                    //noinspection ResultOfMethodCallIgnored
+                    partFile.delete();
+                }
+                throw new IOException("Http error code " + responseCode + " for tile " + tile.getId());
+            }
+
+            long expectedLength = connection.getContentLength();
+            long receivedLength = 0;
+            try (InputStream inputStream = connection.getInputStream();
+                 OutputStream outputStream = new FileOutputStream(partFile, append)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedIOException("Download cancelled");
+                    outputStream.write(buffer, 0, read);
+                    receivedLength += read;
+                    downloadedBytes.addAndGet(read);
+                    notifyProgress(false);
+                }
+            }
+            if (expectedLength >= 0 && receivedLength != expectedLength)
+                throw new IOException("Tile " + tile.getId() + " truncated: " + receivedLength + "/" + expectedLength + " bytes");
+        } finally {
+            connection.disconnect();
+        }
+
+        if (!partFile.renameTo(tileFile))
+            throw new IOException("Could not rename " + partFile.getName() + " to " + tileFile.getName());
+    }
+
+    /**
+     * Notifies the listener of the progress. Byte progress is reported at most every
+     * PROGRESS_INTERVAL_MS, completed tiles are always reported.
+     * @param force true to report even if the last report is recent
+     */
+    private void notifyProgress(boolean force) {
+        long now = System.currentTimeMillis();
+        long last = lastProgressTime.get();
+        if (!force && (now - last < PROGRESS_INTERVAL_MS || !lastProgressTime.compareAndSet(last, now)))
+            return;
+        if (force) lastProgressTime.set(now);
+        if (!finished.get()) listener.onProgress(completedTiles.get(), tiles.size(), downloadedBytes.get());
+    }
+
+    /**
+     * Ends the download and notifies the listener, only once
+     * @param error error that stopped the download, null if every tile is completed
+     */
+    private void finish(IOException error) {
+        if (!finished.compareAndSet(false, true)) return;
+        if (error != null) {
+            if (executor != null) executor.shutdownNow();
+            listener.onFailed(error);
+        } else {
+            Map<String, File> tileFiles = new LinkedHashMap<>();
+            for (Tile tile : tiles) tileFiles.put(tile.getId(), getTileFile(tile));
+            listener.onCompleted(tileFiles);
+        }
+    }
+}
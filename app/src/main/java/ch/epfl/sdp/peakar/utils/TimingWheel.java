@@ -0,0 +1,312 @@
+package ch.epfl.sdp.peakar.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel running tasks at their deadlines on a single thread.
+ *
+ * The time is cut in ticks, and each deadline is put in the bucket of its tick modulo the size of
+ * the wheel, in a doubly-linked list: scheduling and cancelling take constant time whatever the
+ * number of pending tasks. The thread of the wheel goes through the buckets of the elapsed ticks and
+ * hands the expired tasks to the executor, the deadlines further than one turn of the wheel staying
+ * in their bucket until their round comes. A task runs at most one tick late and never early.
+ *
+ * The thread of the wheel is only started by the first schedule and sleeps until the earliest
+ * pending deadline instead of waking up at every tick, the earliest deadline being found again by
+ * going through the buckets after each expiration. After a pause longer than a turn, like a sleep
+ * of the device, all the buckets are checked at once.
+ *
+ * The wheel runs on a monotonic clock, so that setting the clock of the device does not hold or
+ * hasten the expirations: a deadline on the wall clock is scheduled as a delay with scheduleAfter.
+ */
+public final class TimingWheel {
+
+    private static final String TAG = "TimingWheel";
+
+    private final long tickMillis;
+    private final int mask;
+    private final Timeout[] buckets;
+    private final Executor executor;
+    private final LongSupplier clock;
+    //False when the wheel is advanced by hand, in the tests
+    private final boolean ticking;
+
+    private final Object lock = new Object();
+    private long lastTick;
+    //Earliest deadline of the pending tasks, may be earlier after a cancel
+    private long nextDeadlineTick = Long.MAX_VALUE;
+    private int size;
+    private Thread ticker;
+
+    /**
+     * Constructor of the wheel, on the time elapsed since the boot of the device, sleep included
+     * @param tickMillis duration of a tick in milliseconds
+     * @param wheelSize number of buckets, a power of two
+     * @param executor executor on which the expired tasks are run
+     */
+    public TimingWheel(long tickMillis, int wheelSize, Executor executor) {
+        this(tickMillis, wheelSize, executor, SystemClock::elapsedRealtime, true);
+    }
+
+    /**
+     * Constructor of the wheel
+     * @param tickMillis duration of a tick in milliseconds
+     * @param wheelSize number of buckets, a power of two
+     * @param executor executor on which the expired tasks are run
+     * @param clock clock in milliseconds
+     * @param ticking true if the wheel is advanced by its own thread
+     */
+    TimingWheel(long tickMillis, int wheelSize, Executor executor, LongSupplier clock, boolean ticking) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("The tick must be positive");
+        if (Integer.bitCount(wheelSize) != 1) throw new IllegalArgumentException("The size of the wheel must be a power of two");
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new Timeout[wheelSize];
+        this.executor = executor;
+        this.clock = clock;
+        this.ticking = ticking;
+        this.lastTick = clock.getAsLong() / tickMillis;
+    }
+
+    /**
+     * Schedules a task, a deadline in the past being run at the next tick
+     * @param task task to run
+     * @param deadlineMillis deadline on the clock of the wheel in milliseconds
+     * @return timeout of the task, to cancel it
+     */
+    public Timeout schedule(Runnable task, long deadlineMillis) {
+        Objects.requireNonNull(task, "The task cannot be null");
+        synchronized (lock) {
+            //Round the deadline up so that the task never runs early
+            long deadlineTick = Math.max(-Math.floorDiv(-deadlineMillis, tickMillis), lastTick + 1);
+            Timeout timeout = new Timeout(task, deadlineTick);
+            link(timeout);
+            size++;
+            //Only wake the thread of the wheel up if it has to expire the task earlier
+            boolean earlier = deadlineTick < nextDeadlineTick;
+            if (earlier) nextDeadlineTick = deadlineTick;
+            if (ticking && (earlier || ticker == null)) startTicker();
+            return timeout;
+        }
+    }
+
+    /**
+     * Schedules a task after a delay, a negative delay being run at the next tick
+     * @param task task to run
+     * @param delayMillis delay from now in milliseconds
+     * @return timeout of the task, to cancel it
+     */
+    public Timeout scheduleAfter(Runnable task, long delayMillis) {
+        return schedule(task, clock.getAsLong() + delayMillis);
+    }
+
+    /**
+     * @return number of pending tasks
+     */
+    public int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    /**
+     * @return time at which the thread of the wheel wakes up next on the clock in milliseconds,
+     * Long.MAX_VALUE if no task is pending
+     */
+    long getNextWakeUpMillis() {
+        synchronized (lock) {
+            return nextDeadlineTick == Long.MAX_VALUE ? Long.MAX_VALUE : nextDeadlineTick * tickMillis;
+        }
+    }
+
+    /**
+     * Expires the tasks whose deadline has passed on the clock and runs them on the executor
+     */
+    void advance() {
+        List<Runnable> expired = new ArrayList<>();
+        synchronized (lock) {
+            long nowTick = clock.getAsLong() / tickMillis;
+            if (nowTick <= lastTick) return;
+            //Go through the buckets of the elapsed ticks, all of them after a pause longer than a turn
+            long firstTick = Math.max(lastTick + 1, nowTick - buckets.length + 1);
+            for (long tick = firstTick; tick <= nowTick; tick++) {
+                expireBucket((int) (tick & mask), nowTick, expired);
+            }
+            lastTick = nowTick;
+            nextDeadlineTick = findNextDeadlineTick();
+        }
+        for (Runnable task : expired) {
+            try {
+                executor.execute(task);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Expired task could not be run", e);
+            }
+        }
+    }
+
+    /**
+     * Removes the expired timeouts of a bucket, the others waiting for their round
+     * @param index index of the bucket
+     * @param nowTick current tick
+     * @param expired list to which the expired tasks are added
+     */
+    private void expireBucket(int index, long nowTick, List<Runnable> expired) {
+        Timeout timeout = buckets[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= nowTick) {
+                unlink(timeout);
+                size--;
+                timeout.state = Timeout.EXPIRED;
+                expired.add(timeout.task);
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Finds the earliest deadline of the pending tasks by going through all the buckets
+     * @return earliest deadline tick, Long.MAX_VALUE if no task is pending
+     */
+    private long findNextDeadlineTick() {
+        long next = Long.MAX_VALUE;
+        if (size == 0) return next;
+        for (Timeout head : buckets) {
+            for (Timeout timeout = head; timeout != null; timeout = timeout.next) {
+                next = Math.min(next, timeout.deadlineTick);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Starts the thread of the wheel if needed, or wakes it up for the new task
+     */
+    private void startTicker() {
+        if (ticker != null) {
+            lock.notifyAll();
+            return;
+        }
+        ticker = new Thread(this::tick, TAG);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Loop of the thread of the wheel, advancing the wheel at the earliest deadline while tasks
+     * are pending
+     */
+    private void tick() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    //Do not tick while there is nothing to expire
+                    while (size == 0) lock.wait();
+                    long waitMillis = nextDeadlineTick * tickMillis - clock.getAsLong();
+                    if (waitMillis > 0) {
+                        lock.wait(waitMillis);
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    ticker = null;
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+
+    /**
+     * Adds a timeout at the head of the list of its bucket
+     * @param timeout timeout
+     */
+    private void link(Timeout timeout) {
+        int index = (int) (timeout.deadlineTick & mask);
+        Timeout head = buckets[index];
+        timeout.next = head;
+        if (head != null) head.prev = timeout;
+        buckets[index] = timeout;
+    }
+
+    /**
+     * Removes a timeout from the list of its bucket
+     * @param timeout timeout
+     */
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[(int) (timeout.deadlineTick & mask)] = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * Pending task of the wheel
+     */
+    public final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineTick;
+        //Guarded by the lock of the wheel
+        private int state = PENDING;
+        private Timeout prev;
+        private Timeout next;
+
+        /**
+         * Constructor of the timeout
+         * @param task task to run
+         * @param deadlineTick tick at which the task expires
+         */
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Cancels the task if it has not expired yet
+         * @return true if the task was cancelled
+         */
+        public boolean cancel() {
+            synchronized (lock) {
+                if (state != PENDING) return false;
+                unlink(this);
+                size--;
+                if (size == 0) nextDeadlineTick = Long.MAX_VALUE;
+                state = CANCELLED;
+                return true;
+            }
+        }
+
+        /**
+         * @return true if the task was cancelled
+         */
+        public boolean isCancelled() {
+            synchronized (lock) {
+                return state == CANCELLED;
+            }
+        }
+
+        /**
+         * @return true if the task expired and was handed to the executor
+         */
+        public boolean isExpired() {
+            synchronized (lock) {
+                return state == EXPIRED;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package ch.epfl.sdp.peakar.utils;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind component used to persist files without blocking the calling thread.
+ *
+ * Every write is serialized directly into a buffered stream on a single background I/O thread.
+ * The content is first written to a temporary file next to the target, synced to disk and then
+ * renamed over the target, so a crash in the middle of a write never leaves a truncated file behind:
+ * readers either see the previous version or the new one.
+ *
+ * If several writes for the same file are queued before the I/O thread gets to them, only the latest
+ * one is performed. Tests (and readers that need the latest content) can wait for the pending writes
+ * with {@link #await(File)} or {@link #flush()}.
+ *
+ * This class is a singleton.
+ */
+public final class WriteBehindWriter {
+
+    private static final String TAG = "WriteBehindWriter";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static WriteBehindWriter instance;
+
+    private final ExecutorService ioExecutor;
+
+    /*Latest write requested for each target file that has not been committed yet*/
+    private final Map<File, PendingWrite> pendingWrites;
+
+    /**
+     * Serializer used to write the content of a file into a stream
+     */
+    public interface StreamSerializer {
+        /**
+         * Writes the content of the file in the given stream. The stream must not be closed.
+         * @param outputStream buffered stream of the temporary file
+         * @throws IOException if the content could not be written
+         */
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Private constructor: the class is a singleton
+     */
+    private WriteBehindWriter(){
+        pendingWrites = new HashMap<>();
+        ioExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get singleton
+     * @return WriteBehindWriter instance
+     */
+    public static synchronized WriteBehindWriter getInstance(){
+        if(instance == null)
+            instance = new WriteBehindWriter();
+        return instance;
+    }
+
+    /**
+     * Queues the write of a file. If another write of the same file is still pending it is
+     * replaced by this one.
+     * @param target file to write
+     * @param serializer serializer producing the content of the file
+     */
+    public void write(File target, StreamSerializer serializer){
+        PendingWrite pendingWrite = new PendingWrite(serializer);
+        PendingWrite replaced;
+        synchronized (pendingWrites){
+            replaced = pendingWrites.put(target, pendingWrite);
+        }
+        if(replaced != null) replaced.done.countDown();
+        ioExecutor.execute(() -> commit(target, pendingWrite));
+    }
+
+    /**
+     * Cancels the pending write of a file, if any. Used before deleting a file so that a queued
+     * write does not recreate it.
+     * @param target file whose pending write is cancelled
+     */
+    public void cancel(File target){
+        PendingWrite cancelled;
+        synchronized (pendingWrites){
+            cancelled = pendingWrites.remove(target);
+        }
+        if(cancelled != null) cancelled.done.countDown();
+    }
+
+    /**
+     * Checks if a write of the given file is still waiting to be committed
+     * @param target file to check
+     * @return true if a write is pending, false otherwise
+     */
+    public boolean isPending(File target){
+        synchronized (pendingWrites){
+            return pendingWrites.containsKey(target);
+        }
+    }
+
+    /**
+     * Blocks until the pending write of the given file (if any) has been committed
+     * @param target file to wait for
+     */
+    public void await(File target){
+        PendingWrite pendingWrite;
+        synchronized (pendingWrites){
+            pendingWrite = pendingWrites.get(target);
+        }
+        if(pendingWrite == null) return;
+        try {
+            pendingWrite.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Blocks until every write queued before this call has been committed
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if all writes were committed, false if the timeout elapsed
+     */
+    public boolean flush(long timeout, TimeUnit unit){
+        CountDownLatch barrier = new CountDownLatch(1);
+        ioExecutor.execute(barrier::countDown);
+        try {
+            return barrier.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Blocks until every write queued before this call has been committed
+     */
+    public void flush(){
+        flush(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Commits a write on the I/O thread if it is still the latest requested for its file.
+     * The temporary file is only renamed over the target if the write was not cancelled or
+     * replaced in the meantime, so a file deleted during its write is not recreated.
+     * @param target file to write
+     * @param pendingWrite write to commit
+     */
+    private void commit(File target, PendingWrite pendingWrite){
+        synchronized (pendingWrites){
+            //A newer write of the same file was queued or the write was cancelled
+            if(pendingWrites.get(target) != pendingWrite) return;
+        }
+        try {
+            File tempFile = writeTemporary(target, pendingWrite.serializer);
+            synchronized (pendingWrites){
+                if(pendingWrites.get(target) != pendingWrite){
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.delete();
+                    return;
+                }
+                replace(tempFile, target);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "File write failed " + target.getName() + ": " + e.toString());
+        } finally {
+            synchronized (pendingWrites){
+                pendingWrites.remove(target, pendingWrite);
+            }
+            pendingWrite.done.countDown();
+        }
+    }
+
+    /**
+     * Writes the content in a temporary file next to the target and syncs it to disk
+     * @param target file to write
+     * @param serializer serializer producing the content of the file
+     * @return temporary file containing the content
+     * @throws IOException if the file could not be written
+     */
+    static File writeTemporary(File target, StreamSerializer serializer) throws IOException {
+        File tempFile = new File(target.getPath() + TEMP_EXTENSION);
+        try (FileOutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+            OutputStream outputStream = new BufferedOutputStream(fileOutputStream, BUFFER_SIZE);
+            serializer.writeTo(outputStream);
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        return tempFile;
+    }
+
+    /**
+     * Renames the temporary file over the target
+     * @param tempFile completely written temporary file
+     * @param target file to replace
+     * @throws IOException if the file could not be renamed
+     */
+    static void replace(File tempFile, File target) throws IOException {
+        if(!tempFile.renameTo(target)){
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile.getName() + " to " + target.getName());
+        }
+    }
+
+    /**
+     * Write waiting to be committed by the I/O thread
+     */
+    private static final class PendingWrite {
+        private final StreamSerializer serializer;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private PendingWrite(StreamSerializer serializer){
+            this.serializer = serializer;
+        }
+    }
+}
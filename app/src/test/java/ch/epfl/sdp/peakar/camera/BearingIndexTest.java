@@ -0,0 +1,115 @@
+package ch.epfl.sdp.peakar.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ch.epfl.sdp.peakar.points.POIPoint;
+import ch.epfl.sdp.peakar.points.Point;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BearingIndexTest {
+
+    private static final Point USER = new Point(46.5, 7.0, 1500);
+
+    /**
+     * Generates POIPoints around the user with their horizontal bearing, every third one being visible
+     */
+    private static Map<POIPoint, Boolean> generatePOIPoints(int count, long seed) {
+        Random random = new Random(seed);
+        Map<POIPoint, Boolean> labeledPOIPoints = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            POIPoint poiPoint = new POIPoint("Peak " + i, USER.getLatitude() + random.nextDouble() - 0.5,
+                    USER.getLongitude() + random.nextDouble() - 0.5, 2000 + random.nextInt(2000), null);
+            poiPoint.setOsmId(i + 1);
+            poiPoint.setHorizontalBearing(USER);
+            labeledPOIPoints.put(poiPoint, i % 3 == 0);
+        }
+        return labeledPOIPoints;
+    }
+
+    /**
+     * Visits the POIPoints of the degrees of a field of view like CameraUiView.drawCanvas
+     */
+    private static List<String> visitFieldOfView(BearingIndex index, float heading, float fieldOfView) {
+        List<String> visited = new ArrayList<>();
+        for (int i = (int) Math.floor(heading - fieldOfView / 2); i <= Math.ceil(heading + fieldOfView / 2); i++) {
+            index.visit(i, (poiPoint, isVisible, degree) -> visited.add(poiPoint.getName() + isVisible + degree));
+        }
+        return visited;
+    }
+
+    /**
+     * Visits the POIPoints of the degrees of a field of view by filtering all the POIPoints for
+     * every degree, like CameraUiView did before the index
+     */
+    private static List<String> filterFieldOfView(Map<POIPoint, Boolean> labeledPOIPoints, float heading, float fieldOfView) {
+        List<String> visited = new ArrayList<>();
+        for (int i = (int) Math.floor(heading - fieldOfView / 2); i <= Math.ceil(heading + fieldOfView / 2); i++) {
+            int degree = i;
+            labeledPOIPoints.entrySet().stream()
+                    .filter(p -> (int) p.getKey().getHorizontalBearing() == (degree + 360) % 360)
+                    .forEach(p -> visited.add(p.getKey().getName() + p.getValue() + degree));
+        }
+        return visited;
+    }
+
+    // Tests that the index visits the same POIPoints as the filter, including around north
+    @Test
+    public void sameAsFilterTest() {
+        Map<POIPoint, Boolean> labeledPOIPoints = generatePOIPoints(500, 1);
+        BearingIndex index = new BearingIndex(labeledPOIPoints);
+        assertEquals(500, index.size());
+        for (float heading : new float[]{0, 10.5f, 90, 179.9f, 270, 355.2f, 359.99f}) {
+            assertEquals(filterFieldOfView(labeledPOIPoints, heading, 66), visitFieldOfView(index, heading, 66));
+        }
+    }
+
+    // Tests that degrees outside of [0, 360) visit the POIPoints of the same bearing
+    @Test
+    public void wrapAroundTest() {
+        Map<POIPoint, Boolean> labeledPOIPoints = generatePOIPoints(200, 2);
+        BearingIndex index = new BearingIndex(labeledPOIPoints);
+        int[] counts = new int[3];
+        index.visit(355, (poiPoint, isVisible, degree) -> counts[0]++);
+        index.visit(-5, (poiPoint, isVisible, degree) -> {
+            counts[1]++;
+            assertEquals(-5, degree);
+            assertEquals(355, (int) poiPoint.getHorizontalBearing());
+        });
+        index.visit(715, (poiPoint, isVisible, degree) -> counts[2]++);
+        assertEquals(counts[0], counts[1]);
+        assertEquals(counts[0], counts[2]);
+    }
+
+    // Tests that an empty or missing map gives an empty index
+    @Test
+    public void emptyTest() {
+        assertEquals(0, new BearingIndex(null).size());
+        assertEquals(0, new BearingIndex(new HashMap<>()).size());
+        assertTrue(visitFieldOfView(new BearingIndex(null), 0, 360).isEmpty());
+    }
+
+    // Tests that the frames of a turn with 2000 POIPoints visit the same POIPoints as the filter, and
+    // that each POIPoint is visited once by the degrees of a full turn
+    @Test
+    public void frameTest() {
+        Map<POIPoint, Boolean> labeledPOIPoints = generatePOIPoints(2000, 3);
+        BearingIndex index = new BearingIndex(labeledPOIPoints);
+        for (int frame = 0; frame < 200; frame++) {
+            float heading = frame * 1.7f % 360;
+            assertEquals(filterFieldOfView(labeledPOIPoints, heading, 66), visitFieldOfView(index, heading, 66));
+        }
+
+        Map<POIPoint, Integer> visits = new HashMap<>();
+        for (int i = 0; i < 360; i++) index.visit(i, (poiPoint, isVisible, degree) -> visits.merge(poiPoint, 1, Integer::sum));
+        assertEquals(labeledPOIPoints.keySet(), visits.keySet());
+        for (int count : visits.values()) assertEquals(1, count);
+    }
+}
@@ -0,0 +1,35 @@
+package ch.epfl.sdp.peakar.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CameraUiViewTest {
+
+    //1080 pixels for a field of view of 60 degrees
+    private static final float PIX_DEG = 18;
+
+    // Tests that a heading moving the overlay by less than a pixel is not rendered
+    @Test
+    public void subPixelHeadingTest() {
+        assertFalse(CameraUiView.movesOverlay(100, 90, 100, 90, PIX_DEG, PIX_DEG));
+        assertFalse(CameraUiView.movesOverlay(100, 90, 100.05f, 90.05f, PIX_DEG, PIX_DEG));
+        assertTrue(CameraUiView.movesOverlay(100, 90, 100.06f, 90, PIX_DEG, PIX_DEG));
+        assertTrue(CameraUiView.movesOverlay(100, 90, 100, 89.9f, PIX_DEG, PIX_DEG));
+    }
+
+    // Tests that the horizontal heading is compared by the shortest angle, around north
+    @Test
+    public void aroundNorthTest() {
+        assertFalse(CameraUiView.movesOverlay(359.99f, 90, 0.02f, 90, PIX_DEG, PIX_DEG));
+        assertTrue(CameraUiView.movesOverlay(359.9f, 90, 0.1f, 90, PIX_DEG, PIX_DEG));
+        assertFalse(CameraUiView.movesOverlay(-0.01f, 90, 720.02f, 90, PIX_DEG, PIX_DEG));
+    }
+
+    // Tests that nothing is rendered again before the size and the range of the view are known
+    @Test
+    public void unknownRangeTest() {
+        assertFalse(CameraUiView.movesOverlay(0, 90, 180, 0, 0, 0));
+    }
+}
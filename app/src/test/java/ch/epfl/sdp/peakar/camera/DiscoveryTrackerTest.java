@@ -0,0 +1,146 @@
+package ch.epfl.sdp.peakar.camera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ch.epfl.sdp.peakar.points.POIPoint;
+import ch.epfl.sdp.peakar.points.Point;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiscoveryTrackerTest {
+
+    private static final Point USER = new Point(46.5, 7.0, 1500);
+
+    /**
+     * Creates a POIPoint at the given bearing from the user
+     */
+    private static POIPoint createPOIPoint(String name, long osmId, double bearing) {
+        double latitude = USER.getLatitude() + 0.1 * Math.cos(Math.toRadians(bearing));
+        double longitude = USER.getLongitude() + 0.1 * Math.sin(Math.toRadians(bearing)) / Math.cos(Math.toRadians(USER.getLatitude()));
+        POIPoint poiPoint = new POIPoint(name, latitude, longitude, 3000, null);
+        poiPoint.setOsmId(osmId);
+        poiPoint.setHorizontalBearing(USER);
+        return poiPoint;
+    }
+
+    /**
+     * Creates a tracker of the POIPoints collecting the discovered batches
+     */
+    private static DiscoveryTracker createTracker(Map<POIPoint, Boolean> labeledPOIPoints, List<List<POIPoint>> batches) {
+        DiscoveryTracker tracker = new DiscoveryTracker();
+        tracker.setListener(batches::add);
+        tracker.onPOIs(new BearingIndex(labeledPOIPoints));
+        return tracker;
+    }
+
+    // Tests that a visible POIPoint is discovered once the heading stayed around it for the dwell time
+    @Test
+    public void dwellTimeTest() {
+        POIPoint poiPoint = createPOIPoint("Peak", 1, 90.5);
+        POIPoint far = createPOIPoint("Far", 2, 96.5);
+        Map<POIPoint, Boolean> labeledPOIPoints = new HashMap<>();
+        labeledPOIPoints.put(poiPoint, true);
+        labeledPOIPoints.put(far, true);
+        List<List<POIPoint>> batches = new ArrayList<>();
+        DiscoveryTracker tracker = createTracker(labeledPOIPoints, batches);
+
+        float bearing = (float) poiPoint.getHorizontalBearing();
+        tracker.onHeading(bearing - 0.6f, 0);
+        tracker.onHeading(bearing + 0.8f, DiscoveryTracker.DWELL_TIME_MS - 1);
+        assertTrue(batches.isEmpty());
+
+        //Moving further than the tolerance restarts the dwell time
+        tracker.onHeading(bearing + 5, DiscoveryTracker.DWELL_TIME_MS);
+        tracker.onHeading(bearing + 0.5f, DiscoveryTracker.DWELL_TIME_MS + 10);
+        tracker.onHeading(bearing - 0.5f, 2 * DiscoveryTracker.DWELL_TIME_MS);
+        assertTrue(batches.isEmpty());
+
+        //The jitter across the degrees of the POIPoint does not restart it
+        tracker.onHeading(bearing + 0.7f, 2 * DiscoveryTracker.DWELL_TIME_MS + 10);
+        assertEquals(1, batches.size());
+        assertEquals(1, batches.get(0).size());
+        assertEquals(poiPoint, batches.get(0).get(0));
+        assertNotNull(poiPoint.getDiscoveredDate());
+        tracker.shutdown();
+    }
+
+    // Tests the angle between two headings, around north
+    @Test
+    public void angleBetweenTest() {
+        assertEquals(2, DiscoveryTracker.angleBetween(359, 1), 1e-4);
+        assertEquals(2, DiscoveryTracker.angleBetween(1, -1), 1e-4);
+        assertEquals(180, DiscoveryTracker.angleBetween(90, 270), 1e-4);
+        assertEquals(0.5, DiscoveryTracker.angleBetween(720.5f, 0), 1e-4);
+    }
+
+    // Tests that POIPoints out of the line of sight are not discovered and that a POIPoint is discovered once
+    @Test
+    public void discoveredOnceTest() {
+        POIPoint visible = createPOIPoint("Visible", 1, 200.5);
+        POIPoint hidden = createPOIPoint("Hidden", 2, 200.5);
+        POIPoint noOsmId = createPOIPoint("No id", 0, 200.5);
+        Map<POIPoint, Boolean> labeledPOIPoints = new HashMap<>();
+        labeledPOIPoints.put(visible, true);
+        labeledPOIPoints.put(hidden, false);
+        labeledPOIPoints.put(noOsmId, true);
+        List<List<POIPoint>> batches = new ArrayList<>();
+        DiscoveryTracker tracker = createTracker(labeledPOIPoints, batches);
+
+        float heading = (float) visible.getHorizontalBearing();
+        for (long time = 0; time <= 10 * DiscoveryTracker.DWELL_TIME_MS; time += 20) tracker.onHeading(heading, time);
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertTrue(batches.get(0).contains(visible));
+        assertTrue(batches.get(0).contains(noOsmId));
+
+        //A new snapshot of the same POIPoints does not discover them again
+        tracker.onPOIs(new BearingIndex(labeledPOIPoints));
+        for (long time = 0; time <= 2 * DiscoveryTracker.DWELL_TIME_MS; time += 20) tracker.onHeading(heading, time);
+        assertEquals(1, batches.size());
+        tracker.shutdown();
+    }
+
+    // Tests the stable ids of the POIPoints
+    @Test
+    public void discoveryIdTest() {
+        assertEquals("osm:42", DiscoveryTracker.getDiscoveryId(createPOIPoint("Peak", 42, 10)));
+        assertEquals("name:Peak", DiscoveryTracker.getDiscoveryId(createPOIPoint("Peak", 0, 10)));
+    }
+
+    // Tests that the tracker discovers the POIPoints from the snapshots set on its thread
+    @Test
+    public void backgroundThreadTest() throws InterruptedException {
+        POIPoint poiPoint = createPOIPoint("Peak", 7, 300.5);
+        Map<POIPoint, Boolean> labeledPOIPoints = new HashMap<>();
+        labeledPOIPoints.put(poiPoint, true);
+
+        DiscoveryTracker tracker = new DiscoveryTracker();
+        CountDownLatch discovered = new CountDownLatch(1);
+        List<POIPoint> result = new ArrayList<>();
+        List<Thread> listenerThreads = new ArrayList<>();
+        tracker.setListener(poiPoints -> {
+            listenerThreads.add(Thread.currentThread());
+            result.addAll(poiPoints);
+            discovered.countDown();
+        });
+        tracker.setPOIs(new BearingIndex(labeledPOIPoints));
+        long end = System.currentTimeMillis() + 5 * DiscoveryTracker.DWELL_TIME_MS;
+        while (discovered.getCount() > 0 && System.currentTimeMillis() < end) {
+            tracker.setHeading((float) poiPoint.getHorizontalBearing());
+            discovered.await(10, TimeUnit.MILLISECONDS);
+        }
+        tracker.shutdown();
+        assertEquals(1, result.size());
+        assertEquals(poiPoint, result.get(0));
+        assertTrue(listenerThreads.get(0) != Thread.currentThread());
+    }
+}
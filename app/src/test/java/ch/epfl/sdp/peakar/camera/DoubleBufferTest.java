@@ -0,0 +1,78 @@
+package ch.epfl.sdp.peakar.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DoubleBufferTest {
+
+    // Tests that the frames are rendered alternately in the two buffers and drawn in order
+    @Test
+    public void swapTest() {
+        DoubleBuffer<String> buffer = new DoubleBuffer<>();
+        assertNull(buffer.acquireFront());
+
+        int first = buffer.acquireBack();
+        assertTrue(first >= 0);
+        buffer.publish(first, "first", 10);
+        assertEquals("first", buffer.acquireFront());
+        assertEquals(10, buffer.getFrontRenderTime());
+
+        int second = buffer.acquireBack();
+        assertNotEquals(first, second);
+        buffer.publish(second, "second", 20);
+        assertEquals("second", buffer.acquireFront());
+        assertEquals(20, buffer.getFrontRenderTime());
+
+        //The buffer of the first frame is reused
+        assertEquals(first, buffer.acquireBack());
+        assertEquals("first", buffer.get(first));
+    }
+
+    // Tests that a frame drawn again is not reported as new
+    @Test
+    public void redrawTest() {
+        DoubleBuffer<String> buffer = new DoubleBuffer<>();
+        buffer.publish(buffer.acquireBack(), "frame", 10);
+        assertEquals("frame", buffer.acquireFront());
+        assertEquals("frame", buffer.acquireFront());
+        assertEquals(-1, buffer.getFrontRenderTime());
+    }
+
+    // Tests that the latest frame is never overwritten before being drawn
+    @Test
+    public void renderAfterDrawTest() {
+        DoubleBuffer<String> buffer = new DoubleBuffer<>();
+        int first = buffer.acquireBack();
+        buffer.publish(first, "first", 10);
+        buffer.acquireFront();
+        buffer.publish(buffer.acquireBack(), "second", 20);
+
+        //Neither the latest nor the drawn frame is free
+        assertEquals(-1, buffer.acquireBack());
+        assertEquals("first", buffer.get(first));
+
+        //The rendering is due once the latest frame is drawn
+        assertEquals("second", buffer.acquireFront());
+        assertTrue(buffer.isRenderDue());
+        assertEquals(first, buffer.acquireBack());
+        buffer.acquireFront();
+        assertFalse(buffer.isRenderDue());
+    }
+
+    // Tests that the frames are dropped by clear
+    @Test
+    public void clearTest() {
+        DoubleBuffer<String> buffer = new DoubleBuffer<>();
+        int index = buffer.acquireBack();
+        buffer.publish(index, "frame", 10);
+        buffer.clear();
+        assertNull(buffer.acquireFront());
+        assertNull(buffer.get(index));
+        assertEquals(index, buffer.acquireBack());
+    }
+}
@@ -0,0 +1,76 @@
+package ch.epfl.sdp.peakar.camera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HeadingPredictorTest {
+
+    private static final long EVENT_INTERVAL_NS = 20_000_000L;
+    private static final long LATENCY_NS = 50_000_000L;
+
+    // Tests that the heading of a constant pan is extrapolated to the display time
+    @Test
+    public void constantPanTest() {
+        HeadingPredictor predictor = new HeadingPredictor();
+        float speed = 60;
+        long timestamp = 0;
+        for (int i = 0; i <= 50; i++, timestamp += EVENT_INTERVAL_NS) {
+            predictor.update(100 + speed * timestamp / 1e9f, 90, timestamp);
+        }
+        long last = timestamp - EVENT_INTERVAL_NS;
+        float heading = 100 + speed * last / 1e9f;
+        float expected = heading + speed * LATENCY_NS / 1e9f;
+        //Without prediction the labels lag by speed * latency
+        float predicted = predictor.predictHorizontal(last + LATENCY_NS);
+        assertEquals(expected, predicted, (HeadingPredictor.MIN_SPEED + 1) * LATENCY_NS / 1e9f);
+        assertTrue(Math.abs(expected - predicted) < Math.abs(expected - heading) / 4);
+        assertEquals(90, predictor.predictVertical(last + LATENCY_NS), 0.01);
+    }
+
+    // Tests that the jitter at rest is not extrapolated
+    @Test
+    public void restTest() {
+        HeadingPredictor predictor = new HeadingPredictor();
+        Random random = new Random(1);
+        long timestamp = 0;
+        for (int i = 0; i < 200; i++, timestamp += EVENT_INTERVAL_NS) {
+            float heading = 200 + (float) random.nextGaussian() * 0.05f;
+            predictor.update(heading, 80, timestamp);
+            assertEquals(heading, predictor.predictHorizontal(timestamp + LATENCY_NS), 1e-3);
+        }
+    }
+
+    // Tests that the prediction wraps around north and is limited in time
+    @Test
+    public void wrapAroundAndHorizonTest() {
+        HeadingPredictor predictor = new HeadingPredictor();
+        long timestamp = 0;
+        float heading = 350;
+        for (int i = 0; i < 50; i++, timestamp += EVENT_INTERVAL_NS) {
+            predictor.update(heading, 90, timestamp);
+            heading = (heading + 2) % 360;
+        }
+        long last = timestamp - EVENT_INTERVAL_NS;
+        float lastHeading = (heading + 358) % 360;
+        float predicted = predictor.predictHorizontal(last + LATENCY_NS);
+        assertTrue(predicted >= 0 && predicted < 360);
+        assertEquals(lastHeading + 4, predicted, 1);
+        assertEquals(predictor.predictHorizontal(last + HeadingPredictor.MAX_PREDICTION_NS),
+                predictor.predictHorizontal(last + 10 * HeadingPredictor.MAX_PREDICTION_NS), 0);
+    }
+
+    // Tests that the speed is estimated again after a gap in the events
+    @Test
+    public void gapTest() {
+        HeadingPredictor predictor = new HeadingPredictor();
+        long timestamp = 0;
+        for (int i = 0; i < 50; i++, timestamp += EVENT_INTERVAL_NS) predictor.update(i, 90, timestamp);
+        timestamp += 1_000_000_000L;
+        predictor.update(10, 90, timestamp);
+        assertEquals(10, predictor.predictHorizontal(timestamp + LATENCY_NS), 0);
+    }
+}
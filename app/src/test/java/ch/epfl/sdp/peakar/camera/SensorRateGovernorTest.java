@@ -0,0 +1,59 @@
+package ch.epfl.sdp.peakar.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SensorRateGovernorTest {
+
+    private static final long EVENT_INTERVAL_NS = 20_000_000L;
+
+    // Tests that the rate is lowered after the device stayed still and restored by the first rotation
+    @Test
+    public void stationaryTest() {
+        SensorRateGovernor governor = new SensorRateGovernor();
+        assertEquals(SensorRateGovernor.MOTION_PERIOD_US, governor.getSamplingPeriodUs());
+
+        long timestamp = 0;
+        int changes = 0;
+        for (; timestamp < SensorRateGovernor.STATIONARY_TIME_NS; timestamp += EVENT_INTERVAL_NS) {
+            if (governor.onAngularSpeed(1f, timestamp)) changes++;
+        }
+        assertEquals(0, changes);
+        assertEquals(SensorRateGovernor.MOTION_PERIOD_US, governor.getSamplingPeriodUs());
+
+        assertTrue(governor.onAngularSpeed(1f, timestamp));
+        assertEquals(SensorRateGovernor.STATIONARY_PERIOD_US, governor.getSamplingPeriodUs());
+        assertFalse(governor.onAngularSpeed(2f, timestamp + 1_000_000_000L));
+
+        assertTrue(governor.onAngularSpeed(20f, timestamp + 1_100_000_000L));
+        assertEquals(SensorRateGovernor.MOTION_PERIOD_US, governor.getSamplingPeriodUs());
+    }
+
+    // Tests that rotating the device restarts the time for it to be stationary
+    @Test
+    public void motionRestartsStillTimeTest() {
+        SensorRateGovernor governor = new SensorRateGovernor();
+        long half = SensorRateGovernor.STATIONARY_TIME_NS / 2;
+        governor.onAngularSpeed(0, 0);
+        governor.onAngularSpeed(0, half);
+        governor.onAngularSpeed(10, half + EVENT_INTERVAL_NS);
+        governor.onAngularSpeed(0, half + 2 * EVENT_INTERVAL_NS);
+        assertFalse(governor.onAngularSpeed(0, SensorRateGovernor.STATIONARY_TIME_NS + EVENT_INTERVAL_NS));
+        assertEquals(SensorRateGovernor.MOTION_PERIOD_US, governor.getSamplingPeriodUs());
+    }
+
+    // Tests the rate while the camera-preview is hidden
+    @Test
+    public void occludedTest() {
+        SensorRateGovernor governor = new SensorRateGovernor();
+        assertTrue(governor.setOccluded(true));
+        assertEquals(SensorRateGovernor.OCCLUDED_PERIOD_US, governor.getSamplingPeriodUs());
+        assertFalse(governor.onAngularSpeed(50, 0));
+        assertFalse(governor.setOccluded(true));
+        assertTrue(governor.setOccluded(false));
+        assertEquals(SensorRateGovernor.MOTION_PERIOD_US, governor.getSamplingPeriodUs());
+    }
+}
@@ -0,0 +1,189 @@
+package ch.epfl.sdp.peakar.database;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.ValueEventListener;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DatabaseReferenceTest {
+
+    /**
+     * Snapshot holding a single value
+     */
+    private static final class FakeSnapshot implements DatabaseSnapshot {
+        private final String key;
+        private final Object value;
+
+        FakeSnapshot(String key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public DatabaseSnapshot child(String path) {
+            return new FakeSnapshot(path, null);
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public <T> T getValue(@NonNull Class<T> valueType) {
+            return valueType.cast(value);
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean exists() {
+            return value != null;
+        }
+
+        @Override
+        public Iterable<DatabaseSnapshot> getChildren() {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Reference whose reads are answered by hand, to check which ones are pending together
+     */
+    private static final class FakeReference implements DatabaseReference {
+        private final String path;
+        private final Map<String, CompletableFuture<DatabaseSnapshot>> pending;
+
+        FakeReference(String path, Map<String, CompletableFuture<DatabaseSnapshot>> pending) {
+            this.path = path;
+            this.pending = pending;
+        }
+
+        @Override
+        public DatabaseReference child(String pathString) {
+            return new FakeReference(path + "/" + pathString, pending);
+        }
+
+        @Override
+        public DatabaseSnapshot get() {
+            return getAsync().join();
+        }
+
+        @Override
+        public CompletableFuture<DatabaseSnapshot> getAsync() {
+            CompletableFuture<DatabaseSnapshot> future = new CompletableFuture<>();
+            pending.put(path, future);
+            return future;
+        }
+
+        @Override
+        public String getKey() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public CompletableFuture<Void> setValueAsync(Object value) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void setValue(Object value) {}
+
+        @Override
+        public DatabaseReference push() {
+            return child("pushed");
+        }
+
+        @Override
+        public CompletableFuture<Void> removeValueAsync() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void removeValue() {}
+
+        @Override
+        public DatabaseQuery orderByChild(String path) {
+            return null;
+        }
+
+        @Override
+        public ValueEventListener addValueEventListener(ValueEventListener valueEventListener) {
+            return valueEventListener;
+        }
+
+        @Override
+        public ChildEventListener addChildEventListener(ChildEventListener childEventListener) {
+            return childEventListener;
+        }
+
+        @Override
+        public void removeEventListener(ValueEventListener valueEventListener) {}
+    }
+
+    /* Test that getAll sends all the reads before any answer and keeps the order of the paths */
+    @Test
+    public void getAllTest() {
+        Map<String, CompletableFuture<DatabaseSnapshot>> pending = new LinkedHashMap<>();
+        DatabaseReference user = new FakeReference("users/u1", pending);
+
+        CompletableFuture<List<DatabaseSnapshot>> snapshots = user.getAll("score", "username", "photo");
+        assertEquals(Arrays.asList("users/u1/score", "users/u1/username", "users/u1/photo"), new ArrayList<>(pending.keySet()));
+
+        // Answer in another order than the requests
+        pending.get("users/u1/photo").complete(new FakeSnapshot("photo", "uri"));
+        pending.get("users/u1/score").complete(new FakeSnapshot("score", 42));
+        assertFalse(snapshots.isDone());
+        pending.get("users/u1/username").complete(new FakeSnapshot("username", "alice"));
+
+        assertTrue(snapshots.isDone());
+        List<DatabaseSnapshot> results = snapshots.join();
+        assertEquals(42, (int) results.get(0).getValue(Integer.class));
+        assertEquals("alice", results.get(1).getValue(String.class));
+        assertEquals("uri", results.get(2).getValue(String.class));
+    }
+
+    /* Test that getAll fails if one of its reads fails */
+    @Test
+    public void getAllFailureTest() {
+        Map<String, CompletableFuture<DatabaseSnapshot>> pending = new LinkedHashMap<>();
+        CompletableFuture<List<DatabaseSnapshot>> snapshots = new FakeReference("root", pending).getAll("a", "b");
+
+        pending.get("root/a").completeExceptionally(new IllegalStateException("Permission denied"));
+        pending.get("root/b").complete(new FakeSnapshot("b", 1));
+        try {
+            snapshots.join();
+            fail("The failure of a read should fail getAll");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /* Test that combining no future gives an empty list at once */
+    @Test
+    public void allEmptyTest() {
+        CompletableFuture<List<DatabaseSnapshot>> snapshots = DatabaseReference.all(new ArrayList<>());
+        assertTrue(snapshots.isDone());
+        assertTrue(snapshots.join().isEmpty());
+        assertTrue(new FakeReference("root", new LinkedHashMap<>()).getAll().join().isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package ch.epfl.sdp.peakar.points;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedElevationGridTest {
+
+    /**
+     * Generates a mountainous terrain: a few overlapping ridges and some noise, like SRTMGL3 data
+     * in the Alps
+     */
+    private static int[][] generateTerrain(int nRow, int nCol, long seed) {
+        Random random = new Random(seed);
+        int[][] terrain = new int[nRow][nCol];
+        for (int row = 0; row < nRow; row++) {
+            for (int col = 0; col < nCol; col++) {
+                double elevation = 2000
+                        + 1200 * Math.sin(row / 40.0) * Math.cos(col / 55.0)
+                        + 600 * Math.sin((row + col) / 17.0)
+                        + 150 * Math.sin(col / 6.0);
+                terrain[row][col] = (int) elevation + random.nextInt(21) - 10;
+            }
+        }
+        return terrain;
+    }
+
+    private static void assertSameGrid(int[][] expected, ElevationGrid grid) {
+        assertEquals(expected.length, grid.getRowCount());
+        assertEquals(expected[0].length, grid.getColCount());
+        for (int row = 0; row < expected.length; row++) {
+            for (int col = 0; col < expected[0].length; col++) {
+                assertEquals(expected[row][col], grid.get(row, col));
+            }
+        }
+    }
+
+    // Tests that every cell is read back, including partial blocks on the edges
+    @Test
+    public void roundTripTest() {
+        int[][] terrain = generateTerrain(150, 201, 1);
+        CompressedElevationGrid grid = CompressedElevationGrid.compress(terrain);
+        assertSameGrid(terrain, grid);
+        int[][] expanded = grid.toArray();
+        for (int row = 0; row < terrain.length; row++) assertArrayEquals(terrain[row], expanded[row]);
+    }
+
+    // Tests random access in any order, which evicts the cached blocks
+    @Test
+    public void randomAccessTest() {
+        int[][] terrain = generateTerrain(300, 300, 2);
+        CompressedElevationGrid grid = CompressedElevationGrid.compress(terrain);
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            int row = random.nextInt(300);
+            int col = random.nextInt(300);
+            assertEquals(terrain[row][col], grid.get(row, col));
+        }
+    }
+
+    // Tests more blocks than ways cycling in the same set of the cache, the last one being narrower
+    @Test
+    public void setConflictTest() {
+        int blockSize = CompressedElevationGrid.BLOCK_SIZE;
+        int blocks = CompressedElevationGrid.CACHE_SETS * CompressedElevationGrid.CACHE_WAYS + 1;
+        int[][] terrain = generateTerrain(blockSize, (blocks - 1) * blockSize + 10, 4);
+        CompressedElevationGrid grid = CompressedElevationGrid.compress(terrain);
+        for (int round = 0; round < 10; round++) {
+            for (int block = round % 2; block < blocks; block += CompressedElevationGrid.CACHE_SETS) {
+                int col = Math.min(block * blockSize + round, terrain[0].length - 1);
+                assertEquals(terrain[round][col], grid.get(round, col));
+                assertEquals(terrain[blockSize - 1][col], grid.get(blockSize - 1, col));
+            }
+        }
+    }
+
+    // Tests extreme values: flat blocks, sea level, negative elevations and int bounds
+    @Test
+    public void extremeValuesTest() {
+        int[][] terrain = new int[70][130];
+        for (int row = 0; row < 70; row++) {
+            for (int col = 0; col < 130; col++) {
+                if (col >= 64) terrain[row][col] = (row + col) % 2 == 0 ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+                else if (row >= 64) terrain[row][col] = -400 - col;
+            }
+        }
+        assertSameGrid(terrain, CompressedElevationGrid.compress(terrain));
+    }
+
+    // Tests that concurrent readers get the right values
+    @Test
+    public void concurrentAccessTest() {
+        int[][] terrain = generateTerrain(500, 500, 4);
+        CompressedElevationGrid grid = CompressedElevationGrid.compress(terrain);
+        assertTrue(IntStream.range(0, 500).parallel().allMatch(row ->
+                IntStream.range(0, 500).allMatch(col -> grid.get(row, col) == terrain[row][col]
+                        && grid.get(499 - row, col) == terrain[499 - row][col])));
+    }
+
+    // Tests that the rows must all have the same length
+    @Test
+    public void nonRectangularGridTest() {
+        int[][] terrain = {new int[10], new int[9]};
+        assertThrows(IllegalArgumentException.class, () -> CompressedElevationGrid.compress(terrain));
+    }
+
+    // Compares the memory used by a 50 km range map (1111 x 1111 cells) with the int[][] map
+    @Test
+    public void compressionRatioTest() {
+        int[][] terrain = generateTerrain(1111, 1111, 5);
+        CompressedElevationGrid grid = CompressedElevationGrid.compress(terrain);
+
+        assertEquals(1111L * 1111 * Integer.BYTES, grid.getUncompressedSize());
+        assertTrue("The compressed grid should be at least 3 times smaller",
+                grid.getCompressedSize() * 3 < grid.getUncompressedSize());
+    }
+}
@@ -0,0 +1,295 @@
+package ch.epfl.sdp.peakar.points;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class GeoTiffDecoderTest {
+
+    /*Georeferencing and size of the sample files in resources/dem*/
+    private static final int N_ROW = 45;
+    private static final int N_COL = 60;
+    private static final double CELL_SIZE = 1 / 1200.0;
+    private static final double XLL_CORNER = 6.5;
+    private static final double YLL_CORNER = 46.1;
+    private static final double DELTA = 1e-9;
+
+    /**
+     * Elevation of the cells of the sample files, with a no data cell and a steep drop
+     */
+    private static int elevation(int row, int col) {
+        if (row == 7 && col == 9) return -32768;
+        return (int) Math.round(1500 + 900 * Math.sin(row / 9.0) * Math.cos(col / 13.0) - (row > 35 && col > 45 ? 2600 : 0));
+    }
+
+    private static DemGrid decodeResource(DemDecoder decoder, String name) throws IOException {
+        try (InputStream inputStream = GeoTiffDecoderTest.class.getResourceAsStream("/dem/" + name)) {
+            assertNotNull("Missing sample " + name, inputStream);
+            return decoder.decode(inputStream);
+        }
+    }
+
+    private static void assertSample(DemGrid grid) {
+        assertEquals(N_ROW, grid.nRow);
+        assertEquals(N_COL, grid.nCol);
+        assertEquals(CELL_SIZE, grid.cellSize, DELTA);
+        assertEquals(XLL_CORNER, grid.xllCorner, DELTA);
+        assertEquals(YLL_CORNER, grid.yllCorner, DELTA);
+        for (int row = 0; row < N_ROW; row++) {
+            for (int col = 0; col < N_COL; col++) {
+                assertEquals("Cell (" + row + ", " + col + ")", elevation(row, col), grid.values[row][col]);
+            }
+        }
+    }
+
+    // Tests the decoding of uncompressed little endian strips
+    @Test
+    public void uncompressedTest() throws IOException {
+        assertSample(decodeResource(new GeoTiffDecoder(), "dem_int16.tif"));
+    }
+
+    // Tests the decoding of LZW compressed big endian strips
+    @Test
+    public void lzwTest() throws IOException {
+        assertSample(decodeResource(new GeoTiffDecoder(), "dem_int16_lzw.tif"));
+    }
+
+    // Tests the decoding of Deflate compressed strips with a horizontal predictor
+    @Test
+    public void deflatePredictorTest() throws IOException {
+        assertSample(decodeResource(new GeoTiffDecoder(), "dem_int16_deflate_predictor.tif"));
+    }
+
+    // Tests the decoding of Deflate compressed tiles overlapping the borders of the grid
+    @Test
+    public void deflateTiledTest() throws IOException {
+        assertSample(decodeResource(new GeoTiffDecoder(), "dem_int16_deflate_tiled.tif"));
+    }
+
+    // Tests the decoding of PackBits compressed strips
+    @Test
+    public void packBitsTest() throws IOException {
+        assertSample(decodeResource(new GeoTiffDecoder(), "dem_int16_packbits.tif"));
+    }
+
+    // Tests that floating point samples are rounded to the nearest meter
+    @Test
+    public void floatTest() throws IOException {
+        assertSample(decodeResource(new GeoTiffDecoder(), "dem_float32_lzw.tif"));
+    }
+
+    // Tests that the AAIGrid fallback decodes the same grid as the GeoTIFF decoder
+    @Test
+    public void aaiGridFallbackTest() throws IOException {
+        DemGrid aaiGrid = decodeResource(new AAIGridDecoder(), "dem.asc");
+        assertSample(aaiGrid);
+        assertArrayEquals(aaiGrid.values, decodeResource(new GeoTiffDecoder(), "dem_int16.tif").values);
+    }
+
+    // Tests that invalid, truncated or unsupported files are rejected
+    @Test
+    public void invalidFileTest() throws IOException {
+        GeoTiffDecoder decoder = new GeoTiffDecoder();
+        byte[] text = "ncols 60\nnrows 45\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(DemFormatException.class, () -> decoder.decode(new ByteArrayInputStream(text)));
+        assertThrows(DemFormatException.class, () -> decoder.decode(new ByteArrayInputStream(new byte[0])));
+
+        byte[] sample;
+        try (InputStream inputStream = GeoTiffDecoderTest.class.getResourceAsStream("/dem/dem_int16_lzw.tif")) {
+            assertNotNull(inputStream);
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) content.write(buffer, 0, read);
+            sample = content.toByteArray();
+        }
+        for (int length : new int[]{8, 100, sample.length / 2, sample.length - 1}) {
+            byte[] truncated = Arrays.copyOf(sample, length);
+            assertThrows(DemFormatException.class, () -> decoder.decode(new ByteArrayInputStream(truncated)));
+        }
+
+        //JPEG compression
+        byte[] jpeg = writeTiff(new int[][]{{1, 2}, {3, 4}}, 7);
+        assertThrows(DemFormatException.class, () -> decoder.decode(new ByteArrayInputStream(jpeg)));
+    }
+
+    // Tests that a failure of the stream is not reported as an invalid file
+    @Test
+    public void readFailureTest() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> new GeoTiffDecoder().decode(failing));
+        assertFalse(e instanceof DemFormatException);
+        e = assertThrows(IOException.class, () -> new AAIGridDecoder().decode(failing));
+        assertFalse(e instanceof DemFormatException);
+    }
+
+    // Compares the size and the decoded grids of a GeoTIFF and an AAIGrid of a 3 arc second grid of 1 degree
+    @Test
+    public void aaiGridComparisonTest() throws IOException {
+        int size = 1201;
+        int[][] values = new int[size][size];
+        StringBuilder aaiGrid = new StringBuilder("ncols 1201\nnrows 1201\nxllcorner 6.0\nyllcorner 46.0\ncellsize 0.000833333333\nNODATA_value -32768\n");
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                values[row][col] = (int) (1500 + 1200 * Math.sin(row / 57.0) * Math.cos(col / 83.0));
+                aaiGrid.append(' ').append(values[row][col]);
+            }
+            aaiGrid.append('\n');
+        }
+        byte[] aaiGridBytes = aaiGrid.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] geoTiffBytes = writeTiff(values, 1);
+
+        DemGrid fromAAIGrid = new AAIGridDecoder().decode(new ByteArrayInputStream(aaiGridBytes));
+        DemGrid fromGeoTiff = new GeoTiffDecoder().decode(new ByteArrayInputStream(geoTiffBytes));
+        assertArrayEquals(fromAAIGrid.values, fromGeoTiff.values);
+        assertTrue("The GeoTIFF should be smaller", geoTiffBytes.length < aaiGridBytes.length);
+    }
+
+    // Tests that strips stored in another order than the image are decoded
+    @Test
+    public void reversedStripsTest() throws IOException {
+        int[][] values = sampleValues();
+        byte[] tiff = writeTiff(values, 1, 7, false, true);
+        assertArrayEquals(values, new GeoTiffDecoder().decode(new ByteArrayInputStream(tiff)).values);
+    }
+
+    // Tests that a directory stored after the samples is decoded
+    @Test
+    public void directoryAfterSamplesTest() throws IOException {
+        int[][] values = sampleValues();
+        for (boolean reversed : new boolean[]{false, true}) {
+            byte[] tiff = writeTiff(values, 1, 7, true, reversed);
+            assertArrayEquals(values, new GeoTiffDecoder().decode(new ByteArrayInputStream(tiff)).values);
+        }
+    }
+
+    // Tests that a stream returning a few bytes at a time is decoded
+    @Test
+    public void partialReadsTest() throws IOException {
+        int[][] values = sampleValues();
+        byte[] tiff = writeTiff(values, 1, 7, false, true);
+        InputStream slow = new ByteArrayInputStream(tiff) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        assertArrayEquals(values, new GeoTiffDecoder().decode(slow).values);
+    }
+
+    // Tests that strips out of the file are rejected for both layouts
+    @Test
+    public void chunkOutOfFileTest() {
+        GeoTiffDecoder decoder = new GeoTiffDecoder();
+        for (boolean directoryAfterSamples : new boolean[]{false, true}) {
+            byte[] tiff = writeTiff(sampleValues(), 1, 7, directoryAfterSamples, false);
+            ByteBuffer buffer = ByteBuffer.wrap(tiff).order(ByteOrder.LITTLE_ENDIAN);
+            //Moves the last strip past the end of the file
+            int stripOffsets = buffer.getInt(buffer.getInt(4) + 2 + 5 * 12 + 8);
+            buffer.putInt(stripOffsets + 4 * 6, tiff.length - 10);
+            assertThrows(DemFormatException.class, () -> decoder.decode(new ByteArrayInputStream(tiff)));
+        }
+    }
+
+    private static int[][] sampleValues() {
+        int[][] values = new int[N_ROW][N_COL];
+        for (int row = 0; row < N_ROW; row++) {
+            for (int col = 0; col < N_COL; col++) values[row][col] = elevation(row, col);
+        }
+        return values;
+    }
+
+    /**
+     * Writes a little endian int16 GeoTIFF with a single strip. Only uncompressed content is valid,
+     * other compression values are written to test their rejection.
+     */
+    private static byte[] writeTiff(int[][] values, int compression) {
+        return writeTiff(values, compression, values.length, false, false);
+    }
+
+    /**
+     * Writes a little endian int16 GeoTIFF in strips, with the directory before or after the
+     * samples and the strips stored in order or in reverse order
+     */
+    private static byte[] writeTiff(int[][] values, int compression, int rowsPerStrip, boolean directoryAfterSamples, boolean reversedStrips) {
+        int nRow = values.length;
+        int nCol = values[0].length;
+        int strips = (nRow + rowsPerStrip - 1) / rowsPerStrip;
+        int entries = 12;
+        int ifdSize = 2 + entries * 12 + 4;
+        int valuesSize = 3 * 8 + 6 * 8 + (strips > 1 ? 2 * 4 * strips : 0);
+        int dataSize = nRow * nCol * 2;
+        int ifdOffset = directoryAfterSamples ? 8 + dataSize : 8;
+        int scaleOffset = ifdOffset + ifdSize;
+        int tiepointOffset = scaleOffset + 3 * 8;
+        int stripOffsetsOffset = tiepointOffset + 6 * 8;
+        int stripByteCountsOffset = stripOffsetsOffset + 4 * strips;
+        int dataOffset = directoryAfterSamples ? 8 : ifdOffset + ifdSize + valuesSize;
+
+        int[] stripOffsets = new int[strips];
+        int[] stripByteCounts = new int[strips];
+        int position = dataOffset;
+        for (int i = 0; i < strips; i++) {
+            int strip = reversedStrips ? strips - 1 - i : i;
+            stripOffsets[strip] = position;
+            stripByteCounts[strip] = Math.min(rowsPerStrip, nRow - strip * rowsPerStrip) * nCol * 2;
+            position += stripByteCounts[strip];
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + ifdSize + valuesSize + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(ifdOffset);
+        buffer.position(ifdOffset);
+        buffer.putShort((short) entries);
+        putEntry(buffer, 256, 3, 1, nCol);
+        putEntry(buffer, 257, 3, 1, nRow);
+        putEntry(buffer, 258, 3, 1, 16);
+        putEntry(buffer, 259, 3, 1, compression);
+        putEntry(buffer, 262, 3, 1, 1);
+        putEntry(buffer, 273, 4, strips, strips > 1 ? stripOffsetsOffset : stripOffsets[0]);
+        putEntry(buffer, 277, 3, 1, 1);
+        putEntry(buffer, 278, 3, 1, rowsPerStrip);
+        putEntry(buffer, 279, 4, strips, strips > 1 ? stripByteCountsOffset : stripByteCounts[0]);
+        putEntry(buffer, 339, 3, 1, 2);
+        putEntry(buffer, 33550, 12, 3, scaleOffset);
+        putEntry(buffer, 33922, 12, 6, tiepointOffset);
+        buffer.putInt(0);
+        buffer.putDouble(1 / 1200.0).putDouble(1 / 1200.0).putDouble(0);
+        buffer.putDouble(0).putDouble(0).putDouble(0).putDouble(6.0).putDouble(47.0).putDouble(0);
+        if (strips > 1) {
+            for (int offset : stripOffsets) buffer.putInt(offset);
+            for (int byteCount : stripByteCounts) buffer.putInt(byteCount);
+        }
+        for (int strip = 0; strip < strips; strip++) {
+            buffer.position(stripOffsets[strip]);
+            for (int row = strip * rowsPerStrip; row < Math.min(nRow, (strip + 1) * rowsPerStrip); row++) {
+                for (int value : values[row]) buffer.putShort((short) value);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static void putEntry(ByteBuffer buffer, int tag, int type, int count, int value) {
+        buffer.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == 3) buffer.putShort((short) value).putShort((short) 0);
+        else buffer.putInt(value);
+    }
+}
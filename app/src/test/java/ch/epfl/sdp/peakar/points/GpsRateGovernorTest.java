@@ -0,0 +1,60 @@
+package ch.epfl.sdp.peakar.points;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GpsRateGovernorTest {
+
+    private static final double LAT = 46.5;
+    private static final double LON = 7.0;
+    //About one meter in latitude
+    private static final double METER = 1 / 111_195.0;
+
+    // Tests that the interval widens once the user stayed in place and is restored when the user walks away
+    @Test
+    public void stationaryTest() {
+        GpsRateGovernor governor = new GpsRateGovernor();
+        assertEquals(GpsRateGovernor.MOVING_INTERVAL_MS, governor.getIntervalMs());
+        assertEquals(GpsRateGovernor.MOVING_MIN_DISTANCE, governor.getMinDistance(), 0);
+
+        //Locations jittering by a few meters around the same place
+        long time = 0;
+        for (; time < GpsRateGovernor.STATIONARY_TIME_MS; time += 1000) {
+            assertFalse(governor.onLocation(LAT + (time % 3000 == 0 ? 4 : -4) * METER, LON, 30, time));
+        }
+        assertTrue(governor.onLocation(LAT, LON, 30, time));
+        assertEquals(GpsRateGovernor.STATIONARY_INTERVAL_MS, governor.getIntervalMs());
+        assertEquals(GpsRateGovernor.STATIONARY_MIN_DISTANCE, governor.getMinDistance(), 0);
+
+        //Walking away
+        time += GpsRateGovernor.STATIONARY_INTERVAL_MS;
+        assertTrue(governor.onLocation(LAT + 40 * METER, LON, 30, time));
+        assertEquals(GpsRateGovernor.MOVING_INTERVAL_MS, governor.getIntervalMs());
+        assertEquals(GpsRateGovernor.MOVING_MIN_DISTANCE, governor.getMinDistance(), 0);
+    }
+
+    // Tests that the interval is wider when the locations are accurate
+    @Test
+    public void accuracyTest() {
+        GpsRateGovernor governor = new GpsRateGovernor();
+        assertTrue(governor.onLocation(LAT, LON, 5, 0));
+        assertEquals(GpsRateGovernor.MOVING_ACCURATE_INTERVAL_MS, governor.getIntervalMs());
+        assertTrue(governor.onLocation(LAT, LON, 5, GpsRateGovernor.STATIONARY_TIME_MS));
+        assertEquals(GpsRateGovernor.ACCURATE_INTERVAL_MS, governor.getIntervalMs());
+        assertTrue(governor.onLocation(LAT, LON, 50, GpsRateGovernor.STATIONARY_TIME_MS + 1000));
+        assertEquals(GpsRateGovernor.STATIONARY_INTERVAL_MS, governor.getIntervalMs());
+    }
+
+    // Tests that a steady walk is never stationary
+    @Test
+    public void walkingTest() {
+        GpsRateGovernor governor = new GpsRateGovernor();
+        for (int second = 0; second < 600; second++) {
+            governor.onLocation(LAT + 1.4 * second * METER, LON, 8, second * 1000L);
+            assertEquals(GpsRateGovernor.MOVING_MIN_DISTANCE, governor.getMinDistance(), 0);
+        }
+    }
+}
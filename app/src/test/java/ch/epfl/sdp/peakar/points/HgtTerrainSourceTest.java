@@ -0,0 +1,161 @@
+package ch.epfl.sdp.peakar.points;
+
+import androidx.core.util.Pair;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HgtTerrainSourceTest {
+
+    private static final int SIZE = HgtTerrainSource.SRTM3_SIZE;
+    private static final double CELL_SIZE = 1.0 / (SIZE - 1);
+
+    private File directory;
+    private HgtTerrainSource source;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("hgt").toFile();
+        source = new HgtTerrainSource(directory);
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    /**
+     * Elevation of the SRTM3 post at a location, continuous across the files
+     */
+    private static int elevation(double latitude, double longitude) {
+        long row = Math.round(latitude * (SIZE - 1));
+        long col = Math.round(longitude * (SIZE - 1));
+        return (int) (1000 + (row % 1000) - (col % 700));
+    }
+
+    /**
+     * Writes the SRTM3 file whose south west corner is (south, west)
+     */
+    private void writeFile(String name, int south, int west) throws IOException {
+        writeFile(name, south, west, SIZE);
+    }
+
+    /**
+     * Writes the file of size x size posts whose south west corner is (south, west)
+     */
+    private void writeFile(String name, int south, int west, int size) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, name))))) {
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    outputStream.writeShort(elevation(south + 1 - row / (size - 1.0), west + col / (size - 1.0)));
+                }
+            }
+        }
+    }
+
+    // Tests the names of the files
+    @Test
+    public void fileNameTest() {
+        assertEquals("N46E007.hgt", HgtTerrainSource.getFileName(46.5, 7.9));
+        assertEquals("S01W001.hgt", HgtTerrainSource.getFileName(-0.5, -0.5));
+        assertEquals("N00W123.hgt", HgtTerrainSource.getFileName(0, -122.1));
+    }
+
+    // Tests that a map spanning 4 files is assembled with the elevations of the bounding box
+    @Test
+    public void assembleTest() throws IOException {
+        writeFile("N45E006.hgt", 45, 6);
+        writeFile("N45E007.hgt", 45, 7);
+        writeFile("N46E006.hgt", 46, 6);
+        writeFile("N46E007.hgt", 46, 7);
+
+        //Shifted by half a cell so that the cells are centered on the posts
+        double shift = CELL_SIZE / 2;
+        BoundingBox boundingBox = new BoundingBox(46.1 + shift, 7.1 + shift, 45.9 + shift, 6.9 + shift);
+        assertTrue(source.covers(boundingBox));
+        Pair<int[][], Double> topography = source.getTopographyMap(boundingBox);
+        int[][] map = topography.first;
+        assertEquals(CELL_SIZE, topography.second, 1e-12);
+        assertEquals(240, map.length);
+        assertEquals(240, map[0].length);
+
+        double north = boundingBox.getCenterLatitude() + map.length * CELL_SIZE / 2;
+        double west = boundingBox.getCenterLongitude() - map[0].length * CELL_SIZE / 2;
+        for (int row = 0; row < map.length; row++) {
+            for (int col = 0; col < map[0].length; col++) {
+                double latitude = north - (row + 0.5) * CELL_SIZE;
+                double longitude = west + (col + 0.5) * CELL_SIZE;
+                assertEquals("Cell (" + row + ", " + col + ")", elevation(latitude, longitude), map[row][col]);
+            }
+        }
+    }
+
+    // Tests that an SRTM1 file is read every third sample, at the 3 arc seconds of the other maps
+    @Test
+    public void srtm1ResampledTest() throws IOException {
+        writeFile("N46E007.hgt", 46, 7, HgtTerrainSource.SRTM1_SIZE);
+
+        double shift = CELL_SIZE / 2;
+        BoundingBox boundingBox = new BoundingBox(46.6 + shift, 7.6 + shift, 46.4 + shift, 7.4 + shift);
+        Pair<int[][], Double> topography = source.getTopographyMap(boundingBox);
+        int[][] map = topography.first;
+        assertEquals(CELL_SIZE, topography.second, 1e-12);
+        assertEquals(240, map.length);
+        assertEquals(240, map[0].length);
+
+        double north = boundingBox.getCenterLatitude() + map.length * CELL_SIZE / 2;
+        double west = boundingBox.getCenterLongitude() - map[0].length * CELL_SIZE / 2;
+        for (int row = 0; row < map.length; row++) {
+            for (int col = 0; col < map[0].length; col++) {
+                double latitude = north - (row + 0.5) * CELL_SIZE;
+                double longitude = west + (col + 0.5) * CELL_SIZE;
+                assertEquals("Cell (" + row + ", " + col + ")", elevation(latitude, longitude), map[row][col]);
+            }
+        }
+    }
+
+    // Tests that a map needing a missing file is not built, and that the file is used once added
+    @Test
+    public void missingFileTest() throws IOException {
+        writeFile("N46E007.hgt", 46, 7);
+        BoundingBox boundingBox = new BoundingBox(46.55, 7.05, 46.45, 6.95);
+        assertFalse(source.covers(boundingBox));
+        assertNull(source.getTopographyMap(boundingBox));
+
+        writeFile("N46E006.hgt", 46, 6);
+        assertTrue(source.covers(boundingBox));
+        assertEquals(120, source.getTopographyMap(boundingBox).first.length);
+    }
+
+    // Tests that a file with an invalid size is ignored
+    @Test
+    public void invalidFileTest() throws IOException {
+        Files.write(new File(directory, "N46E007.hgt").toPath(), new byte[1000]);
+        BoundingBox boundingBox = new BoundingBox(46.6, 7.6, 46.4, 7.4);
+        assertFalse(source.covers(boundingBox));
+        assertNull(source.getTopographyMap(boundingBox));
+    }
+}
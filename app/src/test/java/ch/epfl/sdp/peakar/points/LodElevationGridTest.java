@@ -0,0 +1,127 @@
+package ch.epfl.sdp.peakar.points;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LodElevationGridTest {
+
+    private static final int SIZE = LodElevationGrid.LEVEL_SIZE;
+
+    /**
+     * Generates a terrain of nRow x nCol cells with ridges and valleys
+     */
+    private static int[][] generateTerrain(int nRow, int nCol) {
+        int[][] terrain = new int[nRow][nCol];
+        for (int row = 0; row < nRow; row++) {
+            for (int col = 0; col < nCol; col++) {
+                terrain[row][col] = (int) (2000 + 1200 * Math.sin(row / 40.0) * Math.cos(col / 55.0) + 150 * Math.sin(col / 6.0));
+            }
+        }
+        return terrain;
+    }
+
+    /**
+     * Highest elevation of the cells [firstRow, firstRow + size) x [firstCol, firstCol + size) in the terrain
+     */
+    private static int max(int[][] terrain, int firstRow, int firstCol, int size) {
+        int max = Integer.MIN_VALUE;
+        for (int row = Math.max(0, firstRow); row < Math.min(terrain.length, firstRow + size); row++) {
+            for (int col = Math.max(0, firstCol); col < Math.min(terrain[0].length, firstCol + size); col++) {
+                max = Math.max(max, terrain[row][col]);
+            }
+        }
+        return max;
+    }
+
+    // Tests that a map smaller than a level is kept at full resolution
+    @Test
+    public void smallMapTest() {
+        int[][] terrain = generateTerrain(300, 401);
+        LodElevationGrid grid = LodElevationGrid.build(terrain);
+        assertEquals(1, grid.getLevelCount());
+        assertEquals(300, grid.getRowCount());
+        assertEquals(401, grid.getColCount());
+        for (int row = 0; row < 300; row++) {
+            for (int col = 0; col < 401; col++) {
+                assertEquals(terrain[row][col], grid.get(row, col));
+                assertEquals(1, grid.getStride(row, col));
+            }
+        }
+    }
+
+    // Tests that the resolution halves at each level and that a coarse cell holds the highest elevation
+    @Test
+    public void levelsTest() {
+        int nRow = 2 * SIZE + 101;
+        int nCol = 2 * SIZE + 37;
+        int[][] terrain = generateTerrain(nRow, nCol);
+        LodElevationGrid grid = LodElevationGrid.build(terrain);
+        assertEquals(3, grid.getLevelCount());
+
+        int centerRow = nRow / 2;
+        int centerCol = nCol / 2;
+        for (int row = 0; row < nRow; row++) {
+            for (int col = 0; col < nCol; col++) {
+                int distance = Math.max(Math.abs(row - centerRow), Math.abs(col - centerCol));
+                int stride = distance < SIZE / 2 ? 1 : distance < SIZE ? 2 : 4;
+                assertEquals(stride, grid.getStride(row, col));
+                int firstRow = centerRow - SIZE / 2 * stride + Math.floorDiv(row - centerRow + SIZE / 2 * stride, stride) * stride;
+                int firstCol = centerCol - SIZE / 2 * stride + Math.floorDiv(col - centerCol + SIZE / 2 * stride, stride) * stride;
+                assertEquals("Cell (" + row + ", " + col + ")", max(terrain, firstRow, firstCol, stride), grid.get(row, col));
+            }
+        }
+    }
+
+    // Tests that the coarse levels built from the decimated levels hold the highest elevation of their cells
+    @Test
+    public void decimatedLevelsTest() {
+        int nRow = 4 * SIZE + 3;
+        int nCol = 3 * SIZE + 1;
+        int[][] terrain = generateTerrain(nRow, nCol);
+        LodElevationGrid grid = LodElevationGrid.build(terrain);
+        assertEquals(4, grid.getLevelCount());
+
+        int centerRow = nRow / 2;
+        int centerCol = nCol / 2;
+        for (int row = 0; row < nRow; row += 3) {
+            for (int col = 0; col < nCol; col += 5) {
+                int stride = grid.getStride(row, col);
+                int firstRow = centerRow + Math.floorDiv(row - centerRow, stride) * stride;
+                int firstCol = centerCol + Math.floorDiv(col - centerCol, stride) * stride;
+                assertEquals("Cell (" + row + ", " + col + ")", max(terrain, firstRow, firstCol, stride), grid.get(row, col));
+            }
+        }
+    }
+
+    // Tests that the memory of a 100 km range map stays bounded, and compares the steps of rays from
+    // the center to the edges with and without strides
+    @Test
+    public void longRangeTest() {
+        //100 km range at 3 arc seconds
+        int size = 2 * 100000 / 90;
+        int[][] terrain = generateTerrain(size, size);
+        LodElevationGrid grid = LodElevationGrid.build(terrain);
+        long fullSize = 4L * size * size;
+        assertTrue(grid.getSize() * 8 < fullSize);
+
+        long uniformSteps = 0;
+        long lodSteps = 0;
+        int center = size / 2;
+        for (int target = 0; target < size; target += 7) {
+            for (int[] end : new int[][]{{0, target}, {size - 1, target}, {target, 0}, {target, size - 1}}) {
+                int rowDistance = end[0] - center;
+                int colDistance = end[1] - center;
+                int steps = Math.max(Math.abs(rowDistance), Math.abs(colDistance));
+                uniformSteps += steps + 1;
+                for (int step = 0; step <= steps; lodSteps++) {
+                    int row = center + (int) Math.round((double) rowDistance * step / steps);
+                    int col = center + (int) Math.round((double) colDistance * step / steps);
+                    step += grid.getStride(row, col);
+                }
+            }
+        }
+        assertTrue(lodSteps * 2 < uniformSteps);
+    }
+}
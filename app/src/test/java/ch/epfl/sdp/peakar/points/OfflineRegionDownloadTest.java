@@ -0,0 +1,25 @@
+package ch.epfl.sdp.peakar.points;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OfflineRegionDownloadTest {
+
+    // Tests that the regions of the selectable ranges are split in tiles of at most the tile side
+    @Test
+    public void topographyTilesPerSideTest() {
+        assertEquals(1, OfflineRegionDownload.topographyTilesPerSide(5));
+        assertEquals(1, OfflineRegionDownload.topographyTilesPerSide(OfflineRegionDownload.TOPOGRAPHY_TILE_SIDE_KM / 2));
+        assertEquals(2, OfflineRegionDownload.topographyTilesPerSide(20));
+        assertEquals(3, OfflineRegionDownload.topographyTilesPerSide(30));
+        assertEquals(4, OfflineRegionDownload.topographyTilesPerSide(50));
+    }
+
+    // Tests that the number of tiles is capped for the largest regions
+    @Test
+    public void topographyTilesPerSideIsCappedTest() {
+        assertEquals(OfflineRegionDownload.MAX_TOPOGRAPHY_TILES_PER_SIDE, OfflineRegionDownload.topographyTilesPerSide(100));
+        assertEquals(OfflineRegionDownload.MAX_TOPOGRAPHY_TILES_PER_SIDE, OfflineRegionDownload.topographyTilesPerSide(10_000));
+    }
+}
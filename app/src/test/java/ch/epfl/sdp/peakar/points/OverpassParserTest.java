@@ -0,0 +1,122 @@
+package ch.epfl.sdp.peakar.points;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class OverpassParserTest {
+
+    private static final String RESPONSE = "{\n" +
+            "  \"version\": 0.6,\n" +
+            "  \"generator\": \"Overpass API\",\n" +
+            "  \"osm3s\": {\"timestamp_osm_base\": \"2021-05-20T10:00:00Z\", \"copyright\": \"ODbL\"},\n" +
+            "  \"elements\": [\n" +
+            "    {\"type\": \"node\", \"id\": 26862541, \"lat\": 45.8325, \"lon\": 6.8644,\n" +
+            "     \"tags\": {\"ele\": \"4808\", \"name\": \"Mont Blanc\", \"natural\": \"peak\", \"wikipedia\": \"fr:Mont Blanc\"}},\n" +
+            "    {\"tags\": {\"name\": \"Dent Blanche\", \"ele\": \"4,357\", \"natural\": \"peak\"},\n" +
+            "     \"lon\": 7.6119, \"lat\": 46.0341, \"id\": 240034117, \"type\": \"node\"},\n" +
+            "    {\"type\": \"node\", \"id\": 3, \"lat\": 46.1, \"lon\": 7.1, \"tags\": {\"ele\": \"2500\", \"natural\": \"peak\"}},\n" +
+            "    {\"type\": \"node\", \"id\": 4, \"lat\": 46.2, \"lon\": 7.2, \"tags\": {\"name\": \"No altitude\", \"natural\": \"peak\"}},\n" +
+            "    {\"type\": \"node\", \"id\": 5, \"lat\": 46.3, \"lon\": 7.3, \"tags\": {\"name\": \"Zero\", \"ele\": \"0\"}},\n" +
+            "    {\"type\": \"node\", \"id\": 6, \"lat\": 46.4, \"lon\": 7.4, \"tags\": {\"name\": \"Saddle\", \"ele\": \"2000\", \"natural\": \"saddle\"}},\n" +
+            "    {\"type\": \"way\", \"id\": 7, \"center\": {\"lat\": 46.5, \"lon\": 7.5}, \"nodes\": [1, 2, 3],\n" +
+            "     \"tags\": {\"name\": \"Way\", \"ele\": \"3000\", \"natural\": \"peak\"}},\n" +
+            "    {\"type\": \"node\", \"id\": 8, \"lat\": 46.6, \"lon\": 7.6, \"tags\": {\"name\": \"Unknown\", \"ele\": \"unknown\"}},\n" +
+            "    {\"type\": \"node\", \"id\": 9, \"lat\": 46.7, \"lon\": 7.7, \"tags\": {\"name\": \"Pointe\", \"ele\": \"3120.5 m\", \"natural\": \"peak\"}}\n" +
+            "  ]\n" +
+            "}";
+
+    /**
+     * Generates an Overpass response with nPeaks peaks, one third of them having no name or altitude
+     */
+    private static String generateResponse(int nPeaks) {
+        StringBuilder builder = new StringBuilder("{\"version\":0.6,\"generator\":\"Overpass API\",\"elements\":[");
+        for (int i = 0; i < nPeaks; i++) {
+            if (i > 0) builder.append(',');
+            builder.append(String.format(Locale.ENGLISH,
+                    "{\"type\":\"node\",\"id\":%d,\"lat\":%.7f,\"lon\":%.7f,\"tags\":{", i + 1, 45 + i * 1e-5, 6 + i * 1e-5));
+            if (i % 3 != 1) builder.append("\"name\":\"Peak ").append(i).append("\",");
+            if (i % 3 != 2) builder.append("\"ele\":\"").append(1000 + i % 3000).append("\",");
+            builder.append("\"natural\":\"peak\",\"source\":\"survey\",\"wikidata\":\"Q").append(i).append("\"}}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    // Tests that the named peaks are parsed whatever the order of their fields
+    @Test
+    public void parsePeaksTest() throws IOException {
+        ArrayList<POIPoint> peaks = OverpassParser.parse(new StringReader(RESPONSE));
+
+        assertEquals(3, peaks.size());
+        assertEquals("Mont Blanc", peaks.get(0).getName());
+        assertEquals(45.8325, peaks.get(0).getLatitude(), 0);
+        assertEquals(6.8644, peaks.get(0).getLongitude(), 0);
+        assertEquals(4808, peaks.get(0).getAltitude(), 0);
+        assertEquals(26862541, peaks.get(0).getOsmId());
+
+        assertEquals("Dent Blanche", peaks.get(1).getName());
+        assertEquals(46.0341, peaks.get(1).getLatitude(), 0);
+        assertEquals(7.6119, peaks.get(1).getLongitude(), 0);
+        assertEquals(4357, peaks.get(1).getAltitude(), 0);
+        assertEquals(240034117, peaks.get(1).getOsmId());
+
+        assertEquals("Pointe", peaks.get(2).getName());
+        assertEquals(3120.5, peaks.get(2).getAltitude(), 0);
+    }
+
+    // Tests the formats of the "ele" tag found in OSM
+    @Test
+    public void parseElevationTest() {
+        assertEquals(4808, OverpassParser.parseElevation("4808"), 0);
+        assertEquals(4808, OverpassParser.parseElevation("4,808"), 0);
+        assertEquals(4808.7, OverpassParser.parseElevation("4808.7"), 0);
+        assertEquals(4808, OverpassParser.parseElevation("4808 m"), 0);
+        assertEquals(4808, OverpassParser.parseElevation(" 4808m"), 0);
+        assertEquals(-12, OverpassParser.parseElevation("-12"), 0);
+        assertEquals(0, OverpassParser.parseElevation("unknown"), 0);
+        assertEquals(0, OverpassParser.parseElevation(""), 0);
+        assertEquals(0, OverpassParser.parseElevation(null), 0);
+    }
+
+    // Tests that responses without elements or with other members are accepted
+    @Test
+    public void emptyResponseTest() throws IOException {
+        assertTrue(OverpassParser.parse(new StringReader("{\"elements\":[]}")).isEmpty());
+        assertTrue(OverpassParser.parse(new StringReader("{\"remark\":\"runtime error\"}")).isEmpty());
+    }
+
+    // Tests that invalid responses throw an IOException
+    @Test
+    public void invalidResponseTest() {
+        assertThrows(IOException.class, () -> OverpassParser.parse(new StringReader("<osm></osm>")));
+        assertThrows(IOException.class, () -> OverpassParser.parse(new StringReader("{\"elements\":{}}")));
+        assertThrows(IOException.class, () -> OverpassParser.parse(new StringReader("{\"elements\":[{\"type\":\"node\",\"lat\":\"north\"}]}")));
+        assertThrows(IOException.class, () -> OverpassParser.parse(new StringReader(RESPONSE.substring(0, RESPONSE.length() / 2))));
+    }
+
+    // Tests that a response of 30000 elements is streamed into the 10000 peaks of the Gson tree
+    @Test
+    public void parseLargeResponseTest() throws IOException {
+        String response = generateResponse(30000);
+
+        ArrayList<POIPoint> peaks = OverpassParser.parse(new StringReader(response));
+        JsonElement tree = JsonParser.parseString(response);
+
+        assertEquals(30000, tree.getAsJsonObject().getAsJsonArray("elements").size());
+        assertEquals(10000, peaks.size());
+        for (POIPoint peak : peaks) {
+            assertEquals(0, (peak.getOsmId() - 1) % 3);
+            assertTrue(peak.getAltitude() >= 1000);
+        }
+    }
+}
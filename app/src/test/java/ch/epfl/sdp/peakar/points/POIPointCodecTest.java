@@ -0,0 +1,217 @@
+package ch.epfl.sdp.peakar.points;
+
+import androidx.core.util.Pair;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ch.epfl.sdp.peakar.utils.BinaryStreams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class POIPointCodecTest {
+
+    private static final int LARGE_LIST_SIZE = 10000;
+    private static final double COORDINATE_PRECISION = 1e-7;
+    private static final double ALTITUDE_PRECISION = 0.1;
+
+    private static byte[] encode(List<POIPoint> poiPoints) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        POIPointCodec.encode(poiPoints, out);
+        return out.toByteArray();
+    }
+
+    private static ArrayList<POIPoint> decode(byte[] bytes) throws IOException {
+        return POIPointCodec.decode(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Generates peaks around Chamonix, with names repeating like in real data sets
+     */
+    private static List<POIPoint> generatePeaks(int size) {
+        Random random = new Random(42);
+        List<POIPoint> poiPoints = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            POIPoint poiPoint = new POIPoint("Pointe " + random.nextInt(size / 4),
+                    45.5 + random.nextDouble(), 6.5 + random.nextDouble(), 0, null);
+            poiPoint.setAltitude(1000 + random.nextInt(3800) + random.nextInt(10) / 10.0);
+            poiPoint.setOsmId(Math.abs(random.nextLong() % 10_000_000_000L));
+            poiPoint.setHorizontalBearing(new Point(45.9, 6.9, 1000));
+            poiPoint.setVerticalBearing(new Point(45.9, 6.9, 1000));
+            poiPoints.add(poiPoint);
+        }
+        return poiPoints;
+    }
+
+    // Tests that the persistent fields survive an encoding round trip
+    @Test
+    public void roundTripTest() throws IOException {
+        POIPoint montBlanc = new POIPoint("Mont Blanc", 45.8326, 6.8652, 4808, "01/01/2021 - 10:00:00");
+        montBlanc.setOsmId(1234567890L);
+        POIPoint noName = new POIPoint(null, -33.5, -70.2, 0, null);
+        noName.setAltitude(6961.5);
+        POIPoint sameName = new POIPoint("Mont Blanc", 45.8326, 6.8653, 4807, null);
+
+        List<POIPoint> input = new ArrayList<>();
+        input.add(montBlanc);
+        input.add(noName);
+        input.add(sameName);
+
+        List<POIPoint> output = decode(encode(input));
+
+        assertEquals(input.size(), output.size());
+        for (int i = 0; i < input.size(); i++) {
+            POIPoint expected = input.get(i);
+            POIPoint actual = output.get(i);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getDiscoveredDate(), actual.getDiscoveredDate());
+            assertEquals(expected.getOsmId(), actual.getOsmId());
+            assertEquals(expected.getLatitude(), actual.getLatitude(), COORDINATE_PRECISION);
+            assertEquals(expected.getLongitude(), actual.getLongitude(), COORDINATE_PRECISION);
+            assertEquals(expected.getAltitude(), actual.getAltitude(), ALTITUDE_PRECISION);
+        }
+    }
+
+    // Tests that an empty list can be encoded
+    @Test
+    public void emptyListTest() throws IOException {
+        assertEquals(0, decode(encode(new ArrayList<>())).size());
+    }
+
+    // Tests that a repeated name is only stored once
+    @Test
+    public void stringTableTest() throws IOException {
+        String longName = "Aiguille du Plan de la Grande Montagne des Alpes";
+        List<POIPoint> repeated = new ArrayList<>();
+        List<POIPoint> distinct = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            repeated.add(new POIPoint(longName, 45.0, 6.0, 3000, null));
+            distinct.add(new POIPoint(longName + i, 45.0, 6.0, 3000, null));
+        }
+        int nameSize = longName.getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(encode(repeated).length + 99 * nameSize <= encode(distinct).length);
+    }
+
+    // Tests that data which is not a POIPoint list or has another version is rejected
+    @Test
+    public void invalidDataTest() throws IOException {
+        assertThrows(IOException.class, () -> decode("not a poi list".getBytes(StandardCharsets.UTF_8)));
+
+        byte[] bytes = encode(generatePeaks(10));
+        bytes[4] = (byte) (POIPointCodec.VERSION + 1);
+        assertThrows(IOException.class, () -> decode(bytes));
+
+        byte[] truncated = new byte[encode(generatePeaks(10)).length / 2];
+        System.arraycopy(encode(generatePeaks(10)), 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> decode(truncated));
+    }
+
+    // Tests that corrupted sizes are rejected with an IOException before being allocated
+    @Test
+    public void invalidSizesTest() throws IOException {
+        //String table larger than the limit
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryStreams.writeInt(out, POIPointCodec.MAGIC);
+        BinaryStreams.writeVarLong(out, POIPointCodec.VERSION);
+        BinaryStreams.writeVarLong(out, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> decode(out.toByteArray()));
+
+        //String longer than the limit
+        out.reset();
+        BinaryStreams.writeInt(out, POIPointCodec.MAGIC);
+        BinaryStreams.writeVarLong(out, POIPointCodec.VERSION);
+        BinaryStreams.writeVarLong(out, 1);
+        BinaryStreams.writeVarLong(out, Integer.MAX_VALUE - 1);
+        assertThrows(IOException.class, () -> decode(out.toByteArray()));
+
+        //Point count larger than the limit
+        out.reset();
+        BinaryStreams.writeInt(out, POIPointCodec.MAGIC);
+        BinaryStreams.writeVarLong(out, POIPointCodec.VERSION);
+        BinaryStreams.writeVarLong(out, 0);
+        BinaryStreams.writeVarLong(out, POIPointCodec.MAX_POINT_COUNT + 1);
+        assertThrows(IOException.class, () -> decode(out.toByteArray()));
+
+        //Valid point count, but the stream ends after the first point
+        out.reset();
+        BinaryStreams.writeInt(out, POIPointCodec.MAGIC);
+        BinaryStreams.writeVarLong(out, POIPointCodec.VERSION);
+        BinaryStreams.writeVarLong(out, 0);
+        BinaryStreams.writeVarLong(out, POIPointCodec.MAX_POINT_COUNT);
+        for (int i = 0; i < 6; i++) BinaryStreams.writeVarLong(out, 0);
+        assertThrows(IOException.class, () -> decode(out.toByteArray()));
+
+        //Topography larger than the limit
+        out.reset();
+        BinaryStreams.writeVarLong(out, TopographyCodec.VERSION);
+        BinaryStreams.writeVarLong(out, 1);
+        BinaryStreams.writeDouble(out, 0.00083);
+        BinaryStreams.writeVarLong(out, TopographyCodec.MAX_CELL_COUNT);
+        BinaryStreams.writeVarLong(out, 2);
+        assertThrows(IOException.class, () -> TopographyCodec.decode(new ByteArrayInputStream(out.toByteArray())));
+
+        //Negative topography size, written as a 64 bits value
+        out.reset();
+        BinaryStreams.writeVarLong(out, TopographyCodec.VERSION);
+        BinaryStreams.writeVarLong(out, 1);
+        BinaryStreams.writeDouble(out, 0.00083);
+        BinaryStreams.writeVarLong(out, -1);
+        BinaryStreams.writeVarLong(out, 2);
+        assertThrows(IOException.class, () -> TopographyCodec.decode(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    // Tests the topography round trip, including a missing topography
+    @Test
+    public void topographyRoundTripTest() throws IOException {
+        int[][] topographyMap = {{1000, 1010, 990}, {1200, 1180, -5}, {0, 4808, 4807}};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TopographyCodec.encode(new Pair<>(topographyMap, 0.00083), out);
+        TopographyCodec.encode(null, out);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        Pair<int[][], Double> topography = TopographyCodec.decode(in);
+        assertEquals(0.00083, topography.second, 0);
+        for (int row = 0; row < topographyMap.length; row++) {
+            assertArrayEquals(topographyMap[row], topography.first[row]);
+        }
+        assertNull(TopographyCodec.decode(in));
+    }
+
+    // Compares the size of the codec against Gson on 10k peaks, both decoding to the same peaks
+    @Test
+    public void sizeAgainstGsonTest() throws IOException {
+        List<POIPoint> peaks = generatePeaks(LARGE_LIST_SIZE);
+        Gson gson = new Gson();
+
+        byte[] binary = encode(peaks);
+        byte[] json = gson.toJson(peaks).getBytes(StandardCharsets.UTF_8);
+
+        List<POIPoint> fromBinary = decode(binary);
+        List<POIPoint> fromJson = gson.fromJson(new String(json, StandardCharsets.UTF_8),
+                new TypeToken<List<POIPoint>>(){}.getType());
+        assertEquals(LARGE_LIST_SIZE, fromBinary.size());
+        assertEquals(LARGE_LIST_SIZE, fromJson.size());
+        for (int i = 0; i < LARGE_LIST_SIZE; i++) {
+            assertEquals(fromJson.get(i).getName(), fromBinary.get(i).getName());
+            assertEquals(fromJson.get(i).getLatitude(), fromBinary.get(i).getLatitude(), COORDINATE_PRECISION);
+            assertEquals(fromJson.get(i).getAltitude(), fromBinary.get(i).getAltitude(), ALTITUDE_PRECISION);
+        }
+
+        assertTrue("Binary encoding should be at least 4 times smaller than JSON",
+                binary.length * 4 < json.length);
+    }
+}
@@ -0,0 +1,309 @@
+package ch.epfl.sdp.peakar.points;
+
+import org.junit.Test;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class POITileCacheTest {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final double SIZE = POITileCache.TILE_SIZE_DEG;
+    //Bounding box inside the tile 184 x 24
+    private static final BoundingBox ONE_TILE = new BoundingBox(46 + 0.8 * SIZE, 6 + 0.8 * SIZE, 46 + 0.2 * SIZE, 6 + 0.2 * SIZE);
+
+    /**
+     * Fetcher returning, for every tile of the fetched bounding box, one peak in the middle of the
+     * tile and one on its south-west corner, which also belongs to the neighbouring tiles. Counts
+     * the queries and the fetches of every tile.
+     */
+    private static class CountingFetcher implements POITileCache.TileFetcher {
+        final ConcurrentHashMap<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        final AtomicInteger queries = new AtomicInteger();
+        final List<BoundingBox> boxes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<POIPoint> fetch(BoundingBox boundingBox) throws IOException {
+            queries.incrementAndGet();
+            boxes.add(boundingBox);
+            List<POIPoint> peaks = new ArrayList<>();
+            double size = POITileCache.TILE_SIZE_DEG;
+            for (long lat = Math.round(boundingBox.getLatSouth() / size); lat < Math.round(boundingBox.getLatNorth() / size); lat++) {
+                for (long lon = Math.round(boundingBox.getLonWest() / size); lon < Math.round(boundingBox.getLonEast() / size); lon++) {
+                    String key = lat + "_" + lon;
+                    fetches.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+                    peaks.add(peak(key, (lat + 0.5) * size, (lon + 0.5) * size, key.hashCode()));
+                    peaks.add(peak("corner " + key, lat * size, lon * size, ("corner " + key).hashCode()));
+                }
+            }
+            return peaks;
+        }
+    }
+
+    private static POIPoint peak(String name, double latitude, double longitude, long osmId) {
+        POIPoint peak = new POIPoint(name, latitude, longitude, 2000, null);
+        peak.setOsmId(osmId);
+        return peak;
+    }
+
+    // Tests that a bounding box is answered with the peaks of the tiles it overlaps, with one query per row
+    @Test
+    public void mergeTilesTest() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        POITileCache cache = new POITileCache(fetcher, POITileCache.TILE_TTL_MS);
+
+        //Overlaps the tiles 184..186 x 24..26
+        BoundingBox boundingBox = new BoundingBox(46 + 2.8 * SIZE, 6 + 2.8 * SIZE, 46 + 0.2 * SIZE, 6 + 0.2 * SIZE);
+        ArrayList<POIPoint> peaks = cache.getPOIs(boundingBox, TIMEOUT_MS);
+
+        assertEquals(3, fetcher.queries.get());
+        assertEquals(9, fetcher.fetches.size());
+        for (POIPoint peak : peaks) {
+            assertTrue(peak.getLatitude() >= boundingBox.getLatSouth() && peak.getLatitude() <= boundingBox.getLatNorth());
+            assertTrue(peak.getLongitude() >= boundingBox.getLonWest() && peak.getLongitude() <= boundingBox.getLonEast());
+        }
+        //Centers of the 9 tiles and corners of the 4 inner tiles
+        assertEquals(9 + 4, peaks.size());
+    }
+
+    // Tests that a moving query only fetches the tiles entering the range
+    @Test
+    public void cachedTilesAreNotFetchedAgainTest() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        POITileCache cache = new POITileCache(fetcher, POITileCache.TILE_TTL_MS);
+
+        cache.getPOIs(new BoundingBox(46 + 2.8 * SIZE, 6 + 2.8 * SIZE, 46 + 0.2 * SIZE, 6 + 0.2 * SIZE), TIMEOUT_MS);
+        cache.getPOIs(new BoundingBox(46 + 2.8 * SIZE, 6 + 3.8 * SIZE, 46 + 0.2 * SIZE, 6 + 1.2 * SIZE), TIMEOUT_MS);
+
+        //The second query moved one tile east: 3 new tiles, one per row
+        assertEquals(6, fetcher.queries.get());
+        assertEquals(12, fetcher.fetches.size());
+        for (AtomicInteger count : fetcher.fetches.values()) assertEquals(1, count.get());
+        for (BoundingBox box : fetcher.boxes.subList(3, 6)) {
+            assertEquals(6 + 3 * SIZE, box.getLonWest(), 1e-9);
+            assertEquals(6 + 4 * SIZE, box.getLonEast(), 1e-9);
+        }
+    }
+
+    // Tests that the cached tiles between missing tiles of a row are not fetched again
+    @Test
+    public void missingTilesAreFetchedInRunsTest() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        POITileCache cache = new POITileCache(fetcher, POITileCache.TILE_TTL_MS);
+
+        //Caches the tile 184 x 26, in the middle of the row 24..28
+        cache.getPOIs(new BoundingBox(46 + 0.8 * SIZE, 6 + 2.8 * SIZE, 46 + 0.2 * SIZE, 6 + 2.2 * SIZE), TIMEOUT_MS);
+        ArrayList<POIPoint> peaks = cache.getPOIs(new BoundingBox(46 + 0.8 * SIZE, 6 + 4.8 * SIZE, 46 + 0.2 * SIZE, 6 + 0.2 * SIZE), TIMEOUT_MS);
+
+        //The runs 24..25 and 27..28
+        assertEquals(3, fetcher.queries.get());
+        assertEquals(5, fetcher.fetches.size());
+        for (AtomicInteger count : fetcher.fetches.values()) assertEquals(1, count.get());
+        List<Double> wests = new ArrayList<>();
+        for (BoundingBox box : fetcher.boxes.subList(1, 3)) wests.add(box.getLonWest());
+        assertTrue(wests.contains(6.0) && wests.contains(6 + 3 * SIZE));
+        assertEquals(5, peaks.size());
+    }
+
+    // Tests that a run whose response reaches the maximum number of results is fetched again in halves
+    @Test
+    public void truncatedRunsAreSplitTest() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        //Any response for more than one tile has at least 4 peaks
+        POITileCache cache = new POITileCache(fetcher, POITileCache.TILE_TTL_MS, 4);
+        BoundingBox boundingBox = new BoundingBox(46 + 0.8 * SIZE, 6 + 3.8 * SIZE, 46 + 0.2 * SIZE, 6 + 0.2 * SIZE);
+
+        //The row 24..27 is fetched again as 24..25 and 26..27, then tile by tile
+        assertEquals(4, cache.getPOIs(boundingBox, TIMEOUT_MS).size());
+        assertEquals(1 + 2 + 4, fetcher.queries.get());
+
+        //The tiles were complete and are kept
+        cache.getPOIs(boundingBox, TIMEOUT_MS);
+        assertEquals(7, fetcher.queries.get());
+    }
+
+    // Tests that a single tile whose response reaches the maximum number of results is not kept
+    @Test
+    public void truncatedTilesAreFetchedAgainTest() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        POITileCache cache = new POITileCache(fetcher, POITileCache.TILE_TTL_MS, 2);
+
+        assertEquals(1, cache.getPOIs(ONE_TILE, TIMEOUT_MS).size());
+        assertEquals(1, cache.getPOIs(ONE_TILE, TIMEOUT_MS).size());
+        assertEquals(2, fetcher.queries.get());
+    }
+
+    // Tests that the number of peaks is not capped per tile
+    @Test
+    public void queriesAreNotCappedPerTileTest() throws IOException {
+        POITileCache cache = new POITileCache(boundingBox -> {
+            List<POIPoint> peaks = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                peaks.add(peak("peak " + i, boundingBox.getLatSouth() + 0.1 + i * 1e-4, boundingBox.getLonWest() + 0.1, i));
+            }
+            return peaks;
+        }, POITileCache.TILE_TTL_MS);
+
+        assertEquals(1000, cache.getPOIs(ONE_TILE, TIMEOUT_MS).size());
+        assertTrue(POITileCache.QUERY_MAX_RESULTS >= 1000);
+    }
+
+    // Tests that the expired tiles are evicted and fetched again
+    @Test
+    public void expiredTilesAreFetchedAgainTest() throws IOException, InterruptedException {
+        CountingFetcher fetcher = new CountingFetcher();
+        POITileCache cache = new POITileCache(fetcher, 50);
+        BoundingBox boundingBox = ONE_TILE;
+
+        cache.getPOIs(boundingBox, TIMEOUT_MS);
+        cache.getPOIs(boundingBox, TIMEOUT_MS);
+        assertEquals(1, fetcher.queries.get());
+
+        Thread.sleep(100);
+        //Querying elsewhere evicts the expired tile
+        cache.getPOIs(new BoundingBox(40 + 0.8 * SIZE, 6 + 0.8 * SIZE, 40 + 0.2 * SIZE, 6 + 0.2 * SIZE), TIMEOUT_MS);
+        assertEquals(1, cache.size());
+
+        cache.getPOIs(boundingBox, TIMEOUT_MS);
+        assertEquals(3, fetcher.queries.get());
+    }
+
+    // Tests that the number of cached tiles is bounded
+    @Test
+    public void cacheIsBoundedTest() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        POITileCache cache = new POITileCache(fetcher, POITileCache.TILE_TTL_MS);
+
+        //A row of 80 tiles at each latitude, until more than MAX_TILES tiles were fetched
+        for (int row = 0; row < POITileCache.MAX_TILES / 80 + 2; row++) {
+            double south = (row + 0.2) * SIZE;
+            cache.getPOIs(new BoundingBox(south + 0.5 * SIZE, 79.8 * SIZE, south, 0.2 * SIZE), TIMEOUT_MS);
+        }
+        assertEquals(POITileCache.MAX_TILES, cache.size());
+    }
+
+    // Tests that a bounding box crossing the antimeridian is split in two queries
+    @Test
+    public void antimeridianTest() throws IOException {
+        CountingFetcher fetcher = new CountingFetcher();
+        POITileCache cache = new POITileCache(fetcher, POITileCache.TILE_TTL_MS);
+
+        //West longitude greater than the east one
+        ArrayList<POIPoint> peaks = cache.getPOIs(new BoundingBox(-16.6, -180 + 0.8 * SIZE, -16.7, 180 - 0.8 * SIZE), TIMEOUT_MS);
+        assertEquals(2, fetcher.queries.get());
+        //Centers of the tiles on each side of the antimeridian
+        assertEquals(2, peaks.size());
+        for (BoundingBox box : fetcher.boxes) {
+            assertTrue(box.getLonWest() >= -180 && box.getLonEast() <= 180);
+        }
+
+        //East longitude beyond 180°, the same tiles are cached
+        peaks = cache.getPOIs(new BoundingBox(-16.6, 180 + 0.8 * SIZE, -16.7, 180 - 0.8 * SIZE), TIMEOUT_MS);
+        assertEquals(2, fetcher.queries.get());
+        assertEquals(2, peaks.size());
+    }
+
+    // Tests the split of the bounding boxes at the antimeridian
+    @Test
+    public void splitAtAntimeridianTest() {
+        List<BoundingBox> boxes = POITileCache.splitAtAntimeridian(new BoundingBox(1, 7, 0, 6));
+        assertEquals(1, boxes.size());
+        assertEquals(6, boxes.get(0).getLonWest(), 1e-9);
+        assertEquals(7, boxes.get(0).getLonEast(), 1e-9);
+
+        boxes = POITileCache.splitAtAntimeridian(new BoundingBox(1, -179, 0, -181));
+        assertEquals(2, boxes.size());
+        assertEquals(179, boxes.get(0).getLonWest(), 1e-9);
+        assertEquals(180, boxes.get(0).getLonEast(), 1e-9);
+        assertEquals(-180, boxes.get(1).getLonWest(), 1e-9);
+        assertEquals(-179, boxes.get(1).getLonEast(), 1e-9);
+    }
+
+    // Tests that concurrent queries needing the same tiles share the fetches
+    @Test
+    public void concurrentQueriesAreCoalescedTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        POITileCache cache = new POITileCache(tile -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            List<POIPoint> peaks = new ArrayList<>();
+            peaks.add(peak("peak", tile.getCenterLatitude(), tile.getCenterLongitude(), 1));
+            return peaks;
+        }, POITileCache.TILE_TTL_MS);
+        BoundingBox boundingBox = ONE_TILE;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<ArrayList<POIPoint>>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) results.add(executor.submit(() -> cache.getPOIs(boundingBox, TIMEOUT_MS)));
+        Thread.sleep(100);
+        release.countDown();
+
+        List<POIPoint> first = results.get(0).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        for (Future<ArrayList<POIPoint>> result : results) {
+            List<POIPoint> peaks = result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertEquals(1, peaks.size());
+            //Every caller gets its own copies
+            if (peaks != first) assertNotSame(first.get(0), peaks.get(0));
+        }
+        executor.shutdown();
+        assertEquals(1, fetches.get());
+    }
+
+    // Tests that a failed tile is not cached and is fetched again by the next query
+    @Test
+    public void failedTilesAreFetchedAgainTest() throws IOException {
+        AtomicInteger fetches = new AtomicInteger();
+        POITileCache cache = new POITileCache(tile -> {
+            if (fetches.incrementAndGet() == 1) throw new IOException("Too many requests");
+            return new ArrayList<>();
+        }, POITileCache.TILE_TTL_MS);
+        BoundingBox boundingBox = ONE_TILE;
+
+        assertThrows(IOException.class, () -> cache.getPOIs(boundingBox, TIMEOUT_MS));
+        assertTrue(cache.getPOIs(boundingBox, TIMEOUT_MS).isEmpty());
+        assertTrue(cache.getPOIs(boundingBox, TIMEOUT_MS).isEmpty());
+        assertEquals(2, fetches.get());
+    }
+
+    // Tests that a query waiting too long fails without cancelling the fetch
+    @Test
+    public void timeoutTest() throws IOException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        POITileCache cache = new POITileCache(tile -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new ArrayList<>();
+        }, POITileCache.TILE_TTL_MS);
+        BoundingBox boundingBox = ONE_TILE;
+
+        assertThrows(IOException.class, () -> cache.getPOIs(boundingBox, 50));
+        release.countDown();
+        assertTrue(cache.getPOIs(boundingBox, TIMEOUT_MS).isEmpty());
+        assertEquals(1, fetches.get());
+    }
+}
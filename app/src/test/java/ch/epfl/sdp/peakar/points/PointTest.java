@@ -2,6 +2,7 @@ package ch.epfl.sdp.peakar.points;
 
 import org.junit.Test;
 
+import java.util.Objects;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
@@ -61,4 +62,15 @@ public class PointTest {
 
     }
 
+    @Test
+    public void poiPointHashCodeTest() {
+
+        POIPoint poiPoint = new POIPoint("Dent Blanche", 46.0340, 7.6120, 4357, null);
+
+        int expected = Objects.hash("Dent Blanche".hashCode(), 46.0340, 7.6120, 4357.0);
+
+        assertEquals(expected, poiPoint.hashCode());
+
+    }
+
 }
@@ -0,0 +1,113 @@
+package ch.epfl.sdp.peakar.points;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PositionEstimatorTest {
+
+    private static final double LAT = 46.5;
+    private static final double LON = 7.0;
+    private static final double ALT = 1500;
+    //About one meter in latitude
+    private static final double METER = 1 / 111_195.0;
+
+    // Tests that the noise of the fixes under trees does not notify the observers, unlike the raw fixes
+    @Test
+    public void forestNoiseTest() {
+        Random random = new Random(42);
+        PositionEstimator estimator = new PositionEstimator();
+        //Like the UserPoint, the first fix notifies the observers
+        Point estimatedNotified = new Point(0, 0, 0);
+        Point rawNotified = new Point(0, 0, 0);
+        double notifiedAccuracy = 0;
+        int estimatedNotifications = 0;
+        int rawNotifications = 0;
+
+        //One hour standing in a forest, fixes every second with an accuracy of 40 to 80 meters
+        for (long time = 1000; time <= 3_600_000; time += 1000) {
+            double accuracy = 40 + 40 * random.nextDouble();
+            Point fix = new Point(LAT + random.nextGaussian() * accuracy * METER,
+                    LON + random.nextGaussian() * accuracy * METER / Math.cos(Math.toRadians(LAT)),
+                    ALT + random.nextGaussian() * accuracy);
+            estimator.update(fix.getLatitude(), fix.getLongitude(), fix.getAltitude(), accuracy, time);
+
+            if (fix.computeDistance(rawNotified) > UserPoint.MIN_DISTANCE_FOR_UPDATES) {
+                rawNotified = fix;
+                rawNotifications++;
+            }
+            Point estimate = new Point(estimator.getLatitude(), estimator.getLongitude(), estimator.getAltitude());
+            if (PositionEstimator.isSignificantMove(estimate.computeDistance(estimatedNotified),
+                    estimator.getAccuracy(), notifiedAccuracy, UserPoint.MIN_DISTANCE_FOR_UPDATES)) {
+                estimatedNotified = estimate;
+                notifiedAccuracy = estimator.getAccuracy();
+                estimatedNotifications++;
+            }
+        }
+        //The raw fixes notify thousands of times, the estimate only while converging after the first fix
+        assertTrue(rawNotifications > 1000);
+        assertTrue(estimatedNotifications <= 3);
+    }
+
+    // Tests that the estimate follows a user walking
+    @Test
+    public void walkingTest() {
+        PositionEstimator estimator = new PositionEstimator();
+        Random random = new Random(7);
+        //Walking north at 1.5 m/s for 10 minutes, fixes every second with an accuracy of 10 meters
+        for (long time = 1000; time <= 600_000; time += 1000) {
+            double distance = 1.5 * time / 1000;
+            estimator.update(LAT + (distance + random.nextGaussian() * 10) * METER, LON, ALT, 10, time);
+        }
+        assertEquals(900, (estimator.getLatitude() - LAT) / METER, 20);
+        assertTrue(estimator.getAccuracy() < 10);
+    }
+
+    // Tests that a fix far from the estimate and an exact fix restart the filter
+    @Test
+    public void resetTest() {
+        PositionEstimator estimator = new PositionEstimator();
+        estimator.update(GPSTracker.DEFAULT_LAT, GPSTracker.DEFAULT_LON, GPSTracker.DEFAULT_ALT, GPSTracker.DEFAULT_ACC, 0);
+        assertEquals(GPSTracker.DEFAULT_LAT, estimator.getLatitude(), 0);
+        assertEquals(0, estimator.getAccuracy(), 0);
+
+        //First real fix, far from the default location
+        assertTrue(estimator.update(LAT, LON, ALT, 20, 60_000));
+        assertEquals(LAT, estimator.getLatitude(), 0);
+        assertEquals(LON, estimator.getLongitude(), 0);
+        assertEquals(ALT, estimator.getAltitude(), 0);
+        assertEquals(20, estimator.getAccuracy(), 1e-9);
+
+        //A fix 30 meters away only moves the estimate by a fraction
+        assertTrue(estimator.update(LAT + 30 * METER, LON, ALT, 20, 61_000));
+        double moved = (estimator.getLatitude() - LAT) / METER;
+        assertTrue(moved > 10 && moved < 20);
+        assertTrue(estimator.getAccuracy() < 20);
+    }
+
+    // Tests that a fix already added is ignored
+    @Test
+    public void sameFixTest() {
+        PositionEstimator estimator = new PositionEstimator();
+        assertTrue(estimator.update(LAT, LON, ALT, 20, 1000));
+        assertTrue(estimator.update(LAT + 30 * METER, LON, ALT, 20, 2000));
+        double latitude = estimator.getLatitude();
+        double accuracy = estimator.getAccuracy();
+        assertFalse(estimator.update(LAT + 30 * METER, LON, ALT, 20, 2000));
+        assertEquals(latitude, estimator.getLatitude(), 0);
+        assertEquals(accuracy, estimator.getAccuracy(), 0);
+    }
+
+    // Tests that a move is significant only if it exceeds the minimum distance and the uncertainty
+    @Test
+    public void significantMoveTest() {
+        assertFalse(PositionEstimator.isSignificantMove(50, 0, 0, UserPoint.MIN_DISTANCE_FOR_UPDATES));
+        assertTrue(PositionEstimator.isSignificantMove(150, 0, 0, UserPoint.MIN_DISTANCE_FOR_UPDATES));
+        assertFalse(PositionEstimator.isSignificantMove(150, 60, 60, UserPoint.MIN_DISTANCE_FOR_UPDATES));
+        assertTrue(PositionEstimator.isSignificantMove(150, 30, 40, UserPoint.MIN_DISTANCE_FOR_UPDATES));
+    }
+}
@@ -0,0 +1,119 @@
+package ch.epfl.sdp.peakar.points;
+
+import androidx.core.util.Pair;
+
+import org.junit.Test;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class TopographyTilesTest {
+
+    private static final double CELL_SIZE = 0.1;
+    private static final int SIZE = 8;
+    private static final BoundingBox REGION = new BoundingBox(46.0, 6.8, 45.2, 6.0);
+
+    private static int elevation(int row, int col) {
+        return 1000 + row * 100 - col * 7;
+    }
+
+    /**
+     * Writes the cells [firstRow, lastRow) x [firstCol, lastCol) of the region as an AAIGrid
+     */
+    private static Reader aaiGrid(int firstRow, int lastRow, int firstCol, int lastCol) {
+        StringBuilder grid = new StringBuilder();
+        grid.append("ncols        ").append(lastCol - firstCol).append('\n');
+        grid.append("nrows        ").append(lastRow - firstRow).append('\n');
+        grid.append(String.format(Locale.ENGLISH, "xllcorner    %.6f%n", REGION.getLonWest() + firstCol * CELL_SIZE));
+        grid.append(String.format(Locale.ENGLISH, "yllcorner    %.6f%n", REGION.getLatNorth() - lastRow * CELL_SIZE));
+        grid.append("cellsize     ").append(CELL_SIZE).append('\n');
+        grid.append("NODATA_value -32768\n");
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstCol; col < lastCol; col++) grid.append(' ').append(elevation(row, col));
+            grid.append('\n');
+        }
+        return new StringReader(grid.toString());
+    }
+
+    // Tests that a region is split in tiles covering it row by row
+    @Test
+    public void splitTest() {
+        List<BoundingBox> tiles = TopographyTiles.split(REGION, 2);
+        assertEquals(4, tiles.size());
+        assertEquals(46.0, tiles.get(0).getLatNorth(), 1e-9);
+        assertEquals(6.0, tiles.get(0).getLonWest(), 1e-9);
+        assertEquals(6.4, tiles.get(1).getLonWest(), 1e-9);
+        assertEquals(45.6, tiles.get(2).getLatNorth(), 1e-9);
+        assertEquals(45.2, tiles.get(3).getLatSouth(), 1e-9);
+        assertEquals(6.8, tiles.get(3).getLonEast(), 1e-9);
+    }
+
+    // Tests that overlapping tiles are stitched in the same map as the whole region
+    @Test
+    public void stitchTest() throws IOException {
+        List<Reader> tiles = new ArrayList<>();
+        tiles.add(aaiGrid(0, 5, 0, 5));
+        tiles.add(aaiGrid(0, 5, 4, SIZE));
+        tiles.add(aaiGrid(4, SIZE, 0, 5));
+        tiles.add(aaiGrid(4, SIZE, 4, SIZE));
+
+        Pair<int[][], Double> topography = TopographyTiles.stitch(REGION, tiles);
+
+        assertEquals(CELL_SIZE, topography.second, 0);
+        assertEquals(SIZE, topography.first.length);
+        for (int row = 0; row < SIZE; row++) {
+            int[] expected = new int[SIZE];
+            for (int col = 0; col < SIZE; col++) expected[col] = elevation(row, col);
+            assertArrayEquals(expected, topography.first[row]);
+        }
+    }
+
+    // Tests that the tiles added one at a time give the same map as the whole region
+    @Test
+    public void incrementalStitchTest() throws IOException {
+        TopographyTiles.Stitcher stitcher = new TopographyTiles.Stitcher(REGION);
+        stitcher.add(AAIGridDecoder.parse(aaiGrid(4, SIZE, 4, SIZE)));
+        stitcher.add(AAIGridDecoder.parse(aaiGrid(0, 5, 0, 5)));
+        stitcher.add(AAIGridDecoder.parse(aaiGrid(4, SIZE, 0, 5)));
+        stitcher.add(AAIGridDecoder.parse(aaiGrid(0, 5, 4, SIZE)));
+
+        Pair<int[][], Double> topography = stitcher.finish();
+        assertEquals(SIZE, topography.first.length);
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) assertEquals(elevation(row, col), topography.first[row][col]);
+        }
+        assertThrows(IOException.class, () -> new TopographyTiles.Stitcher(REGION).finish());
+    }
+
+    // Tests that cells missing from the tiles are filled with their neighbour
+    @Test
+    public void missingCellsTest() throws IOException {
+        List<Reader> tiles = new ArrayList<>();
+        tiles.add(aaiGrid(0, SIZE, 0, SIZE - 1));
+
+        int[][] topographyMap = TopographyTiles.stitch(REGION, tiles).first;
+        assertEquals(SIZE, topographyMap[0].length);
+        assertEquals(elevation(3, SIZE - 2), topographyMap[3][SIZE - 1]);
+    }
+
+    // Tests that grids without header or with missing values are rejected
+    @Test
+    public void invalidGridTest() {
+        List<Reader> noHeader = new ArrayList<>();
+        noHeader.add(new StringReader(" 1 2 3\n 4 5 6\n"));
+        assertThrows(IOException.class, () -> TopographyTiles.stitch(REGION, noHeader));
+
+        List<Reader> truncated = new ArrayList<>();
+        truncated.add(new StringReader("ncols 3\nnrows 2\nxllcorner 6\nyllcorner 45\ncellsize 0.1\n 1 2 3\n"));
+        assertThrows(IOException.class, () -> TopographyTiles.stitch(REGION, truncated));
+    }
+}
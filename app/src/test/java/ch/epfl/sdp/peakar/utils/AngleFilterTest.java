@@ -0,0 +1,72 @@
+package ch.epfl.sdp.peakar.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests common to the AngleFilters, run by the test class of each filter
+ */
+public abstract class AngleFilterTest {
+
+    /**
+     * @return new filter to test
+     */
+    abstract AngleFilter createFilter();
+
+    /**
+     * @return RMS error of the filtered azimuth of the trace at rest, in degrees
+     */
+    abstract double expectedRestErrorDegrees();
+
+    /**
+     * @return RMS error of the filtered azimuth of the trace while panning, in degrees
+     */
+    abstract double expectedMotionErrorDegrees();
+
+    // Tests that replaying a trace gives the same angles and errors
+    @Test
+    public void deterministicReplayTest() throws IOException {
+        SensorTrace trace = SensorTrace.load("rotation_trace.csv");
+        float[] first = trace.replay(createFilter(), trace.azimuths);
+        float[] second = trace.replay(createFilter(), trace.azimuths);
+        assertArrayEquals(first, second, 0);
+
+        assertEquals(expectedRestErrorDegrees(), Math.toDegrees(trace.rmsError(first, trace.trueAzimuths, true)), 0.01);
+        assertEquals(expectedMotionErrorDegrees(), Math.toDegrees(trace.rmsError(first, trace.trueAzimuths, false)), 0.01);
+    }
+
+    // Tests that the filter has less jitter at rest and less lag while panning than the moving average
+    @Test
+    public void restAndMotionTest() throws IOException {
+        SensorTrace trace = SensorTrace.load("rotation_trace.csv");
+        for (boolean azimuth : new boolean[]{true, false}) {
+            float[] measured = azimuth ? trace.azimuths : trace.pitches;
+            float[] truth = azimuth ? trace.trueAzimuths : trace.truePitches;
+            float[] filtered = trace.replay(createFilter(), measured);
+            float[] averaged = trace.replay(new AngleLowpassFilter(), measured);
+
+            double restError = trace.rmsError(filtered, truth, true);
+            assertTrue(restError < trace.rmsError(measured, truth, true));
+            assertTrue(restError < trace.rmsError(averaged, truth, true));
+            if (azimuth) assertTrue(trace.rmsError(filtered, truth, false) < trace.rmsError(averaged, truth, false) / 2);
+        }
+    }
+
+    // Tests that the filtered angle does not jump when the angle crosses pi
+    @Test
+    public void wrapAroundTest() {
+        AngleFilter filter = createFilter();
+        long timestamp = 0;
+        for (int i = 0; i < 200; i++) {
+            float radians = AngleFilter.wrap((float) (Math.PI - 0.2 + i * 0.002));
+            float filtered = filter.filter(radians, timestamp += 20_000_000);
+            assertTrue(Math.abs(AngleFilter.wrap(filtered - radians)) < 0.05);
+            assertTrue(filtered >= -Math.PI && filtered <= Math.PI);
+        }
+    }
+}
@@ -2,7 +2,12 @@ package ch.epfl.sdp.peakar.utils;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AngleLowpassFilterTest {
     private static final int QUEUE_LENGTH = 5;
@@ -46,4 +51,53 @@ public class AngleLowpassFilterTest {
             }
         }
     }
+
+    //Tests that replaying a trace gives the same angles and errors, the average lagging while panning
+    @Test
+    public void deterministicReplayTest() throws IOException {
+        SensorTrace trace = SensorTrace.load("rotation_trace.csv");
+        float[] first = trace.replay(new AngleLowpassFilter(), trace.azimuths);
+        float[] second = trace.replay(new AngleLowpassFilter(), trace.azimuths);
+        assertArrayEquals(first, second, 0);
+
+        double restError = trace.rmsError(first, trace.trueAzimuths, true);
+        assertTrue(restError < trace.rmsError(trace.azimuths, trace.trueAzimuths, true));
+        assertEquals(0.274, Math.toDegrees(restError), 0.01);
+        assertEquals(3.478, Math.toDegrees(trace.rmsError(first, trace.trueAzimuths, false)), 0.01);
+    }
+
+    //Tests that filtering the orientation of a sensor event does not allocate
+    @Test
+    public void noAllocationTest() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        AngleLowpassFilter horizontalFilter = new AngleLowpassFilter();
+        AngleLowpassFilter verticalFilter = new AngleLowpassFilter();
+        float[] orientationMat = new float[3];
+
+        //Warm up so that the measured events run compiled code
+        filterEvents(horizontalFilter, verticalFilter, orientationMat, 100000);
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        filterEvents(horizontalFilter, verticalFilter, orientationMat, 100000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        //getThreadAllocatedBytes may allocate its own result once
+        assertEquals(0, allocated, 64);
+    }
+
+    /**
+     * Filters the orientation of sensor events like Compass.onSensorChanged
+     */
+    private static void filterEvents(AngleLowpassFilter horizontalFilter, AngleLowpassFilter verticalFilter,
+                                     float[] orientationMat, int count) {
+        for(int i=0; i<count; i++){
+            orientationMat[0] = (float) (Math.PI * Math.sin(i / 100.0));
+            orientationMat[1] = (float) (Math.PI / 4 * Math.cos(i / 70.0));
+            horizontalFilter.add(orientationMat[0]);
+            verticalFilter.add(orientationMat[1]);
+            orientationMat[0] = horizontalFilter.average();
+            orientationMat[1] = verticalFilter.average();
+            CameraUtilities.convertArrToDegrees(orientationMat);
+        }
+    }
 }
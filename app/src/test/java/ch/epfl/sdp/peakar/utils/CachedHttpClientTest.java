@@ -0,0 +1,264 @@
+package ch.epfl.sdp.peakar.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CachedHttpClientTest {
+
+    private static final int READ_TIMEOUT_MS = 5000;
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Wed, 19 May 2021 10:00:00 GMT";
+
+    private HttpServer server;
+    private File directory;
+    private CachedHttpClient client;
+
+    /*Requests received by the server: path -> number of requests*/
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    /*Conditional headers of the last request: path -> If-None-Match or If-Modified-Since*/
+    private final Map<String, String> conditions = new ConcurrentHashMap<>();
+    /*Client ports seen by the server*/
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicLong bodyBytesSent = new AtomicLong();
+    private final AtomicInteger failuresBeforeSuccess = new AtomicInteger();
+
+    /**
+     * Local stand-in for the terrain and POI servers:
+     * <ul>
+     * <li>/grid serves an AAIGrid, gzip-compressed if accepted, with an ETag
+     * <li>/dated serves a text with a Last-Modified header
+     * <li>/plain serves a text without validators
+     * <li>/flaky answers 503 failuresBeforeSuccess times, then serves a text
+     * <li>/missing answers 404
+     * </ul>
+     */
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("httpCache").toFile();
+        client = new CachedHttpClient(1, CachedHttpClient.MAX_CACHE_SIZE_BYTES);
+        client.setCacheDirectory(directory);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static byte[] grid() {
+        StringBuilder grid = new StringBuilder("ncols 200\nnrows 200\nxllcorner 6.5\nyllcorner 46.1\ncellsize 0.000833\nNODATA_value -32768\n");
+        for (int row = 0; row < 200; row++) {
+            for (int col = 0; col < 200; col++) grid.append(' ').append(1500 + (row * 7 + col * 3) % 400);
+            grid.append('\n');
+        }
+        return grid.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifNoneMatch != null) conditions.put(path, ifNoneMatch);
+        else if (ifModifiedSince != null) conditions.put(path, ifModifiedSince);
+        else conditions.remove(path);
+
+        byte[] body;
+        switch (path) {
+            case "/grid":
+                if (ETAG.equals(ifNoneMatch)) {
+                    sendNotModified(exchange);
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                body = grid();
+                break;
+            case "/dated":
+                if (LAST_MODIFIED.equals(ifModifiedSince)) {
+                    sendNotModified(exchange);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                body = "dated".getBytes(StandardCharsets.UTF_8);
+                break;
+            case "/plain":
+                body = "plain".getBytes(StandardCharsets.UTF_8);
+                break;
+            case "/flaky":
+                if (failuresBeforeSuccess.getAndDecrement() > 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                    return;
+                }
+                body = "recovered".getBytes(StandardCharsets.UTF_8);
+                break;
+            default:
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+        }
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        bodyBytesSent.addAndGet(body.length);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static void sendNotModified(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private byte[] get(String path) throws IOException {
+        try (InputStream inputStream = client.get(url(path), READ_TIMEOUT_MS)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) content.write(buffer, 0, read);
+            return content.toByteArray();
+        }
+    }
+
+    // Tests that the response is requested compressed and decompressed while it is read
+    @Test
+    public void gzipTest() throws IOException {
+        byte[] grid = grid();
+        assertArrayEquals(grid, get("/grid"));
+        assertTrue("The AAIGrid should be at least 3 times smaller", bodyBytesSent.get() * 3 < grid.length);
+    }
+
+    // Tests that a response with an ETag is revalidated and served from the cache
+    @Test
+    public void eTagRevalidationTest() throws IOException {
+        byte[] grid = grid();
+        assertArrayEquals(grid, get("/grid"));
+        long sent = bodyBytesSent.get();
+
+        assertArrayEquals(grid, get("/grid"));
+        assertArrayEquals(grid, get("/grid"));
+        assertEquals(ETAG, conditions.get("/grid"));
+        assertEquals(3, requests.get("/grid").get());
+        assertEquals(sent, bodyBytesSent.get());
+    }
+
+    // Tests that a response with a Last-Modified date is revalidated and served from the cache
+    @Test
+    public void lastModifiedRevalidationTest() throws IOException {
+        assertEquals("dated", new String(get("/dated"), StandardCharsets.UTF_8));
+        assertEquals("dated", new String(get("/dated"), StandardCharsets.UTF_8));
+        assertEquals(LAST_MODIFIED, conditions.get("/dated"));
+    }
+
+    // Tests that a response without validators is not cached
+    @Test
+    public void noValidatorTest() throws IOException {
+        get("/plain");
+        get("/plain");
+        assertNull(conditions.get("/plain"));
+        File[] files = directory.listFiles();
+        assertEquals(0, files == null ? 0 : files.length);
+    }
+
+    // Tests that a body which is not read to the end is not cached
+    @Test
+    public void incompleteBodyTest() throws IOException {
+        try (InputStream inputStream = client.get(url("/grid"), READ_TIMEOUT_MS)) {
+            assertTrue(inputStream.read(new byte[100]) > 0);
+        }
+        File[] files = directory.listFiles();
+        assertEquals(0, files == null ? 0 : files.length);
+
+        get("/grid");
+        assertNull(conditions.get("/grid"));
+    }
+
+    // Tests that server errors are retried and client errors are not
+    @Test
+    public void retryTest() throws IOException {
+        failuresBeforeSuccess.set(CachedHttpClient.MAX_ATTEMPTS - 1);
+        assertEquals("recovered", new String(get("/flaky"), StandardCharsets.UTF_8));
+        assertEquals(CachedHttpClient.MAX_ATTEMPTS, requests.get("/flaky").get());
+
+        failuresBeforeSuccess.set(CachedHttpClient.MAX_ATTEMPTS);
+        assertThrows(IOException.class, () -> get("/flaky"));
+
+        assertThrows(IOException.class, () -> get("/missing"));
+        assertEquals(1, requests.get("/missing").get());
+    }
+
+    // Tests that the least recently used entries are evicted
+    @Test
+    public void evictionTest() throws IOException {
+        client = new CachedHttpClient(1, 1);
+        client.setCacheDirectory(directory);
+        get("/dated");
+        get("/grid");
+
+        //Only the last entry is kept
+        get("/grid");
+        assertEquals(ETAG, conditions.get("/grid"));
+        get("/dated");
+        assertNull(conditions.get("/dated"));
+    }
+
+    // Tests that consecutive requests reuse the same connection, the gzip bodies being read to the end
+    @Test
+    public void keepAliveTest() throws IOException {
+        for (int i = 0; i < 10; i++) get("/plain");
+        assertEquals(1, clientPorts.size());
+    }
+}
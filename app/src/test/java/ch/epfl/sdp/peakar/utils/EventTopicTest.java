@@ -0,0 +1,192 @@
+package ch.epfl.sdp.peakar.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventTopicTest {
+
+    /**
+     * Executor running its tasks only when asked to, to check what the publisher left to do
+     */
+    private static final class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        int runAll() {
+            int count = 0;
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    // Tests that the events are still delivered after the subscriber threw
+    @Test
+    public void failingSubscriberTest() {
+        EventTopic<Integer> topic = EventTopic.events("test", 4);
+        ManualExecutor executor = new ManualExecutor();
+        List<Integer> received = new ArrayList<>();
+        topic.subscribe(executor, event -> {
+            received.add(event);
+            if (event == 1) throw new IllegalStateException("failure");
+        });
+
+        topic.publish(1);
+        topic.publish(2);
+        try {
+            executor.runAll();
+            fail("The exception of the subscriber should reach the executor");
+        } catch (IllegalStateException e) {
+            assertEquals(Collections.singletonList(1), received);
+        }
+        //The delivery of the pending event was scheduled again
+        executor.runAll();
+        topic.publish(3);
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 2, 3), received);
+    }
+
+    // Tests that a state topic only delivers the latest event
+    @Test
+    public void stateCoalescingTest() {
+        EventTopic<Integer> topic = EventTopic.state("test");
+        ManualExecutor executor = new ManualExecutor();
+        List<Integer> received = new ArrayList<>();
+        EventTopic<Integer>.Subscription subscription = topic.subscribe(executor, received::add);
+
+        for (int i = 1; i <= 5; i++) topic.publish(i);
+        assertTrue(received.isEmpty());
+        assertEquals(1, executor.runAll());
+        assertEquals(Collections.singletonList(5), received);
+        assertEquals(4, subscription.getDroppedCount());
+
+        topic.publish(6);
+        executor.runAll();
+        assertEquals(Arrays.asList(5, 6), received);
+    }
+
+    // Tests that an event topic delivers every event in order
+    @Test
+    public void eventOrderTest() {
+        EventTopic<Integer> topic = EventTopic.events("test", 10);
+        ManualExecutor executor = new ManualExecutor();
+        List<Integer> received = new ArrayList<>();
+        EventTopic<Integer>.Subscription subscription = topic.subscribe(executor, received::add);
+
+        for (int i = 1; i <= 5; i++) topic.publish(i);
+        assertEquals(1, executor.runAll());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), received);
+        assertEquals(0, subscription.getDroppedCount());
+    }
+
+    // Tests that a subscriber falling behind loses the oldest events
+    @Test
+    public void backpressureTest() {
+        EventTopic<Integer> topic = EventTopic.events("test", 3);
+        ManualExecutor executor = new ManualExecutor();
+        List<Integer> received = new ArrayList<>();
+        EventTopic<Integer>.Subscription subscription = topic.subscribe(executor, received::add);
+
+        for (int i = 1; i <= 10; i++) topic.publish(i);
+        executor.runAll();
+        assertEquals(Arrays.asList(8, 9, 10), received);
+        assertEquals(7, subscription.getDroppedCount());
+    }
+
+    // Tests that each subscriber receives the events on its own executor
+    @Test
+    public void subscribersTest() {
+        EventTopic<String> topic = EventTopic.events("test", 10);
+        ManualExecutor uiExecutor = new ManualExecutor();
+        ManualExecutor backgroundExecutor = new ManualExecutor();
+        List<String> uiReceived = new ArrayList<>();
+        List<String> backgroundReceived = new ArrayList<>();
+        topic.subscribe(uiExecutor, uiReceived::add);
+        topic.subscribe(backgroundExecutor, backgroundReceived::add);
+
+        topic.publish("event");
+        backgroundExecutor.runAll();
+        assertTrue(uiReceived.isEmpty());
+        assertEquals(Collections.singletonList("event"), backgroundReceived);
+        uiExecutor.runAll();
+        assertEquals(Collections.singletonList("event"), uiReceived);
+    }
+
+    // Tests that the pending events are dropped when unsubscribing
+    @Test
+    public void unsubscribeTest() {
+        EventTopic<Integer> topic = EventTopic.events("test", 10);
+        ManualExecutor executor = new ManualExecutor();
+        List<Integer> received = new ArrayList<>();
+        EventTopic<Integer>.Subscription subscription = topic.subscribe(executor, received::add);
+
+        topic.publish(1);
+        subscription.unsubscribe();
+        topic.publish(2);
+        executor.runAll();
+        assertTrue(received.isEmpty());
+        assertEquals(0, executor.runAll());
+    }
+
+    // Tests that a slow subscriber does not block the publisher and gets the events once free
+    @Test
+    public void slowSubscriberTest() throws InterruptedException {
+        EventTopic<Integer> topic = EventTopic.events("test", 100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        topic.subscribe(executor, event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(event);
+            if (event == 99) done.countDown();
+        });
+
+        //The subscriber is blocked, publishing must still return
+        for (int i = 0; i < 100; i++) topic.publish(i);
+        assertTrue(received.isEmpty());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(100, received.size());
+        for (int i = 0; i < 100; i++) assertEquals(i, (int) received.get(i));
+        executor.shutdown();
+    }
+
+    // Tests that publishing to a subscriber whose executor was shut down does not fail
+    @Test
+    public void shutdownExecutorTest() {
+        EventTopic<Integer> topic = EventTopic.state("test");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        topic.subscribe(executor, event -> {});
+        topic.publish(1);
+        topic.publish(2);
+    }
+}
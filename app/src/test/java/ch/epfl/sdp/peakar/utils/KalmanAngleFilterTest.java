@@ -0,0 +1,19 @@
+package ch.epfl.sdp.peakar.utils;
+
+public class KalmanAngleFilterTest extends AngleFilterTest {
+
+    @Override
+    AngleFilter createFilter() {
+        return new KalmanAngleFilter();
+    }
+
+    @Override
+    double expectedRestErrorDegrees() {
+        return 0.234;
+    }
+
+    @Override
+    double expectedMotionErrorDegrees() {
+        return 0.754;
+    }
+}
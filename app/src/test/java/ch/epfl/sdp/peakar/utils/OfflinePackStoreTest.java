@@ -0,0 +1,153 @@
+package ch.epfl.sdp.peakar.utils;
+
+import androidx.core.util.Pair;
+
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.sdp.peakar.points.POIPoint;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class OfflinePackStoreTest {
+
+    private static final String CHAMONIX = "Chamonix";
+    private static final String ZERMATT = "Zermatt";
+    private static final String MONT_BLANC = "Mont Blanc";
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("offlinePacks").toFile();
+    }
+
+    @After
+    public void cleanup() {
+        WriteBehindWriter.getInstance().flush();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static OfflineContentContainer createContent(BoundingBox boundingBox, String peakName) {
+        OfflineContentContainer content = new OfflineContentContainer();
+        content.boundingBox = boundingBox;
+        List<POIPoint> poiPoints = new ArrayList<>();
+        poiPoints.add(new POIPoint(peakName, boundingBox.getCenterLatitude(), boundingBox.getCenterLongitude(), 4000, null));
+        content.POIPoints = poiPoints;
+        content.topography = new Pair<>(new int[][]{{1, 2}, {3, 4}}, 0.1);
+        return content;
+    }
+
+    // Tests that the packs listed in the manifest are found by a new store
+    @Test
+    public void manifestIsPersistedTest() {
+        OfflinePackStore store = new OfflinePackStore(directory);
+        store.savePack(CHAMONIX, createContent(new BoundingBox(46.1, 7.0, 45.7, 6.6), MONT_BLANC));
+        store.savePack(ZERMATT, createContent(new BoundingBox(46.2, 7.9, 45.8, 7.5), "Matterhorn"));
+        WriteBehindWriter.getInstance().flush();
+
+        OfflinePackStore reopenedStore = new OfflinePackStore(directory);
+        List<OfflinePack> packs = reopenedStore.getPacks();
+        assertEquals(2, packs.size());
+        assertEquals(CHAMONIX, packs.get(0).getName());
+        assertEquals(ZERMATT, reopenedStore.getLatestPack().getName());
+        assertEquals(1, packs.get(1).getPoiCount());
+    }
+
+    // Tests that the pack covering a location is selected and its content read back
+    @Test
+    public void findAndReadPackTest() throws IOException {
+        OfflinePackStore store = new OfflinePackStore(directory);
+        store.savePack(CHAMONIX, createContent(new BoundingBox(46.1, 7.0, 45.7, 6.6), MONT_BLANC));
+        store.savePack(ZERMATT, createContent(new BoundingBox(46.2, 7.9, 45.8, 7.5), "Matterhorn"));
+
+        OfflinePack pack = store.findPack(45.9, 6.9);
+        assertEquals(CHAMONIX, pack.getName());
+        assertNull(store.findPack(47.0, 8.5));
+
+        OfflineContentContainer content = store.readPack(pack);
+        assertEquals(MONT_BLANC, content.POIPoints.get(0).getName());
+        assertEquals(46.1, content.boundingBox.getLatNorth(), 0);
+        assertArrayEquals(new int[]{3, 4}, content.topography.first[1]);
+    }
+
+    // Tests that with overlapping packs the one whose center is the closest is selected
+    @Test
+    public void overlappingPacksTest() {
+        OfflinePackStore store = new OfflinePackStore(directory);
+        store.savePack("Large", createContent(new BoundingBox(47.0, 8.0, 45.0, 6.0), MONT_BLANC));
+        store.savePack("Small", createContent(new BoundingBox(45.5, 6.5, 45.1, 6.1), MONT_BLANC));
+
+        assertEquals("Small", store.findPack(45.3, 6.3).getName());
+        assertEquals("Large", store.findPack(46.0, 7.0).getName());
+    }
+
+    // Tests that saving a pack with an existing name replaces it and that packs can be deleted
+    @Test
+    public void replaceAndDeletePackTest() {
+        OfflinePackStore store = new OfflinePackStore(directory);
+        store.savePack(CHAMONIX, createContent(new BoundingBox(46.1, 7.0, 45.7, 6.6), MONT_BLANC));
+        store.savePack(CHAMONIX, createContent(new BoundingBox(46.2, 7.1, 45.8, 6.7), MONT_BLANC));
+        assertEquals(1, store.getPacks().size());
+        assertEquals(46.2, store.getLatestPack().getBoundingBox().getLatNorth(), 0);
+
+        store.deletePack(store.getLatestPack());
+        WriteBehindWriter.getInstance().flush();
+        assertEquals(0, new OfflinePackStore(directory).getPacks().size());
+        File[] files = directory.listFiles();
+        assertEquals(1, files == null ? 0 : files.length);
+    }
+
+    // Tests that the JSON offline content of the previous versions is imported as a pack and deleted
+    @Test
+    public void legacyMigrationTest() throws IOException {
+        File legacyFile = new File(directory, OfflinePackStore.LEGACY_CONTENT_FILE);
+        String json = new Gson().toJson(createContent(new BoundingBox(46.1, 7.0, 45.7, 6.6), MONT_BLANC));
+        Files.write(legacyFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+
+        OfflinePackStore store = new OfflinePackStore(directory);
+        store.migrateLegacyContent(legacyFile);
+        assertFalse(legacyFile.exists());
+
+        OfflinePackStore reopenedStore = new OfflinePackStore(directory);
+        OfflinePack pack = reopenedStore.findPack(45.9, 6.9);
+        assertEquals("45.900°, 6.800°", pack.getName());
+        OfflineContentContainer content = reopenedStore.readPack(pack);
+        assertEquals(MONT_BLANC, content.POIPoints.get(0).getName());
+        assertArrayEquals(new int[]{3, 4}, content.topography.first[1]);
+    }
+
+    // Tests that a corrupted legacy file is deleted without adding a pack
+    @Test
+    public void corruptedLegacyMigrationTest() throws IOException {
+        File legacyFile = new File(directory, OfflinePackStore.LEGACY_CONTENT_FILE);
+        Files.write(legacyFile.toPath(), "{\"boundingBox\": [".getBytes(StandardCharsets.UTF_8));
+
+        OfflinePackStore store = new OfflinePackStore(directory);
+        store.migrateLegacyContent(legacyFile);
+        assertFalse(legacyFile.exists());
+        assertEquals(0, store.getPacks().size());
+    }
+}
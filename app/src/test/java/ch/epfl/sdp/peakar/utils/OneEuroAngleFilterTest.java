@@ -0,0 +1,19 @@
+package ch.epfl.sdp.peakar.utils;
+
+public class OneEuroAngleFilterTest extends AngleFilterTest {
+
+    @Override
+    AngleFilter createFilter() {
+        return new OneEuroAngleFilter();
+    }
+
+    @Override
+    double expectedRestErrorDegrees() {
+        return 0.190;
+    }
+
+    @Override
+    double expectedMotionErrorDegrees() {
+        return 1.049;
+    }
+}
@@ -0,0 +1,95 @@
+package ch.epfl.sdp.peakar.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Orientation trace replayed through the angle filters in the tests. Each sample has the measured
+ * and the true azimuth and pitch, in radians.
+ */
+final class SensorTrace {
+
+    //Time after the end of a pan before the device is considered at rest
+    private static final long SETTLING_TIME_NS = 500_000_000L;
+
+    final long[] timestamps;
+    final float[] azimuths;
+    final float[] pitches;
+    final float[] trueAzimuths;
+    final float[] truePitches;
+
+    private SensorTrace(List<float[]> samples, List<Long> timestamps) {
+        int size = samples.size();
+        this.timestamps = new long[size];
+        azimuths = new float[size];
+        pitches = new float[size];
+        trueAzimuths = new float[size];
+        truePitches = new float[size];
+        for (int i = 0; i < size; i++) {
+            this.timestamps[i] = timestamps.get(i);
+            azimuths[i] = samples.get(i)[0];
+            pitches[i] = samples.get(i)[1];
+            trueAzimuths[i] = samples.get(i)[2];
+            truePitches[i] = samples.get(i)[3];
+        }
+    }
+
+    /**
+     * Loads a trace of the test resources
+     * @param name name of the trace in /sensor
+     */
+    static SensorTrace load(String name) throws IOException {
+        List<float[]> samples = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        try (InputStream inputStream = SensorTrace.class.getResourceAsStream("/sensor/" + name);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.isEmpty()) continue;
+                String[] values = line.split(",");
+                timestamps.add(Long.parseLong(values[0]));
+                samples.add(new float[]{Float.parseFloat(values[1]), Float.parseFloat(values[2]),
+                        Float.parseFloat(values[3]), Float.parseFloat(values[4])});
+            }
+        }
+        return new SensorTrace(samples, timestamps);
+    }
+
+    /**
+     * Replays the measured angles through a filter
+     * @param filter filter of the angles
+     * @param measured measured angles
+     * @return filtered angles
+     */
+    float[] replay(AngleFilter filter, float[] measured) {
+        float[] filtered = new float[measured.length];
+        for (int i = 0; i < measured.length; i++) filtered[i] = filter.filter(measured[i], timestamps[i]);
+        return filtered;
+    }
+
+    /**
+     * Computes the root mean square error of filtered angles while the device is at rest or moving
+     * @param filtered filtered angles
+     * @param truth true angles
+     * @param atRest true to compute the error at rest, false while moving
+     * @return error in radians
+     */
+    double rmsError(float[] filtered, float[] truth, boolean atRest) {
+        double sum = 0;
+        int count = 0;
+        long lastMove = Long.MIN_VALUE / 2;
+        for (int i = 1; i < filtered.length; i++) {
+            if (truth[i] != truth[i - 1]) lastMove = timestamps[i];
+            if ((timestamps[i] - lastMove > SETTLING_TIME_NS) != atRest) continue;
+            double error = AngleFilter.wrap(filtered[i] - truth[i]);
+            sum += error * error;
+            count++;
+        }
+        return Math.sqrt(sum / count);
+    }
+}
@@ -0,0 +1,194 @@
+package ch.epfl.sdp.peakar.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ch.epfl.sdp.peakar.utils.TaskScheduler.Priority;
+import static ch.epfl.sdp.peakar.utils.TaskScheduler.Workload;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskSchedulerTest {
+
+    private static final long TIMEOUT_S = 5;
+
+    /**
+     * Blocks the single thread of a workload until the returned latch is released
+     */
+    private static CountDownLatch block(TaskScheduler scheduler, Workload workload) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(workload, Priority.HIGH, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+        return release;
+    }
+
+    // Tests that the queued tasks run by priority, then in submission order
+    @Test
+    public void priorityTest() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(1);
+        CountDownLatch release = block(scheduler, Workload.NETWORK);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        scheduler.execute(Workload.NETWORK, Priority.LOW, () -> order.add("low"));
+        scheduler.execute(Workload.NETWORK, Priority.NORMAL, () -> order.add("normal"));
+        scheduler.execute(Workload.NETWORK, Priority.HIGH, () -> order.add("high 1"));
+        CompletableFuture<Void> last = scheduler.execute(Workload.NETWORK, Priority.HIGH, () -> order.add("high 2"));
+        assertEquals(4, scheduler.getMetrics(Workload.NETWORK).getQueued());
+
+        release.countDown();
+        scheduler.execute(Workload.NETWORK, Priority.LOW, () -> {}).get(TIMEOUT_S, TimeUnit.SECONDS);
+        last.get(TIMEOUT_S, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("high 1", "high 2", "normal", "low"), order);
+    }
+
+    // Tests that a busy workload does not delay the other ones
+    @Test
+    public void workloadIsolationTest() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(1);
+        CountDownLatch release = block(scheduler, Workload.COMPUTE);
+        assertEquals("done", scheduler.submit(Workload.NETWORK, Priority.NORMAL, () -> "done")
+                .get(TIMEOUT_S, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    // Tests that a task cancelled before it starts is skipped
+    @Test
+    public void cancellationTest() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(1);
+        CountDownLatch release = block(scheduler, Workload.DISK);
+
+        AtomicInteger runs = new AtomicInteger();
+        CancellationToken token = new CancellationToken();
+        CompletableFuture<Integer> cancelledByToken = scheduler.submit(Workload.DISK, Priority.NORMAL, token,
+                runs::incrementAndGet);
+        CompletableFuture<Integer> cancelledFuture = scheduler.submit(Workload.DISK, Priority.NORMAL,
+                runs::incrementAndGet);
+        token.cancel();
+        cancelledFuture.cancel(false);
+
+        release.countDown();
+        scheduler.execute(Workload.DISK, Priority.LOW, () -> {}).get(TIMEOUT_S, TimeUnit.SECONDS);
+        assertTrue(cancelledByToken.isCancelled());
+        assertTrue(cancelledFuture.isCancelled());
+        assertEquals(0, runs.get());
+        assertEquals(2, scheduler.getMetrics(Workload.DISK).getCancelled());
+    }
+
+    // Tests that a failed task completes its future exceptionally and is counted
+    @Test
+    public void failureTest() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(1);
+        CompletableFuture<Object> future = scheduler.submit(Workload.UI_CRITICAL, Priority.NORMAL, () -> {
+            throw new IllegalStateException("failure");
+        });
+        try {
+            future.get(TIMEOUT_S, TimeUnit.SECONDS);
+            fail("The task should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        scheduler.execute(Workload.UI_CRITICAL, Priority.LOW, () -> {}).get(TIMEOUT_S, TimeUnit.SECONDS);
+        TaskScheduler.Metrics metrics = scheduler.getMetrics(Workload.UI_CRITICAL);
+        assertEquals(2, metrics.getSubmitted());
+        assertEquals(1, metrics.getFailed());
+        assertEquals(1, metrics.getCompleted());
+    }
+
+    // Tests that the failure of an executed task reaches the uncaught exception handler
+    @Test
+    public void executeFailureTest() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(1);
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        AtomicReference<Throwable> uncaught = new AtomicReference<>();
+        CountDownLatch handled = new CountDownLatch(1);
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+            uncaught.set(e);
+            handled.countDown();
+        });
+        try {
+            CompletableFuture<Void> future = scheduler.execute(Workload.NETWORK, Priority.HIGH, () -> {
+                throw new IllegalStateException("failure");
+            });
+            assertTrue(handled.await(TIMEOUT_S, TimeUnit.SECONDS));
+            assertTrue(uncaught.get() instanceof IllegalStateException);
+            assertTrue(future.isCompletedExceptionally());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+        //The thread of the pool still runs the next tasks
+        scheduler.execute(Workload.NETWORK, Priority.LOW, () -> {}).get(TIMEOUT_S, TimeUnit.SECONDS);
+        assertEquals(1, scheduler.getMetrics(Workload.NETWORK).getFailed());
+    }
+
+    // Tests that a serial executor runs its tasks in order and one at a time
+    @Test
+    public void serialExecutorTest() throws InterruptedException {
+        TaskScheduler scheduler = new TaskScheduler(4);
+        Executor serial = scheduler.serialExecutor(Workload.DISK, Priority.NORMAL);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            int index = i;
+            serial.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(index);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 100; i++) assertEquals(i, (int) order.get(i));
+    }
+
+    // Tests that the parallel loop visits every index once, even when the workload is busy
+    @Test
+    public void parallelForTest() throws InterruptedException {
+        TaskScheduler scheduler = new TaskScheduler(2);
+        int[] visits = new int[1000];
+        scheduler.parallelFor(Workload.COMPUTE, Priority.HIGH, visits.length, i -> visits[i]++);
+        for (int visit : visits) assertEquals(1, visit);
+
+        //The calling thread does the work itself if the threads of the workload are busy
+        TaskScheduler busyScheduler = new TaskScheduler(1);
+        CountDownLatch release = block(busyScheduler, Workload.COMPUTE);
+        int[] busyVisits = new int[100];
+        busyScheduler.parallelFor(Workload.COMPUTE, Priority.HIGH, busyVisits.length, i -> busyVisits[i]++);
+        for (int visit : busyVisits) assertEquals(1, visit);
+        release.countDown();
+    }
+
+    // Tests that an exception of the parallel loop is thrown to the caller
+    @Test
+    public void parallelForFailureTest() {
+        try {
+            new TaskScheduler(2).parallelFor(Workload.COMPUTE, Priority.HIGH, 10, i -> {
+                if (i == 5) throw new IllegalArgumentException();
+            });
+            fail("The parallel loop should have failed");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
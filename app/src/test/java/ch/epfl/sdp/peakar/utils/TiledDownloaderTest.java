@@ -0,0 +1,243 @@
+package ch.epfl.sdp.peakar.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TiledDownloaderTest {
+
+    private static final int TILE_COUNT = 8;
+    private static final int TILE_SIZE = 100_000;
+    private static final int PARALLELISM = 3;
+    private static final long TIMEOUT_S = 10;
+
+    private HttpServer server;
+    private File directory;
+
+    /*Requests received by the server: path -> number of requests*/
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    /*Range headers received by the server: path -> last range*/
+    private final Map<String, String> ranges = new ConcurrentHashMap<>();
+    /*Paths whose next response is cut in the middle*/
+    private final Map<String, Boolean> truncatedPaths = new ConcurrentHashMap<>();
+    /*Paths always answered with an error*/
+    private final Map<String, Boolean> failingPaths = new ConcurrentHashMap<>();
+
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    /**
+     * Local stand-in for the tile servers: /tile/i serves TILE_SIZE deterministic bytes and
+     * supports range requests
+     */
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("tiledDownload").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tile/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void cleanup() {
+        server.stop(0);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static byte[] content(String path) {
+        byte[] content = new byte[TILE_SIZE];
+        int seed = path.hashCode();
+        for (int i = 0; i < TILE_SIZE; i++) content[i] = (byte) (seed + i * 31);
+        return content;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        int concurrent = concurrentRequests.incrementAndGet();
+        maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+        try {
+            Thread.sleep(20);
+            if (failingPaths.containsKey(path)) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            byte[] content = content(path);
+            int offset = 0;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                ranges.put(path, range);
+                offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            }
+            exchange.sendResponseHeaders(range != null ? 206 : 200, content.length - offset);
+            try (OutputStream body = exchange.getResponseBody()) {
+                if (truncatedPaths.remove(path) != null) {
+                    body.write(content, offset, (content.length - offset) / 2);
+                    body.flush();
+                    //Drop the connection in the middle of the response
+                    throw new IOException("Connection dropped");
+                }
+                body.write(content, offset, content.length - offset);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrentRequests.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private List<TiledDownloader.Tile> createTiles() throws IOException {
+        List<TiledDownloader.Tile> tiles = new ArrayList<>();
+        for (int i = 0; i < TILE_COUNT; i++) {
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/tile/" + i);
+            tiles.add(new TiledDownloader.Tile("tile_" + i, url));
+        }
+        return tiles;
+    }
+
+    /**
+     * Listener recording the reported state
+     */
+    private static class RecordingListener implements TiledDownloader.Listener {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile int lastCompletedTiles = -1;
+        private volatile int totalTiles;
+        private volatile long lastDownloadedBytes;
+        private volatile Map<String, File> tileFiles;
+        private volatile IOException error;
+
+        @Override
+        public void onProgress(int completedTiles, int totalTiles, long downloadedBytes) {
+            this.totalTiles = totalTiles;
+            lastCompletedTiles = Math.max(lastCompletedTiles, completedTiles);
+            lastDownloadedBytes = Math.max(lastDownloadedBytes, downloadedBytes);
+        }
+
+        @Override
+        public void onCompleted(Map<String, File> tileFiles) {
+            this.tileFiles = tileFiles;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(IOException e) {
+            error = e;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Download timed out", done.await(TIMEOUT_S, TimeUnit.SECONDS));
+        }
+    }
+
+    private RecordingListener download(List<TiledDownloader.Tile> tiles) throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        new TiledDownloader(directory, tiles, PARALLELISM).start(listener);
+        listener.await();
+        return listener;
+    }
+
+    // Tests that every tile is downloaded with a bounded number of concurrent requests
+    @Test
+    public void concurrentDownloadTest() throws IOException, InterruptedException {
+        List<TiledDownloader.Tile> tiles = createTiles();
+        RecordingListener listener = download(tiles);
+
+        assertNull(listener.error);
+        assertEquals(TILE_COUNT, listener.totalTiles);
+        assertEquals(TILE_COUNT, listener.lastCompletedTiles);
+        assertEquals((long) TILE_COUNT * TILE_SIZE, listener.lastDownloadedBytes);
+        assertEquals(Arrays.asList("tile_0", "tile_1", "tile_2", "tile_3", "tile_4", "tile_5", "tile_6", "tile_7"),
+                new ArrayList<>(listener.tileFiles.keySet()));
+        for (int i = 0; i < TILE_COUNT; i++) {
+            assertArrayEquals(content("/tile/" + i), Files.readAllBytes(listener.tileFiles.get("tile_" + i).toPath()));
+        }
+        assertTrue(maxConcurrentRequests.get() > 1);
+        assertTrue(maxConcurrentRequests.get() <= PARALLELISM);
+    }
+
+    // Tests that completed tiles are not downloaded again and partial tiles are resumed
+    @Test
+    public void resumeDownloadTest() throws IOException, InterruptedException {
+        List<TiledDownloader.Tile> tiles = createTiles();
+        Files.write(new File(directory, "tile_0").toPath(), content("/tile/0"));
+        byte[] partialContent = Arrays.copyOf(content("/tile/1"), TILE_SIZE / 4);
+        Files.write(new File(directory, "tile_1.part").toPath(), partialContent);
+
+        RecordingListener listener = download(tiles);
+
+        assertNull(listener.error);
+        assertNull(requests.get("/tile/0"));
+        assertEquals("bytes=" + TILE_SIZE / 4 + "-", ranges.get("/tile/1"));
+        assertArrayEquals(content("/tile/1"), Files.readAllBytes(new File(directory, "tile_1").toPath()));
+        assertFalse(new File(directory, "tile_1.part").exists());
+        assertEquals((long) (TILE_COUNT - 1) * TILE_SIZE - TILE_SIZE / 4, listener.lastDownloadedBytes);
+    }
+
+    // Tests that a dropped connection is retried from where the transfer stopped
+    @Test
+    public void droppedConnectionTest() throws IOException, InterruptedException {
+        truncatedPaths.put("/tile/3", true);
+        RecordingListener listener = download(createTiles());
+
+        assertNull(listener.error);
+        assertEquals(2, requests.get("/tile/3").get());
+        assertNotNull(ranges.get("/tile/3"));
+        assertArrayEquals(content("/tile/3"), Files.readAllBytes(listener.tileFiles.get("tile_3").toPath()));
+    }
+
+    // Tests that a tile failing on every attempt fails the download, and that a new run completes it
+    @Test
+    public void failedDownloadIsResumedTest() throws IOException, InterruptedException {
+        List<TiledDownloader.Tile> tiles = createTiles();
+        failingPaths.put("/tile/5", true);
+        RecordingListener failed = download(tiles);
+        assertNotNull(failed.error);
+        assertEquals(TiledDownloader.MAX_ATTEMPTS, requests.get("/tile/5").get());
+
+        failingPaths.clear();
+        requests.clear();
+        RecordingListener resumed = download(tiles);
+        assertNull(resumed.error);
+        assertEquals(1, requests.get("/tile/5").get());
+        for (int i = 0; i < TILE_COUNT; i++) {
+            assertArrayEquals(content("/tile/" + i), Files.readAllBytes(resumed.tileFiles.get("tile_" + i).toPath()));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package ch.epfl.sdp.peakar.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 100;
+    private static final int SIZE = 8;
+
+    //Clock of the wheels advanced by hand
+    private long now = 1000;
+
+    /**
+     * Creates a wheel advanced by hand, running the expired tasks directly
+     */
+    private TimingWheel createWheel() {
+        return new TimingWheel(TICK, SIZE, Runnable::run, () -> now, false);
+    }
+
+    /**
+     * Moves the clock and advances the wheel
+     */
+    private void advanceTo(TimingWheel wheel, long millis) {
+        now = millis;
+        wheel.advance();
+    }
+
+    /* Test that a task runs at its deadline, never before */
+    @Test
+    public void expiresAtDeadlineTest() {
+        TimingWheel wheel = createWheel();
+        List<String> ran = new ArrayList<>();
+        TimingWheel.Timeout timeout = wheel.schedule(() -> ran.add("a"), 1250);
+        assertEquals(1, wheel.size());
+
+        advanceTo(wheel, 1200);
+        assertTrue(ran.isEmpty());
+        advanceTo(wheel, 1249);
+        assertTrue(ran.isEmpty());
+        advanceTo(wheel, 1300);
+        assertEquals(Collections.singletonList("a"), ran);
+        assertTrue(timeout.isExpired());
+        assertEquals(0, wheel.size());
+
+        //An expired task is not run twice
+        advanceTo(wheel, 5000);
+        assertEquals(1, ran.size());
+    }
+
+    /* Test that the deadlines further than one turn of the wheel wait for their round */
+    @Test
+    public void roundsTest() {
+        TimingWheel wheel = createWheel();
+        List<Integer> ran = new ArrayList<>();
+        //Same bucket, one and three turns away
+        wheel.schedule(() -> ran.add(1), 1000 + TICK * SIZE);
+        wheel.schedule(() -> ran.add(3), 1000 + 3 * TICK * SIZE);
+
+        for (long t = 1000; t < 1000 + 3 * TICK * SIZE; t += TICK) {
+            advanceTo(wheel, t);
+            if (t < 1000 + TICK * SIZE) assertTrue(ran.isEmpty());
+        }
+        assertEquals(Collections.singletonList(1), ran);
+        advanceTo(wheel, 1000 + 3 * TICK * SIZE);
+        assertEquals(2, ran.size());
+        assertEquals(3, (int) ran.get(1));
+    }
+
+    /* Test that a cancelled task does not run and the others of its bucket do */
+    @Test
+    public void cancelTest() {
+        TimingWheel wheel = createWheel();
+        List<String> ran = new ArrayList<>();
+        TimingWheel.Timeout a = wheel.schedule(() -> ran.add("a"), 1300);
+        TimingWheel.Timeout b = wheel.schedule(() -> ran.add("b"), 1300);
+        TimingWheel.Timeout c = wheel.schedule(() -> ran.add("c"), 1300);
+
+        assertTrue(b.cancel());
+        assertFalse(b.cancel());
+        assertTrue(b.isCancelled());
+        assertEquals(2, wheel.size());
+
+        advanceTo(wheel, 1300);
+        assertEquals(2, ran.size());
+        assertTrue(ran.contains("a") && ran.contains("c"));
+        assertFalse(a.cancel());
+        assertFalse(c.isCancelled());
+    }
+
+    /* Test that a deadline in the past runs at the next tick */
+    @Test
+    public void pastDeadlineTest() {
+        TimingWheel wheel = createWheel();
+        List<String> ran = new ArrayList<>();
+        wheel.schedule(() -> ran.add("a"), 0);
+
+        advanceTo(wheel, 1050);
+        assertTrue(ran.isEmpty());
+        advanceTo(wheel, 1100);
+        assertEquals(1, ran.size());
+    }
+
+    /* Test that all the deadlines passed during a pause longer than a turn expire */
+    @Test
+    public void longPauseTest() {
+        TimingWheel wheel = createWheel();
+        List<Integer> ran = new ArrayList<>();
+        for (int i = 1; i <= 3 * SIZE; i++) {
+            int index = i;
+            wheel.schedule(() -> ran.add(index), 1000 + i * TICK);
+        }
+        wheel.schedule(() -> ran.add(-1), 1000 + 10 * SIZE * TICK);
+
+        advanceTo(wheel, 1000 + 5 * SIZE * TICK);
+        assertEquals(3 * SIZE, ran.size());
+        assertFalse(ran.contains(-1));
+        assertEquals(1, wheel.size());
+    }
+
+    /* Test that many tasks are held without a thread each and run on the thread of the wheel */
+    @Test
+    public void tickerTest() throws InterruptedException {
+        int threads = Thread.activeCount();
+        LongSupplier clock = () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        TimingWheel wheel = new TimingWheel(10, 64, Runnable::run, clock, true);
+        int count = 100;
+        CountDownLatch latch = new CountDownLatch(count);
+        long start = clock.getAsLong();
+        List<TimingWheel.Timeout> cancelled = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            wheel.scheduleAfter(latch::countDown, 20 + i);
+            cancelled.add(wheel.scheduleAfter(() -> fail("Cancelled task ran"), 20 + i));
+        }
+        for (TimingWheel.Timeout timeout : cancelled) timeout.cancel();
+        assertTrue(Thread.activeCount() <= threads + 1);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(clock.getAsLong() - start >= 20);
+        assertEquals(0, wheel.size());
+
+        //The thread of the wheel is woken up by a task scheduled once the wheel is empty
+        CountDownLatch next = new CountDownLatch(1);
+        wheel.scheduleAfter(next::countDown, 10);
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+    }
+
+    /* Test that a delay is scheduled from the current time of the clock */
+    @Test
+    public void scheduleAfterTest() {
+        TimingWheel wheel = createWheel();
+        List<String> ran = new ArrayList<>();
+        wheel.scheduleAfter(() -> ran.add("a"), 250);
+
+        advanceTo(wheel, 1249);
+        assertTrue(ran.isEmpty());
+        advanceTo(wheel, 1300);
+        assertEquals(1, ran.size());
+    }
+
+    /* Test that the thread of the wheel only wakes up at the earliest pending deadline */
+    @Test
+    public void nextWakeUpTest() {
+        TimingWheel wheel = createWheel();
+        assertEquals(Long.MAX_VALUE, wheel.getNextWakeUpMillis());
+        TimingWheel.Timeout first = wheel.schedule(() -> {}, 1250);
+        wheel.schedule(() -> {}, 1000 + 100 * SIZE * TICK);
+        assertEquals(1300, wheel.getNextWakeUpMillis());
+
+        //Nothing to expire at the tick of a cancelled task, the next deadline is found again
+        first.cancel();
+        advanceTo(wheel, 1300);
+        assertEquals(1000 + 100 * SIZE * TICK, wheel.getNextWakeUpMillis());
+        advanceTo(wheel, 1000 + 100 * SIZE * TICK);
+        assertEquals(0, wheel.size());
+        assertEquals(Long.MAX_VALUE, wheel.getNextWakeUpMillis());
+    }
+
+    /* Test the parameters of the wheel */
+    @Test
+    public void invalidParametersTest() {
+        try {
+            new TimingWheel(TICK, 6, Runnable::run);
+            fail("The size must be a power of two");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            new TimingWheel(0, SIZE, Runnable::run);
+            fail("The tick must be positive");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
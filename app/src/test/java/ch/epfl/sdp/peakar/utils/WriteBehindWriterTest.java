@@ -0,0 +1,128 @@
+package ch.epfl.sdp.peakar.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindWriterTest {
+
+    private static final String OLD_CONTENT = "old content";
+    private static final String NEW_CONTENT = "new content";
+
+    private File directory;
+    private File target;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("writeBehind").toFile();
+        target = new File(directory, "content.txt");
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File file, String content) {
+        WriteBehindWriter.getInstance().write(file, out -> out.write(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Tests that the content is written once the writer is flushed
+    @Test
+    public void writeAndFlushTest() throws IOException {
+        write(target, NEW_CONTENT);
+        assertTrue(WriteBehindWriter.getInstance().flush(5, TimeUnit.SECONDS));
+        assertEquals(NEW_CONTENT, read(target));
+        assertFalse(WriteBehindWriter.getInstance().isPending(target));
+    }
+
+    // Tests that a failing serialization keeps the previous version of the file
+    @Test
+    public void failedWriteKeepsOldContentTest() throws IOException {
+        write(target, OLD_CONTENT);
+        WriteBehindWriter.getInstance().await(target);
+
+        WriteBehindWriter.getInstance().write(target, out -> {
+            out.write(NEW_CONTENT.getBytes(StandardCharsets.UTF_8));
+            throw new IOException("Simulated crash");
+        });
+        WriteBehindWriter.getInstance().await(target);
+
+        assertEquals(OLD_CONTENT, read(target));
+        File[] files = directory.listFiles();
+        assertEquals(1, files == null ? 0 : files.length);
+    }
+
+    // Tests that only the latest of several queued writes of the same file is performed
+    @Test
+    public void queuedWritesAreCoalescedTest() throws IOException, InterruptedException {
+        CountDownLatch blockIoThread = new CountDownLatch(1);
+        File other = new File(directory, "other.txt");
+        WriteBehindWriter.getInstance().write(other, out -> {
+            try {
+                blockIoThread.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        });
+
+        int[] serializations = {0};
+        for (int i = 0; i < 5; i++) {
+            String content = NEW_CONTENT + i;
+            WriteBehindWriter.getInstance().write(target, out -> {
+                serializations[0]++;
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+            });
+        }
+        assertTrue(WriteBehindWriter.getInstance().isPending(target));
+        blockIoThread.countDown();
+        WriteBehindWriter.getInstance().flush();
+
+        assertEquals(1, serializations[0]);
+        assertEquals(NEW_CONTENT + 4, read(target));
+    }
+
+    // Tests that a cancelled write is never committed
+    @Test
+    public void cancelledWriteIsNotCommittedTest() throws InterruptedException {
+        CountDownLatch blockIoThread = new CountDownLatch(1);
+        File other = new File(directory, "other.txt");
+        WriteBehindWriter.getInstance().write(other, out -> {
+            try {
+                blockIoThread.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        });
+
+        write(target, NEW_CONTENT);
+        WriteBehindWriter.getInstance().cancel(target);
+        blockIoThread.countDown();
+        WriteBehindWriter.getInstance().flush();
+
+        assertFalse(target.exists());
+    }
+}